@@ -11,6 +11,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.fft.F
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.hierarchical.HierarchicalTaskFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.hopach.HopachPAMTaskFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans.KMeansTaskFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans.MiniBatchKMeansTaskFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmedoid.KMedoidTaskFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.pam.PAMTaskFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.clusterFilters.BestNeighbor.BestNeighborFilterTaskFactory;
@@ -107,6 +108,8 @@ public class CyActivator extends AbstractCyActivator {
 		                ClusterTaskFactory.class, new Properties());
 		registerService(bc, new KMeansTaskFactory(clusterManager),
 		                ClusterTaskFactory.class, new Properties());
+		registerService(bc, new MiniBatchKMeansTaskFactory(clusterManager),
+		                ClusterTaskFactory.class, new Properties());
 		registerService(bc, new KMedoidTaskFactory(clusterManager),
 		                ClusterTaskFactory.class, new Properties());
 		registerService(bc, new HopachPAMTaskFactory(clusterManager),
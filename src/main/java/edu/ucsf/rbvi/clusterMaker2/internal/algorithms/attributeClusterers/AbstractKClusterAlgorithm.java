@@ -37,8 +37,13 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.cytoscape.group.CyGroup;
@@ -50,11 +55,13 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AbstractClusterAlgorithm;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.silhouette.SilhouetteCalculator;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.silhouette.Silhouettes;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyMatrixFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.DistanceMatrixCache;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.MatrixUtils;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterManager;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.utils.ModelUtils;
 
@@ -79,6 +86,9 @@ public abstract class AbstractKClusterAlgorithm {
     private AbstractClusterAlgorithm parentTask = null;
     private Silhouettes[] silhouetteResults = null;
 
+    // The distance matrices for this run, shared by the clusterer and the silhouettes
+    private DistanceMatrixCache distanceCache = new DistanceMatrixCache();
+
 
     /**
      * Common code for the k-cluster algorithms with silhouette
@@ -92,6 +102,18 @@ public abstract class AbstractKClusterAlgorithm {
         this.parentTask = task;
     }
 
+    /**
+     * Return the distances between the rows of a matrix.  These are cached for
+     * the rest of the run, so they must not be modified.
+     *
+     * @param matrix the data matrix
+     * @param metric the distance metric to use
+     * @return the distance matrix
+     */
+    protected Matrix getDistanceMatrix(CyMatrix matrix, DistanceMetric metric) {
+        return distanceCache.getDistanceMatrix(matrix, metric);
+    }
+
     // This should be overridden by any k-cluster implementation
     public abstract int kcluster(int nClusters, int nIterations, CyMatrix matrix,
                                  DistanceMetric metric, int[] clusters);
@@ -119,6 +141,7 @@ public abstract class AbstractKClusterAlgorithm {
             monitor.setStatusMessage("Creating distance matrix");
 
         // Create the matrix
+        distanceCache.clear();
         matrix = CyMatrixFactory.makeSmallMatrix(network, weightAttributes, selectedOnly, ignoreMissing, transpose, false);
         monitor.showMessage(TaskMonitor.Level.INFO,"cluster matrix has "+matrix.nRows()+" rows");
         int kMax = Math.min(context.kMax, matrix.nRows());
@@ -141,19 +164,18 @@ public abstract class AbstractKClusterAlgorithm {
 
             silhouetteResults = new Silhouettes[kMax];
 
-            System.out.println("Running silhouette's");
             int nThreads = Runtime.getRuntime().availableProcessors()-1;
             if (nThreads > 1)
                 runThreadedSilhouette(kMax, nIterations, nThreads, saveMonitor);
             else
                 runLinearSilhouette(kMax, nIterations, saveMonitor);
-            System.out.println("Done.");
 
             if (parentTask.cancelled()) return null;
 
             // Now get the results and find our best k
             double maxSil = Double.MIN_VALUE;
             for (int kEstimate = 2; kEstimate < kMax; kEstimate++) {
+                if (silhouetteResults[kEstimate] == null) continue;
                 double sil = silhouetteResults[kEstimate].getMean();
                 saveMonitor.showMessage(TaskMonitor.Level.INFO,"Average silhouette for "+kEstimate+" clusters is "+sil);
                 if (sil > maxSil) {
@@ -177,7 +199,8 @@ public abstract class AbstractKClusterAlgorithm {
         if (nClusters == 0) nClusters = nClustersFound;
 
         // OK, now run our silhouette on our final result
-        Silhouettes sResult = SilhouetteCalculator.calculate(matrix, metric, clusters);
+        Silhouettes sResult = SilhouetteCalculator.calculate(getDistanceMatrix(matrix, metric), new Clusters(clusters));
+        distanceCache.clear();
         // System.out.println("Average silhouette = "+sResult.getAverageSilhouette());
         // SilhouetteUtil.printSilhouette(sResult, clusters);
 
@@ -307,21 +330,17 @@ public abstract class AbstractKClusterAlgorithm {
 			}
 		}
 
-    protected int[] chooseCentralElementsAsCenters(int nElements, int nClusters, double[][] distances, int[] tclusterid) {
+    protected int[] chooseCentralElementsAsCenters(int nElements, int nClusters, Matrix distances, int[] tclusterid) {
         int[] centers = new int[nClusters];
 
-        // calculate normalized distances
-        double[][] normalized = new double[nElements][nElements];
+        // calculate the row sums, so we can normalize the distances
+        double[] sums = new double[nElements];
         for (int i = 0; i < nElements; i++) {
             double sum = 0;
             for (int j = 0; j < nElements; j++) {
-                double x = distances[i][j];
-                normalized[i][j] = x;
-                sum += x;
-            }
-            for (int j = 0; j < nElements; j++) {
-                normalized[i][j] /= sum;
+                sum += distances.doubleValue(i, j);
             }
+            sums[i] = sum;
         }
 
         // sum the normalized distances across all rows
@@ -331,7 +350,7 @@ public abstract class AbstractKClusterAlgorithm {
         for (int i = 0; i < nElements; i++) {
             pairs[i] = new KeyValuePair(0.0, i);
             for (int j = 0; j < nElements; j++) {
-                pairs[i].key += normalized[i][j];
+                pairs[i].key += distances.doubleValue(i, j)/sums[i];
             }
         }
 
@@ -351,8 +370,9 @@ public abstract class AbstractKClusterAlgorithm {
             for (int j = 0; j < nElements; j++) {
                 double distance = Double.MAX_VALUE;
                 for (int cluster = 0; cluster < nClusters; cluster++) {
-                    if (normalized[j][centers[cluster]] < distance) {
-                        distance = normalized[j][centers[cluster]];
+                    double normalized = distances.doubleValue(j, centers[cluster])/sums[j];
+                    if (normalized < distance) {
+                        distance = normalized;
                         tclusterid[j] = cluster;
                     }
                 }
@@ -487,7 +507,7 @@ public abstract class AbstractKClusterAlgorithm {
 			}
 		}
 		
-		private double uniform() {
+		protected double uniform() {
 			if (random == null) {
 				// Date date = new Date();
 				// random = new Random(date.getTime());
@@ -531,39 +551,57 @@ public abstract class AbstractKClusterAlgorithm {
     }
 
     private void runThreadedSilhouette(int kMax, int nIterations, int nThreads, TaskMonitor saveMonitor) {
-        // Set up the thread pools
-        ExecutorService[] threadPools = new ExecutorService[nThreads];
-        for (int pool = 0; pool < threadPools.length; pool++)
-            threadPools[pool] = Executors.newFixedThreadPool(1);
-
-        // Dispatch a kmeans calculation to each pool
-        for (int kEstimate = 2; kEstimate < kMax; kEstimate++) {
-            int[] clusters = new int[matrix.nRows()];
-            Runnable r = new RunKMeans(matrix, clusters, kEstimate, nIterations, saveMonitor);
-            threadPools[(kEstimate-2)%nThreads].submit(r);
-            // threadPools[0].submit(r);
+        // The larger k estimates take the longest, so submit them first.  The
+        // work-stealing pool picks up tasks in the order they were submitted, and
+        // the small ones fill in at the end, so no thread is left idle while
+        // another works through a queue of large ones.
+        ExecutorService pool = Executors.newWorkStealingPool(nThreads);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(pool);
+        int nEstimates = 0;
+        for (int kEstimate = kMax-1; kEstimate >= 2; kEstimate--) {
+            completionService.submit(new RunKMeans(matrix, kEstimate, nIterations));
+            nEstimates++;
         }
 
-        System.out.println("All threads started");
-        // OK, now wait for each thread to complete
-        for (int pool = 0; pool < threadPools.length; pool++) {
-            System.out.println("Shutting down threads");
-            threadPools[pool].shutdown();
-            try {
-                boolean result = threadPools[pool].awaitTermination(7, TimeUnit.DAYS);
-                System.out.println("Pool "+pool+" terminated");
-            } catch (Exception ignored) {}
+        try {
+            int done = 0;
+            while (done < nEstimates) {
+                if (parentTask.cancelled()) return;
+                // Wake up regularly so we notice if we've been cancelled
+                Future<Integer> result = completionService.poll(100, TimeUnit.MILLISECONDS);
+                if (result == null) continue;
+                done++;
+                try {
+                    int kEstimate = result.get();
+                    if (saveMonitor != null) {
+                        saveMonitor.setStatusMessage("Got silhouette with a k estimate of "+kEstimate+
+                                                     " ("+done+" of "+nEstimates+")");
+                        saveMonitor.setProgress((double)done/(double)nEstimates);
+                    }
+                } catch (ExecutionException e) {
+                    if (saveMonitor != null)
+                        saveMonitor.showMessage(TaskMonitor.Level.ERROR,
+                                                "Silhouette calculation failed: "+e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
         }
-        System.out.println("Done.");
     }
 
     private void runLinearSilhouette(int kMax, int nIterations, TaskMonitor saveMonitor) {
         for (int kEstimate = 2; kEstimate < kMax; kEstimate++) {
             int[] clusters = new int[matrix.nRows()];
             if (parentTask.cancelled()) return;
-            if (saveMonitor != null) saveMonitor.setStatusMessage("Getting silhouette with a k estimate of "+kEstimate);
+            if (saveMonitor != null) {
+                saveMonitor.setStatusMessage("Getting silhouette with a k estimate of "+kEstimate);
+                saveMonitor.setProgress((double)(kEstimate-2)/(double)(kMax-2));
+            }
             int ifound = kcluster(kEstimate, nIterations, matrix, metric, clusters);
-            silhouetteResults[kEstimate] = SilhouetteCalculator.calculate(matrix, metric, clusters);
+            silhouetteResults[kEstimate] = SilhouetteCalculator.calculate(getDistanceMatrix(matrix, metric),
+                                                                             new Clusters(clusters));
         }
     }
 
@@ -600,32 +638,25 @@ public abstract class AbstractKClusterAlgorithm {
         }
     }
 
-    private class RunKMeans implements Runnable {
+    private class RunKMeans implements Callable<Integer> {
         CyMatrix matrix;
-        int[] clusters;
         int kEstimate;
         int nIterations;
-        TaskMonitor saveMonitor = null;
 
-        public RunKMeans (CyMatrix matrix, int[] clusters, int k, int nIterations, TaskMonitor saveMonitor) {
+        public RunKMeans (CyMatrix matrix, int k, int nIterations) {
             this.matrix = matrix;
-            this.clusters = clusters;
             this.kEstimate = k;
             this.nIterations = nIterations;
-            this.saveMonitor = saveMonitor;
         }
 
-        public void run() {
+        public Integer call() {
+            if (parentTask.cancelled()) return kEstimate;
             int[] clusters = new int[matrix.nRows()];
-            if (parentTask.cancelled()) return;
-            if (saveMonitor != null) saveMonitor.setStatusMessage("Getting silhouette with a k estimate of "+kEstimate);
-            try {
-                System.out.println("Getting silhouette with a k estimate of "+kEstimate);
-                int ifound = kcluster(kEstimate, nIterations, matrix, metric, clusters);
-                System.out.println("Got silhouette with a k estimate of "+kEstimate);
-                if (parentTask.cancelled()) return;
-                silhouetteResults[kEstimate] = SilhouetteCalculator.calculate(matrix, metric, clusters);
-            } catch (Exception e) { e.printStackTrace(); }
+            int ifound = kcluster(kEstimate, nIterations, matrix, metric, clusters);
+            if (parentTask.cancelled()) return kEstimate;
+            silhouetteResults[kEstimate] = SilhouetteCalculator.calculate(getDistanceMatrix(matrix, metric),
+                                                                             new Clusters(clusters));
+            return kEstimate;
         }
     }
 }
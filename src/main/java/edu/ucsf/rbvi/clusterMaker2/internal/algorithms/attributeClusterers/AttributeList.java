@@ -62,6 +62,7 @@ public class AttributeList {
 
 	public AttributeList(CyNetwork network, boolean nodesOnly) {
 		this.network = network;
+		this.nodesOnly = nodesOnly;
 		if (network != null) {
 			nodeAttributeList = ModelUtils.updateNodeAttributeList(network, nodeAttributeList);
 			if (!nodesOnly)
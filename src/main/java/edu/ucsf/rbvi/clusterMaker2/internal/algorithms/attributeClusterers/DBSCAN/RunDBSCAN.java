@@ -1,8 +1,5 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.DBSCAN;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.work.TaskMonitor;
 
@@ -12,8 +9,12 @@ import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.AbstractKClusterAlgorithm;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.fft.FFTContext;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyMatrixFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.NeighborIndex;
 
 public class RunDBSCAN  {
+	// Number of unvisited points in an expansion whose neighborhoods are
+	// looked up together, in parallel
+	private static final int FRONTIER = 256;
 
 	protected CyNetwork network;
 	protected String[] weightAttributes;
@@ -26,8 +27,10 @@ public class RunDBSCAN  {
 	protected int nClusters;
 	double eps;
 	int minPts;
-	ArrayList<Integer> unvisited;
-	double distanceMatrix[][];
+	NeighborIndex index;
+	boolean[] visited;
+	int[] inCluster; // the cluster whose expansion queue holds each point
+	int[] queue;
 
 	public RunDBSCAN(CyNetwork network, String weightAttributes[], DistanceMetric metric, 
             TaskMonitor monitor, DBSCANContext context) {
@@ -48,7 +51,7 @@ public class RunDBSCAN  {
 	public int[] cluster(boolean transpose) {
 
 		// Create the matrix
-		CyMatrix cData = CyMatrixFactory.makeSmallMatrix(network, weightAttributes, selectedOnly, ignoreMissing, transpose, false);
+		matrix = CyMatrixFactory.makeSmallMatrix(network, weightAttributes, selectedOnly, ignoreMissing, transpose, false);
 		monitor.showMessage(TaskMonitor.Level.INFO,"cluster matrix has "+matrix.nRows()+" rows");
 		DistanceMetric metric = context.metric.getSelectedValue();
 
@@ -59,66 +62,95 @@ public class RunDBSCAN  {
 			monitor.setStatusMessage("Clustering...");
 
 		int nelements = matrix.nRows();
-		int ifound = 1;
 		int currentC = -1;
 		int[] clusters = new int[nelements];
 
-		// calculate the distances and store in distance matrix
-		distanceMatrix = matrix.getDistanceMatrix(metric).toArray();
-
-		unvisited = new ArrayList<Integer>();
+		// The neighborhood of each point is found when it is first visited.  The
+		// index avoids calculating (and storing) the whole distance matrix.
+		// While a cluster grows, the neighborhoods of the next block of points
+		// in its queue are found together, in parallel, so at most FRONTIER
+		// neighborhoods are held at a time.
+		index = new NeighborIndex(matrix.toArray(), metric);
 
 		//Initializing all nodes as unvisited and clusters to -1
+		visited = new boolean[nelements];
+		inCluster = new int[nelements];
+		queue = new int[nelements];
 		for(int i = 0; i < nelements; i++){
-			unvisited.add(i);
 			clusters[i] = -1;
+			inCluster[i] = -1;
 		}
 
-		while(unvisited.size() > 0){
-			int p = unvisited.get(0);
-			unvisited.remove(0);
-
-			ArrayList<Integer> neighborPts = regionQuery(p);
-			// System.out.println("Node "+p+" has "+neighborPts.size()+" neighbors");
+		for (int p = 0; p < nelements; p++) {
+			if (visited[p]) continue;
+			visited[p] = true;
 
-			if(neighborPts.size() < minPts){
+			// The neighborhood includes p itself
+			int[] neighbors = index.getNeighbors(p, eps);
+			// System.out.println("Node "+p+" has "+(neighbors.length+1)+" neighbors");
+			if(neighbors.length+1 < minPts){
 				clusters[p] = -1;
 			}
 			else{
 				currentC += 1;
-				expandCluster(p,neighborPts,currentC,clusters);
-				// System.out.println("Node "+p+" has "+neighborPts.size()+" neighbors after expansion");
+				expandCluster(p,neighbors,currentC,clusters);
 			}
 		}
+		index = null;
 		nClusters = currentC+1;
 		// System.out.println("nClusters = "+nClusters);
 		return clusters;
 	}
 
-	private void expandCluster(int p, ArrayList<Integer> neighborPts,
-	                           int currentC, int[] clusters) {
+	private void expandCluster(int p, int[] neighbors, int currentC, int[] clusters) {
 
 		//Add p to current cluster
 		clusters[p] = currentC;
 
-		//Now expand for each neighbor
-		for(int i = 0; i < neighborPts.size(); i++ ){
-			int np = neighborPts.get(i);
+		// The points to look at, in the order we find them
+		int count = 0;
+		queue[count++] = p;
+		inCluster[p] = currentC;
+		for (int np: neighbors) {
+			queue[count++] = np;
+			inCluster[np] = currentC;
+		}
 
-			if(unvisited.contains(np)){
+		//Now expand for each neighbor
+		int[] pending = new int[FRONTIER];
+		int[][] pendingNeighbors = null;
+		int nPending = 0;
+		int next = 0;
+		for(int i = 0; i < count; i++ ){
+			int np = queue[i];
+
+			if(!visited[np]){
+				if (next == nPending) {
+					// Look up the next block of unvisited points in the queue.
+					// Points are only visited here, in queue order, so they
+					// come up in the same order as the block.
+					nPending = 0;
+					for (int j = i; j < count && nPending < FRONTIER; j++) {
+						if (!visited[queue[j]])
+							pending[nPending++] = queue[j];
+					}
+					pendingNeighbors = index.getNeighbors(pending, nPending, eps);
+					next = 0;
+				}
 
 				//make neighboring point visited
-				unvisited.remove(unvisited.indexOf(np));
+				visited[np] = true;
 
 				//Now fetch new neighboring points
-				ArrayList<Integer> newNeighborPts = regionQuery(np);
-				// System.out.println("Adding "+newNeighborPts.size()+" neighbors of "+np+" to cluster "+currentC);
-
-				if(newNeighborPts.size() >= minPts){
+				int[] npNeighbors = pendingNeighbors[next];
+				pendingNeighbors[next++] = null;
+				if(npNeighbors.length+1 >= minPts){
 					//Merge neighboring points
-					for(Integer newNp: newNeighborPts){
-						if (!neighborPts.contains(newNp))
-							neighborPts.add(newNp);
+					for(int newNp: npNeighbors){
+						if (inCluster[newNp] != currentC) {
+							queue[count++] = newNp;
+							inCluster[newNp] = currentC;
+						}
 					}
 				}
 			}
@@ -129,24 +161,4 @@ public class RunDBSCAN  {
 			}
 		}
 	}
-
-	private ArrayList<Integer> regionQuery(int p) {
-
-		ArrayList<Integer> neighborPts = new ArrayList<Integer>();
-		int nelements = distanceMatrix[p].length;
-
-		if (!neighborPts.contains(p))
-			neighborPts.add(p);
-		for(int i = 0; i < nelements; i++){
-			if (i == p) continue;
-
-			if(distanceMatrix[p][i] <= eps){
-				// System.out.println("distanceMatrix["+p+"]["+i+"] = "+distanceMatrix[p][i]+"<="+eps);
-				if (!neighborPts.contains(i))
-					neighborPts.add(i);
-			}
-		}
-
-		return neighborPts;
-	}
 }
@@ -0,0 +1,204 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.hierarchical;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
+
+/**
+ * Maximum (complete) and average linkage hierarchical clustering with the
+ * nearest-neighbor-chain algorithm (see Murtagh, F. (1983). A survey of recent
+ * advances in hierarchical clustering algorithms. The Computer Journal, 26(4):
+ * 354-359).  Both linkages are reducible, so following a chain of nearest
+ * neighbors until two clusters are each other's nearest neighbor always finds
+ * a pair that the greedy algorithm would also merge.  This takes O(n^2) time
+ * rather than the O(n^3) of searching the whole distance matrix for the
+ * closest pair before every merge.
+ *
+ * The chain finds the merges out of order, so they are sorted by distance and
+ * then replayed to number the nodes and to decide which side of each node the
+ * two clusters go on exactly as the greedy algorithm does, so the resulting
+ * TreeNodes are the same (apart from the order of merges at exactly equal
+ * distances).
+ */
+class NNChainLinkage {
+	private final int nRows;
+	private final SymmetricDistanceMatrix distances;
+	private final boolean average;
+
+	// The linked list of active clusters.  Each cluster is identified by
+	// one of its rows, and its distances are kept in that row of the matrix.
+	private final int[] next;
+	private final int[] previous;
+	private int first;
+	private final int[] size;
+
+	// The merges, in the order the chain finds them
+	private final int[] mergeA;
+	private final int[] mergeB;
+	private final double[] mergeDistance;
+	private int nMerges = 0;
+
+	/**
+	 * Create the clustering
+	 *
+	 * @param nRows the number of rows to be clustered
+	 * @param distances the distances between the rows.  This will be modified.
+	 * @param average if true use average linkage, otherwise maximum linkage
+	 */
+	NNChainLinkage(int nRows, SymmetricDistanceMatrix distances, boolean average) {
+		this.nRows = nRows;
+		this.distances = distances;
+		this.average = average;
+		next = new int[nRows];
+		previous = new int[nRows];
+		size = new int[nRows];
+		for (int i = 0; i < nRows; i++) {
+			next[i] = i+1;
+			previous[i] = i-1;
+			size[i] = 1;
+		}
+		first = 0;
+		mergeA = new int[nRows];
+		mergeB = new int[nRows];
+		mergeDistance = new double[nRows];
+	}
+
+	/**
+	 * Cluster the rows
+	 *
+	 * @return the array of TreeNode's that describe the hierarchical clustering solution
+	 */
+	TreeNode[] cluster() {
+		if (nRows < 2)
+			return new TreeNode[0];
+
+		int[] chain = new int[nRows];
+		int chainLength = 0;
+		while (nMerges < nRows-1) {
+			if (chainLength == 0)
+				chain[chainLength++] = first;
+
+			// Follow the nearest neighbors until we find a reciprocal pair
+			int a, b;
+			double distance;
+			while (true) {
+				a = chain[chainLength-1];
+				int prev = chainLength > 1 ? chain[chainLength-2] : -1;
+
+				// Prefer the previous cluster on ties so the chain can't cycle
+				b = prev;
+				distance = prev >= 0 ? distances.doubleValue(a, prev) : Double.MAX_VALUE;
+				for (int c = first; c < nRows; c = next[c]) {
+					if (c == a) continue;
+					double d = distances.doubleValue(a, c);
+					if (d < distance || b < 0) {
+						distance = d;
+						b = c;
+					}
+				}
+				if (b == prev)
+					break;
+				chain[chainLength++] = b;
+			}
+			chainLength -= 2;
+			merge(a, b, distance);
+		}
+
+		return replay();
+	}
+
+	// Merge cluster a into cluster b
+	private void merge(int a, int b, double distance) {
+		mergeA[nMerges] = a;
+		mergeB[nMerges] = b;
+		mergeDistance[nMerges] = distance;
+		nMerges++;
+
+		int sum = size[a] + size[b];
+		for (int c = first; c < nRows; c = next[c]) {
+			if (c == a || c == b) continue;
+			double da = distances.doubleValue(a, c);
+			double db = distances.doubleValue(b, c);
+			if (average)
+				distances.setValue(b, c, (da*(double)size[a] + db*(double)size[b])/(double)sum);
+			else
+				distances.setValue(b, c, Math.max(da, db));
+		}
+		size[b] = sum;
+
+		// Remove a from the active clusters
+		if (previous[a] >= 0)
+			next[previous[a]] = next[a];
+		else
+			first = next[a];
+		if (next[a] < nRows)
+			previous[next[a]] = previous[a];
+	}
+
+	/*
+	 * Sort the merges by distance and number them the way the greedy algorithm
+	 * does.  The greedy algorithm keeps the active clusters in the first n
+	 * positions of the distance matrix: when the clusters at positions is > js
+	 * are merged, the new cluster goes into js, the cluster at n-1 moves into is,
+	 * and the node's left is the cluster at is and its right the cluster at js.
+	 */
+	private TreeNode[] replay() {
+		Integer[] order = new Integer[nMerges];
+		for (int i = 0; i < nMerges; i++)
+			order[i] = i;
+		// This is a stable sort, so a merge always follows the merges of its children
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer m1, Integer m2) {
+				return Double.compare(mergeDistance[m1], mergeDistance[m2]);
+			}
+		});
+
+		int[] parent = new int[nRows];      // union-find over the rows
+		int[] position = new int[nRows];    // position of each cluster (by root)
+		int[] clusterID = new int[nRows];   // node ID of each cluster (by root)
+		int[] atPosition = new int[nRows];  // root of the cluster at each position
+		for (int i = 0; i < nRows; i++) {
+			parent[i] = i;
+			position[i] = i;
+			clusterID[i] = i;
+			atPosition[i] = i;
+		}
+
+		TreeNode[] nodeList = new TreeNode[nMerges];
+		int n = nRows;
+		for (int step = 0; step < nMerges; step++, n--) {
+			int m = order[step];
+			int ra = find(parent, mergeA[m]);
+			int rb = find(parent, mergeB[m]);
+			int is = Math.max(position[ra], position[rb]);
+			int js = Math.min(position[ra], position[rb]);
+			int ris = atPosition[is];
+			int rjs = atPosition[js];
+
+			nodeList[step] = new TreeNode(mergeDistance[m]);
+			nodeList[step].setLeft(clusterID[ris]);
+			nodeList[step].setRight(clusterID[rjs]);
+
+			// The new cluster goes into js
+			parent[ris] = rjs;
+			clusterID[rjs] = -step-1;
+
+			// and the last cluster moves into is
+			if (is != n-1) {
+				int last = atPosition[n-1];
+				atPosition[is] = last;
+				position[last] = is;
+			}
+		}
+		return nodeList;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+}
@@ -49,13 +49,12 @@ import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyMatrixFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.MatrixUtils;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.utils.ModelUtils;
 
 // clusterMaker imports
 
 public class RunHierarchical {
-	final static int IS = 0;
-	final static int JS = 1;
 	String weightAttributes[];
 	TaskMonitor monitor;
 	HierarchicalContext context;
@@ -224,13 +223,13 @@ public class RunHierarchical {
 		if (monitor != null)
 			monitor.showMessage(TaskMonitor.Level.INFO,"Getting distance matrix");
 
-		double[][] distanceMatrix = matrix.getDistanceMatrix(metric).toArray();
+		SymmetricDistanceMatrix distanceMatrix = new SymmetricDistanceMatrix(matrix, metric);
 
 		TreeNode[] result = null;
 		// For debugging purposes, output the distance matrix
 		// for (int row = 1; row < matrix.nRows(); row++) {
 		// 	for (int col = 0; col < row; col++) {
-		// 		System.out.print(distanceMatrix[row][col]+"\t");
+		// 		System.out.print(distanceMatrix.doubleValue(row, col)+"\t");
 		// 	}
 		// 	System.out.println();
 		// }
@@ -282,7 +281,7 @@ public class RunHierarchical {
  	 * it it files for some reason.
  	 **/
 
-	private TreeNode[] pslCluster(CyMatrix matrix, double[][] distanceMatrix, DistanceMetric metric) {
+	private TreeNode[] pslCluster(CyMatrix matrix, SymmetricDistanceMatrix distanceMatrix, DistanceMetric metric) {
 		int nRows = matrix.nRows();
 		int nNodes = nRows-1;
 
@@ -299,7 +298,7 @@ public class RunHierarchical {
 
 		for (int row = 0; row < nRows; row++) {
 			if (distanceMatrix != null) {
-				for (int j = 0; j < row; j++) temp[j] = distanceMatrix[row][j];
+				for (int j = 0; j < row; j++) temp[j] = distanceMatrix.doubleValue(row, j);
 			} else {
 				for (int j = 0; j < row; j++)
 					temp[j] = metric.getMetric(matrix, matrix, row, j);
@@ -346,7 +345,7 @@ public class RunHierarchical {
  	 * @return the array of TreeNode's that describe the hierarchical clustering solution, or null if
  	 * it it files for some reason.
  	 **/
-	private TreeNode[] pclcluster(CyMatrix matrix, double[][] distanceMatrix, DistanceMetric metric) {
+	private TreeNode[] pclcluster(CyMatrix matrix, SymmetricDistanceMatrix distanceMatrix, DistanceMetric metric) {
 		int nRows = matrix.nRows();
 		int nColumns = matrix.nColumns();
 		int nNodes = nRows-1;
@@ -372,16 +371,24 @@ public class RunHierarchical {
 				nodeList[row] = new TreeNode(Double.MAX_VALUE);
 		}
 
-		int pair[] = new int[2];
+		// Keep the nearest neighbor (below the diagonal) of each row, so we
+		// don't have to search the whole matrix for the closest pair each time
+		double rowMin[] = new double[nRows];
+		int rowArg[] = new int[nRows];
+		for (int row = 1; row < nRows; row++)
+			findRowMinimum(distanceMatrix, row, rowMin, rowArg);
 
 		for (int inode = 0; inode < nNodes; inode++) {
 			// find the pair with the shortest distance
-			pair[IS] = 1; pair[JS] = 0;
-			double distance = findClosestPair(nRows-inode, distanceMatrix, pair);
+			int n = nRows-inode;
+			int is = 1;
+			for (int row = 2; row < n; row++) {
+				if (rowMin[row] < rowMin[is]) is = row;
+			}
+			int js = rowArg[is];
+			double distance = rowMin[is];
 			nodeList[inode].setDistance(distance);
 
-			int is = pair[IS];
-			int js = pair[JS];
 			nodeList[inode].setLeft(distID[js]);
 			nodeList[inode].setRight(distID[is]);
 	
@@ -410,25 +417,66 @@ public class RunHierarchical {
 			// Fix the distances
 			distID[is] = distID[nNodes-inode];
 			for (int i = 0; i < is; i++) {
-				distanceMatrix[is][i] = distanceMatrix[nNodes-inode][i];
+				distanceMatrix.setValue(is, i, distanceMatrix.doubleValue(nNodes-inode, i));
 			}
 
 			for (int i = is+1; i < nNodes-inode; i++) {
-				distanceMatrix[i][is] = distanceMatrix[nNodes-inode][i];
+				distanceMatrix.setValue(i, is, distanceMatrix.doubleValue(nNodes-inode, i));
 			}
 
 			distID[js] = -inode-1;
 			for (int i = 0; i < js; i++) {
-				distanceMatrix[js][i] = metric.getMetric(newData, newData, js, i);
+				distanceMatrix.setValue(js, i, metric.getMetric(newData, newData, js, i));
 			}
 			for (int i = js+1; i < nNodes-inode; i++) {
-				distanceMatrix[i][js] = metric.getMetric(newData, newData, js, i);
+				distanceMatrix.setValue(i, js, metric.getMetric(newData, newData, js, i));
+			}
+
+			// Update the nearest neighbors.  Rows is and js have changed, as
+			// have columns is and js of the rows after them.
+			if (is < n-1)
+				findRowMinimum(distanceMatrix, is, rowMin, rowArg);
+			if (js > 0)
+				findRowMinimum(distanceMatrix, js, rowMin, rowArg);
+			for (int row = js+1; row < n-1; row++) {
+				if (row == is) continue;
+				if (rowArg[row] == js || rowArg[row] == is) {
+					findRowMinimum(distanceMatrix, row, rowMin, rowArg);
+				} else {
+					updateRowMinimum(distanceMatrix, row, js, rowMin, rowArg);
+					if (row > is)
+						updateRowMinimum(distanceMatrix, row, is, rowMin, rowArg);
+				}
 			}
 		}
 
 		return nodeList;
 	}
 
+	// Find the first smallest distance in a row, below the diagonal
+	private void findRowMinimum(SymmetricDistanceMatrix distanceMatrix, int row, double[] rowMin, int[] rowArg) {
+		int arg = 0;
+		double min = distanceMatrix.doubleValue(row, 0);
+		for (int col = 1; col < row; col++) {
+			double d = distanceMatrix.doubleValue(row, col);
+			if (d < min) {
+				min = d;
+				arg = col;
+			}
+		}
+		rowMin[row] = min;
+		rowArg[row] = arg;
+	}
+
+	// One distance in the row has gone down (or changed, but isn't the minimum)
+	private void updateRowMinimum(SymmetricDistanceMatrix distanceMatrix, int row, int col, double[] rowMin, int[] rowArg) {
+		double d = distanceMatrix.doubleValue(row, col);
+		if (d < rowMin[row] || (d == rowMin[row] && col < rowArg[row])) {
+			rowMin[row] = d;
+			rowArg[row] = col;
+		}
+	}
+
 	/**
 	 * The pmlcluster routine performs clustering using pairwise maximum- (complete-)
 	 * linking on the given distance matrix.
@@ -440,42 +488,8 @@ public class RunHierarchical {
 	 * @return the array of TreeNode's that describe the hierarchical clustering solution, or null if
 	 * it fails for some reason.
 	 */
-	private TreeNode[] pmlcluster(int nRows, double[][] distanceMatrix) {
-		int[] clusterID = new int[nRows];
-		TreeNode[] nodeList = new TreeNode[nRows-1]; 
-
-		for (int j = 0; j < nRows; j++) {
-			clusterID[j] = j;
-		}
-
-		int pair[] = new int[2];
-		for (int n = nRows; n > 1; n--) {
-			pair[0] = 1; pair[1] = 2;
-			if (nodeList[nRows-n] == null)
-				nodeList[nRows-n] = new TreeNode(Double.MAX_VALUE);
-			nodeList[nRows-n].setDistance(findClosestPair(n, distanceMatrix, pair));
-			int is = pair[0];
-			int js = pair[1];
-
-			// Fix the distances
-			for (int j = 0; j < js; j++)
-				distanceMatrix[js][j] = Math.max(distanceMatrix[is][j],distanceMatrix[js][j]);
-			for (int j = js+1; j < is; j++)
-				distanceMatrix[j][js] = Math.max(distanceMatrix[is][j],distanceMatrix[j][js]);
-			for (int j = is+1; j < n; j++)
-				distanceMatrix[j][js] = Math.max(distanceMatrix[j][is],distanceMatrix[j][js]);
-			for (int j = 0; j < is; j++)
-				distanceMatrix[is][j] = distanceMatrix[n-1][j];
-			for (int j = is+1; j < n-1; j++)
-				distanceMatrix[j][is] = distanceMatrix[n-1][j];
-
-			// Update cluster IDs
-			nodeList[nRows-n].setLeft(clusterID[is]);
-			nodeList[nRows-n].setRight(clusterID[js]);
-			clusterID[js] = n-nRows-1;
-			clusterID[is] = clusterID[n-1];
-		}
-		return nodeList;
+	private TreeNode[] pmlcluster(int nRows, SymmetricDistanceMatrix distanceMatrix) {
+		return new NNChainLinkage(nRows, distanceMatrix, false).cluster();
 	}
 
 	/**
@@ -489,100 +503,8 @@ public class RunHierarchical {
 	 * @return the array of TreeNode's that describe the hierarchical clustering solution, or null if
 	 * it fails for some reason.
 	 */
-	private TreeNode[] palcluster(int nRows, double[][] distanceMatrix) {
-		int[] clusterID = new int[nRows];
-		int[] number = new int[nRows];
-		TreeNode[] nodeList = new TreeNode[nRows-1]; 
-
-		// Setup a list specifying to which cluster a gene belongs, and keep track
-		// of the number of elements in each cluster (needed to calculate the
-		// average).
-		for (int j = 0; j < nRows; j++) {
-			number[j] = 1;
-			clusterID[j] = j;
-		}
-
-		int pair[] = new int[2];
-		for (int n = nRows; n > 1; n--) {
-			int sum = 0;
-			pair[IS] = 1; pair[JS] = 0;
-			if (nodeList[nRows-n] == null)
-				nodeList[nRows-n] = new TreeNode(Double.MAX_VALUE);
-			double distance = findClosestPair(n, distanceMatrix, pair);
-			nodeList[nRows-n].setDistance(distance);
-
-			// Save result
-			int is = pair[IS];
-			int js = pair[JS];
-			nodeList[nRows-n].setLeft(clusterID[is]);
-			nodeList[nRows-n].setRight(clusterID[js]);
-
-			// Fix the distances
-			sum = number[is] + number[js];
-			for (int j = 0; j < js; j++) {
-				distanceMatrix[js][j] = (distanceMatrix[is][j]*(double)number[is] + distanceMatrix[js][j]*(double)number[js])/(double)sum;
-			}
-
-			for (int j = js+1; j < is; j++) {
-				distanceMatrix[j][js] = (distanceMatrix[is][j]*(double)number[is] + distanceMatrix[j][js]*(double)number[js])/(double)sum;
-			}
-
-			for (int j = is+1; j < n; j++) {
-				distanceMatrix[j][js] = (distanceMatrix[j][is]*(double)number[is] + distanceMatrix[j][js]*(double)number[js])/(double)sum;
-			}
-
-			for (int j = 0; j < is; j++) {
-				distanceMatrix[is][j] = distanceMatrix[n-1][j];
-			}
-			for (int j = is+1; j < n-1; j++) {
-				distanceMatrix[j][is] = distanceMatrix[n-1][j];
-			}
-
-			// Update number of elements in the clusters
-			number[js] = sum;
-			number[is] = number[n-1];
-
-			// Update cluster IDs
-			clusterID[js] = n-nRows-1;
-			clusterID[is] = clusterID[n-1];
-		}
-		return nodeList;
-	}
-
-	/**
- 	 * This function searches the distance matrix to find the pair with the shortest
- 	 * distance between them. The indices of the pair are returned in ip and jp; the
- 	 * distance itself is returned by the function.
- 	 *
- 	 * n          (input) int
- 	 * The number of elements in the distance matrix.
- 	 *
- 	 * distanceMatrix (input) double[][]
- 	 * A ragged array containing the distance matrix. The number of columns in each
- 	 * row is one less than the row index.
- 	 *
- 	 * pair         (output) int[2]
- 	 * An array with two values representing the first and second indices of the pair
- 	 * with the shortest distance.
- 	 */
-	private double findClosestPair(int n, double[][] distanceMatrix, int[] pair) {
-		int ip = 1;
-		int jp = 0;
-		double temp;
-		double distance = distanceMatrix[1][0];
-		for (int i = 1; i < n; i++) {
-			for (int j = 0; j < i; j++) {
-				temp = distanceMatrix[i][j];
-				if (temp < distance) {
-					distance = temp;
-					ip = i;
-					jp = j;
-				}
-			}
-		}
-		pair[IS] = ip;
-		pair[JS] = jp;
-		return distance;
+	private TreeNode[] palcluster(int nRows, SymmetricDistanceMatrix distanceMatrix) {
+		return new NNChainLinkage(nRows, distanceMatrix, true).cluster();
 	}
 
 	private Integer[] treeSort(CyMatrix matrix, int nNodes, double nodeOrder[], int nodeCounts[], TreeNode nodeList[]) {
@@ -0,0 +1,265 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
+
+/**
+ * The k-means iteration, accelerated with Hamerly's bounds (see Hamerly, G.
+ * (2010). Making k-means even faster. SDM '10, 130-140).  Each element keeps
+ * an upper bound on the distance to its own center and a lower bound on the
+ * distance to every other center.  Moving the centers only loosens the bounds
+ * by how far the centers moved, so most elements can keep their cluster
+ * without looking at any of the centers, and the rest usually only need the
+ * distance to their own.
+ *
+ * The bounds need a true metric, so this works for the Euclidean and
+ * city-block metrics on complete data, using the L2 and L1 norms of the
+ * differences.  Those give the same ordering as the mean squared difference
+ * and mean absolute difference that {@link RunKCluster} uses.  The moves are
+ * made the same way, too: an element only moves if another center is strictly
+ * closer, ties go to the lowest cluster, and the last element of a cluster
+ * never leaves it, so for the Euclidean metric the clusters are the same.
+ * The means don't minimize the city-block distances, so there the total can
+ * go up from one pass to the next: the simple loop stops when it does, while
+ * this keeps going until the assignments stop changing.  The assignment step
+ * runs in parallel on the common pool.
+ */
+public class HamerlyKMeans {
+	// Number of rows (or columns) handled by a single fork-join task
+	private static final int BLOCK = 64;
+
+	private final double[][] rows;
+	private final int nRows;
+	private final int nColumns;
+	private final int nClusters;
+	private final boolean cityblock;
+
+	private double[][] centers;
+	private final int[] proposed;
+	private final double[] upper;
+	private final double[] lower;
+	private final double[] halfway;
+
+	/**
+	 * Set up the clustering
+	 *
+	 * @param rows the data, one array per row, with no missing values
+	 * @param nClusters the number of clusters
+	 * @param cityblock use the L1 norm rather than the L2 norm
+	 */
+	public HamerlyKMeans(double[][] rows, int nClusters, boolean cityblock) {
+		this.rows = rows;
+		this.nRows = rows.length;
+		this.nColumns = nRows > 0 ? rows[0].length : 0;
+		this.nClusters = nClusters;
+		this.cityblock = cityblock;
+		proposed = new int[nRows];
+		upper = new double[nRows];
+		lower = new double[nRows];
+		halfway = new double[nClusters];
+	}
+
+	/**
+	 * Return true if the rows can be clustered this way
+	 *
+	 * @param rows the data, one array per row, with missing values as Double.NaN
+	 * @return true if none of the values are missing
+	 */
+	public static boolean isComplete(double[][] rows) {
+		for (double[] row: rows) {
+			for (double value: row) {
+				if (Double.isNaN(value))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Iterate until the assignments stop changing (or start repeating)
+	 *
+	 * @param clusterID the starting assignment of rows to clusters, which is
+	 * replaced by the final assignment.  Every cluster must have at least one row.
+	 * @return the total distance from the rows to their centers, as the mean
+	 * squared difference (or mean absolute difference for city-block)
+	 */
+	public double cluster(int[] clusterID) {
+		int[] counts = new int[nClusters];
+		for (int i = 0; i < nRows; i++)
+			counts[clusterID[i]]++;
+
+		int[] saved = new int[nRows];
+		int counter = 0;
+		int period = 10;
+		getClusterMeans(clusterID);
+		boolean scanAll = true;
+		while (true) {
+			if (counter % period == 0) { // Save the current cluster assignments
+				System.arraycopy(clusterID, 0, saved, 0, nRows);
+				if (period < Integer.MAX_VALUE / 2)
+					period *= 2;
+			}
+			counter++;
+
+			getHalfwayDistances();
+			assign(clusterID, scanAll);
+			scanAll = false;
+
+			// Make the moves in order, so that we keep the same clusters
+			// from being emptied as the simple loop would
+			boolean moved = false;
+			for (int i = 0; i < nRows; i++) {
+				int k = clusterID[i];
+				int j = proposed[i];
+				if (j == k) continue;
+				if (counts[k] == 1) {
+					// Stay put.  The proposed center is the closest other one.
+					lower[i] = upper[i];
+					upper[i] = distance(rows[i], centers[k]);
+					continue;
+				}
+				counts[k]--;
+				counts[j]++;
+				clusterID[i] = j;
+				moved = true;
+			}
+			if (!moved)
+				break;
+
+			int i;
+			for (i = 0; i < nRows; i++)
+				if (saved[i] != clusterID[i]) break;
+			if (i == nRows)
+				break; /* Identical solution found; break out of this loop */
+
+			moveCenters(clusterID);
+		}
+
+		double total = 0.0;
+		for (int i = 0; i < nRows; i++) {
+			double d = distance(rows[i], centers[clusterID[i]]);
+			total += cityblock ? d/nColumns : d*d/nColumns;
+		}
+		return total;
+	}
+
+	// Find the closest center for each row, or at least those whose bounds
+	// don't rule out a move
+	private void assign(final int[] clusterID, final boolean scanAll) {
+		ParallelRange.forEach(0, nRows, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int firstRow, int lastRow) {
+				for (int i = firstRow; i < lastRow; i++) {
+					int k = clusterID[i];
+					proposed[i] = k;
+					if (!scanAll) {
+						double bound = Math.max(halfway[k], lower[i]);
+						if (upper[i] <= bound) continue;
+						upper[i] = distance(rows[i], centers[k]);
+						if (upper[i] <= bound) continue;
+					}
+
+					double best = distance(rows[i], centers[k]);
+					double second = Double.MAX_VALUE;
+					int closest = k;
+					for (int j = 0; j < nClusters; j++) {
+						if (j == k) continue;
+						double d = distance(rows[i], centers[j]);
+						if (d < best) {
+							second = best;
+							best = d;
+							closest = j;
+						} else if (d < second) {
+							second = d;
+						}
+					}
+					proposed[i] = closest;
+					upper[i] = best;
+					lower[i] = second;
+				}
+			}
+		});
+	}
+
+	// Half the distance from each center to the closest other center.  A row
+	// closer than that to its own center can't be closer to any other one.
+	private void getHalfwayDistances() {
+		ParallelRange.forEach(0, nClusters, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int firstCluster, int lastCluster) {
+				for (int k = firstCluster; k < lastCluster; k++) {
+					double min = Double.MAX_VALUE;
+					for (int j = 0; j < nClusters; j++) {
+						if (j != k)
+							min = Math.min(min, distance(centers[k], centers[j]));
+					}
+					halfway[k] = 0.5*min;
+				}
+			}
+		});
+	}
+
+	// Move the centers to the new means and loosen the bounds by how far they moved
+	private void moveCenters(int[] clusterID) {
+		double[][] old = centers;
+		getClusterMeans(clusterID);
+
+		double[] moved = new double[nClusters];
+		int farthest = 0;
+		int nextFarthest = -1;
+		for (int k = 0; k < nClusters; k++) {
+			moved[k] = distance(old[k], centers[k]);
+			if (moved[k] > moved[farthest]) {
+				nextFarthest = farthest;
+				farthest = k;
+			} else if (k != farthest && (nextFarthest < 0 || moved[k] > moved[nextFarthest])) {
+				nextFarthest = k;
+			}
+		}
+
+		for (int i = 0; i < nRows; i++) {
+			int k = clusterID[i];
+			upper[i] += moved[k];
+			if (k == farthest)
+				lower[i] -= nextFarthest < 0 ? 0.0 : moved[nextFarthest];
+			else
+				lower[i] -= moved[farthest];
+		}
+	}
+
+	// Sum each cluster's rows into new centers, a block of columns at a time.
+	// The centers start from zero on every call, so a restart doesn't see the
+	// centers that the last run finished with.
+	private void getClusterMeans(final int[] clusterID) {
+		centers = new double[nClusters][nColumns];
+		final int[] counts = new int[nClusters];
+		for (int i = 0; i < nRows; i++)
+			counts[clusterID[i]]++;
+		ParallelRange.forEach(0, nColumns, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int firstColumn, int lastColumn) {
+				for (int i = 0; i < nRows; i++) {
+					double[] row = rows[i];
+					double[] center = centers[clusterID[i]];
+					for (int c = firstColumn; c < lastColumn; c++)
+						center[c] += row[c];
+				}
+				for (int k = 0; k < nClusters; k++) {
+					if (counts[k] == 0) continue;
+					for (int c = firstColumn; c < lastColumn; c++)
+						centers[k][c] /= counts[k];
+				}
+			}
+		});
+	}
+
+	private double distance(double[] x, double[] y) {
+		double sum = 0.0;
+		if (cityblock) {
+			for (int i = 0; i < nColumns; i++)
+				sum += Math.abs(x[i] - y[i]);
+			return sum;
+		}
+		for (int i = 0; i < nColumns; i++) {
+			double d = x[i] - y[i];
+			sum += d*d;
+		}
+		return Math.sqrt(sum);
+	}
+}
@@ -69,6 +69,21 @@ public class KMeansContext {
 	@Tunable(description="Distance Metric", gravity=11)
 	public ListSingleSelection<DistanceMetric> metric = 
 		new ListSingleSelection<DistanceMetric>(DistanceMetric.values());
+
+	@Tunable(description="Choose initial centers with k-means++",
+	         tooltip="<html>Spread the initial cluster centers out by picking each one<br/>"+
+	                 "with a probability that grows with its distance from the<br/>"+
+	                 "centers already picked.  This takes the place of<br/>"+
+	                 "initializing the centers from the most central elements.</html>",
+	         gravity=12)
+	public boolean kmeansPlusPlus = false;
+
+	@Tunable(description="Use accelerated k-means",
+	         tooltip="<html>Use distance bounds to skip most of the distance calculations.<br/>"+
+	                 "This is used for the Euclidean and city-block metrics when there<br/>"+
+	                 "are no missing values.  For Euclidean the clusters are the same.</html>",
+	         gravity=13)
+	public boolean accelerated = true;
 	
 	@ContainsTunables
 	public AttributeList attributeList = null;
@@ -121,6 +136,8 @@ public class KMeansContext {
 		kcluster.addParams(params);
 		params.add("iterations="+iterations);
 		params.add("metric="+metric.getSelectedValue().toString());
+		params.add("kmeansPlusPlus="+kmeansPlusPlus);
+		params.add("accelerated="+accelerated);
 		params.add("nodeAttributeList="+attributeList.getNodeAttributeList().toString());
 		params.add("edgeAttribute="+attributeList.getEdgeAttribute());
 		params.add("selectedOnly="+selectedOnly);
@@ -0,0 +1,138 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Cytoscape imports
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyTableUtil;
+import org.cytoscape.work.ContainsTunables;
+import org.cytoscape.work.ProvidesTitle;
+import org.cytoscape.work.TaskMonitor;
+import org.cytoscape.work.Tunable;
+
+// clusterMaker imports
+import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterManager;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterViz;
+import edu.ucsf.rbvi.clusterMaker2.internal.utils.ModelUtils;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.AbstractAttributeClusterer;
+
+/**
+ * K-Means for node tables that are too big to copy into a matrix.  The
+ * nodes are read from the node table in batches (see {@link RunMiniBatchKMeans}).
+ */
+public class MiniBatchKMeansCluster extends AbstractAttributeClusterer {
+	public static String SHORTNAME = "minibatchkmeans";
+	public static String NAME = "Mini-batch K-Means cluster";
+
+	@Tunable(description="Network to cluster", context="nogui")
+	public CyNetwork network = null;
+
+	@ContainsTunables
+	public MiniBatchKMeansContext context = null;
+
+	public MiniBatchKMeansCluster(MiniBatchKMeansContext context, ClusterManager clusterManager) {
+		super(clusterManager);
+		this.context = context;
+		if (network == null)
+			network = clusterManager.getNetwork();
+		context.setNetwork(network);
+	}
+
+	public String getShortName() {return SHORTNAME;}
+
+	@ProvidesTitle
+	public String getName() {return NAME;}
+
+	public ClusterViz getVisualizer() {
+		return null;
+	}
+
+	public void run(TaskMonitor monitor) {
+		this.monitor = monitor;
+		monitor.setTitle("Performing "+getName());
+		List<String> nodeAttributeList = context.attributeList.getNodeAttributeList();
+
+		if (nodeAttributeList == null) {
+			monitor.showMessage(TaskMonitor.Level.ERROR, "Must select one or more node columns");
+			return;
+		}
+
+		if (context.kNumber < 1) {
+			monitor.showMessage(TaskMonitor.Level.ERROR, "Number of clusters must be at least 1");
+			return;
+		}
+
+		if (context.selectedOnly && CyTableUtil.getNodesInState(network, CyNetwork.SELECTED, true).size() < 3) {
+			monitor.showMessage(TaskMonitor.Level.ERROR,"Must have at least three nodes to cluster");
+			return;
+		}
+
+		createGroups = context.createGroups;
+
+		// To make debugging easier, sort the attribute list
+		Collections.sort(nodeAttributeList);
+
+		monitor.setStatusMessage("Initializing");
+		resetAttributes(network, SHORTNAME);
+
+		List<CyNode> nodes = ModelUtils.getSortedNodeList(network, context.selectedOnly);
+		RunMiniBatchKMeans algorithm = new RunMiniBatchKMeans(network, nodes, nodeAttributeList, monitor, this);
+		if (algorithm.nColumns() == 0) {
+			monitor.showMessage(TaskMonitor.Level.ERROR, "None of the selected columns are numbers");
+			return;
+		}
+
+		if (algorithm.countNodesWithValues() == 0) {
+			monitor.showMessage(TaskMonitor.Level.ERROR, "None of the nodes have values in the selected columns");
+			return;
+		}
+
+		int[] clusters = algorithm.cluster(context.kNumber, context.batchSize, context.iterations);
+		if (clusters == null || cancelled) return;
+
+		int nClusters = 0;
+		for (int cluster: clusters)
+			nClusters = Math.max(nClusters, cluster+1);
+
+		// Save the clusters, and put the nodes in cluster order
+		monitor.setStatusMessage("Creating groups");
+		attrList = new ArrayList<String>(nodes.size());
+		List<String> nodeOrder = new ArrayList<String>(nodes.size());
+		List<List<CyNode>> memberLists = new ArrayList<List<CyNode>>(nClusters);
+		for (int cluster = 0; cluster < nClusters; cluster++)
+			memberLists.add(new ArrayList<CyNode>());
+		for (int i = 0; i < nodes.size(); i++) {
+			if (clusters[i] >= 0)
+				memberLists.get(clusters[i]).add(nodes.get(i));
+		}
+		for (int cluster = 0; cluster < nClusters; cluster++) {
+			List<CyNode> memberList = memberLists.get(cluster);
+			for (CyNode node: memberList) {
+				String name = ModelUtils.getNodeName(network, node);
+				attrList.add(name+"\t"+cluster);
+				nodeOrder.add(name);
+				ModelUtils.createAndSetLocal(network, node, SHORTNAME+" Cluster", cluster, Integer.class, null);
+			}
+			if (createGroups)
+				clusterManager.createGroup(network, "Cluster_"+cluster, memberList, null, true);
+		}
+
+		ModelUtils.createAndSetLocal(network, network, ClusterManager.CLUSTER_TYPE_ATTRIBUTE,
+		                             SHORTNAME, String.class, null);
+		ModelUtils.createAndSetLocal(network, network, ClusterManager.CLUSTER_NODE_ATTRIBUTE,
+		                             attrList, List.class, String.class);
+		ModelUtils.createAndSetLocal(network, network, ClusterManager.NODE_ORDER_ATTRIBUTE,
+		                             nodeOrder, List.class, String.class);
+		ModelUtils.createAndSetLocal(network, network, ClusterManager.ARRAY_ORDER_ATTRIBUTE,
+		                             nodeAttributeList, List.class, String.class);
+		updateParams(network, context.getParams());
+
+		monitor.showMessage(TaskMonitor.Level.INFO, "Created "+nClusters+" clusters with total error = "+
+		                    algorithm.getError());
+	}
+
+}
@@ -0,0 +1,89 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Cytoscape imports
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyTableUtil;
+import org.cytoscape.work.ContainsTunables;
+import org.cytoscape.work.Tunable;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.AttributeList;
+
+public class MiniBatchKMeansContext {
+	CyNetwork network;
+
+	@Tunable(description="Number of clusters",
+	         groups={"Mini-batch K-Means Parameters"}, gravity=1.0)
+	public int kNumber = 0;
+
+	@Tunable(description="Nodes per batch",
+	         tooltip="<html>The number of nodes sampled from the node table to<br/>"+
+	                 "update the cluster centers in each batch.</html>",
+	         groups={"Mini-batch K-Means Parameters"}, gravity=2.0)
+	public int batchSize = 1000;
+
+	@Tunable(description="Number of batches",
+	         groups={"Mini-batch K-Means Parameters"}, gravity=3.0)
+	public int iterations = 100;
+
+	@ContainsTunables
+	public AttributeList attributeList = null;
+
+	public boolean selectedOnly = false;
+	@Tunable(description="Use only selected nodes for cluster",
+	         groups={"Mini-batch K-Means Parameters"}, gravity=100)
+	public boolean getselectedOnly() { return selectedOnly; }
+	public void setselectedOnly(boolean sel) {
+		if (network != null && this.selectedOnly != sel) updateKEstimate(network, sel);
+		this.selectedOnly = sel;
+	}
+
+	@Tunable(description="Create groups from clusters", groups={"Visualization Options"}, gravity=150)
+	public boolean createGroups = false;
+
+	public MiniBatchKMeansContext() {
+	}
+
+	public void setNetwork(CyNetwork network) {
+		if (this.network != null && this.network.equals(network))
+			return;
+
+		this.network = network;
+		if (attributeList == null)
+			attributeList = new AttributeList(network, true);
+		else
+			attributeList.setNetwork(network);
+
+		updateKEstimate(network, selectedOnly);
+	}
+
+	public CyNetwork getNetwork() { return network; }
+
+	// The same guess for k as the other k-clusterers
+	private void updateKEstimate(CyNetwork network, boolean selectedOnly) {
+		double nodeCount = (double)network.getNodeCount();
+		if (selectedOnly) {
+			int selNodes = CyTableUtil.getNodesInState(network, CyNetwork.SELECTED, true).size();
+			if (selNodes > 0) nodeCount = (double)selNodes;
+		}
+
+		double kinit = Math.sqrt(nodeCount/2);
+		if (kinit > 1)
+			kNumber = (int)kinit;
+		else
+			kNumber = 1;
+	}
+
+	public List<String> getParams() {
+		List<String> params = new ArrayList<String>();
+		params.add("kNumber="+kNumber);
+		params.add("batchSize="+batchSize);
+		params.add("iterations="+iterations);
+		params.add("nodeAttributeList="+attributeList.getNodeAttributeList().toString());
+		params.add("selectedOnly="+selectedOnly);
+		params.add("createGroups="+createGroups);
+		return params;
+	}
+}
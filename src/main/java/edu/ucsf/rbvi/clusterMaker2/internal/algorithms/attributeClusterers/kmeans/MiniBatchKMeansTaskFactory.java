@@ -0,0 +1,38 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans;
+
+import java.util.Collections;
+import java.util.List;
+
+//Cytoscape imports
+import org.cytoscape.work.TaskIterator;
+
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AbstractClusterTaskFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterManager;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterTaskFactory.ClusterType;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterViz;
+
+public class MiniBatchKMeansTaskFactory extends AbstractClusterTaskFactory {
+	MiniBatchKMeansContext context = null;
+
+	public MiniBatchKMeansTaskFactory(ClusterManager clusterManager) {
+		super(clusterManager);
+		context = new MiniBatchKMeansContext();
+	}
+
+	public String getShortName() {return MiniBatchKMeansCluster.SHORTNAME;};
+	public String getName() {return MiniBatchKMeansCluster.NAME;};
+
+	public ClusterViz getVisualizer() {
+		return null;
+	}
+
+	public List<ClusterType> getTypeList() {
+		return Collections.singletonList(ClusterType.ATTRIBUTE);
+	}
+
+	public TaskIterator createTaskIterator() {
+		return new TaskIterator(new MiniBatchKMeansCluster(context, clusterManager));
+	}
+
+}
@@ -60,6 +60,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AbstractClusterAlgorithm;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.AbstractKClusterAlgorithm;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyMatrixFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.DistanceEngine;
 
 public class RunKCluster extends AbstractKClusterAlgorithm {
 	KMeansContext context;
@@ -89,10 +90,26 @@ public class RunKCluster extends AbstractKClusterAlgorithm {
 		if (monitor != null)
 			monitor.setProgress(0);
 
+		// The accelerated iteration needs a true metric and no missing values
+		double[][] rows = null;
+		HamerlyKMeans hamerly = null;
+		if (context.accelerated &&
+		    (metric == DistanceMetric.EUCLIDEAN || metric == DistanceMetric.CITYBLOCK)) {
+			rows = matrix.toArray();
+			if (HamerlyKMeans.isComplete(rows))
+				hamerly = new HamerlyKMeans(rows, nClusters, metric == DistanceMetric.CITYBLOCK);
+		}
+
+		DistanceEngine engine = null;
+		if (context.kmeansPlusPlus)
+			engine = new DistanceEngine(rows != null ? rows : matrix.toArray(), metric);
+
 		// System.out.println("Creating matrix for "+nClusters);
 		// This matrix will store the centroid data
 		// Matrix cData = new Matrix(network, nClusters, matrix.nColumns());
-		CyMatrix cData = CyMatrixFactory.makeSmallMatrix(network, nClusters, matrix.nColumns());
+		CyMatrix cData = null;
+		if (hamerly == null)
+			cData = CyMatrixFactory.makeSmallMatrix(network, nClusters, matrix.nColumns());
 
 		// Outer initialization
 		if (nIterations <= 1) {
@@ -121,7 +138,9 @@ public class RunKCluster extends AbstractKClusterAlgorithm {
 
 			// Randomly assign elements to clusters
 			if (nIterations != 0) {
-				if (!context.kcluster.initializeNearCenter) {
+				if (engine != null) {
+					chooseKMeansPlusPlusCenters(engine, nClusters, tclusterid);
+				} else if (!context.kcluster.initializeNearCenter) {
 					// System.out.println("Randomly assigning elements "+nClusters);
 					// Use the cluster 3.0 version to be consistent
 					chooseRandomElementsAsCenters(nelements, nClusters, tclusterid);
@@ -129,7 +148,7 @@ public class RunKCluster extends AbstractKClusterAlgorithm {
 					// if (nIterations != 0) debugAssign(nClusters, nelements, tclusterid);
 				} else {
 					int centers[] = chooseCentralElementsAsCenters(nelements, nClusters, 
-					                                               matrix.getDistanceMatrix(metric).toArray(), tclusterid);
+					                                               getDistanceMatrix(matrix, metric), tclusterid);
 				}
 			}
 			// System.out.println("Done assigning elements "+nClusters);
@@ -139,66 +158,70 @@ public class RunKCluster extends AbstractKClusterAlgorithm {
 			for (int i = 0; i < nelements; i++) counts[tclusterid[i]]++;
 
 			// System.out.println("Inner loop starting "+nClusters);
-			while (true) {
-				double previous = total;
-				total = 0.0;
-				if (counter % period == 0) // Save the current cluster assignments
-				{
-					for (int i = 0; i < nelements; i++)
-						saved[i] = tclusterid[i];
-					if (period < Integer.MAX_VALUE / 2) 
-						period *= 2;
-				}
-				counter++;
-
-				// Find the center
-				// System.out.println("Assigning cluster means "+nClusters);
-				getClusterMeans(nClusters, matrix, cData, tclusterid);
-
-				/*
-				for (int i = 0; i < nClusters; i++) {
-					System.out.print("cluster "+i+": ");
-					for (int j = 0; j < matrix.nColumns(); j++) {
-						System.out.print(cData.getValue(i,j)+"\t");
+			if (hamerly != null) {
+				total = hamerly.cluster(tclusterid);
+			} else {
+				while (true) {
+					double previous = total;
+					total = 0.0;
+					if (counter % period == 0) // Save the current cluster assignments
+					{
+						for (int i = 0; i < nelements; i++)
+							saved[i] = tclusterid[i];
+						if (period < Integer.MAX_VALUE / 2) 
+							period *= 2;
 					}
-					System.out.println();
-				}
-				*/
+					counter++;
 
-				for (int i = 0; i < nelements; i++) {
-					// Calculate the distances
-					double distance;
-					int k = tclusterid[i];
-					if (counts[k]==1) continue;
-
-					// Get the distance
-					// distance = metric(ndata,data,cdata,mask,cmask,weight,i,k,transpose);
-					distance = metric.getMetric(matrix, cData, i, k);
-					for (int j = 0; j < nClusters; j++) { 
-						double tdistance;
-						if (j==k) continue;
-						// tdistance = metric(ndata,data,cdata,mask,cmask,weight,i,j,transpose);
-						tdistance = metric.getMetric(matrix, cData, i, j);
-						if (tdistance < distance) 
-						{ 
-							distance = tdistance;
-            	counts[tclusterid[i]]--;
-            	tclusterid[i] = j;
-            	counts[j]++;
+					// Find the center
+					// System.out.println("Assigning cluster means "+nClusters);
+					getClusterMeans(nClusters, matrix, cData, tclusterid);
+
+					/*
+					for (int i = 0; i < nClusters; i++) {
+						System.out.print("cluster "+i+": ");
+						for (int j = 0; j < matrix.nColumns(); j++) {
+							System.out.print(cData.getValue(i,j)+"\t");
 						}
-          }
-        	total += distance;
-        }
-				// System.out.println("total = "+total+", previous = "+previous+" nClusters="+nClusters);
-      	if (total>=previous) break;
-      	/* total>=previous is FALSE on some machines even if total and previous
-				 * are bitwise identical. */
-				int i;
-	      for (i = 0; i < nelements; i++)
-	        if (saved[i]!=tclusterid[i]) break;
-	      if (i==nelements)
-	        break; /* Identical solution found; break out of this loop */
-    	}
+						System.out.println();
+					}
+					*/
+
+					for (int i = 0; i < nelements; i++) {
+						// Calculate the distances
+						double distance;
+						int k = tclusterid[i];
+						if (counts[k]==1) continue;
+
+						// Get the distance
+						// distance = metric(ndata,data,cdata,mask,cmask,weight,i,k,transpose);
+						distance = metric.getMetric(matrix, cData, i, k);
+						for (int j = 0; j < nClusters; j++) { 
+							double tdistance;
+							if (j==k) continue;
+							// tdistance = metric(ndata,data,cdata,mask,cmask,weight,i,j,transpose);
+							tdistance = metric.getMetric(matrix, cData, i, j);
+							if (tdistance < distance) 
+							{ 
+								distance = tdistance;
+	            	counts[tclusterid[i]]--;
+	            	tclusterid[i] = j;
+	            	counts[j]++;
+							}
+	          }
+	        	total += distance;
+	        }
+					// System.out.println("total = "+total+", previous = "+previous+" nClusters="+nClusters);
+	      	if (total>=previous) break;
+	      	/* total>=previous is FALSE on some machines even if total and previous
+					 * are bitwise identical. */
+					int i;
+		      for (i = 0; i < nelements; i++)
+		        if (saved[i]!=tclusterid[i]) break;
+		      if (i==nelements)
+		        break; /* Identical solution found; break out of this loop */
+	    	}
+			}
 
 			if (nIterations<=1)
 			{ error = total;
@@ -234,6 +257,69 @@ public class RunKCluster extends AbstractKClusterAlgorithm {
   	return ifound;
 	}
 
+	/**
+	 * Choose the centers with k-means++ (see Arthur, D. and Vassilvitskii, S.
+	 * (2007). k-means++: the advantages of careful seeding. SODA '07, 1027-1035)
+	 * and assign each element to the closest one.  Each center after the first
+	 * is picked with a probability proportional to the squared distance to the
+	 * closest center already picked.
+	 */
+	private void chooseKMeansPlusPlusCenters(DistanceEngine engine, int nClusters, int[] clusterID) {
+		int nelements = engine.nRows();
+		int[] centers = new int[nClusters];
+		boolean[] isCenter = new boolean[nelements];
+		double[] weight = new double[nelements];
+		Arrays.fill(weight, Double.MAX_VALUE);
+
+		int center = (int)(nelements*uniform());
+		for (int k = 0; k < nClusters; k++) {
+			centers[k] = center;
+			isCenter[center] = true;
+			double sum = 0.0;
+			for (int i = 0; i < nelements; i++) {
+				double d = getSeedWeight(engine, i, center);
+				if (d < weight[i]) {
+					weight[i] = d;
+					clusterID[i] = k;
+				}
+				if (!isCenter[i])
+					sum += weight[i];
+			}
+			if (k == nClusters-1)
+				break;
+
+			if (sum > 0.0) {
+				double r = sum*uniform();
+				for (int i = 0; i < nelements; i++) {
+					if (isCenter[i]) continue;
+					center = i;
+					r -= weight[i];
+					if (r < 0.0) break;
+				}
+			} else {
+				// Everything left is on top of a center, so any of them will do
+				do {
+					center = (int)(nelements*uniform());
+				} while (isCenter[center]);
+			}
+		}
+
+		// Make sure that each center is in its own cluster
+		for (int k = 0; k < nClusters; k++)
+			clusterID[centers[k]] = k;
+	}
+
+	// The Euclidean metric is already squared, and the correlations are
+	// proportional to the squared distance between the normalized rows
+	private double getSeedWeight(DistanceEngine engine, int i, int center) {
+		double d = engine.getDistance(Math.min(i, center), Math.max(i, center));
+		if (Double.isNaN(d) || d < 0.0)
+			return 0.0;
+		if (engine.getMetric() == DistanceMetric.CITYBLOCK)
+			return d*d;
+		return d;
+	}
+
 	// Debug version of "randomAssign" that isn't random
 	private void debugAssign (int nClusters, int nElements, int[] clusterID) {
 		for (int element = 0; element < nElements; element++) {
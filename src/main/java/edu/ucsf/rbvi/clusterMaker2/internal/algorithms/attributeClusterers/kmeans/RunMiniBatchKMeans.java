@@ -0,0 +1,305 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Cytoscape imports
+import org.cytoscape.model.CyColumn;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.cytoscape.model.CyRow;
+import org.cytoscape.model.CyTable;
+import org.cytoscape.work.TaskMonitor;
+
+// clusterMaker imports
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AbstractClusterAlgorithm;
+
+/**
+ * Mini-batch k-means (see Sculley, D. (2010). Web-scale k-means clustering.
+ * WWW '10, 1177-1178).  Rather than building the whole data matrix, each batch
+ * reads a random sample of nodes straight from the node table, assigns them to
+ * the closest centers, and moves each center towards its nodes with a learning
+ * rate of one over the number of nodes it has seen so far.  Only the centers
+ * and the final assignment are kept, so the memory doesn't grow with the
+ * number of nodes times the number of columns.
+ *
+ * The distance is the Euclidean metric (the mean squared difference over the
+ * values that are present), and the counts are kept per column so that missing
+ * values don't pull the centers towards zero.
+ */
+public class RunMiniBatchKMeans {
+	private final CyTable nodeTable;
+	private final List<CyNode> nodes;
+	private final String[] attributes;
+	private final Class<?>[] types;
+	private final TaskMonitor monitor;
+	private final AbstractClusterAlgorithm parentTask;
+	private final Random random = new Random();
+
+	private int[] withValues;  // the indices of the nodes that have any values
+	private double[][] centers;
+	private int[][] counts;
+	private double error;
+
+	/**
+	 * Set up the clustering
+	 *
+	 * @param network the network
+	 * @param nodes the nodes to cluster
+	 * @param attributes the node columns to use.  Columns that aren't numbers
+	 * are ignored.
+	 * @param monitor the task monitor, or null
+	 * @param parentTask the task, so we can see if it's been cancelled
+	 */
+	public RunMiniBatchKMeans(CyNetwork network, List<CyNode> nodes, List<String> attributes,
+	                          TaskMonitor monitor, AbstractClusterAlgorithm parentTask) {
+		this.nodeTable = network.getDefaultNodeTable();
+		this.nodes = nodes;
+		this.monitor = monitor;
+		this.parentTask = parentTask;
+
+		List<String> numeric = new ArrayList<String>();
+		List<Class<?>> numericTypes = new ArrayList<Class<?>>();
+		for (String attr: attributes) {
+			CyColumn column = nodeTable.getColumn(attr);
+			if (column == null) continue;
+			Class<?> type = column.getType();
+			if (type == Integer.class || type == Long.class ||
+			    type == Float.class || type == Double.class) {
+				numeric.add(attr);
+				numericTypes.add(type);
+			}
+		}
+		this.attributes = numeric.toArray(new String[numeric.size()]);
+		this.types = numericTypes.toArray(new Class<?>[numericTypes.size()]);
+	}
+
+	public int nColumns() { return attributes.length; }
+
+	/**
+	 * Find the nodes that have a value in at least one of the columns.  Only
+	 * those nodes are sampled for the batches.
+	 *
+	 * @return the number of nodes with values
+	 */
+	public int countNodesWithValues() {
+		if (withValues != null)
+			return withValues.length;
+		int[] found = new int[nodes.size()];
+		int count = 0;
+		for (int i = 0; i < nodes.size(); i++) {
+			CyRow tableRow = nodeTable.getRow(nodes.get(i).getSUID());
+			for (int column = 0; column < attributes.length; column++) {
+				if (tableRow.get(attributes[column], types[column]) != null) {
+					found[count++] = i;
+					break;
+				}
+			}
+		}
+		withValues = Arrays.copyOf(found, count);
+		return count;
+	}
+
+	/**
+	 * Cluster the nodes
+	 *
+	 * @param nClusters the number of clusters
+	 * @param batchSize the number of nodes in each batch
+	 * @param nBatches the number of batches
+	 * @return the cluster of each node, in the order the nodes were given, or
+	 * -1 for the nodes that have no values.  The clusters are numbered from 0
+	 * with no gaps.  Returns null if the task was cancelled.
+	 */
+	public int[] cluster(int nClusters, int batchSize, int nBatches) {
+		int nColumns = attributes.length;
+		batchSize = Math.max(batchSize, 1);
+
+		if (countNodesWithValues() == 0) {
+			// None of the nodes have any values
+			int[] clusters = new int[nodes.size()];
+			Arrays.fill(clusters, -1);
+			return clusters;
+		}
+
+		if (monitor != null)
+			monitor.setStatusMessage("Choosing initial centers");
+		chooseCenters(nClusters, Math.max(batchSize, nClusters));
+		nClusters = centers.length;
+		counts = new int[nClusters][nColumns];
+		if (nClusters == 0) {
+			// None of the nodes have any values
+			int[] clusters = new int[nodes.size()];
+			Arrays.fill(clusters, -1);
+			return clusters;
+		}
+
+		double[][] batch = new double[batchSize][nColumns];
+		int[] closest = new int[batchSize];
+		for (int iteration = 0; iteration < nBatches; iteration++) {
+			if (parentTask.cancelled()) return null;
+			if (monitor != null) {
+				monitor.setStatusMessage("Batch "+(iteration+1)+" of "+nBatches);
+				monitor.setProgress((double)iteration/(double)(nBatches+1));
+			}
+
+			// Read the batch and assign it using the current centers
+			int size = 0;
+			for (int i = 0; i < batchSize; i++) {
+				if (!getRow(randomNode(), batch[size]))
+					continue;
+				closest[size] = getClosest(batch[size]);
+				size++;
+			}
+
+			// Then move the centers
+			for (int i = 0; i < size; i++) {
+				double[] center = centers[closest[i]];
+				int[] count = counts[closest[i]];
+				double[] row = batch[i];
+				for (int column = 0; column < nColumns; column++) {
+					if (Double.isNaN(row[column])) continue;
+					count[column]++;
+					if (Double.isNaN(center[column]))
+						center[column] = row[column];
+					else
+						center[column] += (row[column] - center[column])/count[column];
+				}
+			}
+		}
+
+		// Finally, assign all of the nodes, one at a time
+		if (monitor != null)
+			monitor.setStatusMessage("Assigning nodes to clusters");
+		int[] clusters = new int[nodes.size()];
+		int[] sizes = new int[nClusters];
+		double[] row = new double[nColumns];
+		error = 0.0;
+		for (int i = 0; i < nodes.size(); i++) {
+			if (parentTask.cancelled()) return null;
+			if (!getRow(nodes.get(i), row)) {
+				clusters[i] = -1;
+				continue;
+			}
+			clusters[i] = getClosest(row);
+			error += distance(row, centers[clusters[i]]);
+			sizes[clusters[i]]++;
+		}
+		if (monitor != null)
+			monitor.setProgress(1.0);
+
+		// Number the clusters that ended up with nodes
+		int[] number = new int[nClusters];
+		int nFound = 0;
+		for (int k = 0; k < nClusters; k++)
+			number[k] = sizes[k] > 0 ? nFound++ : -1;
+		for (int i = 0; i < clusters.length; i++) {
+			if (clusters[i] >= 0)
+				clusters[i] = number[clusters[i]];
+		}
+		return clusters;
+	}
+
+	/**
+	 * Return the total distance from the nodes to their centers
+	 */
+	public double getError() { return error; }
+
+	/*
+	 * Pick the initial centers from a random sample of the nodes with k-means++
+	 * (see Arthur, D. and Vassilvitskii, S. (2007). k-means++: the advantages of
+	 * careful seeding. SODA '07, 1027-1035).  If there are fewer distinct nodes
+	 * than clusters, we end up with fewer clusters.
+	 */
+	private void chooseCenters(int nClusters, int sampleSize) {
+		List<double[]> sample = new ArrayList<double[]>(sampleSize);
+		for (int i = 0; i < sampleSize; i++) {
+			double[] row = new double[attributes.length];
+			if (getRow(randomNode(), row))
+				sample.add(row);
+		}
+
+		List<double[]> chosen = new ArrayList<double[]>(nClusters);
+		if (sample.isEmpty()) {
+			centers = new double[0][];
+			return;
+		}
+
+		double[] weight = new double[sample.size()];
+		Arrays.fill(weight, Double.MAX_VALUE);
+		double[] center = sample.get(random.nextInt(sample.size()));
+		while (true) {
+			chosen.add(center.clone());
+			if (chosen.size() == nClusters)
+				break;
+			double sum = 0.0;
+			for (int i = 0; i < weight.length; i++) {
+				double d = distance(sample.get(i), center);
+				if (d < weight[i])
+					weight[i] = d;
+				if (weight[i] < Double.MAX_VALUE)
+					sum += weight[i];
+			}
+			if (sum <= 0.0)
+				break;  // Everything left is on top of a center
+			double r = sum*random.nextDouble();
+			for (int i = 0; i < weight.length; i++) {
+				if (weight[i] <= 0.0 || weight[i] == Double.MAX_VALUE) continue;
+				center = sample.get(i);
+				r -= weight[i];
+				if (r < 0.0) break;
+			}
+		}
+		centers = chosen.toArray(new double[chosen.size()][]);
+	}
+
+	private CyNode randomNode() {
+		return nodes.get(withValues[random.nextInt(withValues.length)]);
+	}
+
+	private int getClosest(double[] row) {
+		int closest = 0;
+		double min = Double.MAX_VALUE;
+		for (int k = 0; k < centers.length; k++) {
+			double d = distance(row, centers[k]);
+			if (d < min) {
+				min = d;
+				closest = k;
+			}
+		}
+		return closest;
+	}
+
+	// The mean squared difference over the columns both of them have
+	private static double distance(double[] row, double[] center) {
+		double sum = 0.0;
+		int n = 0;
+		for (int column = 0; column < row.length; column++) {
+			double d = row[column] - center[column];
+			if (Double.isNaN(d)) continue;
+			sum += d*d;
+			n++;
+		}
+		if (n == 0)
+			return Double.MAX_VALUE;
+		return sum/n;
+	}
+
+	// Read a node's values into row, with NaN for the missing ones.  Returns
+	// false if they are all missing.
+	private boolean getRow(CyNode node, double[] row) {
+		CyRow tableRow = nodeTable.getRow(node.getSUID());
+		boolean found = false;
+		for (int column = 0; column < attributes.length; column++) {
+			Object value = tableRow.get(attributes[column], types[column]);
+			if (value == null) {
+				row[column] = Double.NaN;
+			} else {
+				row[column] = ((Number)value).doubleValue();
+				found = true;
+			}
+		}
+		return found;
+	}
+}
@@ -57,6 +57,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterResults;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterViz;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AbstractClusterAlgorithm;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.AbstractKClusterAlgorithm;
@@ -79,18 +80,13 @@ public class RunKMedoidCluster extends AbstractKClusterAlgorithm {
 
 		int iteration = 0;
 
-		// Start by calculating the pairwise distances
-		double[][] distances = new double[matrix.nRows()][matrix.nRows()];
-		for (int i = 0; i < matrix.nRows(); i++) {
-			for (int j = 0; j < matrix.nRows(); j++) {
-				distances[i][j] = metric.getMetric(matrix, matrix, i, j);
-			}
-		}
+		// Start by getting the pairwise distances
+		Matrix distances = getDistanceMatrix(matrix, metric);
 
 		int[] centers;
 		if (context.kcluster.initializeNearCenter) {
 			centers = chooseCentralElementsAsCenters(matrix.nRows(), nClusters, 
-					                                     matrix.getDistanceMatrix(metric).toArray(), clusterID);
+					                                     distances, clusterID);
 		} else {
 			chooseRandomElementsAsCenters(matrix.nRows(), nClusters, clusterID);
 			centers = calculateCenters(nClusters, matrix, metric, clusterID);
@@ -115,8 +111,8 @@ public class RunKMedoidCluster extends AbstractKClusterAlgorithm {
 	}
 
 
-	private void assignPointsToClosestCenter(int[] centers, double[][] distances, int[] clusterId) {
-		for (int row = 0; row < distances.length; row++) {
+	private void assignPointsToClosestCenter(int[] centers, Matrix distances, int[] clusterId) {
+		for (int row = 0; row < distances.nRows(); row++) {
 			double minDistance = Double.MAX_VALUE;
 			for (int cluster = 0; cluster < centers.length; cluster++) {
 				// We could have clusters that are also 0 distance from
@@ -126,7 +122,7 @@ public class RunKMedoidCluster extends AbstractKClusterAlgorithm {
 					clusterId[row] = cluster;
 					break;
 				}
-				double distance = distances[row][centers[cluster]];
+				double distance = distances.doubleValue(row, centers[cluster]);
 				if (distance < minDistance) {
 					clusterId[row] = cluster;
 					minDistance = distance;
@@ -1,5 +1,6 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.pam;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 
@@ -10,6 +11,8 @@ import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.Clusters;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.hopach.types.KClusterable;
 
 
@@ -70,12 +73,20 @@ public class PAM implements KClusterable {
 	Integer[] elements;
 	
 	int maxSwaps = 1000;
+
+	// Number of swap candidates evaluated by a single fork-join task
+	private static final int SWAP_BLOCK = 16;
 	private CyNetwork network;
 	
 	public PAM(CyNetwork network, CyMatrix data, DistanceMetric metric) {
 		this(data, metric, null, null);
 		this.network = network;
 	}
+
+	public PAM(CyNetwork network, CyMatrix data, DistanceMetric metric, Matrix dists) {
+		this(data, metric, dists, null);
+		this.network = network;
+	}
 	
 	public PAM(CyMatrix data, DistanceMetric metric, Matrix dists, int[] idx) {
 		this.data = data;
@@ -96,7 +107,7 @@ public class PAM implements KClusterable {
 		this.idx = idx;
 		
 		if (dists == null) {
-			this.distances = data.getDistanceMatrix(metric);
+			this.distances = new SymmetricDistanceMatrix(data, metric);
 			// this.distances = new DistanceMatrix(data, metric, idx);
 		} else {
 			this.distances = dists;
@@ -251,69 +262,143 @@ public class PAM implements KClusterable {
 	
 	/**
 	 * SWAP phase. Attempt to improve clustering quality by exchanging medoids with non-medoids.
+	 * Each iteration makes the best swap, but finds it the FastPAM1 way (see Schubert, E. and
+	 * Rousseeuw, P. J. (2019). Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+	 * Algorithms. SISAP 2019, 171-187): using the nearest and next-nearest distances, one pass
+	 * over the elements gives the change for swapping a candidate with each of the k medoids.
+	 * This is O(n^2) per swap rather than O(k n^2), and the candidates are evaluated in parallel.
 	 */
 	private void swapPhase() {
-		while (true) {
+		int m = size();
+		for (int nSwaps = 0; nSwaps < maxSwaps; nSwaps++) {
+			// The medoids and candidates, in the order that the sets give them, and
+			// the position of each medoid in that order
+			final int[] medoidList = toArray(medoids);
+			final int[] candidates = toArray(nonmedoids);
+			final int[] position = new int[m];
+			Arrays.fill(position, -1);
+			for (int kk = 0; kk < medoidList.length; ++kk)
+				position[medoidList[kk]] = kk;
+
+			final int k = medoidList.length;
+			final double[] changes = new double[candidates.length * k];
+			ParallelRange.forEach(0, candidates.length, SWAP_BLOCK, new ParallelRange.Body() {
+				public void computeRange(int first, int last) {
+					getSwapChanges(medoidList, position, candidates, first, last, changes);
+				}
+			});
+
+			double minChange = 0;
+			for (double change: changes)
+				minChange = Math.min(minChange, change);
+
+			// The changes found this way are rounded differently than the ones the
+			// simple nested loop finds, so they only pick the candidates.  Every
+			// swap whose change is within rounding of the smallest one (or of zero)
+			// is recalculated exactly the way the simple loop does, and we take the
+			// first one with the smallest change, as it would.
+			double tolerance = 1e-10 * getCost();
 			double bestChange = 0;
 			int bestii = -1, besthh = -1;
-			
-			Iterator<Integer> medIt = medoids.iterator();
-			while (medIt.hasNext()) {
-				int ii = medIt.next().intValue();
-				
-				Iterator<Integer> nonmedIt = nonmedoids.iterator();
-				while (nonmedIt.hasNext()) {
-					int hh = nonmedIt.next().intValue();
-
-					// Consider swapping medoid i and nonmedoid h
-					// by calculating gains by all other elements
-					
-					// Calculate cumulative change to distance to nearest medoid for all nonmedoids j != h
-					double change = 0;
-					Integer[] nonmedIt2 = new Integer[nonmedoids.size() + 1];
-					nonmedoids.toArray(nonmedIt2);
-					nonmedIt2[nonmedIt2.length - 1] = ii;
-					for (int jj: nonmedIt2) {
-					//	if (jj == hh) continue;
-						
-						double d = nearestDistances[jj];
-						if (distances.getValue(ii, jj) > d) {
-							// if removed, i will have no impact
-							if (distances.getValue(jj, hh) < d) {
-								// if selected, h will improve nearest distance for j
-								change += distances.getValue(jj, hh) - d;
-							}
-						} else {
-							// i cannot be closer than the nearest neighbour for j;
-							// therefore, distances[i][j] == d
-							// and i is currently the nearest neighbour for j
-							double e = nextNearestDistances[jj];
-							if (distances.getValue(jj, hh) < e) {
-								// if i and h are swapped, h will become the nearest neighbour
-								// nearest distance for j may improve or worsen
-								change += distances.getValue(jj, hh) - d;
-							} else {
-								// if i is removed, the current next-nearest of j will be promoted to nearest
-								change += e - d;
-							}
-						}
-					}
+			for (int kk = 0; kk < k; ++kk) {
+				for (int cc = 0; cc < candidates.length; ++cc) {
+					if (changes[cc*k + kk] > minChange + tolerance) continue;
+					double change = getSwapChange(medoidList[kk], candidates[cc], candidates);
 					if (change < bestChange) {
 						bestChange = change;
-						bestii = ii;
-						besthh = hh;
+						bestii = medoidList[kk];
+						besthh = candidates[cc];
 					}
-					
 				}
-				
 			}
 			if (bestChange >= 0) break;// changed from bestChange == 0
-			else {
-			//	System.out.println("bestChange: " + bestChange);
-				swap(besthh,bestii);
+			swap(besthh, bestii);
+		}
+	}
+
+	/**
+	 * Calculate the change in cost of swapping each of the candidates in [first, last) with
+	 * each of the medoids.  For each element j, the change in its distance to the nearest
+	 * medoid if candidate h is swapped with medoid i is:
+	 * <ul>
+	 * <li>min(d(j,h), nextNearest(j)) - nearest(j) if i is j's nearest medoid</li>
+	 * <li>min(d(j,h) - nearest(j), 0) otherwise.</li>
+	 * </ul>
+	 * The second part is the same for all of the medoids, so we sum it once and
+	 * keep the difference for each medoid separately.  The other medoids never
+	 * change their nearest distance, so they only count when they're removed.
+	 */
+	private void getSwapChanges(int[] medoidList, int[] position, int[] candidates,
+	                            int first, int last, double[] changes) {
+		int m = size();
+		int k = medoidList.length;
+		double[] loss = new double[k];
+		for (int cc = first; cc < last; ++cc) {
+			int hh = candidates[cc];
+			Arrays.fill(loss, 0.0);
+			double shared = 0;
+			for (int jj = 0; jj < m; ++jj) {
+				double djh = distances.doubleValue(jj, hh);
+				double d = nearestDistances[jj];
+				if (position[jj] >= 0) {
+					// jj is a medoid, so it only matters if jj itself is removed
+					if (distances.doubleValue(jj, jj) > d)
+						loss[position[jj]] += Math.min(djh - d, 0);
+					else
+						loss[position[jj]] += Math.min(djh, nextNearestDistances[jj]) - d;
+					continue;
+				}
+				double gain = Math.min(djh - d, 0);
+				shared += gain;
+				loss[position[nearestMedoids[jj]]] += Math.min(djh, nextNearestDistances[jj]) - d - gain;
 			}
+			for (int kk = 0; kk < k; ++kk)
+				changes[cc*k + kk] = shared + loss[kk];
 		}
 	}
+
+	/**
+	 * Calculate the change in cost of swapping medoid i and nonmedoid h
+	 * directly, from the changes for all of the nonmedoids and i itself.
+	 */
+	private double getSwapChange(int ii, int hh, int[] nonmedoidList) {
+		double change = 0;
+		for (int nn = 0; nn <= nonmedoidList.length; ++nn) {
+			int jj = nn < nonmedoidList.length ? nonmedoidList[nn] : ii;
+
+			double d = nearestDistances[jj];
+			if (distances.doubleValue(ii, jj) > d) {
+				// if removed, i will have no impact
+				if (distances.doubleValue(jj, hh) < d) {
+					// if selected, h will improve nearest distance for j
+					change += distances.doubleValue(jj, hh) - d;
+				}
+			} else {
+				// i cannot be closer than the nearest neighbour for j;
+				// therefore, distances[i][j] == d
+				// and i is currently the nearest neighbour for j
+				double e = nextNearestDistances[jj];
+				if (distances.doubleValue(jj, hh) < e) {
+					// if i and h are swapped, h will become the nearest neighbour
+					// nearest distance for j may improve or worsen
+					change += distances.doubleValue(jj, hh) - d;
+				} else {
+					// if i is removed, the current next-nearest of j will be promoted to nearest
+					change += e - d;
+				}
+			}
+		}
+		return change;
+	}
+
+	private static int[] toArray(HashSet<Integer> set) {
+		int[] array = new int[set.size()];
+		int i = 0;
+		for (Integer element: set)
+			array[i++] = element.intValue();
+		return array;
+	}
+
 	
 	private void addMedoid(int add) {
 		medoids.add( elements[add] );
@@ -414,5 +499,4 @@ public class PAM implements KClusterable {
 		nextNearestDistances[ii] = minDistance;
 		nextNearestMedoids[ii] = nextNearestMedoid;
 	}
-
 }
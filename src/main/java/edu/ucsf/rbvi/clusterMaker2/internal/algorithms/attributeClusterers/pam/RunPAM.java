@@ -25,7 +25,7 @@ public class RunPAM extends AbstractKClusterAlgorithm {
 	@Override
 	public int kcluster(int nClusters, int nIterations, CyMatrix matrix, DistanceMetric metric, int[] clusterId) {
 
-		PAM pam = new PAM(network, matrix, metric);
+		PAM pam = new PAM(network, matrix, metric, getDistanceMatrix(matrix, metric));
 		Clusters c = pam.cluster(nClusters);
 
 		// copy results into clusterId
@@ -1,13 +1,15 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.silhouette;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.Clusters;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
 
 
 /**
@@ -28,14 +30,12 @@ public class SilhouetteCalculator {
 	 */
 	public static Silhouettes calculate(CyMatrix matrix, DistanceMetric metric, int[] labels)
 	{
-		double[][] distanceMatrix = matrix.getDistanceMatrix(metric).toArray();
-		return calculate(distanceMatrix, labels);
+		return calculate(new SymmetricDistanceMatrix(matrix, metric), new Clusters(labels));
 	}
 	
 	public static Silhouettes calculate(CyMatrix matrix, DistanceMetric metric, Clusters clusters)
 	{
-		double[][] distanceMatrix = matrix.getDistanceMatrix(metric).toArray();
-		return calculate(distanceMatrix, clusters);
+		return calculate(new SymmetricDistanceMatrix(matrix, metric), clusters);
 	}
 	
 	/**
@@ -57,68 +57,100 @@ public class SilhouetteCalculator {
 		int samplenum = clusters.size();
 		
 		int[] clusterSizes = clusters.getSizes();
+		double[] sums = new double[clusterSizes.length];
 
 		// OK, now calculate the silhouette
 		for(int i=0;i<samplenum;i++)
 		{
-			double silhouettevalue=0;
-			double a=0;
-			double b=0;
-			Integer classlabel = clusters.getClusterIndex(i);
-			int clusterSize = clusterSizes[classlabel];
+			//calculate distance by different classes
+			Arrays.fill(sums, 0.0);
+			double[] row = distancematrix[i];
+			for(int j=0;j<samplenum;j++)
+			{
+				if (i == j) continue;
+				sums[clusters.getClusterIndex(j)] += row[j];
+			}
+			addSilhouette(silresult, clusters.getClusterIndex(i), sums, clusterSizes);
+		}
+		return silresult;
+	}
+	
+	/**
+	 * This method calculates the silhouette for a matrix of the pair-wise
+	 * distances (for example, a {@link SymmetricDistanceMatrix}) and the current clusters.
+	 * @param distancematrix the pair-wise distances
+	 * @param clusters the current clusters
+	 * @return the resulting silhouette
+	 */
+	public static Silhouettes calculate(Matrix distancematrix, Clusters clusters)
+	{
 		
-			//initializing
-			HashMap<Integer, Double> bvalues = new HashMap<Integer, Double>();
+		Silhouettes silresult = new Silhouettes();
+		int samplenum = clusters.size();
 		
+		int[] clusterSizes = clusters.getSizes();
+		double[] sums = new double[clusterSizes.length];
+
+		// OK, now calculate the silhouette
+		for(int i=0;i<samplenum;i++)
+		{
 			//calculate distance by different classes
+			Arrays.fill(sums, 0.0);
 			for(int j=0;j<samplenum;j++)
 			{
 				if (i == j) continue;
-				Integer currentclasslabel = clusters.getClusterIndex(j);
-				double distancevalue = 0.0;
-				if(bvalues.containsKey(currentclasslabel))
-					distancevalue = bvalues.get(currentclasslabel).doubleValue();
-				// System.out.println("i,j = "+ i +","+ j+"dmatij= " + distancematrix[i][j]);
-				distancevalue = distancevalue + distancematrix[i][j];
-				bvalues.put(currentclasslabel, Double.valueOf(distancevalue));
+				sums[clusters.getClusterIndex(j)] += distancematrix.doubleValue(i, j);
 			}
+			addSilhouette(silresult, clusters.getClusterIndex(i), sums, clusterSizes);
+		}
+		return silresult;
+	}
+
+	/**
+	 * Add the silhouette of an element, given the sums of its distances to
+	 * the other elements of each cluster.
+	 */
+	private static void addSilhouette(Silhouettes silresult, int classlabel, double[] sums, int[] clusterSizes)
+	{
+		double silhouettevalue=0;
+		double a=0;
+		double b=0;
+		int clusterSize = clusterSizes[classlabel];
+
+		//calculate a b and silhouette
+		double mindis = Double.MAX_VALUE;
+		Integer minlabel = null;
+		for(int kLabel = 0; kLabel < sums.length; kLabel++)
+		{
+			int count = clusterSizes[kLabel];
+			double value = sums[kLabel];
 			
-			//calculate a b and silhouette
-			double mindis = Double.MAX_VALUE;
-			Integer minlabel = null;
-			for(Integer kLabel: bvalues.keySet())
-			{
-				int count = clusterSizes[kLabel];
-				double value = bvalues.get(kLabel).doubleValue();
-				
-				if (kLabel.equals(classlabel))
-					// when calculating average distance to all elements in own cluster,
-					// do not consider distance to itself
+			if (kLabel == classlabel) {
+				// when calculating average distance to all elements in own cluster,
+				// do not consider distance to itself
+				if (count > 1)
 					a = value / (count-1);
-				else if (value/count < mindis) {
-					mindis = value/count;
-					minlabel = kLabel;
-				}
-			}
-			b = mindis;
-			
-			if (clusterSize == 1) {
-				// element is in singleton cluster: set silhouette to 0, by definition
-				// this could be done earlier, if minlabel is not of interest...
-				silresult.addSilhouette(0, minlabel);
+			} else if (count > 0 && value/count < mindis) {
+				mindis = value/count;
+				minlabel = kLabel;
 			}
+		}
+		b = mindis;
+		
+		if (clusterSize == 1) {
+			// element is in singleton cluster: set silhouette to 0, by definition
+			// this could be done earlier, if minlabel is not of interest...
+			silresult.addSilhouette(0, minlabel);
+		}
 
-			if(a>b) {
-				silhouettevalue = (b-a)/a;
-			} else  {
-				silhouettevalue = (b-a)/b;
-			}
-			// System.out.println("silhouetteValue for "+i+" = "+silhouettevalue+", a = "+a+", b = "+b);
-			
-			silresult.addSilhouette(silhouettevalue, minlabel);
-			
+		if(a>b) {
+			silhouettevalue = (b-a)/a;
+		} else  {
+			silhouettevalue = (b-a)/b;
 		}
-		return silresult;
+		// System.out.println("silhouetteValue for "+i+" = "+silhouettevalue+", a = "+a+", b = "+b);
+		
+		silresult.addSilhouette(silhouettevalue, minlabel);
 	}
 	
 	/**
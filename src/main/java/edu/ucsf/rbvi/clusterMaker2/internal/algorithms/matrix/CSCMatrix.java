@@ -0,0 +1,454 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A compressed sparse column (CSC) matrix on primitive arrays.  The
+ * row indices and values of column j are stored in
+ * rowIndex[columnStart[j]] .. rowIndex[columnStart[j+1]-1], sorted by row.
+ *
+ * This is the work-horse for algorithms (like MCL) that repeatedly multiply
+ * large sparse matrices: the product is computed column by column with
+ * Gustavson's algorithm, the columns are distributed over a fork-join pool,
+ * and each worker thread keeps its own sparse accumulator.  Entries below a
+ * threshold are dropped before the column is stored, so they are never
+ * materialized in the result.
+ */
+public class CSCMatrix {
+	// Number of columns handled by a single fork-join task
+	private static final int COLUMN_BLOCK = 64;
+
+	private final int nRows;
+	private final int nColumns;
+	private int[] columnStart;
+	private int[] rowIndex;
+	private double[] values;
+
+	private static final ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>();
+
+	/**
+	 * Create a CSC matrix from its arrays.  The arrays are not copied.
+	 *
+	 * @param nRows the number of rows
+	 * @param nColumns the number of columns
+	 * @param columnStart the start offset of each column (length nColumns+1)
+	 * @param rowIndex the row of each stored entry
+	 * @param values the value of each stored entry
+	 */
+	public CSCMatrix(int nRows, int nColumns, int[] columnStart, int[] rowIndex, double[] values) {
+		this.nRows = nRows;
+		this.nColumns = nColumns;
+		this.columnStart = columnStart;
+		this.rowIndex = rowIndex;
+		this.values = values;
+	}
+
+	/**
+	 * Create a CSC matrix from a list of (row, column, value) triples.
+	 * Zero values are skipped and the rows are sorted within each column.
+	 *
+	 * @param nRows the number of rows
+	 * @param nColumns the number of columns
+	 * @param rows the row of each triple
+	 * @param columns the column of each triple
+	 * @param vals the value of each triple
+	 * @param count the number of triples
+	 * @return the new matrix
+	 */
+	public static CSCMatrix fromTriples(int nRows, int nColumns, int[] rows, int[] columns,
+	                                    double[] vals, int count) {
+		int[] start = new int[nColumns+1];
+		for (int i = 0; i < count; i++) {
+			if (vals[i] != 0.0)
+				start[columns[i]+1]++;
+		}
+		for (int col = 0; col < nColumns; col++)
+			start[col+1] += start[col];
+
+		int[] fill = Arrays.copyOf(start, nColumns);
+		int[] rowIndex = new int[start[nColumns]];
+		double[] values = new double[start[nColumns]];
+		for (int i = 0; i < count; i++) {
+			if (vals[i] == 0.0) continue;
+			int pos = fill[columns[i]]++;
+			rowIndex[pos] = rows[i];
+			values[pos] = vals[i];
+		}
+		CSCMatrix matrix = new CSCMatrix(nRows, nColumns, start, rowIndex, values);
+		for (int col = 0; col < nColumns; col++)
+			matrix.sortColumn(col);
+		return matrix;
+	}
+
+	public int nRows() { return nRows; }
+	public int nColumns() { return nColumns; }
+	public int cardinality() { return columnStart[nColumns]; }
+
+	public int[] getColumnStart() { return columnStart; }
+	public int[] getRowIndex() { return rowIndex; }
+	public double[] getValues() { return values; }
+
+	/**
+	 * Multiply this matrix by another (this * B) on the given pool.  Entries of the
+	 * result whose absolute value is below threshold are discarded.
+	 *
+	 * @param B the right hand matrix
+	 * @param threshold the pruning threshold (0 keeps all non-zero entries)
+	 * @param pool the fork-join pool to run on
+	 * @return the product
+	 */
+	public CSCMatrix multiply(CSCMatrix B, double threshold, ForkJoinPool pool) {
+		return multiply(B, threshold, 0, 0, 0.0, pool);
+	}
+
+	/**
+	 * Multiply this matrix by another (this * B) on the given pool, pruning each
+	 * column of the result as it is formed, modeled on the pruning in the reference
+	 * mcl implementation:
+	 * <ol>
+	 * <li>entries whose absolute value is below threshold are discarded</li>
+	 * <li>if more than selectionNumber entries remain, only the selectionNumber
+	 * largest are kept</li>
+	 * <li>if the kept entries hold less than recoveryMass of the column's total
+	 * mass and there are fewer than recoveryNumber of them, the recoveryNumber
+	 * largest entries of the unpruned column are kept instead</li>
+	 * </ol>
+	 * Each column of the result therefore has at most max(selectionNumber,
+	 * recoveryNumber) entries.
+	 *
+	 * @param B the right hand matrix
+	 * @param threshold the pruning threshold (0 keeps all non-zero entries)
+	 * @param selectionNumber the maximum number of entries kept per column (0 for no limit)
+	 * @param recoveryNumber the number of entries to recover (0 for no recovery)
+	 * @param recoveryMass the fraction of the column mass below which we recover
+	 * @param pool the fork-join pool to run on
+	 * @return the product
+	 */
+	public CSCMatrix multiply(final CSCMatrix B, final double threshold,
+	                          final int selectionNumber, final int recoveryNumber,
+	                          final double recoveryMass, ForkJoinPool pool) {
+		if (nColumns != B.nRows)
+			throw new IllegalArgumentException("Matrix dimensions don't match: "+
+			                                   nRows+"x"+nColumns+" * "+B.nRows+"x"+B.nColumns);
+
+		final int[][] resultRows = new int[B.nColumns][];
+		final double[][] resultValues = new double[B.nColumns][];
+
+		ParallelRange.forEach(pool, 0, B.nColumns, COLUMN_BLOCK, new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				Accumulator spa = getAccumulator(nRows);
+				for (int col = first; col < last; col++) {
+					multiplyColumn(B, col, spa);
+					int count = spa.prune(threshold, selectionNumber, recoveryNumber, recoveryMass);
+					resultRows[col] = Arrays.copyOf(spa.rows, count);
+					resultValues[col] = Arrays.copyOf(spa.vals, count);
+					spa.clear();
+				}
+			}
+		});
+
+		return assemble(nRows, B.nColumns, resultRows, resultValues);
+	}
+
+	/**
+	 * Divide each column by its sum.  If prune is true, entries below
+	 * threshold are removed first.  Empty columns get a 1 on the diagonal.
+	 *
+	 * @param threshold the pruning threshold
+	 * @param prune if 'false', don't prune this pass
+	 */
+	public void normalizeColumns(double threshold, boolean prune) {
+		boolean emptyColumn = false;
+		int next = 0;
+		int first = 0;
+		for (int col = 0; col < nColumns; col++) {
+			int last = columnStart[col+1];
+			columnStart[col] = next;
+			double sum = 0.0;
+			for (int k = first; k < last; k++) {
+				double value = values[k];
+				if (value == 0.0 || (prune && value < threshold))
+					continue;
+				rowIndex[next] = rowIndex[k];
+				values[next] = value;
+				sum += value;
+				next++;
+			}
+			for (int k = columnStart[col]; k < next; k++)
+				values[k] /= sum;
+			if (next == columnStart[col])
+				emptyColumn = true;
+			first = last;
+		}
+		columnStart[nColumns] = next;
+
+		if (emptyColumn && nRows == nColumns)
+			setEmptyDiagonals();
+	}
+
+	/**
+	 * Raise every stored entry to a power
+	 *
+	 * @param power the exponent
+	 */
+	public void pow(double power) {
+		int nnz = columnStart[nColumns];
+		for (int k = 0; k < nnz; k++)
+			values[k] = Math.pow(values[k], power);
+	}
+
+	/**
+	 * Return the sum of a column
+	 *
+	 * @param column the column to sum
+	 * @return the column sum
+	 */
+	public double columnSum(int column) {
+		double sum = 0.0;
+		for (int k = columnStart[column]; k < columnStart[column+1]; k++)
+			sum += values[k];
+		return sum;
+	}
+
+	/**
+	 * Return the value at a given location
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @return the value (0 if not stored)
+	 */
+	public double getValue(int row, int column) {
+		int pos = Arrays.binarySearch(rowIndex, columnStart[column], columnStart[column+1], row);
+		if (pos < 0) return 0.0;
+		return values[pos];
+	}
+
+	// Scatter column col of this*B into the accumulator
+	private void multiplyColumn(CSCMatrix B, int col, Accumulator spa) {
+		for (int kb = B.columnStart[col]; kb < B.columnStart[col+1]; kb++) {
+			int k = B.rowIndex[kb];
+			double bValue = B.values[kb];
+			for (int ka = columnStart[k]; ka < columnStart[k+1]; ka++)
+				spa.add(rowIndex[ka], values[ka]*bValue);
+		}
+	}
+
+	private void setEmptyDiagonals() {
+		int nnz = columnStart[nColumns];
+		int empty = 0;
+		for (int col = 0; col < nColumns; col++) {
+			if (columnStart[col] == columnStart[col+1]) empty++;
+		}
+		int[] newRows = new int[nnz+empty];
+		double[] newValues = new double[nnz+empty];
+		int next = 0;
+		for (int col = 0; col < nColumns; col++) {
+			int first = columnStart[col];
+			int last = columnStart[col+1];
+			columnStart[col] = next;
+			if (first == last) {
+				newRows[next] = col;
+				newValues[next] = 1.0;
+				next++;
+			} else {
+				System.arraycopy(rowIndex, first, newRows, next, last-first);
+				System.arraycopy(values, first, newValues, next, last-first);
+				next += last-first;
+			}
+		}
+		columnStart[nColumns] = next;
+		rowIndex = newRows;
+		values = newValues;
+	}
+
+	private void sortColumn(int col) {
+		int first = columnStart[col];
+		int last = columnStart[col+1];
+		// Insertion sort -- the columns are usually short and nearly sorted
+		for (int i = first+1; i < last; i++) {
+			int row = rowIndex[i];
+			double value = values[i];
+			int j = i-1;
+			while (j >= first && rowIndex[j] > row) {
+				rowIndex[j+1] = rowIndex[j];
+				values[j+1] = values[j];
+				j--;
+			}
+			rowIndex[j+1] = row;
+			values[j+1] = value;
+		}
+	}
+
+	private static CSCMatrix assemble(int nRows, int nColumns, int[][] rows, double[][] vals) {
+		int[] start = new int[nColumns+1];
+		for (int col = 0; col < nColumns; col++)
+			start[col+1] = start[col] + rows[col].length;
+		int[] rowIndex = new int[start[nColumns]];
+		double[] values = new double[start[nColumns]];
+		for (int col = 0; col < nColumns; col++) {
+			System.arraycopy(rows[col], 0, rowIndex, start[col], rows[col].length);
+			System.arraycopy(vals[col], 0, values, start[col], vals[col].length);
+			rows[col] = null;
+			vals[col] = null;
+		}
+		return new CSCMatrix(nRows, nColumns, start, rowIndex, values);
+	}
+
+	private static Accumulator getAccumulator(int size) {
+		Accumulator spa = accumulators.get();
+		if (spa == null || spa.dense.length < size) {
+			spa = new Accumulator(size);
+			accumulators.set(spa);
+		}
+		return spa;
+	}
+
+	/**
+	 * A sparse accumulator: a dense value array plus the list of
+	 * rows that have been touched, so clearing is proportional to the
+	 * number of non-zeros in the column.
+	 */
+	static class Accumulator {
+		double[] dense;
+		boolean[] occupied;
+		int[] rows;
+		double[] vals;
+		double[] scratch;
+		int count = 0;
+
+		Accumulator(int size) {
+			dense = new double[size];
+			occupied = new boolean[size];
+			rows = new int[size];
+			vals = new double[size];
+		}
+
+		void add(int row, double value) {
+			if (!occupied[row]) {
+				occupied[row] = true;
+				rows[count++] = row;
+			}
+			dense[row] += value;
+		}
+
+		// Gather the entries that survive pruning into rows/vals (sorted by row)
+		// and return their number
+		int prune(double threshold, int selectionNumber, int recoveryNumber, double recoveryMass) {
+			Arrays.sort(rows, 0, count);
+			int all = 0;
+			double totalMass = 0.0;
+			for (int i = 0; i < count; i++) {
+				int row = rows[i];
+				double value = dense[row];
+				dense[row] = 0.0;
+				occupied[row] = false;
+				if (value == 0.0)
+					continue;
+				rows[all] = row;
+				vals[all] = value;
+				totalMass += Math.abs(value);
+				all++;
+			}
+			count = all;
+
+			// Threshold pruning
+			int kept = 0;
+			double keptMass = 0.0;
+			double cutoff = threshold;
+			for (int i = 0; i < all; i++) {
+				if (Math.abs(vals[i]) >= threshold) {
+					kept++;
+					keptMass += Math.abs(vals[i]);
+				}
+			}
+
+			// Selection: keep only the selectionNumber largest
+			if (selectionNumber > 0 && kept > selectionNumber) {
+				cutoff = Math.max(threshold, kthLargest(all, selectionNumber));
+				kept = selectionNumber;
+				keptMass = 0.0;
+				for (int i = 0; i < all; i++) {
+					if (Math.abs(vals[i]) > cutoff)
+						keptMass += Math.abs(vals[i]);
+				}
+			}
+
+			// Recovery: if we've pruned away too much of the mass, keep the
+			// recoveryNumber largest of the original entries instead
+			if (recoveryNumber > 0 && kept < recoveryNumber && keptMass < recoveryMass*totalMass) {
+				if (all <= recoveryNumber) {
+					cutoff = 0.0;
+					kept = all;
+				} else {
+					cutoff = kthLargest(all, recoveryNumber);
+					kept = recoveryNumber;
+				}
+			}
+
+			if (kept == all)
+				return all;
+
+			// Keep everything strictly above the cutoff, and as many ties as fit
+			int ties = kept;
+			for (int i = 0; i < all; i++) {
+				if (Math.abs(vals[i]) > cutoff)
+					ties--;
+			}
+			int next = 0;
+			for (int i = 0; i < all; i++) {
+				double abs = Math.abs(vals[i]);
+				if (abs > cutoff || (abs == cutoff && ties-- > 0)) {
+					rows[next] = rows[i];
+					vals[next] = vals[i];
+					next++;
+				}
+			}
+			count = next;
+			return next;
+		}
+
+		// Return the k-th largest absolute value of vals[0..n-1]
+		private double kthLargest(int n, int k) {
+			if (scratch == null || scratch.length < n)
+				scratch = new double[Math.max(n, 16)];
+			for (int i = 0; i < n; i++)
+				scratch[i] = -Math.abs(vals[i]);
+			// Quickselect for the (k-1)th smallest of the negated values
+			int lo = 0;
+			int hi = n-1;
+			int target = k-1;
+			while (lo < hi) {
+				double pivot = scratch[(lo+hi) >>> 1];
+				int i = lo;
+				int j = hi;
+				while (i <= j) {
+					while (scratch[i] < pivot) i++;
+					while (scratch[j] > pivot) j--;
+					if (i <= j) {
+						double t = scratch[i];
+						scratch[i] = scratch[j];
+						scratch[j] = t;
+						i++;
+						j--;
+					}
+				}
+				if (target <= j)
+					hi = j;
+				else if (target >= i)
+					lo = i;
+				else
+					break;
+			}
+			return -scratch[target];
+		}
+
+		void clear() {
+			for (int i = 0; i < count; i++) {
+				dense[rows[i]] = 0.0;
+				occupied[rows[i]] = false;
+			}
+			count = 0;
+		}
+	}
+}
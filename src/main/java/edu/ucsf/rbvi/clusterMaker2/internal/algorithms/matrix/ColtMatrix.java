@@ -6,10 +6,7 @@ import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
 
 import org.cytoscape.application.CyUserLog;
 import org.apache.log4j.Logger;
@@ -17,7 +14,6 @@ import org.apache.log4j.Logger;
 import cern.colt.function.tdouble.IntIntDoubleFunction;
 import cern.colt.function.tdouble.DoubleFunction;
 import cern.jet.math.tdouble.DoubleFunctions;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 import cern.colt.matrix.tdouble.DoubleFactory2D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
@@ -25,6 +21,7 @@ import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecompos
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.DoubleStatistic;
 import cern.colt.matrix.tdouble.algo.SmpDoubleBlas;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
@@ -347,13 +344,14 @@ public class ColtMatrix implements Matrix {
 		mat.rowLabels = Arrays.copyOf(rowLabels, rowLabels.length);
 		mat.columnLabels = Arrays.copyOf(rowLabels, rowLabels.length);
 
-		for (int row = 0; row < nRows; row++) {
-			for (int column = row; column < this.nRows; column++) {
-				mat.setValue(row, column, metric.getMetric(this, this, row, column));
-				if (row != column)
-					mat.setValue(column, row, metric.getMetric(this, this, row, column));
-			}
-		}
+		if ((long)nRows*nRows > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows for a distance matrix: "+nRows);
+
+		// Fill the matrix's own storage, so there is only ever one n x n copy
+		double[] distances = new double[nRows*nRows];
+		new DistanceEngine(toArray(), metric).getDistances(distances);
+		mat.data = new DenseDoubleMatrix2D(nRows, nRows, distances, 0, 0, nRows, 1, false);
+		mat.updateMinMax();
 		return mat;
 	}
  
@@ -761,66 +759,56 @@ public class ColtMatrix implements Matrix {
 		return variance/nColumns;
 	}
 
-	// For some reason, the parallelcolt version of zMult doesn't
-	// really take advantage of the available cores.  This version does, but
-	// it seems like it only works for multiplying matrices of the same
-	// size.
+	// The product is computed on the compressed sparse column representation
+	// of both matrices with Gustavson's algorithm, on the common fork-join
+	// pool, so we don't need to create any threads or dense rows here.
 	public Matrix multiplyMatrix(Matrix matrix) {
-		// return mult(matrix);
-		// if (matrix.nRows() != nRows() || matrix.nColumns() != nColumns())
-		// 	return mult(matrix);
-
-		DoubleMatrix2D A = data;
-		DoubleMatrix2D B = matrix.getColtMatrix();
-
-		int m = A.rows();
-		int n = A.columns();
-		int p = B.columns();
-
-		// Create views into B
-		final DoubleMatrix1D[] Brows= new DoubleMatrix1D[n];
-		for (int i = n; --i>=0; ) Brows[i] = B.viewRow(i);
-
-		// Create a series of 1D vectors
-		final DoubleMatrix1D[] Crows= new DoubleMatrix1D[m];
-		for (int i = m; --i>=0; ) Crows[i] = B.like1D(p);
-
-		// Create the thread pools
-		final ExecutorService[] threadPools = new ExecutorService[nThreads];
-		for (int pool = 0; pool < threadPools.length; pool++) {
-				threadPools[pool] = Executors.newFixedThreadPool(1);
-		}
+		CSCMatrix A = toCSCMatrix(data);
+		CSCMatrix B = toCSCMatrix(matrix.getColtMatrix());
+		CSCMatrix C = A.multiply(B, 0.0, ForkJoinPool.commonPool());
+		return new ColtMatrix(this, toColtMatrix(C));
+	}
 
-		A.forEachNonZero(
+	/**
+	 * Convert a Colt matrix to compressed sparse column form
+	 *
+	 * @param matrix the Colt matrix to convert
+	 * @return the CSC matrix
+	 */
+	public static CSCMatrix toCSCMatrix(DoubleMatrix2D matrix) {
+		int nnz = matrix.cardinality();
+		final int[] rows = new int[nnz];
+		final int[] columns = new int[nnz];
+		final double[] values = new double[nnz];
+		final int[] count = new int[1];
+		matrix.forEachNonZero(
 			new IntIntDoubleFunction() {
 				public double apply(int row, int column, double value) {
-
-					Runnable r = new ThreadedDotProduct(value, Brows[column], Crows[row]);
-					threadPools[row%nThreads].submit(r);
+					rows[count[0]] = row;
+					columns[count[0]] = column;
+					values[count[0]] = value;
+					count[0]++;
 					return value;
 				}
 			}
 		);
+		return CSCMatrix.fromTriples(matrix.rows(), matrix.columns(), rows, columns, values, count[0]);
+	}
 
-		for (int pool = 0; pool < threadPools.length; pool++) {
-			threadPools[pool].shutdown();
-			try {
-				boolean result = threadPools[pool].awaitTermination(7, TimeUnit.DAYS);
-			} catch (Exception e) {}
-		}
-		// Recreate C
-		return new ColtMatrix(this, create2DMatrix(Crows));
-	}
-
-	private DoubleMatrix2D create2DMatrix (DoubleMatrix1D[] rows) {
-		int columns = (int)rows[0].size();
-		DoubleMatrix2D C = DoubleFactory2D.sparse.make(rows.length, columns);
-		for (int row = 0; row < rows.length; row++) {
-			for (int col = 0; col < columns; col++) {
-				double value = rows[row].getQuick(col);
-				if (value != 0.0)
-					C.setQuick(row, col, value);
-			}
+	/**
+	 * Convert a compressed sparse column matrix to a (sparse) Colt matrix
+	 *
+	 * @param matrix the CSC matrix to convert
+	 * @return the Colt matrix
+	 */
+	public static DoubleMatrix2D toColtMatrix(CSCMatrix matrix) {
+		DoubleMatrix2D C = DoubleFactory2D.sparse.make(matrix.nRows(), matrix.nColumns());
+		int[] columnStart = matrix.getColumnStart();
+		int[] rowIndex = matrix.getRowIndex();
+		double[] values = matrix.getValues();
+		for (int col = 0; col < matrix.nColumns(); col++) {
+			for (int k = columnStart[col]; k < columnStart[col+1]; k++)
+				C.setQuick(rowIndex[k], col, values[k]);
 		}
 		return C;
 	}
@@ -983,16 +971,14 @@ public class ColtMatrix implements Matrix {
 	public SimpleMatrix getSimpleMatrix() {
 		SimpleMatrix sm = new SimpleMatrix(nRows, nColumns);
 		double[][] inputData = toArray();
-		for (int row = 0; row < nRows; row++) {
-			for (int column = 0; column < nColumns; column++) {
-				sm.data[row][column] = inputData[row][column];
-			}
-		}
+		for (int row = 0; row < nRows; row++)
+			System.arraycopy(inputData[row], 0, sm.data, row*nColumns, nColumns);
 		sm.transposed = this.transposed;
 		sm.symmetric = this.symmetric;
 		sm.minValue = this.minValue;
 		sm.maxValue = this.maxValue;
-		sm.index = Arrays.copyOf(this.index, this.index.length);
+		if (this.index != null)
+			sm.index = Arrays.copyOf(this.index, this.index.length);
 		return sm;
 	}
 	
@@ -1024,28 +1010,4 @@ public class ColtMatrix implements Matrix {
 		if (!symmetric) return 0;
 		return row;
 	}
-
-	private class ThreadedDotProduct implements Runnable {
-		double value;
-		DoubleMatrix1D Bcol;
-		DoubleMatrix1D Crow;
-		// final cern.jet.math.PlusMult fun = cern.jet.math.PlusMult.plusMult(0);
-
-		ThreadedDotProduct(double value, DoubleMatrix1D Bcol, 
-		                   DoubleMatrix1D Crow) {
-			this.value = value;
-			this.Bcol = Bcol;
-			this.Crow = Crow;
-		}
-
-		public void run() {
-			// fun.multiplicator = value;
-			for (int k = 0; k < Bcol.size(); k++) {
-				if (Bcol.getQuick(k) != 0.0) {
-					Crow.setQuick(k, Crow.getQuick(k)+Bcol.getQuick(k)*value);
-				}
-			}
-			// Crow.assign(Bcol, fun);
-		}
-	}
 }
@@ -0,0 +1,445 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+
+/**
+ * Compute all of the pairwise distances between the rows of a data matrix.
+ *
+ * The rows are copied into primitive arrays (missing values are Double.NaN)
+ * and the row pairs are split into square tiles of BLOCK x BLOCK rows so that
+ * both sets of rows stay in cache while a tile is computed.  The tiles are run
+ * on a fork-join pool and the distances are written into a packed upper
+ * triangle (see {@link #packedIndex}).
+ *
+ * Each metric has its own kernel, which gives the same results as
+ * {@link DistanceMetric#getMetric}.  The Euclidean distance is always summed
+ * from the differences, since expanding it into norms and a dot product
+ * loses most of the digits of the distance between rows that are close
+ * together.  For rows without missing values, the correlations are computed
+ * from rows that have been centered and normalized up front, so each pair is
+ * a single dot product.
+ */
+public class DistanceEngine {
+	// Number of rows in each side of a tile
+	private static final int BLOCK = 64;
+
+	private final double[][] rows;
+	private final DistanceMetric metric;
+	private final int nRows;
+	private final int nColumns;
+
+	// Per-row precomputation
+	private boolean[] complete;  // true if the row has no missing values
+	private double[][] unit;     // centered and/or normalized rows (correlations)
+	private boolean[] constant;  // rows with no variance (correlations)
+	private double[][] ranks;    // ranks (Spearman)
+
+	/**
+	 * Create an engine for the rows of a matrix
+	 *
+	 * @param rows the data, one array per row, with missing values as Double.NaN
+	 * @param metric the distance metric to use
+	 */
+	public DistanceEngine(double[][] rows, DistanceMetric metric) {
+		this.rows = rows;
+		this.metric = metric;
+		this.nRows = rows.length;
+		this.nColumns = nRows > 0 ? rows[0].length : 0;
+		prepare();
+	}
+
+	/**
+	 * Return the distances between all pairs of rows on the common pool
+	 *
+	 * @return the packed upper triangle of the distance matrix
+	 */
+	public double[] getDistances() {
+		return getDistances(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Return the distances between all pairs of rows
+	 *
+	 * @param pool the fork-join pool to compute the distances on
+	 * @return the packed upper triangle of the distance matrix
+	 */
+	public double[] getDistances(ForkJoinPool pool) {
+		long size = (long)nRows*(nRows+1)/2;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows for a distance matrix: "+nRows);
+		double[] distances = new double[(int)size];
+		if (nRows == 0)
+			return distances;
+
+		int nBlocks = (nRows+BLOCK-1)/BLOCK;
+		pool.invoke(new TileTask(distances, false, nBlocks, 0, nBlocks*(nBlocks+1)/2));
+		return distances;
+	}
+
+	/**
+	 * Fill in a full (square) matrix of the distances between all pairs of
+	 * rows, on the common pool.  This is for callers that need the whole
+	 * matrix anyway, and saves building the packed triangle first.
+	 *
+	 * @param full a row-major array of at least nRows*nRows values, which
+	 * gets the distance between rows i and j at i*nRows+j and j*nRows+i
+	 */
+	public void getDistances(double[] full) {
+		if ((long)nRows*nRows > full.length)
+			throw new IllegalArgumentException("Array too small for a "+nRows+"x"+nRows+" distance matrix");
+		if (nRows == 0)
+			return;
+
+		int nBlocks = (nRows+BLOCK-1)/BLOCK;
+		ForkJoinPool.commonPool().invoke(new TileTask(full, true, nBlocks, 0, nBlocks*(nBlocks+1)/2));
+	}
+
+	/**
+	 * Return the distance between two rows.  This is the same value
+	 * that {@link #getDistances} gives for the pair.
+	 *
+	 * @param row1 the first row
+	 * @param row2 the second row
+	 * @return the distance
+	 */
+	public double getDistance(int row1, int row2) {
+		return distance(row1, row2);
+	}
+
+	public DistanceMetric getMetric() { return metric; }
+	public int nRows() { return nRows; }
+	public int nColumns() { return nColumns; }
+
+	// The per-row precomputation, for NeighborIndex
+	double[] getRow(int row) { return rows[row]; }
+	boolean isComplete(int row) { return complete[row]; }
+	boolean isConstant(int row) { return constant != null && constant[row]; }
+	double[] getUnitRow(int row) { return unit == null ? null : unit[row]; }
+	double[] getRanks(int row) { return ranks == null ? null : ranks[row]; }
+
+	/**
+	 * Return the offset of (row, column) in a packed upper triangle
+	 * (including the diagonal) of an n x n symmetric matrix.
+	 *
+	 * @param row the row
+	 * @param column the column
+	 * @param n the number of rows in the matrix
+	 * @return the offset of the value in the packed array
+	 */
+	public static int packedIndex(int row, int column, int n) {
+		if (row > column) {
+			int t = row; row = column; column = t;
+		}
+		return (int)((long)row*n - (long)row*(row-1)/2 + (column-row));
+	}
+
+	private void prepare() {
+		complete = new boolean[nRows];
+		for (int row = 0; row < nRows; row++) {
+			boolean c = true;
+			for (double v: rows[row]) {
+				if (Double.isNaN(v)) { c = false; break; }
+			}
+			complete[row] = c;
+		}
+
+		switch (metric) {
+			case CORRELATION:
+			case ABS_CORRELATION:
+				prepareUnitRows(true);
+				break;
+			case UNCENTERED_CORRELATION:
+			case ABS_UNCENTERED_CORRELATION:
+				prepareUnitRows(false);
+				break;
+			case SPEARMANS_RANK:
+				ranks = new double[nRows][];
+				for (int row = 0; row < nRows; row++)
+					ranks[row] = rank(rows[row]);
+				break;
+			default:
+				break;
+		}
+	}
+
+	// Center (if asked) and scale the complete rows to unit length
+	private void prepareUnitRows(boolean center) {
+		unit = new double[nRows][];
+		constant = new boolean[nRows];
+		for (int row = 0; row < nRows; row++) {
+			if (!complete[row])
+				continue;
+			double[] u = rows[row].clone();
+			if (center) {
+				double mean = 0.0;
+				for (double v: u) mean += v;
+				mean /= nColumns;
+				for (int i = 0; i < nColumns; i++) u[i] -= mean;
+			}
+			double norm = dot(u, u);
+			// Match the tests on the denominators in DistanceMetric
+			if ((center && norm <= 0) || (!center && norm == 0)) {
+				constant[row] = true;
+				continue;
+			}
+			norm = Math.sqrt(norm);
+			for (int i = 0; i < nColumns; i++) u[i] /= norm;
+			unit[row] = u;
+		}
+	}
+
+	private void computeTile(double[] distances, boolean full, int blockRow, int blockColumn) {
+		int rowEnd = Math.min(nRows, (blockRow+1)*BLOCK);
+		int columnEnd = Math.min(nRows, (blockColumn+1)*BLOCK);
+		for (int row = blockRow*BLOCK; row < rowEnd; row++) {
+			int first = Math.max(row, blockColumn*BLOCK);
+			if (full) {
+				for (int column = first; column < columnEnd; column++) {
+					double d = distance(row, column);
+					distances[row*nRows+column] = d;
+					distances[column*nRows+row] = d;
+				}
+				continue;
+			}
+			int offset = packedIndex(row, first, nRows);
+			for (int column = first; column < columnEnd; column++)
+				distances[offset++] = distance(row, column);
+		}
+	}
+
+	private double distance(int i, int j) {
+		double[] x = rows[i];
+		double[] y = rows[j];
+		boolean fast = complete[i] && complete[j] && nColumns > 0;
+		switch (metric) {
+			case EUCLIDEAN:
+				return euclid(x, y);
+			case CITYBLOCK:
+				return cityblock(x, y);
+			case CORRELATION:
+			case UNCENTERED_CORRELATION:
+				if (fast) {
+					if (constant[i] || constant[j]) return 1;
+					return 1.0 - dot(unit[i], unit[j]);
+				}
+				return correlation(x, y, metric == DistanceMetric.CORRELATION, false);
+			case ABS_CORRELATION:
+			case ABS_UNCENTERED_CORRELATION:
+				if (fast) {
+					if (constant[i] || constant[j]) return 1;
+					return 1.0 - Math.abs(dot(unit[i], unit[j]));
+				}
+				return correlation(x, y, metric == DistanceMetric.ABS_CORRELATION, true);
+			case SPEARMANS_RANK:
+				return spearman(ranks[i], ranks[j]);
+			case KENDALLS_TAU:
+				return kendall(x, y);
+			case VALUE_IS_CORRELATION:
+				return 1 - x[j];
+			case VALUE_IS_DISTANCE:
+				return x[j];
+		}
+		return euclid(x, y);
+	}
+
+	private static double dot(double[] x, double[] y) {
+		double sum = 0.0;
+		for (int i = 0; i < x.length; i++)
+			sum += x[i]*y[i];
+		return sum;
+	}
+
+	private static double euclid(double[] x, double[] y) {
+		double result = 0.0;
+		double tweight = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			double term = x[i] - y[i];
+			if (Double.isNaN(term)) continue;
+			result += term*term;
+			tweight += 1.0;
+		}
+		if (tweight == 0.0) return 0;
+		return result/tweight;
+	}
+
+	private static double cityblock(double[] x, double[] y) {
+		double result = 0.0;
+		double tweight = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			double term = x[i] - y[i];
+			if (Double.isNaN(term)) continue;
+			result += Math.abs(term);
+			tweight += 1.0;
+		}
+		if (tweight == 0.0) return 0;
+		return result/tweight;
+	}
+
+	// The correlations over the columns where both rows have values
+	private static double correlation(double[] x, double[] y, boolean centered, boolean absolute) {
+		double result = 0.0;
+		double sum1 = 0.0;
+		double sum2 = 0.0;
+		double denom1 = 0.0;
+		double denom2 = 0.0;
+		double tweight = 0.0;
+		for (int i = 0; i < x.length; i++) {
+			double term1 = x[i];
+			double term2 = y[i];
+			if (Double.isNaN(term1) || Double.isNaN(term2)) continue;
+			sum1 += term1;
+			sum2 += term2;
+			result += term1*term2;
+			denom1 += term1*term1;
+			denom2 += term2*term2;
+			tweight += 1.0;
+		}
+		if (tweight == 0.0) return 0;
+		if (centered) {
+			result -= sum1 * sum2 / tweight;
+			denom1 -= sum1 * sum1 / tweight;
+			denom2 -= sum2 * sum2 / tweight;
+			if (denom1 <= 0) return 1;
+			if (denom2 <= 0) return 1;
+		} else {
+			if (denom1 == 0) return 1;
+			if (denom2 == 0) return 1;
+		}
+		if (absolute)
+			result = Math.abs(result);
+		return 1.0 - result / Math.sqrt(denom1*denom2);
+	}
+
+	private static double spearman(double[] rank1, double[] rank2) {
+		if (rank1 == null || rank2 == null)
+			return 0.0;
+
+		int n = Math.min(rank1.length, rank2.length);
+		double avgrank = 0.5*(rank1.length-1);
+		double result = 0.0;
+		double denom1 = 0.0;
+		double denom2 = 0.0;
+		for (int i = 0; i < n; i++) {
+			double value1 = rank1[i];
+			double value2 = rank2[i];
+			result += value1 * value2;
+			denom1 += value1 * value1;
+			denom2 += value2 * value2;
+		}
+		result /= rank1.length;
+		denom1 /= rank1.length;
+		denom2 /= rank1.length;
+		result -= avgrank * avgrank;
+		denom1 -= avgrank * avgrank;
+		denom2 -= avgrank * avgrank;
+		if (denom1 <= 0) return 1;
+		if (denom2 <= 0) return 1;
+		result = result / Math.sqrt(denom1*denom2);
+		return (1.0 - result);
+	}
+
+	private static double kendall(double[] x, double[] y) {
+		int con = 0;
+		int dis = 0;
+		int exx = 0;
+		int exy = 0;
+		boolean flag = false;
+		for (int i = 0; i < x.length; i++) {
+			double x1 = x[i];
+			double y1 = y[i];
+			for (int j = 0; j < i; j++) {
+				double x2 = x[j];
+				double y2 = y[j];
+				if (Double.isNaN(x2) || Double.isNaN(y2)) continue;
+				if (x1 < x2 && y1 < y2) con++;
+				if (x1 > x2 && y1 > y2) con++;
+				if (x1 < x2 && y1 > y2) dis++;
+				if (x1 > x2 && y1 < y2) dis++;
+				if (x1 == x2 && y1 != y2) exx++;
+				if (x1 != x2 && y1 == y2) exy++;
+				flag = true;
+			}
+		}
+		if (!flag) return 0.0;
+		double denomx = con + dis + exx;
+		double denomy = con + dis + exy;
+		if (denomx == 0) return 1;
+		if (denomy == 0) return 1;
+		return 1. - (con-dis)/Math.sqrt(denomx*denomy);
+	}
+
+	// The ranks of the values in a row (see SimpleMatrix.getRank)
+	private static double[] rank(double[] row) {
+		double[] tData = new double[row.length];
+		int nVals = 0;
+		for (double v: row) {
+			if (!Double.isNaN(v))
+				tData[nVals++] = v;
+		}
+		if (nVals == 0)
+			return null;
+
+		Integer index[] = MatrixUtils.indexSort(tData, nVals);
+		double[] rank = new double[nVals];
+		for (int i = 0; i < nVals; i++) rank[index[i]] = i;
+
+		// Fix for equal ranks
+		int i = 0;
+		while (i < nVals) {
+			double value = tData[index[i]];
+			int j = i+1;
+			while (j < nVals && tData[index[j]] == value) j++;
+			int m = j - i;
+			value = rank[index[i]] + (m-1)/2.0;
+			for (j = i; j < i+m; j++) rank[index[j]] = value;
+			i += m;
+		}
+		return rank;
+	}
+
+	/**
+	 * Compute a range of the tiles on or above the diagonal.  Tile t is
+	 * the t'th (blockRow, blockColumn) pair with blockRow <= blockColumn,
+	 * in row order.
+	 */
+	private class TileTask extends RecursiveAction {
+		final double[] distances;
+		final boolean full;
+		final int nBlocks;
+		final int first;
+		final int last;
+
+		TileTask(double[] distances, boolean full, int nBlocks, int first, int last) {
+			this.distances = distances;
+			this.full = full;
+			this.nBlocks = nBlocks;
+			this.first = first;
+			this.last = last;
+		}
+
+		protected void compute() {
+			if (last - first <= 1) {
+				if (last > first)
+					computeTile(first);
+				return;
+			}
+			int mid = (first + last) >>> 1;
+			invokeAll(new TileTask(distances, full, nBlocks, first, mid),
+			          new TileTask(distances, full, nBlocks, mid, last));
+		}
+
+		private void computeTile(int tile) {
+			int blockRow = 0;
+			int rowTiles = nBlocks;
+			while (tile >= rowTiles) {
+				tile -= rowTiles;
+				blockRow++;
+				rowTiles--;
+			}
+			DistanceEngine.this.computeTile(distances, full, blockRow, blockRow+tile);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
+
+/**
+ * A cache of the distance matrices for a run of an algorithm, so that the
+ * clusterer and the silhouette calculations for each k don't each recompute
+ * the same n x n distances.  Matrices are keyed by the identity of the data
+ * matrix and the metric, so the data must not be changed while it's cached.
+ * The cache may be shared between threads.
+ */
+public class DistanceMatrixCache {
+	private final Map<Matrix, Map<DistanceMetric, Matrix>> cache =
+		new IdentityHashMap<Matrix, Map<DistanceMetric, Matrix>>();
+
+	/**
+	 * Return the distances between the rows of a data matrix, calculating
+	 * them if we haven't already.
+	 *
+	 * @param data the data matrix
+	 * @param metric the distance metric to use
+	 * @return the (packed, symmetric) distance matrix.  This is shared, so it
+	 * must not be modified.
+	 */
+	public synchronized Matrix getDistanceMatrix(Matrix data, DistanceMetric metric) {
+		Map<DistanceMetric, Matrix> distances = cache.get(data);
+		if (distances == null) {
+			distances = new EnumMap<DistanceMetric, Matrix>(DistanceMetric.class);
+			cache.put(data, distances);
+		}
+		Matrix d = distances.get(metric);
+		if (d == null) {
+			d = new SymmetricDistanceMatrix(data, metric);
+			distances.put(metric, d);
+		}
+		return d;
+	}
+
+	/**
+	 * Drop all of the cached matrices
+	 */
+	public synchronized void clear() {
+		cache.clear();
+	}
+}
@@ -0,0 +1,240 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+
+/**
+ * The largest eigenvalues and eigenvectors of a symmetric matrix, found with
+ * the thick-restart Lanczos method (see Wu, K. and Simon, H. (2000).
+ * Thick-restart Lanczos method for large symmetric eigenvalue problems. SIAM
+ * J. Matrix Anal. Appl. 22(2), 602-616), which finds the same Ritz pairs as
+ * the implicitly restarted Lanczos method.  The matrix is only touched through
+ * its product with a vector, so it can be dense, sparse or never built at all,
+ * and each restart only needs a few dozen products, rather than the O(n^3)
+ * of a full decomposition.  The Lanczos vectors are fully reorthogonalized,
+ * which is cheap since only a few of them are kept.
+ */
+public class LanczosEigensolver {
+	/**
+	 * A symmetric matrix, as far as the solver needs to know
+	 */
+	public interface Operator {
+		/**
+		 * @return the number of rows (and columns)
+		 */
+		public int size();
+
+		/**
+		 * Set y = A x
+		 */
+		public void multiply(double[] x, double[] y);
+	}
+
+	private static final long SEED = 1L;
+
+	private final Operator operator;
+	private final int n;
+	private final int nEigen;
+	private double tolerance = 1e-8;
+	private int maxRestarts = 500;
+
+	private double[] eigenValues = null;
+	private double[][] eigenVectors = null;
+	private int nProducts = 0;
+
+	/**
+	 * Set up the solver
+	 *
+	 * @param operator the matrix
+	 * @param nEigen the number of eigenvalues to find
+	 */
+	public LanczosEigensolver(Operator operator, int nEigen) {
+		this.operator = operator;
+		this.n = operator.size();
+		this.nEigen = Math.max(0, Math.min(nEigen, n));
+	}
+
+	/**
+	 * Set the convergence tolerance.  An eigenpair has converged when the norm
+	 * of its residual is less than this times the largest eigenvalue.
+	 */
+	public void setTolerance(double tolerance) { this.tolerance = tolerance; }
+
+	/**
+	 * Set the maximum number of restarts
+	 */
+	public void setMaxRestarts(int maxRestarts) { this.maxRestarts = maxRestarts; }
+
+	/**
+	 * Find the eigenvalues and eigenvectors
+	 *
+	 * @return true if all of them converged
+	 */
+	public boolean solve() {
+		if (nEigen == 0) {
+			eigenValues = new double[0];
+			eigenVectors = new double[n][0];
+			return true;
+		}
+
+		int m = Math.min(n, Math.max(2*nEigen+1, nEigen+20));
+		int keep = Math.min(m-1, nEigen + (m-nEigen)/2);
+		double[][] V = new double[m+1][];
+		double[][] H = new double[m][m];
+		Random random = new Random(SEED);
+		nProducts = 0;
+
+		V[0] = randomVector(random, V, 0);
+		int first = 0;
+		for (int restart = 0; ; restart++) {
+			// Extend the basis to m vectors
+			double beta = 0.0;
+			for (int j = first; j < m; j++) {
+				double[] w = new double[n];
+				operator.multiply(V[j], w);
+				nProducts++;
+				double scale = norm(w);
+
+				// Orthogonalize against the whole basis, twice for stability
+				for (int pass = 0; pass < 2; pass++) {
+					for (int i = 0; i <= j; i++) {
+						double h = dot(V[i], w);
+						H[i][j] += h;
+						axpy(-h, V[i], w);
+					}
+				}
+				for (int i = 0; i < j; i++)
+					H[j][i] = H[i][j];
+
+				beta = norm(w);
+				if (beta > 1e-12*scale && beta > 0.0) {
+					for (int i = 0; i < n; i++)
+						w[i] /= beta;
+					V[j+1] = w;
+				} else {
+					// We've found an invariant subspace.  Carry on with a new
+					// direction, which isn't coupled to the old ones.
+					beta = 0.0;
+					V[j+1] = randomVector(random, V, j+1);
+				}
+				if (j+1 < m)
+					H[j+1][j] = beta;
+			}
+
+			// Get the Ritz values and vectors
+			DenseDoubleEigenvalueDecomposition decomp =
+				new DenseDoubleEigenvalueDecomposition(DoubleFactory2D.dense.make(H));
+			double[] theta = decomp.getRealEigenvalues().toArray();
+			double[][] Y = decomp.getV().toArray();
+
+			double largest = 0.0;
+			for (int c = m-nEigen; c < m; c++)
+				largest = Math.max(largest, Math.abs(theta[c]));
+			boolean converged = true;
+			for (int c = m-nEigen; c < m; c++) {
+				if (Math.abs(beta*Y[m-1][c]) > tolerance*largest) {
+					converged = false;
+					break;
+				}
+			}
+
+			if (converged || restart >= maxRestarts) {
+				eigenValues = new double[nEigen];
+				eigenVectors = new double[n][nEigen];
+				for (int e = 0; e < nEigen; e++) {
+					int c = m-nEigen+e;
+					eigenValues[e] = theta[c];
+					for (int i = 0; i < m; i++) {
+						double y = Y[i][c];
+						double[] v = V[i];
+						for (int row = 0; row < n; row++)
+							eigenVectors[row][e] += y*v[row];
+					}
+				}
+				return converged;
+			}
+
+			// Restart with the best Ritz vectors and the residual.  The
+			// projection onto the Ritz vectors is diagonal, and their coupling
+			// to the residual is picked up when we multiply by it.
+			double[][] kept = new double[keep][n];
+			for (int e = 0; e < keep; e++) {
+				int c = m-keep+e;
+				for (int i = 0; i < m; i++) {
+					double y = Y[i][c];
+					double[] v = V[i];
+					double[] u = kept[e];
+					for (int row = 0; row < n; row++)
+						u[row] += y*v[row];
+				}
+			}
+			double[] residual = V[m];
+			for (int i = 0; i <= m; i++)
+				V[i] = null;
+			for (double[] row: H)
+				Arrays.fill(row, 0.0);
+			for (int e = 0; e < keep; e++) {
+				V[e] = kept[e];
+				H[e][e] = theta[m-keep+e];
+			}
+			V[keep] = residual;
+			first = keep;
+		}
+	}
+
+	/**
+	 * @return the eigenvalues, in increasing order (as {@link
+	 * DenseDoubleEigenvalueDecomposition} returns them)
+	 */
+	public double[] getEigenvalues() { return eigenValues; }
+
+	/**
+	 * @return the eigenvectors, one per column, in the same order as the eigenvalues
+	 */
+	public double[][] getEigenvectors() { return eigenVectors; }
+
+	/**
+	 * @return the number of matrix-vector products the last solve took
+	 */
+	public int getProductCount() { return nProducts; }
+
+	// A random unit vector, orthogonal to the first nBasis basis vectors
+	private double[] randomVector(Random random, double[][] V, int nBasis) {
+		double[] v = new double[n];
+		for (int attempt = 0; attempt < 3; attempt++) {
+			for (int i = 0; i < n; i++)
+				v[i] = random.nextGaussian();
+			for (int pass = 0; pass < 2; pass++) {
+				for (int i = 0; i < nBasis; i++)
+					axpy(-dot(V[i], v), V[i], v);
+			}
+			double norm = norm(v);
+			if (norm > 1e-8) {
+				for (int i = 0; i < n; i++)
+					v[i] /= norm;
+				return v;
+			}
+		}
+		// The basis already spans everything
+		return new double[n];
+	}
+
+	private static double dot(double[] x, double[] y) {
+		double sum = 0.0;
+		for (int i = 0; i < x.length; i++)
+			sum += x[i]*y[i];
+		return sum;
+	}
+
+	private static double norm(double[] x) {
+		return Math.sqrt(dot(x, x));
+	}
+
+	private static void axpy(double a, double[] x, double[] y) {
+		for (int i = 0; i < x.length; i++)
+			y[i] += a*x[i];
+	}
+}
@@ -0,0 +1,313 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+
+/**
+ * Find the rows of a data matrix that are within a given distance of each
+ * other without computing the whole distance matrix.
+ *
+ * The rows are mapped to points in a space where a true metric bounds the
+ * distance we're asked about, and the points are put into a vantage-point
+ * tree (see Yianilos, P. (1993). Data structures and algorithms for nearest
+ * neighbor search in general metric spaces. SODA '93, 311-321):
+ * <ul>
+ * <li>Euclidean: the rows themselves, with the L2 norm.  The metric is the
+ * mean squared difference, so eps becomes a radius of sqrt(eps*nColumns).</li>
+ * <li>City-block: the rows themselves, with the L1 norm and a radius of
+ * eps*nColumns.</li>
+ * <li>Correlations: the centered (Pearson) or uncentered rows scaled to unit
+ * length.  For unit vectors 1-r is half of the squared L2 distance, so eps
+ * becomes a radius of sqrt(2*eps).  For the absolute value correlations we
+ * also look around the negated row.</li>
+ * <li>Spearman's rank: the same, using the ranks.</li>
+ * </ul>
+ * The tree only finds candidates: every candidate is checked with the exact
+ * distance from {@link DistanceEngine}, so the results are the same as
+ * thresholding the distance matrix.  Rows with missing values, rows with no
+ * variance (for the correlations), and all of the rows for the other metrics
+ * are checked directly against every query.
+ */
+public class NeighborIndex {
+	// Subtrees of this size or smaller are just scanned
+	private static final int LEAF = 8;
+	// Rows looked up by a single fork-join task in getNeighbors(int[], ...)
+	private static final int BLOCK = 8;
+
+	private final DistanceEngine engine;
+	private final int nRows;
+	private final boolean cityblock;
+	private final boolean absolute;
+
+	// The vantage-point tree.  A subtree is a range of items: the vantage
+	// point is the first item, the rest up to split are inside radius and
+	// the rest after split are outside it.  Both are stored at the first item.
+	private double[][] points;
+	private int[] items;
+	private int[] split;
+	private double[] radius;
+
+	// The rows that aren't in the tree
+	private int[] others;
+
+	/**
+	 * Create the index for the rows of a matrix
+	 *
+	 * @param rows the data, one array per row, with missing values as Double.NaN
+	 * @param metric the distance metric to use
+	 */
+	public NeighborIndex(double[][] rows, DistanceMetric metric) {
+		this.engine = new DistanceEngine(rows, metric);
+		this.nRows = rows.length;
+		this.cityblock = metric == DistanceMetric.CITYBLOCK;
+		this.absolute = metric == DistanceMetric.ABS_CORRELATION ||
+		                metric == DistanceMetric.ABS_UNCENTERED_CORRELATION;
+
+		points = new double[nRows][];
+		for (int row = 0; row < nRows; row++)
+			points[row] = getPoint(row);
+
+		int nItems = 0;
+		int nOthers = 0;
+		items = new int[nRows];
+		others = new int[nRows];
+		for (int row = 0; row < nRows; row++) {
+			if (points[row] != null)
+				items[nItems++] = row;
+			else
+				others[nOthers++] = row;
+		}
+		items = Arrays.copyOf(items, nItems);
+		others = Arrays.copyOf(others, nOthers);
+
+		split = new int[nItems];
+		radius = new double[nItems];
+		build(0, nItems, new double[nItems], new Random(nItems));
+	}
+
+	/**
+	 * Return the rows within eps of a row, in order, not including the row itself
+	 *
+	 * @param row the row
+	 * @param eps the largest distance to include
+	 * @return the neighbors
+	 */
+	public int[] getNeighbors(int row, double eps) {
+		IntList candidates = new IntList();
+		double r = getRadius(eps);
+		if (points[row] != null && r >= 0) {
+			search(0, items.length, points[row], r, candidates);
+			if (absolute)
+				search(0, items.length, negate(points[row]), r, candidates);
+			for (int other: others)
+				candidates.add(other);
+		} else {
+			// We can't use the tree for this row, so check all of them
+			for (int i = 0; i < nRows; i++)
+				candidates.add(i);
+		}
+
+		int[] c = candidates.toArray();
+		Arrays.sort(c);
+		int count = 0;
+		for (int i = 0; i < c.length; i++) {
+			if (c[i] == row || (count > 0 && c[count-1] == c[i]))
+				continue;
+			// Some of the metrics aren't quite symmetric when there are missing
+			// values, so ask in the same order as the distance matrix does
+			if (engine.getDistance(Math.min(row, c[i]), Math.max(row, c[i])) <= eps)
+				c[count++] = c[i];
+		}
+		return Arrays.copyOf(c, count);
+	}
+
+	/**
+	 * Return the neighbors of several rows, found in parallel on the common pool
+	 *
+	 * @param rows the rows to look up
+	 * @param count the number of rows to look up, from the start of rows
+	 * @param eps the largest distance to include
+	 * @return the neighbors of each row (see {@link #getNeighbors}), in the same order
+	 */
+	public int[][] getNeighbors(final int[] rows, int count, final double eps) {
+		final int[][] neighbors = new int[count][];
+		ParallelRange.forEach(0, count, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int i = first; i < last; i++)
+					neighbors[i] = getNeighbors(rows[i], eps);
+			}
+		});
+		return neighbors;
+	}
+
+	// Map a row to its point, or null if it can't go in the tree
+	private double[] getPoint(int row) {
+		if (!engine.isComplete(row) || engine.nColumns() == 0)
+			return null;
+		switch (engine.getMetric()) {
+			case EUCLIDEAN:
+			case CITYBLOCK:
+				return engine.getRow(row);
+			case CORRELATION:
+			case ABS_CORRELATION:
+			case UNCENTERED_CORRELATION:
+			case ABS_UNCENTERED_CORRELATION:
+				if (engine.isConstant(row))
+					return null;
+				return engine.getUnitRow(row);
+			case SPEARMANS_RANK:
+				return unitRanks(engine.getRanks(row));
+			default:
+				return null;
+		}
+	}
+
+	// Center and scale the ranks.  The mean rank is always (n-1)/2.
+	private static double[] unitRanks(double[] ranks) {
+		if (ranks == null)
+			return null;
+		double mean = 0.5*(ranks.length-1);
+		double[] u = new double[ranks.length];
+		double norm = 0.0;
+		for (int i = 0; i < ranks.length; i++) {
+			u[i] = ranks[i] - mean;
+			norm += u[i]*u[i];
+		}
+		if (norm <= 0)
+			return null;
+		norm = Math.sqrt(norm);
+		for (int i = 0; i < u.length; i++)
+			u[i] /= norm;
+		return u;
+	}
+
+	// The search radius in the tree.  This is a little larger than it needs to
+	// be, so rounding can't lose any neighbors.  Negative means nothing is close.
+	private double getRadius(double eps) {
+		if (eps < 0)
+			return -1;
+		double r;
+		switch (engine.getMetric()) {
+			case EUCLIDEAN:
+				r = Math.sqrt(eps*engine.nColumns());
+				break;
+			case CITYBLOCK:
+				r = eps*engine.nColumns();
+				break;
+			default:
+				r = Math.sqrt(2.0*eps);
+				break;
+		}
+		return r*(1.0+1e-9) + 1e-12;
+	}
+
+	private static double[] negate(double[] point) {
+		double[] n = new double[point.length];
+		for (int i = 0; i < point.length; i++)
+			n[i] = -point[i];
+		return n;
+	}
+
+	private double distance(double[] x, double[] y) {
+		double sum = 0.0;
+		if (cityblock) {
+			for (int i = 0; i < x.length; i++)
+				sum += Math.abs(x[i] - y[i]);
+			return sum;
+		}
+		for (int i = 0; i < x.length; i++) {
+			double d = x[i] - y[i];
+			sum += d*d;
+		}
+		return Math.sqrt(sum);
+	}
+
+	// Build the subtree over items[first..last), using dist as scratch space
+	private void build(int first, int last, double[] dist, Random random) {
+		while (last - first > LEAF) {
+			// Pick a random vantage point and move it to the front
+			swap(items, dist, first, first + random.nextInt(last - first));
+			double[] vantage = points[items[first]];
+			for (int i = first+1; i < last; i++)
+				dist[i] = distance(vantage, points[items[i]]);
+
+			// Split the rest at the median distance
+			int middle = (first + 1 + last) >>> 1;
+			select(dist, first+1, last, middle);
+			split[first] = middle;
+			radius[first] = dist[middle];
+
+			build(first+1, middle+1, dist, random);
+			first = middle+1;
+		}
+	}
+
+	private void search(int first, int last, double[] query, double r, IntList result) {
+		while (last - first > LEAF) {
+			double d = distance(query, points[items[first]]);
+			if (d <= r)
+				result.add(items[first]);
+			int middle = split[first];
+			double mu = radius[first];
+			if (d - r <= mu && d + r >= mu) {
+				search(first+1, middle+1, query, r, result);
+				first = middle+1;
+			} else if (d - r <= mu) {
+				last = middle+1;
+				first = first+1;
+			} else {
+				first = middle+1;
+			}
+		}
+		for (int i = first; i < last; i++) {
+			if (distance(query, points[items[i]]) <= r)
+				result.add(items[i]);
+		}
+	}
+
+	// Partially sort items[first..last) by dist so that the k'th is in place
+	private void select(double[] dist, int first, int last, int k) {
+		last--;
+		while (last > first) {
+			double pivot = dist[(first + last) >>> 1];
+			int i = first;
+			int j = last;
+			while (i <= j) {
+				while (dist[i] < pivot) i++;
+				while (dist[j] > pivot) j--;
+				if (i <= j) {
+					swap(items, dist, i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				last = j;
+			else if (k >= i)
+				first = i;
+			else
+				return;
+		}
+	}
+
+	private static void swap(int[] items, double[] dist, int i, int j) {
+		int t = items[i]; items[i] = items[j]; items[j] = t;
+		double d = dist[i]; dist[i] = dist[j]; dist[j] = d;
+	}
+
+	// A growable list of ints
+	static class IntList {
+		int[] values = new int[16];
+		int size = 0;
+
+		void add(int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size*2);
+			values[size++] = value;
+		}
+
+		int[] toArray() { return Arrays.copyOf(values, size); }
+	}
+}
@@ -0,0 +1,81 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Run a body over a range of indices in parallel.  The range is split in half
+ * recursively on a fork-join pool until the pieces are no bigger than a block,
+ * and each piece is handed to the body.  The body is called from several
+ * threads at once, so it should only write to the part of its output that
+ * belongs to the indices it was given.
+ */
+public class ParallelRange {
+	/**
+	 * The work to do for one piece of the range
+	 */
+	public interface Body {
+		/**
+		 * @param first the first index of the piece
+		 * @param last one past the last index of the piece
+		 */
+		void computeRange(int first, int last);
+	}
+
+	private ParallelRange() {}
+
+	/**
+	 * Run body over [first, last) on the common pool
+	 *
+	 * @param first the first index
+	 * @param last one past the last index
+	 * @param block the largest piece to give the body at once
+	 * @param body the work to do
+	 */
+	public static void forEach(int first, int last, int block, Body body) {
+		forEach(ForkJoinPool.commonPool(), first, last, block, body);
+	}
+
+	/**
+	 * Run body over [first, last) on the given pool
+	 *
+	 * @param pool the fork-join pool to run on
+	 * @param first the first index
+	 * @param last one past the last index
+	 * @param block the largest piece to give the body at once
+	 * @param body the work to do
+	 */
+	public static void forEach(ForkJoinPool pool, int first, int last, int block, Body body) {
+		if (last <= first)
+			return;
+		if (last - first <= block) {
+			body.computeRange(first, last);
+			return;
+		}
+		pool.invoke(new RangeTask(first, last, Math.max(block, 1), body));
+	}
+
+	private static class RangeTask extends RecursiveAction {
+		final int first;
+		final int last;
+		final int block;
+		final Body body;
+
+		RangeTask(int first, int last, int block, Body body) {
+			this.first = first;
+			this.last = last;
+			this.block = block;
+			this.body = body;
+		}
+
+		protected void compute() {
+			if (last - first <= block) {
+				body.computeRange(first, last);
+				return;
+			}
+			int middle = (first + last) >>> 1;
+			invokeAll(new RangeTask(first, middle, block, body),
+			          new RangeTask(middle, last, block, body));
+		}
+	}
+}
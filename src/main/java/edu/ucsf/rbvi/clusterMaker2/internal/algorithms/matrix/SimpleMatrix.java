@@ -19,8 +19,13 @@ import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.algo.DoubleStatistic;
 import cern.colt.matrix.tdouble.algo.SmpDoubleBlas;
 
+/**
+ * A simple dense matrix.  The values are stored in a single primitive
+ * array in row-major order (the value at (row, column) is at
+ * data[row*nColumns+column]), and missing values are stored as Double.NaN.
+ */
 public class SimpleMatrix implements Matrix {
-	protected Double[][] data;
+	protected double[] data;
 	protected SmpDoubleBlas blas;
 	private DenseDoubleEigenvalueDecomposition decomp = null;
 	protected int[] index;
@@ -45,18 +50,14 @@ public class SimpleMatrix implements Matrix {
 		symmetric = mat.symmetric;
 		minValue = mat.minValue;
 		maxValue = mat.maxValue;
-		index = Arrays.copyOf(mat.index, mat.index.length);
-		for (int row = 0; row < nRows; row++) {
-			for (int col = colStart(row); col < nColumns; col++) {
-				data[row][col] = mat.data[row][col];
-				if (symmetric && row != col)
-					data[col][row] = mat.data[col][row];
-			}
-		}
+		if (mat.index != null)
+			index = Arrays.copyOf(mat.index, mat.index.length);
+		System.arraycopy(mat.data, 0, data, 0, data.length);
 	}
 
 	public SimpleMatrix(int rows, int columns) {
-		data = new Double[rows][columns];
+		this();
+		data = newData(rows, columns);
 		nRows = rows;
 		nColumns = columns;
 		rowLabels = new String[rows];
@@ -66,24 +67,23 @@ public class SimpleMatrix implements Matrix {
 
 	public SimpleMatrix(SimpleMatrix mat, double[][] inputData) {
 		this();
-		data = new Double[nRows][nColumns];
+		nRows = inputData.length;
+		nColumns = nRows > 0 ? inputData[0].length : 0;
+		data = new double[nRows*nColumns];
 		transposed = mat.transposed;
 		symmetric = mat.symmetric;
 		minValue = mat.minValue;
 		maxValue = mat.maxValue;
 		rowLabels = Arrays.copyOf(mat.rowLabels, mat.rowLabels.length);
 		columnLabels = Arrays.copyOf(mat.columnLabels, mat.columnLabels.length);
-		for (int row = 0; row < nRows; row++) {
-			for (int column = 0; column < nColumns; column++) {
-				this.data[row][column] = inputData[row][column];
-			}
-		}
+		for (int row = 0; row < nRows; row++)
+			System.arraycopy(inputData[row], 0, data, row*nColumns, nColumns);
 	}
 
 	public void initialize(int rows, int columns, double[][] arrayData) {
 		nRows = rows;
 		nColumns = columns;
-		data = new Double[rows][columns];
+		data = newData(rows, columns);
 		if (arrayData != null) {
 			for (int row = 0; row < rows; row++) {
 				for (int col = 0; col < columns; col++) {
@@ -100,7 +100,7 @@ public class SimpleMatrix implements Matrix {
 	public void initialize(int rows, int columns, Double[][] arrayData) {
 		nRows = rows;
 		nColumns = columns;
-		data = new Double[rows][columns];
+		data = newData(rows, columns);
 		if (arrayData != null) {
 			for (int row = 0; row < rows; row++) {
 				for (int col = 0; col < columns; col++) {
@@ -140,10 +140,10 @@ public class SimpleMatrix implements Matrix {
 	 * @return the (possibly null) value at that location
 	 */
 	public Double getValue(int row, int column) { 
-		if (index == null)
-			return data[row][column]; 
-		else
-			return data[index[row]][index[column]]; 
+		double d = doubleValue(row, column);
+		if (Double.isNaN(d))
+			return null;
+		return d;
 	}
 
 	/**
@@ -154,9 +154,10 @@ public class SimpleMatrix implements Matrix {
 	 * @return the value at that location, if it was set, otherwise, return Double.NaN.
 	 */
 	public double doubleValue(int row, int column) {
-		Double d = getValue(row, column);
-		if (d == null) return Double.NaN;
-		return d.doubleValue();
+		if (index == null)
+			return data[row*nColumns+column];
+		else
+			return data[index[row]*nColumns+index[column]];
 	}
 	
 	/**
@@ -174,10 +175,7 @@ public class SimpleMatrix implements Matrix {
 			column = index[column];
 		}
 
-		if (Double.isNaN(value))
-			data[row][column] = null;
-		else
-			data[row][column] = value;
+		data[row*nColumns+column] = value;
 	}
 
 	/**
@@ -197,7 +195,10 @@ public class SimpleMatrix implements Matrix {
 			column = index[column];
 		}
 
-		data[row][column] = value;
+		if (value == null)
+			data[row*nColumns+column] = Double.NaN;
+		else
+			data[row*nColumns+column] = value;
 	}
 
 	/**
@@ -208,10 +209,46 @@ public class SimpleMatrix implements Matrix {
 	 * @return true if this location has a value, false otherwise
 	 */
 	public boolean hasValue(int row, int column) {
-		Double d = getValue(row, column);
-		if (d == null)
-			return false;
-		return true;
+		return !Double.isNaN(doubleValue(row, column));
+	}
+
+	/**
+	 * Return a copy of a row.  Missing values are Double.NaN.
+	 *
+	 * @param row the row to return
+	 * @return the values in the row
+	 */
+	public double[] getRow(int row) {
+		double[] values = new double[index == null ? nColumns : index.length];
+		getRow(row, values);
+		return values;
+	}
+
+	/**
+	 * Copy a row into an existing array.  Missing values are Double.NaN.
+	 *
+	 * @param row the row to copy
+	 * @param values the array to copy the row into
+	 */
+	public void getRow(int row, double[] values) {
+		if (index == null) {
+			System.arraycopy(data, row*nColumns, values, 0, nColumns);
+		} else {
+			int offset = index[row]*nColumns;
+			for (int col = 0; col < index.length; col++)
+				values[col] = data[offset+index[col]];
+		}
+	}
+
+	/**
+	 * Return the underlying data array in row-major order, with missing values
+	 * as Double.NaN.  This is the live array (not a copy), and it does not
+	 * reflect any index on the matrix.
+	 *
+	 * @return the underlying data
+	 */
+	public double[] getData() {
+		return data;
 	}
 	
 	/**
@@ -311,13 +348,11 @@ public class SimpleMatrix implements Matrix {
 		mat.rowLabels = Arrays.copyOf(rowLabels, rowLabels.length);
 		mat.columnLabels = Arrays.copyOf(rowLabels, rowLabels.length);
 
-		for (int row = 0; row < nRows; row++) {
-			for (int column = row; column < this.nRows; column++) {
-				double metValue = metric.getMetric(this, this, row, column);
-				mat.setValue(row, column, metValue);
-				if (row != column)
-					mat.setValue(column, row, metValue);
-			}
+		// Fill the matrix's own storage rather than going through the packed triangle
+		new DistanceEngine(toArray(), metric).getDistances(mat.data);
+		for (double value: mat.data) {
+			if (value < mat.minValue) mat.minValue = value;
+			if (value > mat.maxValue) mat.maxValue = value;
 		}
 		return mat;
 	}
@@ -329,14 +364,9 @@ public class SimpleMatrix implements Matrix {
 	 * @return the data in the matrix
 	 */
 	public double[][] toArray() {
-		double doubleData[][] = new double[nRows][nColumns];
-		for (int row = 0; row < nRows; row++) {
-			for (int col = colStart(row); col < nColumns; col++) {
-				doubleData[row][col] = doubleValue(row, col);
-				if (symmetric && row != col)
-					doubleData[col][row] = doubleValue(row, col);
-			}
-		}
+		double doubleData[][] = new double[nRows()][index == null ? nColumns : index.length];
+		for (int row = 0; row < doubleData.length; row++)
+			getRow(row, doubleData[row]);
 		return doubleData;
 	}
 
@@ -398,14 +428,9 @@ public class SimpleMatrix implements Matrix {
 	 * Set all missing values to zero
 	 */
 	public void setMissingToZero() {
-		for (int row = 0; row < nRows; row++) {
-			for (int col = colStart(row); col < nColumns; col++) {
-				if (data[row][col] == null) {
-					data[row][col] = 0.0d;
-					if (symmetric && row != col)
-						data[col][row] = 0.0d;
-				}
-			}
+		for (int i = 0; i < data.length; i++) {
+			if (Double.isNaN(data[i]))
+				data[i] = 0.0d;
 		}
 	}
 
@@ -414,7 +439,7 @@ public class SimpleMatrix implements Matrix {
 	 */
 	public void adjustDiagonals() {
 		for (int col = 0; col < nColumns; col++ ) {
-			data[col][col] = maxValue;
+			data[col*nColumns+col] = maxValue;
 		}
 	}
 
@@ -425,7 +450,7 @@ public class SimpleMatrix implements Matrix {
 	public void threshold(double thresh) {
 		for (int row = 0; row < nRows; row++) {
 			for (int col = colStart(row); col < nColumns; col++) {
-				if (getValue(row, col) <= thresh)
+				if (doubleValue(row, col) <= thresh)
 					setValue(row, col, 0.0);
 			}
 		}
@@ -443,7 +468,7 @@ public class SimpleMatrix implements Matrix {
 		int nVals = 0;
 		for (int column = 0; column < nColumns; column++) {
 			if (hasValue(row,column))
-				tData[nVals++] = data[row][column];
+				tData[nVals++] = doubleValue(row, column);
 		}
 		//System.out.println("Inside getRank; nVals: "+nVals);
 		if (nVals == 0)
@@ -483,8 +508,8 @@ public class SimpleMatrix implements Matrix {
 		}
 
 		// initialize indexing array to original order
-		index = new int[data.length];
-		for (int i = 0; i < data.length; ++i) {
+		index = new int[nRows];
+		for (int i = 0; i < nRows; ++i) {
 			index[i] = i;
 		}
 	}
@@ -527,12 +552,13 @@ public class SimpleMatrix implements Matrix {
 				if (r == 0)
 					newMatrix.setColumnLabel(c, columnLabels[c+col]);
 
-				newMatrix.data[r][c] = data[r+row][c+col];
-				if (newMatrix.data[r][c] != null) {
-					if (newMatrix.data[r][c] < newMin)
-						newMin = newMatrix.data[r][c];
-					if (newMatrix.data[r][c] > newMax)
-						newMax = newMatrix.data[r][c];
+				double d = data[(r+row)*nColumns+c+col];
+				newMatrix.data[r*cols+c] = d;
+				if (!Double.isNaN(d)) {
+					if (d < newMin)
+						newMin = d;
+					if (d > newMax)
+						newMax = d;
 				}
 			}
 		}
@@ -562,8 +588,8 @@ public class SimpleMatrix implements Matrix {
 		if (nRows != nColumns) {
 			logger.warn("clusterMaker2 SimpleMatrix: attempt to invert an assymetric network");
 		}
-		Double b[][] = new Double[nRows][nColumns];
-		Double x[][] = new Double[nRows][nColumns];
+		double b[][] = new double[nRows][nColumns];
+		double x[] = new double[nRows*nColumns];
 		int idx[] = new int[nRows];
 
 		// Create identity matrix
@@ -583,21 +609,21 @@ public class SimpleMatrix implements Matrix {
 		for (int i = 0; i < nRows-1; ++i) {
 			for (int j=i+1; j < nRows; ++j) {
 				for (int k=0; k < nRows; ++k) {
-					b[idx[j]][k] -= data[idx[j]][i]*b[idx[i]][k];
+					b[idx[j]][k] -= data[idx[j]*nColumns+i]*b[idx[i]][k];
 				}
 			}
 		}
 
 		// Perform backward substitution
 		for (int i = 0; i < nRows; ++i) {
-			x[nRows-1][i] = b[idx[nRows-1]][i]/data[idx[nRows-1]][nRows-1];
+			x[(nRows-1)*nColumns+i] = b[idx[nRows-1]][i]/data[idx[nRows-1]*nColumns+nRows-1];
 			for (int j = nRows-2; j >=0; --j) {
-				x[j][i] = b[idx[j]][i];
+				x[j*nColumns+i] = b[idx[j]][i];
 				for (int k = j+1; k < nRows; ++k) {
-					x[j][i] -= data[idx[j]][k]*x[k][i];
+					x[j*nColumns+i] -= data[idx[j]*nColumns+k]*x[k*nColumns+i];
 				}
 
-				x[j][i] /= data[idx[j]][j];
+				x[j*nColumns+i] /= data[idx[j]*nColumns+j];
 			}
 		}
 		data = x;
@@ -614,8 +640,8 @@ public class SimpleMatrix implements Matrix {
 		maxValue = Double.MIN_VALUE;
 		for (int row = 0; row < nRows; row++) {
 			for (int col = colStart(row); col < nColumns; col++) {
-				Double d = getValue(row, col);
-				if (d == null)
+				double d = doubleValue(row, col);
+				if (Double.isNaN(d))
 					continue;
 				setValue(row, col, (d-min)/span);
 				if (symmetric && col != row)
@@ -634,19 +660,19 @@ public class SimpleMatrix implements Matrix {
 		maxValue = Double.MIN_VALUE;
 		for (int row = 0; row < nRows; row++) {
 			for (int col = colStart(row); col < nColumns; col++) {
-				Double d = getValue(row, col);
-				if (d == null)
+				double d = doubleValue(row, col);
+				if (Double.isNaN(d))
 					continue;
-				sum += d.doubleValue();
+				sum += d;
 				if (symmetric && col != row)
-					sum += d.doubleValue();
+					sum += d;
 			}
 		}
 
 		for (int row = 0; row < nRows; row++) {
 			for (int col = colStart(row); col < nColumns; col++) {
-				Double d = getValue(row, col);
-				if (d == null)
+				double d = doubleValue(row, col);
+				if (Double.isNaN(d))
 					continue;
 				setValue(row, col, d/sum);
 				if (symmetric && col != row)
@@ -663,14 +689,14 @@ public class SimpleMatrix implements Matrix {
 	public void normalizeRow(int row) {
 		double sum = 0.0;
 		for (int col = 0; col < nColumns; col++) {
-			Double d = getValue(row, col);
-			if (d == null)
+			double d = doubleValue(row, col);
+			if (Double.isNaN(d))
 				continue;
-			sum += d.doubleValue();
+			sum += d;
 		}
 		for (int col = 0; col < nColumns; col++) {
-			Double d = getValue(row, col);
-			if (d == null)
+			double d = doubleValue(row, col);
+			if (Double.isNaN(d))
 				continue;
 			setValue(row, col, d/sum);
 		}
@@ -686,15 +712,15 @@ public class SimpleMatrix implements Matrix {
 	public void normalizeColumn(int column) {
 		double sum = 0.0;
 		for (int row = 0; row < nRows; row++) {
-			Double d = getValue(row, column);
-			if (d == null)
+			double d = doubleValue(row, column);
+			if (Double.isNaN(d))
 				continue;
-			sum += d.doubleValue();
+			sum += d;
 		}
 
 		for (int row = 0; row < nRows; row++) {
-			Double d = getValue(row, column);
-			if (d == null)
+			double d = doubleValue(row, column);
+			if (Double.isNaN(d))
 				continue;
 			setValue(row, column, d/sum);
 		}
@@ -707,7 +733,7 @@ public class SimpleMatrix implements Matrix {
 		double variance = rowVariance(row, mean);
 		double stdev = Math.sqrt(variance);
 		for (int column = 0; column < nColumns; column++) {
-			double cell = this.getValue(row, column);
+			double cell = this.doubleValue(row, column);
 			this.setValue(row, column, (cell-mean)/stdev);
 		}
 	}
@@ -717,7 +743,7 @@ public class SimpleMatrix implements Matrix {
 		double variance = columnVariance(column, mean);
 		double stdev = Math.sqrt(variance);
 		for (int row = 0; row < nRows; row++) {
-			double cell = this.getValue(row, column);
+			double cell = this.doubleValue(row, column);
 			this.setValue(row, column, (cell-mean)/stdev);
 		}
 	}
@@ -727,17 +753,17 @@ public class SimpleMatrix implements Matrix {
 			// Replace with parallel function?
 			double mean = 0.0;
 			for(int j=0;j<nRows; j++){
-				double cell = this.getValue(j, i);
+				double cell = this.doubleValue(j, i);
 				if (!Double.isNaN(cell))
 					mean += cell;
 			}
 			mean /= nRows;
 			for(int j=0;j<nRows;j++){
-				double cell = this.getValue(j, i);
+				double cell = this.doubleValue(j, i);
 				if (!Double.isNaN(cell))
 					this.setValue(j, i, cell - mean);
 				else
-					this.setValue(i, j, 0.0d);
+					this.setValue(j, i, 0.0d);
 			}
 		}
 	}
@@ -747,13 +773,13 @@ public class SimpleMatrix implements Matrix {
 			// Replace with parallel function?
 			double mean = 0.0;
 			for(int j=0;j<nColumns; j++){
-				double cell = this.getValue(i, j);
+				double cell = this.doubleValue(i, j);
 				if (!Double.isNaN(cell))
 					mean += cell;
 			}
 			mean /= nColumns;
 			for(int j=0;j<nColumns;j++){
-				double cell = this.getValue(i, j);
+				double cell = this.doubleValue(i, j);
 				if (!Double.isNaN(cell))
 					this.setValue(i, j, cell - mean);
 				else
@@ -765,7 +791,7 @@ public class SimpleMatrix implements Matrix {
 	public double columnSum(int column) {
 		double sum = 0.0;
 		for(int j=0;j<nRows; j++){
-			double cell = this.getValue(j, column);
+			double cell = this.doubleValue(j, column);
 			if (!Double.isNaN(cell))
 				sum += cell;
 		}
@@ -775,7 +801,7 @@ public class SimpleMatrix implements Matrix {
 	public double rowSum(int row) {
 		double sum = 0.0;
 		for(int j=0;j<nColumns; j++){
-			double cell = this.getValue(row, j);
+			double cell = this.doubleValue(row, j);
 			if (!Double.isNaN(cell))
 				sum += cell;
 		}
@@ -785,7 +811,7 @@ public class SimpleMatrix implements Matrix {
 	public double columnMean(int column) {
 		double mean = 0.0;
 		for(int j=0;j<nRows; j++){
-			double cell = this.getValue(j, column);
+			double cell = this.doubleValue(j, column);
 			if (!Double.isNaN(cell))
 				mean += cell;
 		}
@@ -795,7 +821,7 @@ public class SimpleMatrix implements Matrix {
 	public double rowMean(int row) {
 		double mean = 0.0;
 		for(int j=0;j<nColumns; j++){
-			double cell = this.getValue(row, j);
+			double cell = this.doubleValue(row, j);
 			if (!Double.isNaN(cell))
 				mean += cell;
 		}
@@ -810,7 +836,7 @@ public class SimpleMatrix implements Matrix {
 	public double columnVariance(int column, double mean) {
 		double variance = 0.0;
 		for(int j=0;j<nRows; j++){
-			double cell = this.getValue(j, column);
+			double cell = this.doubleValue(j, column);
 			if (!Double.isNaN(cell))
 				variance += Math.pow((cell-mean),2);
 		}
@@ -825,7 +851,7 @@ public class SimpleMatrix implements Matrix {
 	public double rowVariance(int row, double mean) {
 		double variance = 0.0;
 		for(int j=0;j<nColumns; j++){
-			double cell = this.getValue(row, j);
+			double cell = this.doubleValue(row, j);
 			if (!Double.isNaN(cell))
 				variance += Math.pow((cell-mean),2);
 		}
@@ -894,7 +920,7 @@ public class SimpleMatrix implements Matrix {
 		int cardinality = 0;
 		for (int row = 0; row < nRows; row++) {
 			for (int col = colStart(row); col < nColumns; col++) {
-				if (getValue(row, col) != null) {
+				if (hasValue(row, col)) {
 					cardinality++;
 					if (symmetric)
 						cardinality++;
@@ -952,11 +978,8 @@ public class SimpleMatrix implements Matrix {
 		mat.symmetric = true;
 		mat.transposed = this.transposed;
 		double[][]inputData = matrix2D.toArray();
-		for (int row = 0; row < mat.nRows; row++) {
-			for (int column = 0; column < mat.nColumns; column++) {
-				mat.data[row][column] = inputData[row][column];
-			}
-		}
+		for (int row = 0; row < mat.nRows; row++)
+			System.arraycopy(inputData[row], 0, mat.data, row*mat.nColumns, mat.nColumns);
 		String[] labels;
 		if (this.transposed)
 			labels = rowLabels;
@@ -969,7 +992,7 @@ public class SimpleMatrix implements Matrix {
 		return mat;
 	}
 
-	private void gaussian(Double a[][], int idx[]) {
+	private void gaussian(double a[], int idx[]) {
 		int n = idx.length;
 		double c[] = new double[n];
 
@@ -981,7 +1004,7 @@ public class SimpleMatrix implements Matrix {
 		for (int i= 0; i < n; ++i) {
 			double c1 = 0;
 			for (int j=0; j<n; ++j) {
-				double c0 = Math.abs(a[i][j]);
+				double c0 = Math.abs(a[i*n+j]);
 				if (c0 > c1) c1 = c0;
 			}
 			c[i] = c1;
@@ -992,7 +1015,7 @@ public class SimpleMatrix implements Matrix {
 		for (int j=0; j<n-1; ++j) {
 			double pi1 = 0;
 			for (int i=j; i<n; ++i) {
-				double pi0 = Math.abs(a[idx[i]][j]);
+				double pi0 = Math.abs(a[idx[i]*n+j]);
 				pi0 /= c[idx[i]];
 				if (pi0 > pi1) {
 					pi1 = pi0;
@@ -1006,13 +1029,13 @@ public class SimpleMatrix implements Matrix {
 			idx[k] = itmp;
 
 			for (int i = j+1; i<n; ++i) {
-				double pj = a[idx[i]][j]/a[idx[j]][j];
+				double pj = a[idx[i]*n+j]/a[idx[j]*n+j];
 				// Record pivoting ratios below the diagonal
-				a[idx[i]][j] = pj;
+				a[idx[i]*n+j] = pj;
 
 				// Modify other elements accordingly
 				for (int l=j+1; l<n; ++l) {
-					a[idx[i]][l] -= pj*a[idx[j]][l];
+					a[idx[i]*n+l] -= pj*a[idx[j]*n+l];
 				}
 			}
 		}
@@ -1021,16 +1044,21 @@ public class SimpleMatrix implements Matrix {
 	private void updateMinMax() {
 		maxValue = Double.MIN_VALUE;
 		minValue = Double.MAX_VALUE;
-		for (int row = 0; row < nRows; row++) {
-			for (int col = 0; col < nColumns; col++) {
-				Double d = data[row][col];
-				if (d == null) continue;
-				if (d > maxValue) maxValue = d;
-				if (d < minValue) minValue = d;
-			}
+		for (int i = 0; i < data.length; i++) {
+			double d = data[i];
+			if (Double.isNaN(d)) continue;
+			if (d > maxValue) maxValue = d;
+			if (d < minValue) minValue = d;
 		}
 	}
 
+	// Create a data array with all of the values missing
+	private static double[] newData(int rows, int columns) {
+		double[] data = new double[rows*columns];
+		Arrays.fill(data, Double.NaN);
+		return data;
+	}
+
 	private int colStart(int row) {
 		if (!symmetric) return 0;
 		return row;
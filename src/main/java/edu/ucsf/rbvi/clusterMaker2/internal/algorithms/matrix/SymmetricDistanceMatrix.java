@@ -0,0 +1,484 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cytoscape.application.CyUserLog;
+import org.apache.log4j.Logger;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * A symmetric n x n matrix (usually the distances between the rows of a data
+ * matrix) that only stores the upper triangle, including the diagonal, packed
+ * row by row into a single array (see {@link DistanceEngine#packedIndex}).
+ * This takes half of the memory of a full matrix, or a quarter if the values
+ * are stored as floats.  Setting (i,j) also sets (j,i).  Missing values are
+ * stored as NaN.
+ *
+ * Operations that would make the matrix asymmetric (normalizing or
+ * standardizing single rows or columns, inverting) aren't supported.
+ */
+public class SymmetricDistanceMatrix implements Matrix {
+	private double[] data;
+	private float[] floatData;
+	private final int n;
+	private int[] index = null;
+	private String[] labels;
+	private double maxValue = Double.MIN_VALUE;
+	private double minValue = Double.MAX_VALUE;
+	private boolean transposed = false;
+	final Logger logger = Logger.getLogger(CyUserLog.NAME);
+
+	/**
+	 * Create an empty (all missing) matrix
+	 *
+	 * @param n the number of rows (and columns)
+	 * @param useFloat if true, store the values as floats
+	 */
+	public SymmetricDistanceMatrix(int n, boolean useFloat) {
+		this.n = n;
+		long size = (long)n*(n+1)/2;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows for a distance matrix: "+n);
+		if (useFloat) {
+			floatData = new float[(int)size];
+			Arrays.fill(floatData, Float.NaN);
+		} else {
+			data = new double[(int)size];
+			Arrays.fill(data, Double.NaN);
+		}
+		labels = new String[n];
+	}
+
+	/**
+	 * Create the matrix of distances between the rows of a data matrix
+	 *
+	 * @param matrix the data matrix
+	 * @param metric the distance metric to use
+	 */
+	public SymmetricDistanceMatrix(Matrix matrix, DistanceMetric metric) {
+		this(matrix, metric, false);
+	}
+
+	/**
+	 * Create the matrix of distances between the rows of a data matrix
+	 *
+	 * @param matrix the data matrix
+	 * @param metric the distance metric to use
+	 * @param useFloat if true, store the distances as floats
+	 */
+	public SymmetricDistanceMatrix(Matrix matrix, DistanceMetric metric, boolean useFloat) {
+		this.n = matrix.nRows();
+		double[] distances = new DistanceEngine(matrix.toArray(), metric).getDistances();
+		if (useFloat) {
+			floatData = new float[distances.length];
+			for (int k = 0; k < distances.length; k++)
+				floatData[k] = (float)distances[k];
+		} else {
+			data = distances;
+		}
+		if (matrix.getRowLabels() != null)
+			labels = Arrays.copyOf(matrix.getRowLabels(), n);
+		else
+			labels = new String[n];
+		updateMinMax();
+	}
+
+	// Shallow copy with a (possibly) different index
+	private SymmetricDistanceMatrix(SymmetricDistanceMatrix mat, int[] index) {
+		this.n = mat.n;
+		this.data = mat.data;
+		this.floatData = mat.floatData;
+		this.index = index;
+		this.labels = mat.labels;
+		this.maxValue = mat.maxValue;
+		this.minValue = mat.minValue;
+		this.transposed = mat.transposed;
+	}
+
+	public void initialize(int rows, int columns, double[][] arrayData) {
+		logger.warn("clusterMaker2 SymmetricDistanceMatrix: can't re-initialize a distance matrix");
+	}
+
+	public void initialize(int rows, int columns, Double[][] arrayData) {
+		logger.warn("clusterMaker2 SymmetricDistanceMatrix: can't re-initialize a distance matrix");
+	}
+
+	public int nRows() {
+		if (index != null)
+			return index.length;
+		return n;
+	}
+
+	public int nColumns() { return nRows(); }
+
+	public Double getValue(int row, int column) {
+		double d = doubleValue(row, column);
+		if (Double.isNaN(d))
+			return null;
+		return d;
+	}
+
+	public double doubleValue(int row, int column) {
+		if (index != null) {
+			row = index[row];
+			column = index[column];
+		}
+		int k = DistanceEngine.packedIndex(row, column, n);
+		if (data != null)
+			return data[k];
+		return floatData[k];
+	}
+
+	public void setValue(int row, int column, double value) {
+		if (value < minValue) minValue = value;
+		if (value > maxValue) maxValue = value;
+		if (index != null) {
+			row = index[row];
+			column = index[column];
+		}
+		int k = DistanceEngine.packedIndex(row, column, n);
+		if (data != null)
+			data[k] = value;
+		else
+			floatData[k] = (float)value;
+	}
+
+	public void setValue(int row, int column, Double value) {
+		if (value == null)
+			setValue(row, column, Double.NaN);
+		else
+			setValue(row, column, value.doubleValue());
+	}
+
+	public boolean hasValue(int row, int column) {
+		return !Double.isNaN(doubleValue(row, column));
+	}
+
+	/**
+	 * Copy a row into an existing array
+	 *
+	 * @param row the row to copy
+	 * @param values the array to copy the row into
+	 */
+	public void getRow(int row, double[] values) {
+		for (int column = 0; column < values.length; column++)
+			values[column] = doubleValue(row, column);
+	}
+
+	/**
+	 * Return true if the values are stored as floats
+	 *
+	 * @return true if the values are floats
+	 */
+	public boolean isFloat() { return floatData != null; }
+
+	public String[] getColumnLabels() { return labels; }
+
+	public String getColumnLabel(int col) { return getRowLabel(col); }
+
+	public void setColumnLabel(int col, String label) { setRowLabel(col, label); }
+
+	public void setColumnLabels(List<String>labelList) { setRowLabels(labelList); }
+
+	public String[] getRowLabels() { return labels; }
+
+	public String getRowLabel(int row) {
+		if (index != null)
+			row = index[row];
+		return labels[row];
+	}
+
+	public void setRowLabel(int row, String label) {
+		if (index != null)
+			row = index[row];
+		labels[row] = label;
+	}
+
+	public void setRowLabels(List<String>labelList) {
+		labels = labelList.toArray(new String[0]);
+	}
+
+	/**
+	 * Return the distances between the rows of this matrix
+	 *
+	 * @param metric the distance metric to use
+	 * @return the distances
+	 */
+	public Matrix getDistanceMatrix(DistanceMetric metric) {
+		return new SymmetricDistanceMatrix(this, metric, isFloat());
+	}
+
+	public double[][] toArray() {
+		int rows = nRows();
+		double[][] array = new double[rows][rows];
+		for (int row = 0; row < rows; row++) {
+			for (int column = row; column < rows; column++) {
+				double d = doubleValue(row, column);
+				array[row][column] = d;
+				array[column][row] = d;
+			}
+		}
+		return array;
+	}
+
+	public double getMaxValue() { return maxValue; }
+
+	public double getMinValue() { return minValue; }
+
+	public boolean isTransposed() { return transposed; }
+
+	public void setTransposed(boolean transposed) { this.transposed = transposed; }
+
+	public boolean isSymmetrical() { return true; }
+
+	public void setSymmetrical(boolean symmetrical) {
+		if (!symmetrical)
+			logger.warn("clusterMaker2 SymmetricDistanceMatrix: a distance matrix is always symmetrical");
+	}
+
+	public void setMissingToZero() {
+		if (data != null) {
+			for (int k = 0; k < data.length; k++)
+				if (Double.isNaN(data[k])) data[k] = 0.0;
+		} else {
+			for (int k = 0; k < floatData.length; k++)
+				if (Float.isNaN(floatData[k])) floatData[k] = 0.0f;
+		}
+	}
+
+	public void adjustDiagonals() {
+		for (int row = 0; row < nRows(); row++)
+			setValue(row, row, maxValue);
+	}
+
+	public double[] getRank(int row) {
+		return toSimpleMatrix().getRank(row);
+	}
+
+	public Matrix copy() {
+		SymmetricDistanceMatrix mat = new SymmetricDistanceMatrix(this, index == null ? null : Arrays.copyOf(index, index.length));
+		if (data != null)
+			mat.data = Arrays.copyOf(data, data.length);
+		else
+			mat.floatData = Arrays.copyOf(floatData, floatData.length);
+		mat.labels = Arrays.copyOf(labels, labels.length);
+		return mat;
+	}
+
+	public void index() {
+		index = new int[n];
+		for (int i = 0; i < n; i++)
+			index[i] = i;
+	}
+
+	/**
+	 * Create a shallow copy of the matrix with an alternative
+	 * index.  This is an efficient way to access submatrices
+	 */
+	public Matrix submatrix(int[] index) {
+		return new SymmetricDistanceMatrix(this, index);
+	}
+
+	public Matrix submatrix(int row, int col, int rows, int cols) {
+		if (row == col && rows == cols) {
+			int[] newIndex = new int[rows];
+			for (int i = 0; i < rows; i++)
+				newIndex[i] = (index == null) ? row+i : index[row+i];
+			return new SymmetricDistanceMatrix(this, newIndex);
+		}
+		return toSimpleMatrix().submatrix(row, col, rows, cols);
+	}
+
+	public void invertMatrix() {
+		logger.warn("clusterMaker2 SymmetricDistanceMatrix: can't invert a distance matrix in place");
+	}
+
+	public void normalize() {
+		double span = maxValue - minValue;
+		double min = minValue;
+		if (data != null) {
+			for (int k = 0; k < data.length; k++)
+				data[k] = (data[k]-min)/span;
+		} else {
+			for (int k = 0; k < floatData.length; k++)
+				floatData[k] = (float)((floatData[k]-min)/span);
+		}
+		updateMinMax();
+	}
+
+	public void normalizeMatrix() {
+		double sum = 0.0;
+		int rows = nRows();
+		for (int row = 0; row < rows; row++) {
+			for (int column = row; column < rows; column++) {
+				double d = doubleValue(row, column);
+				if (Double.isNaN(d)) continue;
+				sum += (row == column) ? d : 2*d;
+			}
+		}
+		if (data != null) {
+			for (int k = 0; k < data.length; k++)
+				data[k] /= sum;
+		} else {
+			for (int k = 0; k < floatData.length; k++)
+				floatData[k] /= sum;
+		}
+		updateMinMax();
+	}
+
+	public void normalizeRow(int row) { asymmetric("normalizeRow"); }
+	public void normalizeColumn(int column) { asymmetric("normalizeColumn"); }
+	public void standardizeRow(int row) { asymmetric("standardizeRow"); }
+	public void standardizeColumn(int column) { asymmetric("standardizeColumn"); }
+	public void centralizeRows() { asymmetric("centralizeRows"); }
+	public void centralizeColumns() { asymmetric("centralizeColumns"); }
+
+	public double rowSum(int row) {
+		double sum = 0.0;
+		for (int column = 0; column < nRows(); column++) {
+			double d = doubleValue(row, column);
+			if (!Double.isNaN(d))
+				sum += d;
+		}
+		return sum;
+	}
+
+	// The matrix is symmetric, so rows and columns are the same
+	public double columnSum(int column) { return rowSum(column); }
+
+	public double rowMean(int row) { return rowSum(row)/nRows(); }
+
+	public double columnMean(int column) { return rowMean(column); }
+
+	public double rowVariance(int row) {
+		double mean = rowMean(row);
+		double variance = 0.0;
+		for (int column = 0; column < nRows(); column++) {
+			double d = doubleValue(row, column);
+			if (!Double.isNaN(d))
+				variance += (d-mean)*(d-mean);
+		}
+		return variance/nRows();
+	}
+
+	public double columnVariance(int column) { return rowVariance(column); }
+
+	public int cardinality() {
+		int cardinality = 0;
+		int rows = nRows();
+		for (int row = 0; row < rows; row++) {
+			for (int column = row; column < rows; column++) {
+				if (hasValue(row, column))
+					cardinality += (row == column) ? 1 : 2;
+			}
+		}
+		return cardinality;
+	}
+
+	public Matrix multiplyMatrix(Matrix matrix) { return toSimpleMatrix().multiplyMatrix(matrix); }
+
+	public Matrix covariance() { return toSimpleMatrix().covariance(); }
+
+	public Matrix correlation() { return toSimpleMatrix().correlation(); }
+
+	public void threshold() {
+		threshold(Math.sqrt(Math.pow(2, -52)));
+	}
+
+	public void threshold(double thresh) {
+		if (data != null) {
+			for (int k = 0; k < data.length; k++)
+				if (data[k] <= thresh) data[k] = 0.0;
+		} else {
+			for (int k = 0; k < floatData.length; k++)
+				if (floatData[k] <= thresh) floatData[k] = 0.0f;
+		}
+	}
+
+	public double[] eigenValues(boolean nonZero) { return toSimpleMatrix().eigenValues(nonZero); }
+
+	public double[][] eigenVectors() { return toSimpleMatrix().eigenVectors(); }
+
+	public String printMatrixInfo() {
+		String s = "Symmetric Distance Matrix("+nRows()+", "+nRows()+")\n";
+		s += " stored as "+(isFloat() ? "float" : "double")+"s\n";
+		return s;
+	}
+
+	public String printMatrix() {
+		StringBuilder sb = new StringBuilder();
+		int rows = nRows();
+		sb.append("SymmetricDistanceMatrix("+rows+", "+rows+")\n\t");
+		for (int col = 0; col < rows; col++) {
+			sb.append(getColumnLabel(col)+"\t");
+		}
+		sb.append("\n");
+		for (int row = 0; row < rows; row++) {
+			sb.append(getRowLabel(row)+":\t");
+			for (int col = 0; col < rows; col++) {
+				sb.append(""+getValue(row,col)+"\t");
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	public void writeMatrix(String fileName) {
+		String tmpDir = System.getProperty("java.io.tmpdir");
+		try{
+			File file = new File(tmpDir + fileName);
+			if(!file.exists()) {
+				file.createNewFile();
+			}
+			PrintWriter writer = new PrintWriter(tmpDir + fileName, "UTF-8");
+			writer.write(printMatrix());
+			writer.close();
+		}catch(IOException e){
+			e.printStackTrace(System.out);
+		}
+	}
+
+	public DoubleMatrix2D getColtMatrix() { return toSimpleMatrix().getColtMatrix(); }
+
+	/**
+	 * Return a full (square) copy of this matrix
+	 *
+	 * @return the full matrix
+	 */
+	public SimpleMatrix toSimpleMatrix() {
+		int rows = nRows();
+		SimpleMatrix mat = new SimpleMatrix(rows, rows);
+		mat.initialize(rows, rows, toArray());
+		mat.symmetric = true;
+		mat.transposed = transposed;
+		for (int row = 0; row < rows; row++) {
+			mat.rowLabels[row] = getRowLabel(row);
+			mat.columnLabels[row] = getRowLabel(row);
+		}
+		return mat;
+	}
+
+	private void asymmetric(String operation) {
+		logger.warn("clusterMaker2 SymmetricDistanceMatrix: "+operation+" would make the matrix asymmetric");
+	}
+
+	private void updateMinMax() {
+		maxValue = Double.MIN_VALUE;
+		minValue = Double.MAX_VALUE;
+		int size = (data != null) ? data.length : floatData.length;
+		for (int k = 0; k < size; k++) {
+			double d = (data != null) ? data[k] : floatData[k];
+			if (Double.isNaN(d)) continue;
+			if (d > maxValue) maxValue = d;
+			if (d < minValue) minValue = d;
+		}
+	}
+}
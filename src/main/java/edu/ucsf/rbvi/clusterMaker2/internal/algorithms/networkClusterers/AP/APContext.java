@@ -62,6 +62,12 @@ public class APContext implements ClusterAlgorithmContext {
 	@Tunable(description = "Number of iterations",
 	         groups={"AP Tuning"},gravity=3.0)
 	public int rNumber = 8;
+
+	@Tunable(description = "Stop when exemplars are unchanged for this many iterations",
+	         tooltip = "<html>Stop early once the exemplars haven't changed for this many<br/>"+
+	                   "iterations in a row.  Set to 0 to always run all of the iterations.</html>",
+	         groups={"AP Tuning"},gravity=4.0)
+	public int convergenceIterations = 5;
 	       
 	@ContainsTunables
 	public EdgeAttributeHandler edgeAttributeHandler;
@@ -87,6 +93,7 @@ public class APContext implements ClusterAlgorithmContext {
 		lambda = origin.lambda;
 		preference = origin.preference;
 		rNumber = origin.rNumber;
+		convergenceIterations = origin.convergenceIterations;
 	}
 
 	public void setNetwork(CyNetwork network) {
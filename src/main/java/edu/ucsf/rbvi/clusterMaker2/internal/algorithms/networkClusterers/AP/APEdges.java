@@ -0,0 +1,135 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.AP;
+
+import cern.colt.function.tdouble.IntIntDoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
+
+/**
+ * The similarities AP passes messages along, stored as a compressed sparse row
+ * edge list.  Every row has an entry on the diagonal (the preference), plus one
+ * entry for each non-zero similarity.  The responsibility and availability
+ * messages are stored per edge, in the same order, so an iteration is linear
+ * in the number of edges rather than the size of the matrix.  Each row is
+ * sorted by column, and the edges are also indexed by column, sorted by row.
+ */
+public class APEdges {
+	// Number of rows (or columns) handled by a single fork-join task
+	private static final int BLOCK = 256;
+
+	private final int n;
+	private final int[] rowStart;
+	private final int[] column;
+	private final double[] similarity;
+	private final int[] diagonal;
+	private final int[] columnStart;
+	private final int[] columnEdge;
+
+	/**
+	 * Create the edge list from a similarity matrix
+	 *
+	 * @param s_matrix the similarities.  The diagonal is ignored.
+	 * @param preference the preference for each node to be an exemplar
+	 */
+	public APEdges(DoubleMatrix2D s_matrix, double preference) {
+		n = s_matrix.rows();
+
+		// Collect the off-diagonal non-zeros
+		int nnz = s_matrix.cardinality();
+		final int[] rows = new int[nnz];
+		final int[] columns = new int[nnz];
+		final double[] values = new double[nnz];
+		final int[] count = new int[1];
+		s_matrix.forEachNonZero(
+			new IntIntDoubleFunction() {
+				public double apply(int row, int col, double value) {
+					if (row != col) {
+						rows[count[0]] = row;
+						columns[count[0]] = col;
+						values[count[0]] = value;
+						count[0]++;
+					}
+					return value;
+				}
+			}
+		);
+		int size = count[0] + n;
+
+		// Bucket the entries by column, with the diagonal in with them, so that
+		// filling the rows in column order leaves every row sorted
+		columnStart = new int[n+1];
+		for (int i = 0; i < count[0]; i++)
+			columnStart[columns[i]+1]++;
+		for (int col = 0; col < n; col++)
+			columnStart[col+1] += columnStart[col] + 1;
+		int[] byColumn = new int[size];
+		int[] fill = new int[n];
+		for (int col = 0; col < n; col++) {
+			fill[col] = columnStart[col];
+			byColumn[fill[col]++] = -col-1;
+		}
+		for (int i = 0; i < count[0]; i++)
+			byColumn[fill[columns[i]]++] = i;
+
+		rowStart = new int[n+1];
+		for (int i = 0; i < count[0]; i++)
+			rowStart[rows[i]+1]++;
+		for (int row = 0; row < n; row++)
+			rowStart[row+1] += rowStart[row] + 1;
+		column = new int[size];
+		similarity = new double[size];
+		diagonal = new int[n];
+		columnEdge = new int[size];
+		for (int row = 0; row < n; row++)
+			fill[row] = rowStart[row];
+		for (int col = 0; col < n; col++) {
+			for (int k = columnStart[col]; k < columnStart[col+1]; k++) {
+				int i = byColumn[k];
+				int row = i < 0 ? col : rows[i];
+				int edge = fill[row]++;
+				column[edge] = col;
+				if (i < 0) {
+					similarity[edge] = preference;
+					diagonal[row] = edge;
+				} else {
+					similarity[edge] = values[i];
+				}
+			}
+		}
+
+		// Now index the edges by column.  Going through the rows in order
+		// leaves each column sorted by row.
+		for (int col = 0; col < n; col++)
+			fill[col] = columnStart[col];
+		for (int row = 0; row < n; row++) {
+			for (int edge = rowStart[row]; edge < rowStart[row+1]; edge++)
+				columnEdge[fill[column[edge]]++] = edge;
+		}
+	}
+
+	public int nRows() { return n; }
+	public int size() { return column.length; }
+
+	public int[] getRowStart() { return rowStart; }
+	public int[] getColumns() { return column; }
+	public double[] getSimilarities() { return similarity; }
+
+	/**
+	 * The edges in each column are columnEdge[columnStart[col]] up to
+	 * columnEdge[columnStart[col+1]]
+	 */
+	public int[] getColumnStart() { return columnStart; }
+	public int[] getColumnEdges() { return columnEdge; }
+
+	/**
+	 * Return the edge on the diagonal of a row
+	 */
+	public int getDiagonal(int row) { return diagonal[row]; }
+
+	/**
+	 * Run a body over all of the rows (or columns) in parallel
+	 */
+	public void parallel(ParallelRange.Body body) {
+		ParallelRange.forEach(0, n, BLOCK, body);
+	}
+}
@@ -1,72 +1,62 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.AP;
 
-import cern.colt.function.tdouble.IntIntDoubleFunction;
-import cern.colt.matrix.tdouble.DoubleFactory2D;
-import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
 
 public class AvailabilityMatrix extends APMatrix {
-	private DoubleMatrix1D evidenceVector = null;
+	private double[] evidenceVector = null;
 
-	public AvailabilityMatrix (DoubleMatrix2D s_matrix, double lambda) {
-		super(s_matrix, lambda);
+	public AvailabilityMatrix (APEdges edges, double lambda) {
+		super(edges, lambda);
 	}
 
 	public double getEvidence (int row) {
 		if (evidenceVector == null) {
 			updateEvidence();
 		}
-		return evidenceVector.get(row);
+		return evidenceVector[row];
 	}
 
+	// The largest availability plus similarity each row has to the other columns
 	public void updateEvidence () { 
-		evidenceVector = DoubleFactory1D.dense.make(s_matrix.rows());
-		evidenceVector.assign(-Double.MAX_VALUE);
-		s_matrix.forEachNonZero(new CalculateEvidence(evidenceVector));
+		final double[] evidence = new double[edges.nRows()];
+		final int[] rowStart = edges.getRowStart();
+		final double[] similarity = edges.getSimilarities();
+		edges.parallel(new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int row = first; row < last; row++) {
+					double max = -Double.MAX_VALUE;
+					int diagonal = edges.getDiagonal(row);
+					for (int edge = rowStart[row]; edge < rowStart[row+1]; edge++) {
+						if (edge != diagonal)
+							max = Math.max(max, values[edge]+similarity[edge]);
+					}
+					evidence[row] = max;
+				}
+			}
+		});
+		evidenceVector = evidence;
 		// printVector("Availability evidence: ", evidenceVector);
 	}
 
-	public void update(ResponsibilityMatrix r_matrix) {
-		s_matrix.forEachNonZero(new UpdateAvailability(r_matrix));
-	}
-
-	//
-	// These inner classes are used for the "forEachNonZero" calls...
-	//
-	class CalculateEvidence implements IntIntDoubleFunction {
-		DoubleMatrix1D maxVector;
-
-		public CalculateEvidence(DoubleMatrix1D maxMat) {
-			this.maxVector = maxMat;
-		}
-
-		public double apply(int row, int col, double value) {
-			if (row != col) {
-				maxVector.set(row, Math.max(maxVector.get(row),get(row,col)+value));
+	public void update(final ResponsibilityMatrix r_matrix) {
+		final int[] rowStart = edges.getRowStart();
+		final int[] column = edges.getColumns();
+		edges.parallel(new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int row = first; row < last; row++) {
+					for (int edge = rowStart[row]; edge < rowStart[row+1]; edge++) {
+						int col = column[edge];
+						double newValue;
+						if (row != col)
+							newValue = Math.min(0.0, r_matrix.get(edges.getDiagonal(col)) + r_matrix.getEvidence(col) -
+							                         Math.max(0.0, r_matrix.get(edge)));
+						else
+							newValue = r_matrix.getEvidence(col);
+
+						setDamped(edge, newValue);
+					}
+				}
 			}
-
-			return value;
-		}
-	}
-
-	class UpdateAvailability implements IntIntDoubleFunction {
-		ResponsibilityMatrix rMatrix;
-
-		public UpdateAvailability(ResponsibilityMatrix responsibilityMatrix) {
-			rMatrix = responsibilityMatrix;
-		}
-
-		public double apply(int row, int col, double value) {
-			double newValue;
-			if (row != col)
-				newValue = Math.min(0.0, rMatrix.get(col, col) + rMatrix.getEvidence(col) - Math.max(0.0, rMatrix.get(row,col)));
-			else
-				newValue = rMatrix.getEvidence(col);
-
-			setDamped(row, col, newValue);
-
-			return value;
-		}
+		});
 	}
 }
@@ -1,70 +1,56 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.AP;
 
-import cern.colt.function.tdouble.IntIntDoubleFunction;
-import cern.colt.matrix.tdouble.DoubleFactory2D;
-import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
-
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
 
 public class ResponsibilityMatrix extends APMatrix {
-	private DoubleMatrix1D evidenceVector = null;
+	private double[] evidenceVector = null;
 
-	public ResponsibilityMatrix (DoubleMatrix2D s_matrix, double lambda) {
-		super(s_matrix, lambda);
+	public ResponsibilityMatrix (APEdges edges, double lambda) {
+		super(edges, lambda);
 	}
 
 	public double getEvidence (int col) {
 		if (evidenceVector == null) {
 			updateEvidence();
 		}
-		return evidenceVector.get(col);
+		return evidenceVector[col];
 	}
 
+	// The sum of the positive responsibilities each column gets from the other rows
 	public void updateEvidence () { 
-		evidenceVector = DoubleFactory1D.dense.make(s_matrix.columns());
-		s_matrix.forEachNonZero(new CalculateEvidence(evidenceVector));
+		final double[] evidence = new double[edges.nRows()];
+		final int[] columnStart = edges.getColumnStart();
+		final int[] columnEdge = edges.getColumnEdges();
+		edges.parallel(new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int col = first; col < last; col++) {
+					double sum = 0.0;
+					for (int k = columnStart[col]; k < columnStart[col+1]; k++) {
+						int edge = columnEdge[k];
+						if (edge != edges.getDiagonal(col))
+							sum += Math.max(0.0, values[edge]);
+					}
+					evidence[col] = sum;
+				}
+			}
+		});
+		evidenceVector = evidence;
 		// printVector("Responsibility evidence: ", evidenceVector);
 	}
 
-	public void update(AvailabilityMatrix a_matrix) {
-		s_matrix.forEachNonZero(new UpdateResponsibility(a_matrix));
-	}
-	
-	class UpdateResponsibility implements IntIntDoubleFunction {
-		AvailabilityMatrix a_matrix;
-
-		public UpdateResponsibility(AvailabilityMatrix a_matrix) {
-			this.a_matrix = a_matrix;
-		}
-
-		public double apply(int row, int col, double value) {
-			double newValue;
-			if (row != col)
-				newValue = value - a_matrix.getEvidence(row);
-			else
-				newValue = s_matrix.get(row, col) - a_matrix.getEvidence(row);
-
-			// Damp
-			setDamped(row, col, newValue);
-
-			return value;
-		}
-	}
-
-	class CalculateEvidence implements IntIntDoubleFunction {
-		DoubleMatrix1D maxVector;
-
-		public CalculateEvidence(DoubleMatrix1D maxMat) {
-			maxVector = maxMat;
-		}
-
-		public double apply(int row, int col, double value) {
-			if (row != col) {
-				maxVector.set(col, maxVector.get(col) + Math.max(0.0, get(row, col)));
+	public void update(final AvailabilityMatrix a_matrix) {
+		final int[] rowStart = edges.getRowStart();
+		final double[] similarity = edges.getSimilarities();
+		edges.parallel(new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int row = first; row < last; row++) {
+					double evidence = a_matrix.getEvidence(row);
+					for (int edge = rowStart[row]; edge < rowStart[row+1]; edge++) {
+						// Damp
+						setDamped(edge, similarity[edge] - evidence);
+					}
+				}
 			}
-			return value;
-		}
+		});
 	}
-
 }
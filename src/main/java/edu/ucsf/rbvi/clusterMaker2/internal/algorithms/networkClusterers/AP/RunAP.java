@@ -1,48 +1,46 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.AP;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import org.cytoscape.model.CyEdge;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.work.TaskMonitor;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.NodeCluster;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 
 
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
 
 public class RunAP {
 	private double lambda; /*lambda value from 0 to 1 dampens messages passed to avoid numberical oscillation*/
 	private double pref; //preference parameter determines cluster density. Larger Parameter equals more Clusters. If < 0, automatically set to avg edge_weight threshold
 	private int number_iterations; //number of inflation/expansion cycles
+	private int convergenceIterations; //stop once the exemplars haven't changed for this many iterations
 
 	//private double clusteringThresh; Threshold used to remove weak edges between distinct clusters
 	//private double maxResidual; The maximum residual to look for
 
 	private List<CyNode> nodes;
-	private List<CyEdge> edges;
 	private boolean canceled = false;
 	private TaskMonitor monitor;
 	protected int clusterCount = 0;
 	private CyMatrix distanceMatrix = null;
 	private ResponsibilityMatrix r_matrix = null;
 	private AvailabilityMatrix a_matrix = null;
-	private DoubleMatrix2D s_matrix = null;
-	private DoubleMatrix1D pref_vector = null;
+	private APEdges edges = null;
 	private boolean debug;
 
 	public RunAP( CyMatrix dMat,
 	              double lambdaParameter, double preferenceParameter, int num_iterations, 
-	              TaskMonitor monitor, boolean debug)
+	              int convergenceIterations, TaskMonitor monitor, boolean debug)
 	{
 		this.distanceMatrix = dMat;
+		this.monitor = monitor;
 
 		this.lambda = lambdaParameter;
 		this.pref = preferenceParameter;
@@ -55,18 +53,16 @@ public class RunAP {
 			lambda = 1;
 
 		this.number_iterations = num_iterations;
+		this.convergenceIterations = convergenceIterations;
 		
 		nodes = distanceMatrix.getRowNodes();
-		this.s_matrix = distanceMatrix.getColtMatrix();
 
-		// Assign the preference vector to the diagonal
-		for (int row = 0; row < s_matrix.rows(); row++) {
-			s_matrix.set(row, row, pref);
-		}
+		// Messages are only passed along the edges, with the preference on the diagonal
+		edges = new APEdges(distanceMatrix.getColtMatrix(), pref);
 
 		// System.out.println("lambda = "+lambda);
-		r_matrix = new ResponsibilityMatrix(s_matrix, lambda);
-		a_matrix = new AvailabilityMatrix(s_matrix, lambda);
+		r_matrix = new ResponsibilityMatrix(edges, lambda);
+		a_matrix = new AvailabilityMatrix(edges, lambda);
 
 		// logger.info("Iterations = "+num_iterations);
 	}
@@ -86,6 +82,8 @@ public class RunAP {
 		}
 		*/
 		
+		int[] exemplars = null;
+		int stableIterations = 0;
 		for (int i=0; i<number_iterations; i++)
 		{
 			monitor.showMessage(TaskMonitor.Level.INFO,"Exchanging messages: iteration "+i);
@@ -96,17 +94,35 @@ public class RunAP {
 				return null;
 			}
 			monitor.setProgress((double)i/(double)number_iterations);
+
+			if (convergenceIterations > 0) {
+				// Stop as soon as the exemplars have settled down
+				int[] newExemplars = getExemplars();
+				if (exemplars != null && Arrays.equals(exemplars, newExemplars))
+					stableIterations++;
+				else
+					stableIterations = 0;
+				exemplars = newExemplars;
+				if (stableIterations >= convergenceIterations) {
+					monitor.showMessage(TaskMonitor.Level.INFO,"Converged after "+(i+1)+" iterations");
+					break;
+				}
+			}
 		}
 
+		if (exemplars == null)
+			exemplars = getExemplars();
+
 		if (debug) {
-			for (int i = 0; i < s_matrix.rows(); i++) {
-				monitor.showMessage(TaskMonitor.Level.INFO,"Node "+nodes.get(i)+" has exemplar "+get_exemplar(i));
+			for (int i = 0; i < edges.nRows(); i++) {
+				monitor.showMessage(TaskMonitor.Level.INFO,"Node "+nodes.get(i)+" has exemplar "+exemplars[i]);
 			}
 		}
 
 		monitor.showMessage(TaskMonitor.Level.INFO,"Assigning nodes to clusters");
 
-		Map<Integer, NodeCluster> clusterMap = getClusterMap();
+		Map<Integer, NodeCluster> clusterMap = getClusterMap(exemplars);
+		clusterCount = clusterMap.size();
 
 		//Update node attributes in network to include clusters. Create cygroups from clustered nodes
 		monitor.showMessage(TaskMonitor.Level.INFO,"Created "+clusterMap.size()+" clusters");
@@ -117,11 +133,8 @@ public class RunAP {
 		}
 
 		int clusterNumber = 1;
-		Map<NodeCluster,NodeCluster> cMap = new HashMap<NodeCluster,NodeCluster>();
-		for (NodeCluster cluster: NodeCluster.sortMap(clusterMap)) {
-			if (cMap.containsKey(cluster))
-				continue;
-
+		List<NodeCluster> clusters = NodeCluster.sortMap(clusterMap);
+		for (NodeCluster cluster: clusters) {
 			if (debug) {
 				monitor.showMessage(TaskMonitor.Level.INFO, "Cluster "+clusterNumber);
 				String s = "";
@@ -131,13 +144,10 @@ public class RunAP {
 				monitor.showMessage(TaskMonitor.Level.INFO, s);
 			}
 
-			cMap.put(cluster,cluster);
-
 			cluster.setClusterNumber(clusterNumber);
 			clusterNumber++;
 		}
 
-		Set<NodeCluster>clusters = cMap.keySet();
 		return new ArrayList<NodeCluster>(clusters);
 	}	
 
@@ -175,88 +185,87 @@ public class RunAP {
 	}
 
 	
-	//return exemplar k for element i => Maximizer of a(i,k) + r(i,k)
-	private int get_exemplar(int i) {
-	
-		double max_value = -1000;
-		int exemplar = 0;
-		double sum;
-
-		for(int k = 0; k < s_matrix.rows(); k++) {
-			sum = a_matrix.get(i,k) + r_matrix.get(i,k);
-
-			if(sum > max_value){
-				max_value = sum;
-				exemplar = k;
+	/**
+	 * Find the exemplar k for each element i, the maximizer of a(i,k) + r(i,k).
+	 * Only the edges of i (including i itself) are candidates, so this is a
+	 * single pass over the edges.  Ties go to the lowest k.
+	 *
+	 * @return the exemplar of each element
+	 */
+	private int[] getExemplars() {
+		final int[] exemplars = new int[edges.nRows()];
+		final int[] rowStart = edges.getRowStart();
+		final int[] column = edges.getColumns();
+		final double[] a = a_matrix.getValues();
+		final double[] r = r_matrix.getValues();
+		edges.parallel(new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int i = first; i < last; i++) {
+					double max_value = -Double.MAX_VALUE;
+					int exemplar = i;
+					for (int edge = rowStart[i]; edge < rowStart[i+1]; edge++) {
+						double sum = a[edge] + r[edge];
+						if (sum > max_value) {
+							max_value = sum;
+							exemplar = column[edge];
+						}
+					}
+					exemplars[i] = exemplar;
+				}
 			}
-		}
-		if (debug)
-			monitor.showMessage(TaskMonitor.Level.INFO, "Exemplar for "+i+" is "+exemplar);
-	  return exemplar;
+		});
+		return exemplars;
 	}
 
-	private Map<Integer, NodeCluster> getClusterMap(){
-	    
-		HashMap<Integer, NodeCluster> clusterMap = new HashMap<Integer, NodeCluster>();
+	/**
+	 * Each element is in the same cluster as its exemplar, so the clusters
+	 * are the connected components of the exemplar assignments, which we
+	 * find with a union-find over the elements.
+	 *
+	 * @param exemplars the exemplar of each element
+	 * @return the clusters, keyed by the index of their root
+	 */
+	private Map<Integer, NodeCluster> getClusterMap(int[] exemplars) {
+		int n = exemplars.length;
+		int[] parent = new int[n];
+		int[] size = new int[n];
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+			size[i] = 1;
+		}
 
-		for(int i = 0; i < s_matrix.rows(); i++){
-		
-			int exemplar = get_exemplar(i);
-			// System.out.println("Examplar for node "+i+" is "+exemplar);
-		    
-			if (clusterMap.containsKey(exemplar)) {
-				if (i == exemplar)
-					continue;
-
-				// Already seen exemplar
-				NodeCluster exemplarCluster = clusterMap.get(exemplar);
-
-				if (clusterMap.containsKey(i)) {
-					// We've already seen i also -- join them
-					NodeCluster iCluster = clusterMap.get(i);
-					if (iCluster != exemplarCluster) {
-						exemplarCluster.addAll(iCluster);
-						// System.out.println("Combining "+i+"["+iCluster+"] and "+exemplar+" ["+exemplarCluster+"]");
-						clusterCount--;
-						clusterMap.remove(i);
-					}
-				} else {
-					exemplarCluster.add(nodes, i);
-					// System.out.println("Adding "+i+" to ["+exemplarCluster+"]");
-				}
+		for (int i = 0; i < n; i++) {
+			int a = find(parent, i);
+			int b = find(parent, exemplars[i]);
+			if (a == b) continue;
+			// Union by size
+			if (size[a] < size[b]) {
+				int t = a; a = b; b = t;
+			}
+			parent[b] = a;
+			size[a] += size[b];
+		}
 
-				// Update Clusters
-				updateClusters(exemplarCluster, clusterMap);
-			} else {
-				NodeCluster iCluster;
-
-				// First time we've seen this "exemplar" -- have we already seen "i"?
-				if (clusterMap.containsKey(i)) {
-					if (i == exemplar)
-						continue;
-					// Yes, just add exemplar to i's cluster
-					iCluster = clusterMap.get(i);
-					iCluster.add(nodes, exemplar);
-					// System.out.println("Adding "+exemplar+" to ["+iCluster+"]");
-				} else {
-					// No create new cluster from scratch
-					iCluster = new NodeCluster();
-					iCluster.add(nodes, i);
-					if (exemplar != i)
-						iCluster.add(nodes, exemplar);
-					// System.out.println("New cluster ["+iCluster+"]");
-					clusterCount++;
-				}
-				updateClusters(iCluster, clusterMap);
+		Map<Integer, NodeCluster> clusterMap = new HashMap<Integer, NodeCluster>();
+		for (int i = 0; i < n; i++) {
+			int root = find(parent, i);
+			NodeCluster cluster = clusterMap.get(root);
+			if (cluster == null) {
+				cluster = new NodeCluster();
+				cluster.ensureCapacity(size[root]);
+				clusterMap.put(root, cluster);
 			}
+			cluster.add(nodes.get(i));
 		}
 		return clusterMap;
 	}
 
-	private void updateClusters(NodeCluster cluster, Map<Integer, NodeCluster> clusterMap) {
-		for (CyNode node: cluster) {
-			clusterMap.put(nodes.indexOf(node), cluster);
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			// Path halving
+			parent[i] = parent[parent[i]];
+			i = parent[i];
 		}
+		return i;
 	}
 }
-
@@ -5,6 +5,8 @@
 
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.GLay;
 
+import org.cytoscape.work.TaskMonitor;
+
 /**
  *
  * @author Gang Su
@@ -13,5 +15,8 @@ public interface GAlgorithm {
 
     public abstract double getModularity();
     public int[] getMembership();
+    public int getClusterNumber();
+    public void execute(GSimpleGraphData g, TaskMonitor monitor);
+    public void cancel();
 
 }
@@ -63,7 +63,7 @@ public class GLayCluster extends AbstractNetworkClusterer  {
 	public static String NAME = "Community cluster (GLay)";
 	public final static String GROUP_ATTRIBUTE = SHORTNAME;
 	
-	FastGreedyAlgorithm fa = null;
+	GAlgorithm fa = null;
 	boolean createNewNetwork = false;
 
 	@Tunable(description="Network to cluster", context="nogui")
@@ -105,7 +105,10 @@ public class GLayCluster extends AbstractNetworkClusterer  {
 		NodeCluster.init();
 
     GSimpleGraphData simpleGraph = new GSimpleGraphData(network, context.selectedOnly, context.undirectedEdges);
-		fa = new FastGreedyAlgorithm();
+		if (context.useLouvain())
+			fa = new LouvainAlgorithm();
+		else
+			fa = new FastGreedyAlgorithm();
 		//fa.partition(simpleGraph);
 		fa.execute(simpleGraph, monitor);
 
@@ -5,12 +5,16 @@ import org.cytoscape.model.CyNetwork;
 import org.cytoscape.work.ContainsTunables;
 import org.cytoscape.work.Tunable;
 import org.cytoscape.work.swing.TunableUIHelper;
+import org.cytoscape.work.util.ListSingleSelection;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.api.ClusterAlgorithmContext;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AdvancedProperties;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.NetworkVizProperties;
 
 public class GLayContext implements ClusterAlgorithmContext {
+	public final static String FAST_GREEDY = "Fast Greedy (CNM)";
+	public final static String LOUVAIN = "Louvain";
+
 	CyNetwork network;
 	
 	//Tunables
@@ -20,6 +24,11 @@ public class GLayContext implements ClusterAlgorithmContext {
 	@Tunable(description = "Assume edges are undirected", groups={"Basic GLay Tuning"},gravity=2.0)
 	public boolean undirectedEdges = true;
 
+	@Tunable(description = "Community detection algorithm",
+	         tooltip = "Louvain is usually faster and finds partitions with higher modularity on large networks",
+	         groups={"Basic GLay Tuning"},gravity=3.0)
+	public ListSingleSelection<String> algorithm = new ListSingleSelection<String>(FAST_GREEDY, LOUVAIN);
+
     
 	@ContainsTunables
 	public AdvancedProperties advancedAttributes;
@@ -39,6 +48,7 @@ public class GLayContext implements ClusterAlgorithmContext {
 		
 		selectedOnly = origin.selectedOnly;
 		undirectedEdges = origin.undirectedEdges;
+		algorithm.setSelectedValue(origin.algorithm.getSelectedValue());
 	}
 
 	public void setNetwork(CyNetwork network) {
@@ -51,6 +61,8 @@ public class GLayContext implements ClusterAlgorithmContext {
 
 	public CyNetwork getNetwork() { return network; }
 
+	public boolean useLouvain() { return LOUVAIN.equals(algorithm.getSelectedValue()); }
+
 	public String getClusterAttribute() { return advancedAttributes.clusterAttribute;}
 
 	public void setUIHelper(TunableUIHelper helper) { }
@@ -6,7 +6,10 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.GLay;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 import org.cytoscape.model.CyEdge;
@@ -14,10 +17,6 @@ import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.model.CyTableUtil;
 
-import edu.ucsf.rbvi.clusterMaker2.internal.utils.ModelUtils;
-import cern.colt.matrix.tdouble.DoubleFactory2D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
 /**
  *
  * @author Gang Su
@@ -30,11 +29,13 @@ public class GSimpleGraphData {
     public CyNetwork network;
     public CyNode[] graphIndices;
     public int[] degree;
-    public DoubleMatrix2D edgeMatrix;
+    /*Simplified adjacency in CSR form: the (sorted, distinct) neighbors of node i
+     *are adjacency[adjStart[i]] .. adjacency[adjStart[i+1]-1]*/
+    public int[] adjStart;
+    public int[] adjacency;
 		private boolean selectedOnly;
 		private boolean undirectedEdges;
 		private List<CyNode> nodeList;
-		private List<CyEdge> connectingEdges;
 
 		@SuppressWarnings("unchecked")
     public GSimpleGraphData(CyNetwork network, boolean selectedOnly, boolean undirectedEdges){
@@ -48,72 +49,82 @@ public class GSimpleGraphData {
 				}
 
 				this.nodeCount = nodeList.size();
-				this.connectingEdges = ModelUtils.getConnectingEdges(network, nodeList);
-				this.edgeCount = this.connectingEdges.size();
         this.graphIndices = new CyNode[this.nodeCount];
         this.degree = new int[this.nodeCount];
-        this.edgeMatrix = DoubleFactory2D.sparse.make(nodeCount, nodeCount);
         this.simplify();
     }
     
     private void simplify(){
-				// System.out.println("nodeCount = "+nodeCount+", edgeCount = "+edgeCount);
-
-        //Assign index and degree
+        //Assign index
+        Map<CyNode, Integer> nodeIndex = new HashMap<CyNode, Integer>();
         for(int i=0; i<nodeList.size(); i++){
             this.graphIndices[i] = nodeList.get(i);
-            this.degree[i] = network.getNeighborList(this.graphIndices[i], CyEdge.Type.ANY).size();
+            nodeIndex.put(this.graphIndices[i], i);
+        }
+
+        //Collect the edges between our nodes in a single pass over the edge list
+        List<CyEdge> edges = network.getEdgeList();
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        int count = 0;
+        for(CyEdge edge: edges){
+            if (!undirectedEdges && !edge.isDirected())
+                continue; //Doesn't count un-directional
+            Integer i = nodeIndex.get(edge.getSource());
+            Integer j = nodeIndex.get(edge.getTarget());
+            if (i == null || j == null || i.intValue() == j.intValue())
+                continue;
+            sources[count] = i;
+            targets[count] = j;
+            count++;
         }
 
-        //Assign edge
-        int ijEdge = 0; //Edge from i to j
-        int jiEdge = 0; //Edge from j to i
-        int ijUEdge = 0; //Undirectional edges
-        int totalEdge = 0;
-        for(int i=0; i<graphIndices.length-1; i++){
-            for(int j=i+1; j<graphIndices.length; j++){
-                //Count the number of edges
-                if (undirectedEdges) {
-                	jiEdge = network.getConnectingEdgeList(graphIndices[j], graphIndices[i], CyEdge.Type.ANY).size(); //Count un-directional
-                	// ijEdge = network.getConnectingEdgeList(graphIndices[i], graphIndices[j], CyEdge.Type.ANY).size(); //Count un-directional
-								} else {
-                	ijEdge = network.getConnectingEdgeList(graphIndices[i], graphIndices[j], CyEdge.Type.DIRECTED).size(); //Doesn't count un-directional
-                	jiEdge = network.getConnectingEdgeList(graphIndices[j], graphIndices[i], CyEdge.Type.DIRECTED).size(); //Count un-directional
-								}
-                //ijUEdge = network.getEdgeCount(graphIndices[i], graphIndices[j], true);
-                totalEdge = ijEdge + jiEdge;
-                this.edgeMatrix.setQuick(i, j, totalEdge); //conversion from int to double is ok.
+        buildAdjacency(sources, targets, count);
+    }
 
-                //fix degree and edge count.
-                if(totalEdge > 1){
-                    edgeCount = edgeCount-totalEdge+1;
-                    degree[i] = degree[i]-totalEdge+1;
-                    degree[j] = degree[j]-totalEdge+1;
+    /*
+     * Build the CSR adjacency from an edge list, collapsing multiple edges between
+     * the same pair of nodes into a single edge.  Degrees and edge count are those
+     * of the simplified graph, so the total degree is twice the edge count.
+     */
+    void buildAdjacency(int[] sources, int[] targets, int count){
+        int[] start = new int[nodeCount+1];
+        for(int e=0; e<count; e++){
+            start[sources[e]+1]++;
+            start[targets[e]+1]++;
+        }
+        for(int i=0; i<nodeCount; i++){
+            start[i+1] += start[i];
+        }
+        int[] fill = Arrays.copyOf(start, nodeCount);
+        int[] neighbors = new int[start[nodeCount]];
+        for(int e=0; e<count; e++){
+            neighbors[fill[sources[e]]++] = targets[e];
+            neighbors[fill[targets[e]]++] = sources[e];
+        }
+
+        //Sort each neighbor list and remove the duplicates
+        adjStart = new int[nodeCount+1];
+        int next = 0;
+        for(int i=0; i<nodeCount; i++){
+            Arrays.sort(neighbors, start[i], start[i+1]);
+            adjStart[i] = next;
+            for(int k=start[i]; k<start[i+1]; k++){
+                if(k == start[i] || neighbors[k] != neighbors[k-1]){
+                    neighbors[next++] = neighbors[k];
                 }
             }
+            degree[i] = next - adjStart[i];
         }
-
-        /*
-         * If simplification is succesful, the toal degree should be twice of edge count
-         * */
-        //this.simplificationCheck();
-        
-
+        adjStart[nodeCount] = next;
+        adjacency = Arrays.copyOf(neighbors, next);
+        edgeCount = next/2;
     }
 
     public boolean hasEdge(int i, int j){
         /*Note i and j must 0< i,j < nodeCount - 1*/
         if(i==j)return false;
-        if(i > j){
-            int temp = i;
-            i = j;
-            j = temp;
-        }
-
-        if(edgeMatrix.getQuick(i, j) != 0){
-            return true;
-        }
-        return false;
+        return Arrays.binarySearch(adjacency, adjStart[i], adjStart[i+1], j) >= 0;
     }
 
     public void simplificationCheck(){
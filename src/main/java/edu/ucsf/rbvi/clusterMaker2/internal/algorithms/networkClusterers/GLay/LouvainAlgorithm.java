@@ -0,0 +1,272 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.GLay;
+
+/**
+ * This is an implementation of the multi-level Louvain modularity optimization
+ * (see Blondel et al., J. Stat. Mech. (2008) P10008).  Each level moves single
+ * nodes to the neighboring community with the largest modularity gain until no
+ * move improves modularity, then collapses the communities into the nodes of a
+ * weighted graph for the next level.  Every level is linear in the number of
+ * edges.
+ */
+
+import java.util.Arrays;
+
+import org.cytoscape.work.TaskMonitor;
+
+public class LouvainAlgorithm implements GAlgorithm {
+    private static final double MIN_GAIN = 1e-10;
+    private static final int MAX_LEVELS = 100;
+
+    private double modularity;
+    private int[] membership;
+    private int clusterNumber;
+    private boolean halt = false;
+
+    public LouvainAlgorithm(){
+        this.modularity = 0;
+        this.membership = new int[0];
+        this.clusterNumber = 0;
+    }
+
+    public double getModularity(){
+        return this.modularity;
+    }
+
+    public int[] getMembership(){
+        return this.membership;
+    }
+
+    public int getClusterNumber(){
+        return this.clusterNumber;
+    }
+
+    public void cancel() {
+        this.halt = true;
+    }
+
+    public void execute(GSimpleGraphData g, TaskMonitor monitor) {
+        int n = g.nodeCount;
+        membership = new int[n];
+        for(int i=0; i<n; i++){
+            membership[i] = i;
+        }
+        clusterNumber = n;
+        if (g.edgeCount == 0){
+            modularity = 0;
+            return;
+        }
+
+        //The first level graph is the simplified network with unit weights
+        double[] weights = new double[g.adjacency.length];
+        Arrays.fill(weights, 1.0);
+        Level level = new Level(n, g.adjStart, g.adjacency, weights, new double[n]);
+
+        for (int pass = 0; pass < MAX_LEVELS; pass++){
+            if (halt)
+                return;
+            if (monitor != null)
+                monitor.showMessage(TaskMonitor.Level.INFO, "Louvain level "+(pass+1)+": "+level.n+" communities");
+
+            int[] community = new int[level.n];
+            boolean improved = moveNodes(level, community);
+            int communities = renumber(community);
+
+            //Map the original nodes onto this level's communities
+            for(int i=0; i<n; i++){
+                membership[i] = community[membership[i]];
+            }
+            clusterNumber = communities;
+
+            if (!improved || communities == level.n)
+                break;
+            level = aggregate(level, community, communities);
+            if (monitor != null)
+                monitor.setProgress((double)(pass+1)/(double)MAX_LEVELS);
+        }
+
+        modularity = modularity(g, membership, clusterNumber);
+        if (monitor != null)
+            monitor.setProgress(1.0);
+    }
+
+    /*
+     * Local moving phase: repeatedly move each node to the neighboring
+     * community with the largest gain in modularity.
+     */
+    private boolean moveNodes(Level level, int[] community){
+        int n = level.n;
+        double m2 = level.totalWeight;
+
+        double[] strength = new double[n];
+        double[] total = new double[n];
+        for(int i=0; i<n; i++){
+            community[i] = i;
+            strength[i] = level.selfLoops[i];
+            for(int e=level.start[i]; e<level.start[i+1]; e++){
+                strength[i] += level.weights[e];
+            }
+            total[i] = strength[i];
+        }
+
+        double[] neighborWeight = new double[n];
+        int[] neighborCommunities = new int[n];
+        Arrays.fill(neighborWeight, -1.0);
+
+        boolean improved = false;
+        boolean moved = true;
+        while (moved && !halt){
+            moved = false;
+            for(int i=0; i<n; i++){
+                int current = community[i];
+
+                //Sum the edge weights from i to each neighboring community
+                int count = 0;
+                neighborCommunities[count++] = current;
+                neighborWeight[current] = 0.0;
+                for(int e=level.start[i]; e<level.start[i+1]; e++){
+                    int c = community[level.neighbors[e]];
+                    if (neighborWeight[c] < 0){
+                        neighborWeight[c] = 0.0;
+                        neighborCommunities[count++] = c;
+                    }
+                    neighborWeight[c] += level.weights[e];
+                }
+
+                //Remove i from its community and find the best one to insert it into
+                total[current] -= strength[i];
+                int best = current;
+                double bestGain = neighborWeight[current] - total[current]*strength[i]/m2;
+                for(int k=0; k<count; k++){
+                    int c = neighborCommunities[k];
+                    double gain = neighborWeight[c] - total[c]*strength[i]/m2;
+                    if (gain > bestGain + MIN_GAIN){
+                        bestGain = gain;
+                        best = c;
+                    }
+                }
+                total[best] += strength[i];
+                if (best != current){
+                    community[i] = best;
+                    moved = true;
+                    improved = true;
+                }
+
+                for(int k=0; k<count; k++){
+                    neighborWeight[neighborCommunities[k]] = -1.0;
+                }
+            }
+        }
+        return improved;
+    }
+
+    /*Renumber the communities 0..count-1 and return the count*/
+    private int renumber(int[] community){
+        int[] index = new int[community.length];
+        Arrays.fill(index, -1);
+        int count = 0;
+        for(int i=0; i<community.length; i++){
+            if (index[community[i]] < 0)
+                index[community[i]] = count++;
+            community[i] = index[community[i]];
+        }
+        return count;
+    }
+
+    /*Collapse each community into a single node of a new weighted graph*/
+    private Level aggregate(Level level, int[] community, int communities){
+        //Group the nodes by community
+        int[] memberStart = new int[communities+1];
+        for(int i=0; i<level.n; i++){
+            memberStart[community[i]+1]++;
+        }
+        for(int c=0; c<communities; c++){
+            memberStart[c+1] += memberStart[c];
+        }
+        int[] members = new int[level.n];
+        int[] fill = Arrays.copyOf(memberStart, communities);
+        for(int i=0; i<level.n; i++){
+            members[fill[community[i]]++] = i;
+        }
+
+        double[] selfLoops = new double[communities];
+        int[] start = new int[communities+1];
+        int[] neighbors = new int[level.neighbors.length];
+        double[] weights = new double[level.neighbors.length];
+        double[] neighborWeight = new double[communities];
+        int[] neighborCommunities = new int[communities];
+        Arrays.fill(neighborWeight, -1.0);
+
+        int next = 0;
+        for(int c=0; c<communities; c++){
+            start[c] = next;
+            int count = 0;
+            for(int m=memberStart[c]; m<memberStart[c+1]; m++){
+                int i = members[m];
+                selfLoops[c] += level.selfLoops[i];
+                for(int e=level.start[i]; e<level.start[i+1]; e++){
+                    int d = community[level.neighbors[e]];
+                    if (d == c){
+                        selfLoops[c] += level.weights[e];
+                        continue;
+                    }
+                    if (neighborWeight[d] < 0){
+                        neighborWeight[d] = 0.0;
+                        neighborCommunities[count++] = d;
+                    }
+                    neighborWeight[d] += level.weights[e];
+                }
+            }
+            for(int k=0; k<count; k++){
+                int d = neighborCommunities[k];
+                neighbors[next] = d;
+                weights[next] = neighborWeight[d];
+                next++;
+                neighborWeight[d] = -1.0;
+            }
+        }
+        start[communities] = next;
+        return new Level(communities, start, Arrays.copyOf(neighbors, next),
+                         Arrays.copyOf(weights, next), selfLoops);
+    }
+
+    /*Newman's modularity of a partition of the simplified graph*/
+    static double modularity(GSimpleGraphData g, int[] membership, int clusterNumber){
+        double m2 = 2.0*g.edgeCount;
+        double[] inside = new double[clusterNumber];
+        double[] total = new double[clusterNumber];
+        for(int i=0; i<g.nodeCount; i++){
+            total[membership[i]] += g.degree[i];
+            for(int e=g.adjStart[i]; e<g.adjStart[i+1]; e++){
+                if (membership[g.adjacency[e]] == membership[i])
+                    inside[membership[i]] += 1.0;
+            }
+        }
+        double q = 0;
+        for(int c=0; c<clusterNumber; c++){
+            q += inside[c]/m2 - (total[c]/m2)*(total[c]/m2);
+        }
+        return q;
+    }
+
+    /*A weighted graph in CSR form.  Self loops are kept separately and count twice.*/
+    private static class Level {
+        int n;
+        int[] start;
+        int[] neighbors;
+        double[] weights;
+        double[] selfLoops;
+        double totalWeight;
+
+        Level(int n, int[] start, int[] neighbors, double[] weights, double[] selfLoops){
+            this.n = n;
+            this.start = start;
+            this.neighbors = neighbors;
+            this.weights = weights;
+            this.selfLoops = selfLoops;
+            for(int i=0; i<weights.length; i++)
+                totalWeight += weights[i];
+            for(int i=0; i<n; i++)
+                totalWeight += selfLoops[i];
+        }
+    }
+}
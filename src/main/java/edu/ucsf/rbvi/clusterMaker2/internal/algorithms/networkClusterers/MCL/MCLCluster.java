@@ -82,6 +82,7 @@ public class MCLCluster extends AbstractNetworkClusterer   {
 		                    context.clusteringThresh, context.maxResidual, context.maxThreads, monitor);
 
 		runMCL.setDebug(false);
+		runMCL.setPruning(context.selectionNumber, context.recoveryNumber, context.recoveryPercentage);
 
 		if (canceled) return;
 
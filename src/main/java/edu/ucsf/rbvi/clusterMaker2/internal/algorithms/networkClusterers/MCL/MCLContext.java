@@ -33,6 +33,21 @@ public class MCLContext implements ClusterAlgorithmContext {
 	
 	@Tunable(description = "Maximum number of threads", groups={"MCL Advanced Settings"}, gravity=23.0)
 	public int maxThreads = 0;
+
+	@Tunable(description = "Maximum entries kept per column (selection number)", groups={"MCL Advanced Settings"}, gravity=24.0,
+	         tooltip="<html>After each expansion, only this many of the largest entries are kept in each column.<br/>"+
+	                 "Use 0 to keep all of the entries above the pruning threshold (the default).<br/>"+
+	                 "Values around 1000 (with recovery) speed up very large networks, but can change the clusters.</html>")
+	public int selectionNumber = 0;
+
+	@Tunable(description = "Entries recovered per column (recovery number)", groups={"MCL Advanced Settings"}, gravity=25.0,
+	         tooltip="<html>If pruning removed too much of a column's mass, up to this many of its<br/>"+
+	                 "largest entries are recovered.  Use 0 to disable recovery.</html>")
+	public int recoveryNumber = 0;
+
+	@Tunable(description = "Recovery mass percentage", groups={"MCL Advanced Settings"}, gravity=26.0,
+	         tooltip="Recover a column when the entries kept after pruning hold less than this percentage of its mass")
+	public double recoveryPercentage = 0.0;
     
 	@ContainsTunables
 	public AdvancedProperties advancedAttributes;
@@ -57,6 +72,9 @@ public class MCLContext implements ClusterAlgorithmContext {
 		iterations = origin.iterations;
 		maxResidual = origin.maxResidual;
 		maxThreads = origin.maxThreads;
+		selectionNumber = origin.selectionNumber;
+		recoveryNumber = origin.recoveryNumber;
+		recoveryPercentage = origin.recoveryPercentage;
 	}
 
 	public void setNetwork(CyNetwork network) {
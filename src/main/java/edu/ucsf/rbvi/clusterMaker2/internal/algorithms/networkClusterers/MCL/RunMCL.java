@@ -5,10 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -19,7 +16,6 @@ import java.lang.Math;
 import org.cytoscape.model.CyColumn;
 import org.cytoscape.model.CyEdge;
 import org.cytoscape.model.CyNetwork;
-import org.cytoscape.model.CyNode;
 import org.cytoscape.model.CyNetworkManager;
 import org.cytoscape.model.CyRow;
 import org.cytoscape.model.CyTable;
@@ -28,13 +24,13 @@ import org.cytoscape.work.TunableHandler;
 import org.cytoscape.work.TaskMonitor;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.NodeCluster;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CSCMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ColtMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 
-import cern.colt.function.tdouble.IntIntDoubleFunction;
 import cern.colt.matrix.tdouble.DoubleFactory2D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
 
 
 public class RunMCL {
@@ -43,12 +39,14 @@ public class RunMCL {
 	private int number_iterations; //number of inflation/expansion cycles
 	private double clusteringThresh; //Threshold used to remove weak edges between distinct clusters
 	private double maxResidual; //The maximum residual to look for
+	private int selectionNumber = 0; //Maximum number of entries kept in each column after expansion
+	private int recoveryNumber = 0; //Number of entries to recover if pruning removed too much mass
+	private double recoveryMass = 0.0; //Fraction of the column mass below which we recover
 	private boolean canceled = false;
 	protected int clusterCount = 0;
 	private boolean createMetaNodes = false;
 	private CyMatrix distanceMatrix = null;
 	private CyMatrix matrix = null;
-	private List<CyNode> nodes = null;
 	private boolean debug = true;
 	private int nThreads = Runtime.getRuntime().availableProcessors()-1;
 	
@@ -62,7 +60,6 @@ public class RunMCL {
 		this.number_iterations = num_iterations;
 		this.clusteringThresh = clusteringThresh;
 		this.maxResidual = maxResidual;
-		nodes = distanceMatrix.getRowNodes();
 		if (maxThreads > 0)
 			nThreads = maxThreads;
 		else
@@ -80,6 +77,20 @@ public class RunMCL {
 	public void cancel () { canceled = true; }
 
 	public void setDebug(boolean debug) { this.debug = debug; }
+
+	/**
+	 * Set the per-column pruning applied after each expansion (see the mcl
+	 * -S, -R and -pct options).
+	 *
+	 * @param selectionNumber the maximum number of entries kept in each column (0 for no limit)
+	 * @param recoveryNumber the number of entries to recover (0 for no recovery)
+	 * @param recoveryPercentage the percentage of the column mass below which we recover
+	 */
+	public void setPruning(int selectionNumber, int recoveryNumber, double recoveryPercentage) {
+		this.selectionNumber = selectionNumber;
+		this.recoveryNumber = recoveryNumber;
+		this.recoveryMass = recoveryPercentage/100.0;
+	}
 	
 	public List<NodeCluster> run(CyNetwork network, TaskMonitor monitor)
 	{
@@ -87,134 +98,170 @@ public class RunMCL {
 
 		long startTime = System.currentTimeMillis();
 
-		// Matrix matrix;
-		double numClusters;
-
 		debugln("Initial matrix:");
 		
 		
 		matrix.printMatrixInfo();
 
+		// All of the expansion/inflation cycles work on a compressed sparse
+		// column copy of the matrix, and run on a single pool for the whole run
+		CSCMatrix csc = ColtMatrix.toCSCMatrix(matrix.getColtMatrix());
+		ForkJoinPool pool = new ForkJoinPool(Math.max(nThreads, 1));
+
 		// Normalize
-		normalize(matrix.getColtMatrix(), clusteringThresh, false);
+		csc.normalizeColumns(clusteringThresh, false);
 
-		debugln("Normalized matrix:");
-		matrix.printMatrixInfo();
+		debugln("Normalized matrix: cardinality = "+csc.cardinality());
+
+		if (selectionNumber > 0)
+			monitor.showMessage(TaskMonitor.Level.INFO, "Keeping at most "+selectionNumber+" entries per column"+
+			                    (recoveryNumber > 0 ? " (recovering up to "+recoveryNumber+" below "+
+			                     (recoveryMass*100.0)+"% of the mass)" : ""));
 
 		double residual = 1.0;
-		IntIntDoubleFunction myPow = new MatrixPow(inflationParameter);
 		debugln("residual = "+residual+" maxResidual = "+maxResidual);
-		for (int i=0; (i<number_iterations)&&(residual>maxResidual); i++)
-		{
-			// Expand
+		try {
+			for (int i=0; (i<number_iterations)&&(residual>maxResidual); i++)
 			{
-				long t = System.currentTimeMillis();
-				monitor.setStatusMessage("Iteration: "+(i+1)+" expanding "); //monitor.setStatus();
-				debugln("Iteration: "+(i+1)+" expanding ");
-				matrix.printMatrixInfo();
-				Matrix multiMatrix = matrix.multiplyMatrix(matrix);
-				matrix = matrix.copy(multiMatrix);
-
-				// Normalize
-				normalize(matrix.getColtMatrix(), clusteringThresh, false);
-				monitor.showMessage(TaskMonitor.Level.INFO,"Expansion "+(i+1)+" took "+(System.currentTimeMillis()-t)+"ms");
-			}
+				// Expand
+				{
+					long t = System.currentTimeMillis();
+					monitor.setStatusMessage("Iteration: "+(i+1)+" expanding "); //monitor.setStatus();
+					debugln("Iteration: "+(i+1)+" expanding ");
+					// Entries below the clustering threshold are pruned as the product is formed,
+					// and each column is cut down to its largest entries
+					csc = csc.multiply(csc, clusteringThresh, selectionNumber, recoveryNumber, recoveryMass, pool);
+
+					// Normalize
+					csc.normalizeColumns(clusteringThresh, false);
+					monitor.showMessage(TaskMonitor.Level.INFO,"Expansion "+(i+1)+" took "+(System.currentTimeMillis()-t)+"ms");
+				}
 
-			debugln("^ "+(i+1)+" after expansion");
+				debugln("^ "+(i+1)+" after expansion: cardinality = "+csc.cardinality());
 
-			// Inflate
-			DoubleMatrix2D m = matrix.getColtMatrix();
-			{
-				long t = System.currentTimeMillis();
-				monitor.setStatusMessage("Iteration: "+(i+1)+" inflating");	//monitor.setStatusMessage
-				debugln("Iteration: "+(i+1)+" inflating");
+				if (canceled) {
+					monitor.setStatusMessage("canceled"); 	//monitor.setStatusMessage
+					return null;
+				}
 
-				m.forEachNonZero(myPow);
+				// Inflate
+				{
+					monitor.setStatusMessage("Iteration: "+(i+1)+" inflating");	//monitor.setStatusMessage
+					debugln("Iteration: "+(i+1)+" inflating");
 
-				// Normalize
-				normalize(matrix.getColtMatrix(), clusteringThresh, true);
-			}
+					csc.pow(inflationParameter);
 
-			debugln("^ "+(i+1)+" after inflation");
+					// Normalize
+					csc.normalizeColumns(clusteringThresh, true);
+				}
+
+				debugln("^ "+(i+1)+" after inflation");
 
-			m.trimToSize();
-			residual = calculateResiduals(m);
-			debugln("Iteration: "+(i+1)+" residual: "+residual);
+				residual = calculateResiduals(csc);
+				debugln("Iteration: "+(i+1)+" residual: "+residual);
 
-			if (canceled) {
-				monitor.setStatusMessage("canceled"); 	//monitor.setStatusMessage
-				return null;
+				if (canceled) {
+					monitor.setStatusMessage("canceled"); 	//monitor.setStatusMessage
+					return null;
+				}
 			}
+		} finally {
+			pool.shutdown();
 		}
 
-		// If we're in debug mode, output the matrix
-		matrix.printMatrixInfo();
-
 		monitor.setStatusMessage("Assigning nodes to clusters");	//monitor.setStatusMessage
 
-		clusterCount = 0;
-		HashMap<Integer, NodeCluster> clusterMap = new HashMap<Integer, NodeCluster>();
-		matrix.getColtMatrix().forEachNonZero(new ClusterMatrix(clusterMap));
+		Map<Integer, NodeCluster> clusterMap = extractClusters(csc);
+		if (canceled) {
+			monitor.setStatusMessage("canceled");
+			return null;
+		}
+		clusterCount = clusterMap.size();
 
 		//Update node attributes in network to include clusters. Create cygroups from clustered nodes
 		monitor.setStatusMessage("Created "+clusterCount+" clusters");
-		monitor.setStatusMessage("Cluster map has "+clusterMap.keySet().size()+" clusters");
-		// debugln("Created "+clusterCount+" clusters:");
-		//
 		if (clusterCount == 0) {
 			monitor.setStatusMessage("Created 0 clusters!!!!");
-			monitor.setStatusMessage("Cluster map has "+clusterMap.keySet().size()+" clusters");
 			return null;
 		}
 
 		int clusterNumber = 1;
-		HashMap<NodeCluster,NodeCluster> cMap = new HashMap<NodeCluster, NodeCluster>();
-		for (NodeCluster cluster: NodeCluster.sortMap(clusterMap)) {
-
-			if (cMap.containsKey(cluster))
-				continue;
-
-			cMap.put(cluster,cluster);
-
+		List<NodeCluster> clusters = NodeCluster.sortMap(clusterMap);
+		for (NodeCluster cluster: clusters) {
 			cluster.setClusterNumber(clusterNumber);
 			clusterNumber++;
 		}
 
 		monitor.setStatusMessage("Total runtime = "+(System.currentTimeMillis()-startTime)+"ms");
 
-		Set<NodeCluster>clusters = cMap.keySet();
 		return new ArrayList<NodeCluster>(clusters);
 	}
-	
-	
+
 	/**
-	 * This method does threshold and normalization.  First, we get rid of
-	 * any cells that have a value beneath our threshold and in the same pass
-	 * calculate all of the column sums.  Then we use the column sums to normalize
-	 * each column such that all of the cells in the column sum to 1.
+	 * Find the clusters in the converged matrix.  Any two nodes joined by an
+	 * off-diagonal non-zero are in the same cluster, so the clusters are the
+	 * connected components of the non-zero pattern, which we find with a
+	 * union-find over the matrix indices.  Nodes that aren't joined to anything
+	 * else don't form a cluster.
 	 *
-	 * @param matrix the (sparse) data matrix we're operating on
-	 * @param clusteringThresh the maximum value that we will take as a "zero" value
-	 * @param prune if 'false', don't prune this pass
+	 * @param matrix the converged matrix
+	 * @return the clusters, keyed by the index of their root
 	 */
-	private void normalize(DoubleMatrix2D matrix, double clusteringThresh, boolean prune)
-	{
-		// Remove any really low values and create the sums array
-		double [] sums = new double[matrix.columns()];
-		matrix.forEachNonZero(new MatrixZeroAndSum(prune, clusteringThresh, sums));
-
-		// Finally, adjust the values
-		matrix.forEachNonZero(new MatrixNormalize(sums));
-
-		// Last step -- find any columns that summed to zero and set the diagonal to 1
-		for (int col = 0; col < sums.length; col++) {
-			if (sums[col] == 0.0) {
-				// debugln("Column "+col+" sums to 0");
-				matrix.set(col,col,1.0);
+	private Map<Integer, NodeCluster> extractClusters(CSCMatrix matrix) {
+		int n = matrix.nColumns();
+		int[] columnStart = matrix.getColumnStart();
+		int[] rowIndex = matrix.getRowIndex();
+
+		int[] parent = new int[n];
+		int[] size = new int[n];
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+			size[i] = 1;
+		}
+
+		for (int col = 0; col < n; col++) {
+			if (canceled) return new HashMap<Integer, NodeCluster>();
+			for (int k = columnStart[col]; k < columnStart[col+1]; k++) {
+				int row = rowIndex[k];
+				if (row == col) continue;
+				int a = find(parent, row);
+				int b = find(parent, col);
+				if (a == b) continue;
+				// Union by size
+				if (size[a] < size[b]) {
+					int t = a; a = b; b = t;
+				}
+				parent[b] = a;
+				size[a] += size[b];
 			}
 		}
+
+		// One pass to map the indices to nodes
+		Map<Integer, NodeCluster> clusterMap = new HashMap<Integer, NodeCluster>();
+		for (int i = 0; i < n; i++) {
+			int root = find(parent, i);
+			if (size[root] < 2) continue;
+			NodeCluster cluster = clusterMap.get(root);
+			if (cluster == null) {
+				cluster = new NodeCluster();
+				cluster.ensureCapacity(size[root]);
+				clusterMap.put(root, cluster);
+			}
+			cluster.add(distanceMatrix.getRowNode(i));
+		}
+		return clusterMap;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			// Path halving
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
 	}
 	
+	
 	/**
 	 * This method calculates the residuals.  Calculate the sum and
 	 * sum of squares for each row, then return the maximum residual.
@@ -222,14 +269,19 @@ public class RunMCL {
 	 * @param matrix the (sparse) data matrix we're operating on
 	 * @return residual value
 	 */
-	private double calculateResiduals(DoubleMatrix2D matrix) {
+	private double calculateResiduals(CSCMatrix matrix) {
 		// Calculate and return the residuals
-		double[] sums = new double[matrix.columns()];
-		double [] sumSquares = new double[matrix.columns()];
-		matrix.forEachNonZero(new MatrixSumAndSumSq(sums, sumSquares));
+		int[] columnStart = matrix.getColumnStart();
+		double[] values = matrix.getValues();
 		double residual = 0.0;
-		for (int i = 0; i < sums.length; i++) {
-			residual = Math.max(residual, sums[i] - sumSquares[i]);
+		for (int col = 0; col < matrix.nColumns(); col++) {
+			double sum = 0.0;
+			double sumSquares = 0.0;
+			for (int k = columnStart[col]; k < columnStart[col+1]; k++) {
+				sum += values[k];
+				sumSquares += values[k]*values[k];
+			}
+			residual = Math.max(residual, sum - sumSquares);
 		}
 		return residual;
 	}
@@ -247,146 +299,4 @@ public class RunMCL {
 
 	private void debug(String message) {
 		if (debug) System.out.print(message);
-	}
-
-	
-	/**
-	 * The MatrixPow class raises the value of each non-zero cell of the matrix
-	 * to the power passed in it's constructor.
-	 */
-	private class MatrixPow implements IntIntDoubleFunction {
-		double pow;
-
-		public MatrixPow(double power) {
-			this.pow = power;
-		}
-		
-		public double apply(int row, int column, double value) {
-			if (canceled) { return 0.0; }
-			return Math.pow(value,pow);
-		}
-		
-	}
-
-	/**
-	 * The MatrixZeroAndSum looks through all non-zero cells in a matrix
-	 * and if the value of the cell is beneath "threshold" it is set to
-	 * zero.  All non-zero cells in a column are added together to return
-	 * the sum of each column.
-	 */
-	private class MatrixZeroAndSum implements IntIntDoubleFunction {
-		double threshold;
-		double [] colSums;
-		boolean prune;
-
-		public MatrixZeroAndSum (boolean prune, double threshold, double[] colSums) {
-			this.threshold = threshold;
-			this.colSums = colSums;
-			this.prune = prune;
-		}
-
-		public double apply(int row, int column, double value) {
-			if (prune && (value < threshold))
-				return 0.0;
-			colSums[column] += value;
-			return value;
-		}
-	}
-	
-	/**
-	 * The MatrixSumAndSumSq looks through all non-zero cells in a matrix
-	 * and calculates the sums and sum of squares for each column.
-	 */
-	private class MatrixSumAndSumSq implements IntIntDoubleFunction {
-		double [] sumSquares;
-		double [] colSums;
-
-		public MatrixSumAndSumSq (double[] colSums, double[] sumSquares) {
-			this.sumSquares = sumSquares;
-			this.colSums = colSums;
-		}
-		public double apply(int row, int column, double value) {
-			colSums[column] += value;
-			sumSquares[column] += value*value;
-			return value;
-		}
-	}
-	
-	/**
-	 * The MatrixNormalize class takes as input an array of sums for
-	 * each column in the matrix and uses that to normalize the sum of the
-	 * column to 1.  If the sum of the column is 0, the diagonal is set to 1.
-	 */
-	private class MatrixNormalize implements IntIntDoubleFunction {
-		double [] colSums;
-
-		public MatrixNormalize(double[] colSums) {
-			this.colSums = colSums;
-		}
-
-		public double apply(int row, int column, double value) {
-			if (canceled) { return 0.0; }
-			return value/colSums[column];
-		}
-	}
-	
-	private class ClusterMatrix implements IntIntDoubleFunction {
-		Map<Integer, NodeCluster> clusterMap;
-
-		public ClusterMatrix(Map<Integer,NodeCluster> clusterMap) {
-			this.clusterMap = clusterMap;
-		}
-
-		public double apply(int row, int column, double value) {
-			if (canceled) { return 0.0; }
-
-			if (row == column) 
-				return value;
-
-			if (clusterMap.containsKey(column)) {
-				// Already seen "column" -- get the cluster and add column
-				NodeCluster columnCluster = clusterMap.get(column);
-				if (clusterMap.containsKey(row)) {
-					// We've already seen row also -- join them
-					NodeCluster rowCluster = clusterMap.get(row);
-					if (rowCluster == columnCluster) 
-						return value;
-					clusterCount--;
-					// logger.debug("Joining cluster "+columnCluster.getClusterNumber()+" and "+rowCluster.getClusterNumber());
-					// logger.debug("clusterCount = "+clusterCount);
-					columnCluster.addAll(rowCluster);
-				} else {
-					// logger.debug("Adding "+row+" to "+columnCluster.getClusterNumber());
-					// logger.debug("clusterCount = "+clusterCount);
-					columnCluster.add(distanceMatrix.getRowNode(row));
-				}
-				updateClusters(columnCluster);
-			} else {
-				NodeCluster rowCluster;
-				// First time we've seen "column" -- have we already seen "row"
-				if (clusterMap.containsKey(row)) {
-					// Yes, just add column to row's cluster
-					rowCluster = clusterMap.get(row);
-					// logger.debug("Adding "+column+" to "+rowCluster.getClusterNumber());
-					// logger.debug("clusterCount = "+clusterCount);
-					rowCluster.add(distanceMatrix.getColumnNode(column));
-				} else {
-					clusterCount++;
-					rowCluster = new NodeCluster();
-					// logger.debug("Created new cluster "+rowCluster.getClusterNumber()+" with "+row+" and "+column);
-					// logger.debug("clusterCount = "+clusterCount);
-					rowCluster.add(distanceMatrix.getColumnNode(column));
-					rowCluster.add(distanceMatrix.getRowNode(row));
-				}
-				updateClusters(rowCluster);
-			}
-			return value;
-		}
-
-		private void updateClusters(NodeCluster cl) {
-			for (CyNode node: cl) {
-				clusterMap.put(nodes.indexOf(node), cl);
-			}
-		}
-	}
-}
+	}}
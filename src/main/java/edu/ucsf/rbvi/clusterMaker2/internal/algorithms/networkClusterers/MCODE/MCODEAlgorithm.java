@@ -1,13 +1,14 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.MCODE;
 
-import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyIdentifiable;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.work.TaskMonitor;
-import org.cytoscape.model.subnetwork.CySubNetwork;
+
+import cern.colt.list.tint.IntArrayList;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.NodeCluster;
-import edu.ucsf.rbvi.clusterMaker2.internal.utils.ModelUtils;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
 
 import java.util.*;
 
@@ -51,30 +52,60 @@ import java.util.*;
  * An implementation of the MCODE algorithm
  */
 public class MCODEAlgorithm {
+	// Number of nodes scored by a single fork-join task
+	private static final int BLOCK = 64;
+	// Number of nodes scored between progress updates
+	private static final int PROGRESS_BLOCK = 4096;
+
+	//the last scores of each network, so that clusters can be found again with different
+	//cluster finding parameters without rescoring the network (see loadScores)
+	private static final Map<CyNetwork, NodeInfo> scoredNetworks =
+		Collections.synchronizedMap(new WeakHashMap<CyNetwork, NodeInfo>());
+
 	private boolean cancelled = false;
 	private TaskMonitor taskMonitor = null;
 
-	//data structure for storing information required for each node
-	private class NodeInfo {
-		double density;         //neighborhood density
-		int numNodeNeighbors;   //number of node nieghbors
-		List<CyNode> nodeNeighbors;    //stores node indices of all neighbors
-		int coreLevel;          //e.g. 2 = a 2-core
-		double coreDensity;     //density of the core neighborhood
-		double score;           //node score
-
-		public NodeInfo() {
-			this.density = 0.0;
-			this.numNodeNeighbors = 0;
-			this.coreLevel = 0;
-			this.coreDensity = 0.0;
-			this.nodeNeighbors = new ArrayList<CyNode>();
+	//data structure for storing information required for each node, indexed as in the graph snapshot
+	private static class NodeInfo {
+		final MCODEGraph graph;         //snapshot of the scored network
+		final boolean includeLoops;     //whether loops were included in the neighborhoods
+		final long[] nodeSUIDs;         //sorted SUIDs of the nodes when the network was scored
+		final long[] edgeSUIDs;         //sorted SUIDs of the edges when the network was scored
+		final double[] density;         //neighborhood density
+		final int[] numNodeNeighbors;   //number of node neighbors
+		final int[] coreLevel;          //e.g. 2 = a 2-core
+		final double[] coreDensity;     //density of the core neighborhood
+		int degreeCutoff;               //degree cutoff used for the scores
+		double[] score;                 //node score
+		int[] scoreOrder;               //node indices, sorted by decreasing score
+
+		public NodeInfo(MCODEGraph graph, boolean includeLoops, long[] nodeSUIDs, long[] edgeSUIDs) {
+			int nodeCount = graph.size();
+			this.graph = graph;
+			this.includeLoops = includeLoops;
+			this.nodeSUIDs = nodeSUIDs;
+			this.edgeSUIDs = edgeSUIDs;
+			this.density = new double[nodeCount];
+			this.numNodeNeighbors = new int[nodeCount];
+			this.coreLevel = new int[nodeCount];
+			this.coreDensity = new double[nodeCount];
+		}
+
+		//share the neighborhood information, but not the scores
+		public NodeInfo(NodeInfo nodeInfo) {
+			this.graph = nodeInfo.graph;
+			this.includeLoops = nodeInfo.includeLoops;
+			this.nodeSUIDs = nodeInfo.nodeSUIDs;
+			this.edgeSUIDs = nodeInfo.edgeSUIDs;
+			this.density = nodeInfo.density;
+			this.numNodeNeighbors = nodeInfo.numNodeNeighbors;
+			this.coreLevel = nodeInfo.coreLevel;
+			this.coreDensity = nodeInfo.coreDensity;
 		}
 	}
 
 	//data structures useful to have around for more than one cluster finding iteration
-	private Map<CyNode,NodeInfo> currentNodeInfoHashMap = null;    //key is the node index, value is a NodeInfo instance
-	private SortedMap<Double,List<CyNode>> currentNodeScoreSortedMap = null; //key is node score, value is nodeIndex
+	private NodeInfo currentNodeInfo = null;
 
 	//because every network can be scored and clustered several times with different parameters
 	//these results have to be stored so that the same scores are used during exploration when
@@ -82,10 +113,8 @@ public class MCODEAlgorithm {
 	//Since the network is not always rescored whenever a new result is generated (if the scoring parameters
 	//haven't changed for example) the clustering method must save the current node scores under the new result
 	//title for later reference
-	private Map<Integer,SortedMap<Double,List<CyNode>>> nodeScoreResultsMap = 
-		new HashMap<Integer, SortedMap<Double,List<CyNode>>>();//key is result, value is nodeScoreSortedMap
-	private Map<Integer,Map<CyNode,NodeInfo>> nodeInfoResultsMap = 
-		new HashMap<Integer, Map<CyNode,NodeInfo>>(); //key is result, value is nodeInfooHashMap
+	private Map<Integer,NodeInfo> nodeInfoResultsMap = 
+		new HashMap<Integer, NodeInfo>(); //key is result, value is nodeInfo
 
 	private MCODEParameterSet params;   //the parameters used for this instance of the algorithm
 	//stats
@@ -148,22 +177,15 @@ public class MCODEAlgorithm {
 	 * Gets the calculated node score of a node from a given result.  Used in MCODEResultsPanel
 	 * during the attribute setting method.
 	 *
-	 * @param rootGraphIndex Integer which is used to identify the nodes in the score-sorted tree map
+	 * @param node The node
 	 * @param resultId Id of the results for which we are retrieving a node score
 	 * @return node score as a Double
 	 */
 	public double getNodeScore(CyNode node, int resultId) {
-		Map<Double,List<CyNode>> nodeScoreSortedMap = nodeScoreResultsMap.get(resultId);
+		NodeInfo nodeInfo = nodeInfoResultsMap.get(resultId);
+		int index = nodeInfo.graph.getIndex(node);
 
-		for (double nodeScore: nodeScoreSortedMap.keySet()) {
-			List<CyNode> nodes = nodeScoreSortedMap.get(nodeScore);
-
-			if (nodes.contains(node)) {
-				return nodeScore;
-			}
-		}
-
-		return 0.0;
+		return index >= 0 ? nodeInfo.score[index] : 0.0;
 	}
 
 	/**
@@ -171,18 +193,19 @@ public class MCODEAlgorithm {
 	 * re-initialize the visual calculators.
 	 *
 	 * @param resultTitle Title of the result
-	 * @return First key in the nodeScoreSortedMap corresponding to the highest score
+	 * @return The score of the first node in scoreOrder, which is the highest
 	 */
 	public double getMaxScore(String resultTitle) {
-		SortedMap<Double, List<CyNode>> nodeScoreSortedMap = nodeScoreResultsMap.get(resultTitle);
+		NodeInfo nodeInfo = nodeInfoResultsMap.get(resultTitle);
 
-		//Since the map is sorted, the first key is the highest value
-		return nodeScoreSortedMap.firstKey();
+		//Since the nodes are sorted, the first one has the highest score
+		return nodeInfo.score[nodeInfo.scoreOrder[0]];
 	}
 
 	/**
 	 * Step 1: Score the graph and save scores as node attributes.  Scores are also
-	 * saved internally in your instance of MCODEAlgorithm.
+	 * saved internally in your instance of MCODEAlgorithm, and for the network, so
+	 * that {@link #loadScores} can reuse them.
 	 *
 	 * @param inputNetwork The network that will be scored
 	 * @param resultTitle Title of the result, used as an identifier in various hash maps
@@ -198,57 +221,82 @@ public class MCODEAlgorithm {
 
 		//initialize
 		long msTimeBefore = System.currentTimeMillis();
-		Map<CyNode, NodeInfo> nodeInfoHashMap = new HashMap<CyNode, NodeInfo>(inputNetwork.getNodeCount());
-
-		Comparator<Double> scoreComparator = new Comparator<Double>() {
-			@Override
-			public int compare(Double d1, Double d2) {
-				return d2.compareTo(d1);
-			}
-		};
+		final MCODEGraph graph = new MCODEGraph(inputNetwork);
+		final int nodeCount = graph.size();
+		final NodeInfo nodeInfo = new NodeInfo(graph, params.isIncludeLoops(),
+		                                       getSUIDs(inputNetwork.getNodeList()),
+		                                       getSUIDs(inputNetwork.getEdgeList()));
+
+		//calculate the neighborhood information of all of the nodes in parallel, a block
+		//at a time so that we can report progress and stop if we're cancelled
+		for (int block = 0; block < nodeCount && !cancelled; block += PROGRESS_BLOCK) {
+			final int blockEnd = Math.min(block + PROGRESS_BLOCK, nodeCount);
+			ParallelRange.forEach(block, blockEnd, BLOCK, new ParallelRange.Body() {
+				public void computeRange(int first, int last) {
+					for (int node = first; node < last; node++)
+						calcNodeInfo(graph, node, nodeInfo);
+				}
+			});
+			if (taskMonitor != null)
+				taskMonitor.setProgress((double)blockEnd / (double)nodeCount);
+		}
 
+		//score nodes TODO: add support for other scoring functions (low priority)
+		NodeInfo scoredNodeInfo = scoreNodes(nodeInfo);
+		if (!cancelled)
+			scoredNetworks.put(inputNetwork, scoredNodeInfo);
 
-		SortedMap<Double, List<CyNode>> nodeScoreSortedMap = new TreeMap<Double, List<CyNode>>(scoreComparator);
+		nodeInfoResultsMap.put(resultId, scoredNodeInfo);
+		currentNodeInfo = scoredNodeInfo;
 
-		//iterate over all nodes and calculate MCODE score
-		NodeInfo nodeInfo = null;
-		double nodeScore;
-		List<CyNode> al;
-		int i = 0;
+		long msTimeAfter = System.currentTimeMillis();
+		lastScoreTime = msTimeAfter - msTimeBefore;
+	}
 
-		for (CyNode n: inputNetwork.getNodeList()) {
-			if (cancelled) break;
-			nodeInfo = calcNodeInfo(inputNetwork, n);
-			nodeInfoHashMap.put(n, nodeInfo);
-			//score node TODO: add support for other scoring functions (low priority)
-			nodeScore = scoreNode(nodeInfo);
-
-			//save score for later use in TreeMap
-			//add a list of nodes to each score in case nodes have the same score
-			if (nodeScoreSortedMap.containsKey(nodeScore)) {
-				//already have a node with this score, add it to the list
-				al = nodeScoreSortedMap.get(nodeScore);
-				al.add(n);
-			} else {
-				al = new ArrayList<CyNode>();
-				al.add(n);
-				nodeScoreSortedMap.put(nodeScore, al);
-			}
+	/**
+	 * Step 1, when exploring: reuse the scores from the last time this network was scored.
+	 * This only works if the network still has exactly the same nodes and edges (by SUID,
+	 * and an edge's nodes can't change) and loops are (or aren't) included as before.
+	 * The degree cutoff can change, since the scores can be recalculated from the
+	 * neighborhoods.
+	 *
+	 * @param inputNetwork The network that was scored
+	 * @param resultId Id of the result
+	 * @return true if the scores were reused, false if the network has to be scored again
+	 */
+	public boolean loadScores(CyNetwork inputNetwork, int resultId) {
+		params = getParams();
+		if (inputNetwork == null)
+			return false;
 
-			if (taskMonitor != null) {
-				i++;
-				taskMonitor.setProgress((double)i / (double)inputNetwork.getNodeCount());
-			}
-		}
+		NodeInfo nodeInfo = scoredNetworks.get(inputNetwork);
+		if (nodeInfo == null || nodeInfo.includeLoops != params.isIncludeLoops() ||
+		    nodeInfo.nodeSUIDs.length != inputNetwork.getNodeCount() ||
+		    nodeInfo.edgeSUIDs.length != inputNetwork.getEdgeCount() ||
+		    !Arrays.equals(nodeInfo.nodeSUIDs, getSUIDs(inputNetwork.getNodeList())) ||
+		    !Arrays.equals(nodeInfo.edgeSUIDs, getSUIDs(inputNetwork.getEdgeList())))
+			return false;
 
-		nodeScoreResultsMap.put(resultId, nodeScoreSortedMap);
-		nodeInfoResultsMap.put(resultId, nodeInfoHashMap);
+		long msTimeBefore = System.currentTimeMillis();
+		nodeInfo = scoreNodes(nodeInfo);
+		scoredNetworks.put(inputNetwork, nodeInfo);
 
-		currentNodeScoreSortedMap = nodeScoreSortedMap;
-		currentNodeInfoHashMap = nodeInfoHashMap;
+		nodeInfoResultsMap.put(resultId, nodeInfo);
+		currentNodeInfo = nodeInfo;
 
 		long msTimeAfter = System.currentTimeMillis();
 		lastScoreTime = msTimeAfter - msTimeBefore;
+		return true;
+	}
+
+	//the sorted SUIDs of a list of nodes or edges
+	private static long[] getSUIDs(List<? extends CyIdentifiable> list) {
+		long[] suids = new long[list.size()];
+		int i = 0;
+		for (CyIdentifiable item: list)
+			suids[i++] = item.getSUID();
+		Arrays.sort(suids);
+		return suids;
 	}
 
 	/**
@@ -258,25 +306,21 @@ public class MCODEAlgorithm {
 	 *
 	 * @param inputNetwork The scored network to find clusters in.
 	 * @param resultId Title of the result
-	 * @return An array containing an MCODEClusterObj object for each cluster.
+	 * @return A list containing a NodeCluster for each cluster.
 	 */
 	public List<NodeCluster> findClusters(CyNetwork inputNetwork, int resultId) {
-		SortedMap<Double,List<CyNode>> nodeScoreSortedMap;
-		Map<CyNode, NodeInfo> nodeInfoHashMap;
+		NodeInfo nodeInfo;
 
 		//First we check if the network has been scored under this result title (i.e. scoring
 		//was required due to a scoring parameter change).  If it hasn't then we want to use the
 		//current scores that were generated the last time the network was scored and store them
 		//under the title of this result set for later use
-		if (!nodeScoreResultsMap.containsKey(resultId)) {
-			nodeScoreSortedMap = currentNodeScoreSortedMap;
-			nodeInfoHashMap = currentNodeInfoHashMap;
+		if (!nodeInfoResultsMap.containsKey(resultId)) {
+			nodeInfo = currentNodeInfo;
 
-			nodeScoreResultsMap.put(resultId, nodeScoreSortedMap);
-			nodeInfoResultsMap.put(resultId, nodeInfoHashMap);
+			nodeInfoResultsMap.put(resultId, nodeInfo);
 		} else {
-			nodeScoreSortedMap = (TreeMap) nodeScoreResultsMap.get(resultId);
-			nodeInfoHashMap = (HashMap) nodeInfoResultsMap.get(resultId);
+			nodeInfo = nodeInfoResultsMap.get(resultId);
 		}
 		params = getParams();
 		String callerID = "MCODEAlgorithm.findClusters";
@@ -284,111 +328,80 @@ public class MCODEAlgorithm {
 			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + ": inputNetwork was null.");
 			return (null);
 		}
-		if ((nodeInfoHashMap == null) || (nodeScoreSortedMap == null)) {
+		if (nodeInfo == null) {
 			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + 
-			                        ": nodeInfoHashMap or nodeScoreSortedMap was null.");
+			                        ": the network has not been scored.");
 			return (null);
 		}
 
 		//initialization
 		long msTimeBefore = System.currentTimeMillis();
-		Map<CyNode,Boolean> nodeSeenHashMap = 
-			new HashMap<CyNode,Boolean>(); //key is nodeIndex, value is true/false
-
-		int findingProgress = 0;
-		int findingTotal = 0;
-		Collection<List<CyNode>> values = nodeScoreSortedMap.values(); //returns a Collection sorted by key order (descending)
-		//In order to track the progress without significant lags (for times when many nodes have the same score
-		//and no progress is reported) we count all the scored nodes and track those instead
-		for (List<CyNode> nodeList: values) {
-			findingTotal += nodeList.size();
+		MCODEGraph graph = nodeInfo.graph;
+		int nodeCount = graph.size();
+		BitSet nodeSeen = new BitSet(nodeCount);
+		BitSet fluffSeen = new BitSet(nodeCount);
+
+		//When we're only looking at the selection, we only keep the clusters that
+		//contain any of the selected nodes
+		BitSet selectedNodes = null;
+		if (!params.getScope().equals(MCODEParameterSet.NETWORK)) {
+			selectedNodes = new BitSet(nodeCount);
+			for (CyNode node: params.getSelectedNodes()) {
+				int index = graph.getIndex(node);
+				if (index >= 0)
+					selectedNodes.set(index);
+			}
 		}
 
-		//stores the list of clusters as ArrayLists of node indices in the input Network
-		List<MCODEClusterObj> alClusters = new ArrayList<MCODEClusterObj>();
+		List<NodeCluster> clusters = new ArrayList<NodeCluster>();
+		IntArrayList cluster = new IntArrayList();
 		//iterate over node indices sorted descending by their score
-		for (List<CyNode> alNodesWithSameScore: values) {
-			for (CyNode currentNode: alNodesWithSameScore) {
-
-				if (!nodeSeenHashMap.containsKey(currentNode)) {
-					// Store the list of all the nodes that have already been seen and incorporated in other clusters
-					Map<CyNode, Boolean> nodeSeenHashMapSnapShot = 
-						new HashMap<CyNode, Boolean>(nodeSeenHashMap);
-
-					List<CyNode> alCluster = getClusterCore(currentNode, nodeSeenHashMap, 
-					                                        params.getNodeScoreCutoff(), params.getMaxDepthFromStart(), 
-					                                        nodeInfoHashMap);//here we use the original node score cutoff
-					if (alCluster.size() > 0) {
-						//make sure seed node is part of cluster, if not already in there
-						if (!alCluster.contains(currentNode)) {
-							alCluster.add(currentNode);
+		for (int findingProgress = 0; findingProgress < nodeCount; findingProgress++) {
+			int currentNode = nodeInfo.scoreOrder[findingProgress];
+
+			if (!nodeSeen.get(currentNode)) {
+				cluster.clear();
+				getClusterCore(currentNode, nodeSeen, params.getNodeScoreCutoff(), 
+				               params.getMaxDepthFromStart(), nodeInfo, cluster);//here we use the original node score cutoff
+				if (cluster.size() > 0) {
+					//make sure seed node is part of cluster.  It has already been seen when
+					//we look at its neighbors, so it can't be in there yet
+					cluster.add(currentNode);
+					//create an input graph for the filter and haircut methods
+					MCODEGraph.Subgraph clusterGraph = graph.getSubgraph(toArray(cluster), params.isIncludeLoops());
+					int[] coreNumbers = clusterGraph.getCoreNumbers();
+
+					if (!filterCluster(coreNumbers)) {
+						if (params.isHaircut()) {
+							haircutCluster(coreNumbers, cluster);
+						}
+						if (params.isFluff()) {
+							fluffClusterBoundary(cluster, nodeSeen, fluffSeen, nodeInfo);
 						}
-						//create an input graph for the filter and haircut methods
-						CyNetwork clusterGraph = createCyNetwork(alCluster, inputNetwork);
-
-						if (!filterCluster(clusterGraph)) {
-							if (params.isHaircut()) {
-								haircutCluster(clusterGraph, alCluster, inputNetwork);
-							}
-							if (params.isFluff()) {
-								fluffClusterBoundary(alCluster, nodeSeenHashMap, nodeInfoHashMap);
-							}
-
-							clusterGraph = createCyNetwork(alCluster, inputNetwork);
-							final double score = scoreCluster(clusterGraph);
-
-							MCODEClusterObj currentCluster = new MCODEClusterObj(resultId, currentNode, clusterGraph, score, 
-							                                                     alCluster, nodeSeenHashMapSnapShot);
 
-							alClusters.add(currentCluster);
+						clusterGraph = graph.getSubgraph(toArray(cluster), params.isIncludeLoops());
+						if (selectedNodes == null || containsAny(cluster, selectedNodes)) {
+							NodeCluster currentCluster = new NodeCluster();
+							for (int i = 0; i < cluster.size(); i++)
+								currentCluster.add(graph.getNode(cluster.getQuick(i)));
+							currentCluster.setClusterScore(scoreCluster(clusterGraph));
+							clusters.add(currentCluster);
 						}
 					}
 				}
-				if (taskMonitor != null) {
-					findingProgress++;
-					//We want to be sure that only progress changes are reported and not
-					//miniscule decimal increments so that the taskMonitor isn't overwhelmed
-					double newProgress = (double)findingProgress / (double)findingTotal;
-					double oldProgress = (double)(findingProgress-1) / (double)findingTotal;
-					if (newProgress != oldProgress) {
-						taskMonitor.setProgress(newProgress);
-					}
-				}
-				if (cancelled) {
-					break;
-				}
 			}
-		}
-		//Once the clusters have been found we either return them or in the case of selection scope, we select only
-		//the ones that contain the selected node(s) and return those
-		ArrayList selectedALClusters = new ArrayList();
-		if (!params.getScope().equals(MCODEParameterSet.NETWORK)) {
-			for (MCODEClusterObj cluster: alClusters) {
-				List<CyNode> alCluster = cluster.getALCluster();
-				List<CyNode> alSelectedNodes = new ArrayList<CyNode>(params.getSelectedNodes());
-
-				//method for returning only clusters that contain all of the selected noes
-				/*
-				if (alCluster.containsAll(alSelectedNodes)) {
-					selectedAlClusters.add(cluster);
-				}
-				*/
-				//method for returning all clusters that contain any of the selected nodes
-				boolean hit = false;
-				for (CyNode node: alSelectedNodes) {
-					if (alCluster.contains(node))
-						hit = true;
+			if (taskMonitor != null) {
+				//We want to be sure that only progress changes are reported and not
+				//miniscule decimal increments so that the taskMonitor isn't overwhelmed
+				double newProgress = (double)(findingProgress+1) / (double)nodeCount;
+				double oldProgress = (double)findingProgress / (double)nodeCount;
+				if (newProgress != oldProgress) {
+					taskMonitor.setProgress(newProgress);
 				}
-				if (hit)
-					selectedALClusters.add(cluster);
-
 			}
-			alClusters = selectedALClusters;
-		}
-		//Finally convert the arraylist into a fixed array
-		List<NodeCluster> clusters = new ArrayList<NodeCluster>();
-		for (MCODEClusterObj c: alClusters) {
-			clusters.add(c.getNodeCluster());
+			if (cancelled) {
+				break;
+			}
 		}
 
 		long msTimeAfter = System.currentTimeMillis();
@@ -397,31 +410,53 @@ public class MCODEAlgorithm {
 		return clusters;
 	}
 
-	private List<CyNode> getCyNodeList(List<Long> suidList, CyNetwork inputNetwork) {
-		List<CyNode> nodeList = new ArrayList<CyNode>(suidList.size());
-		for (Long suid: suidList) {
-			nodeList.add(inputNetwork.getNode(suid));
-		}
-		return nodeList;
+	private static int[] toArray(IntArrayList list) {
+		return Arrays.copyOf(list.elements(), list.size());
 	}
 
-	private CyNetwork createCyNetwork(List<CyNode> nodeList, CyNetwork inputNetwork) {
-		final Set<CyEdge> edges = new HashSet<CyEdge>();
-
-		for (final CyNode n: nodeList) {
-			final Set<CyEdge> adjacentEdges = new HashSet<CyEdge>(inputNetwork.getAdjacentEdgeList(n, CyEdge.Type.ANY));
-
-			// Get only the edges that connect nodes that belong to the subnetwork
-			for (CyEdge e: adjacentEdges) {
-				if (!params.isIncludeLoops() && e.getSource().getSUID() == e.getTarget().getSUID())
-					continue;
+	private static boolean containsAny(IntArrayList list, BitSet nodes) {
+		for (int i = 0; i < list.size(); i++) {
+			if (nodes.get(list.getQuick(i)))
+				return true;
+		}
+		return false;
+	}
 
-				if (nodeList.contains(e.getSource()) && nodeList.contains(e.getTarget()))
-					edges.add(e);
+	/**
+	 * Score all of the nodes with the current degree cutoff, and sort them by score.
+	 * If the nodes have already been scored with a different cutoff, the scores are
+	 * kept in a new NodeInfo, so that earlier results keep theirs.
+	 *
+	 * @param nodeInfo The neighborhood information of the nodes
+	 * @return The scored nodes
+	 */
+	private NodeInfo scoreNodes(NodeInfo nodeInfo) {
+		if (nodeInfo.score != null && nodeInfo.degreeCutoff == params.getDegreeCutoff())
+			return nodeInfo;
+
+		final NodeInfo scoredNodeInfo = nodeInfo.score == null ? nodeInfo : new NodeInfo(nodeInfo);
+		int nodeCount = scoredNodeInfo.graph.size();
+		scoredNodeInfo.degreeCutoff = params.getDegreeCutoff();
+		scoredNodeInfo.score = new double[nodeCount];
+		Integer[] order = new Integer[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			scoredNodeInfo.score[node] = scoreNode(scoredNodeInfo, node);
+			order[node] = node;
+		}
+
+		//sort descending by score.  The sort is stable, so nodes with the same score
+		//stay in the network's order.
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer n1, Integer n2) {
+				return Double.compare(scoredNodeInfo.score[n2], scoredNodeInfo.score[n1]);
 			}
-		}
-		CyNetwork gpCluster = ((CySubNetwork)inputNetwork).getRootNetwork().addSubNetwork(nodeList, edges);
-		return gpCluster;
+		});
+		scoredNodeInfo.scoreOrder = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++)
+			scoredNodeInfo.scoreOrder[i] = order[i];
+
+		return scoredNodeInfo;
 	}
 
 	/**
@@ -429,36 +464,34 @@ public class MCODEAlgorithm {
 	 * This formula selects for larger, denser cores.
 	 * This is a utility function for the algorithm.
 	 *
-	 * @param nodeInfo The internal data structure to fill with node information
+	 * @param nodeInfo The internal data structure with the node information
+	 * @param node The index of the node to score
 	 * @return The score of this node.
 	 */
-	private double scoreNode(NodeInfo nodeInfo) {
-		if (nodeInfo.numNodeNeighbors > params.getDegreeCutoff()) {
-			nodeInfo.score = nodeInfo.coreDensity * (double) nodeInfo.coreLevel;
+	private double scoreNode(NodeInfo nodeInfo, int node) {
+		if (nodeInfo.numNodeNeighbors[node] > nodeInfo.degreeCutoff) {
+			return nodeInfo.coreDensity[node] * (double) nodeInfo.coreLevel[node];
 		} else {
-			nodeInfo.score = 0.0;
+			return 0.0;
 		}
-		return (nodeInfo.score);
 	}
 
 	/**
 	 * Score a cluster.  Currently this ranks larger, denser clusters higher, although
 	 * in the future other scoring functions could be created
 	 *
-	 * @param cluster - The GINY CyNetwork version of the cluster
+	 * @param clusterGraph - The cluster, as a subgraph of the scored network
 	 * @return The score of the cluster
 	 */
-	public double scoreCluster(CyNetwork clusterGraph) {
+	public double scoreCluster(MCODEGraph.Subgraph clusterGraph) {
 		int numNodes = 0;
 		double density = 0.0, score = 0.0;
 
-		numNodes = clusterGraph.getNodeCount();
+		numNodes = clusterGraph.size();
 
-		density = calcDensity(clusterGraph, params.isIncludeLoops());
+		density = clusterGraph.getDensity();
 		score = density * numNodes;
 
-		// System.out.println("Density = "+density+", score = "+score);
-
 		return score;
 	}
 
@@ -467,82 +500,45 @@ public class MCODEAlgorithm {
 	 * This information is used to score the nodes in the scoring stage.
 	 * This is a utility function for the algorithm.
 	 *
-	 * @param inputNetwork The input network for reference
-	 * @param nodeIndex    The index of the node in the input network to score
-	 * @return A NodeInfo object containing node information required for the algorithm
+	 * @param graph    The snapshot of the input network
+	 * @param node     The index of the node in the snapshot to score
+	 * @param nodeInfo The internal data structure to fill with node information
 	 */
-	private NodeInfo calcNodeInfo(CyNetwork inputNetwork, CyNode node) {
-		String callerID = "MCODEAlgorithm.calcNodeInfo";
-		if (inputNetwork == null) {
-			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + ": gpInputGraph was null.");
-			return null;
-		}
-
-		//get neighborhood of this node (including the node)
-		//long[] neighbors = inputNetwork.neighborsArray(nodeIndex);
-		List<CyNode> neighborList = inputNetwork.getNeighborList(node, CyEdge.Type.ANY);
-		// long[] neighbors = new long[neighborList.size()];
-		// for (int i = 0; i < neighborList.size(); i++) neighbors[i] = neighborList.get(i).getSUID();
+	private void calcNodeInfo(MCODEGraph graph, int node, NodeInfo nodeInfo) {
+		//get the number of neighbors of this node, with one for each edge (as
+		//CyNetwork.getNeighborList gives them)
+		int neighborCount = graph.getEdgeCount(node);
 
-		if (neighborList.size() < 2) {
+		if (neighborCount < 2) {
 			//if there are no neighbors or just one neighbor, nodeInfo calculation is trivial
-			NodeInfo nodeInfo = new NodeInfo();
-			if (neighborList.size() == 1) {
-				nodeInfo.coreLevel = 1;
-				nodeInfo.coreDensity = 1.0;
-				nodeInfo.density = 1.0;
+			if (neighborCount == 1) {
+				nodeInfo.coreLevel[node] = 1;
+				nodeInfo.coreDensity[node] = 1.0;
+				nodeInfo.density[node] = 1.0;
 			}
-			return (nodeInfo);
+			return;
 		}
 
-		//add original node to extract complete neighborhood
-		/*
-		Arrays.sort(neighbors);
-		if (Arrays.binarySearch(neighbors, node.getSUID()) < 0) {
-			neighborhood = new long[neighbors.length + 1];
-			System.arraycopy(neighbors, 0, neighborhood, 1, neighbors.length);
-			neighborhood[0] = node.getSUID();
-		} else {
-			neighborhood = neighbors;
-		}
-		*/
-		if (!neighborList.contains(node))
-			neighborList.add(node);
-
-		//extract neighborhood subgraph
-		CyNetwork gpNodeNeighborhood = createCyNetwork(neighborList, inputNetwork);
-		// System.out.println("neighborhood subgraph has "+gpNodeNeighborhood.getNodeCount()+" nodes and "+
-		//                    gpNodeNeighborhood.getEdgeCount()+" edges");
-		if (gpNodeNeighborhood == null) {
-			//this shouldn't happen
-			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + ": gpNodeNeighborhood was null.");
-			return null;
-		}
+		//extract neighborhood subgraph, including the original node
+		MCODEGraph.Subgraph nodeNeighborhood =
+			graph.getSubgraph(graph.getNeighborhood(node), nodeInfo.includeLoops);
 
-		//calculate the node information for each node
-		NodeInfo nodeInfo = new NodeInfo();
 		//density
-		if (gpNodeNeighborhood != null) {
-			nodeInfo.density = calcDensity(gpNodeNeighborhood, params.isIncludeLoops());
-			// System.out.println("density is "+nodeInfo.density);
-		}
-		nodeInfo.numNodeNeighbors = neighborList.size();
+		nodeInfo.density[node] = nodeNeighborhood.getDensity();
+		//the node itself is only already in the list if it has a self-loop
+		nodeInfo.numNodeNeighbors[node] = graph.hasLoop(node) ? neighborCount : neighborCount + 1;
 
 		//calculate the highest k-core
-		Object[] returnArray = getHighestKCore(gpNodeNeighborhood);
-		Integer k = (Integer) returnArray[0];
-		CyNetwork gpCore = (CyNetwork) returnArray[1];
-		nodeInfo.coreLevel = k.intValue();
+		int[] coreNumbers = nodeNeighborhood.getCoreNumbers();
+		int k = 0;
+		for (int core: coreNumbers)
+			k = Math.max(k, core);
+		nodeInfo.coreLevel[node] = k;
 		//calculate the core density - amplifies the density of heavily interconnected regions and attenuates
 		//that of less connected regions
-		if (gpCore != null) {
-			nodeInfo.coreDensity = calcDensity(gpCore, params.isIncludeLoops());
-			// System.out.println("coreDensity is "+nodeInfo.coreDensity);
+		if (k > 0) {
+			nodeInfo.coreDensity[node] = nodeNeighborhood.getDensity(coreNumbers, k);
 		}
-		//record neighbor array for later use in cluster detection step
-		nodeInfo.nodeNeighbors = neighborList;
-
-		return (nodeInfo);
 	}
 
 	/**
@@ -550,62 +546,63 @@ public class MCODEAlgorithm {
 	 * This is a utility function for the algorithm.
 	 *
 	 * @param startNode       The node that is the seed of the cluster
-	 * @param nodeSeenHashMap The list of nodes seen already
+	 * @param nodeSeen        The nodes seen already
 	 * @param nodeScoreCutoff Slider input used for cluster exploration
 	 * @param maxDepthFromStart Limits the number of recursions
-	 * @param nodeInfoHashMap Provides the node scores
-	 * @return A list of node IDs representing the core of the cluster
+	 * @param nodeInfo        Provides the node scores
+	 * @param cluster         Filled with the nodes in the core of the cluster
 	 */
-	private List<CyNode> getClusterCore(CyNode startNode, Map<CyNode,Boolean> nodeSeenHashMap,
-	                                    double nodeScoreCutoff, int maxDepthFromStart, 
-	                                    Map<CyNode, NodeInfo> nodeInfoHashMap) {
-		List<CyNode> cluster = new ArrayList<CyNode>(); //stores Long nodeIndices
-		getClusterCoreInternal(startNode, nodeSeenHashMap, 
-		                       ((NodeInfo) nodeInfoHashMap.get(startNode)).score, 1, 
-		                       cluster, nodeScoreCutoff, maxDepthFromStart, 
-		                       nodeInfoHashMap);
-		return (cluster);
+	private void getClusterCore(int startNode, BitSet nodeSeen,
+	                            double nodeScoreCutoff, int maxDepthFromStart, 
+	                            NodeInfo nodeInfo, IntArrayList cluster) {
+		getClusterCoreInternal(startNode, nodeSeen, nodeInfo.score[startNode], 1, 
+		                       cluster, nodeScoreCutoff, maxDepthFromStart, nodeInfo);
 	}
 
 	/**
 	 * An internal function that does the real work of getClusterCore, implemented to enable recursion.
 	 *
 	 * @param startNode         The node that is the seed of the cluster
-	 * @param nodeSeenHashMap   The list of nodes seen already
+	 * @param nodeSeen          The nodes seen already
 	 * @param startNodeScore    The score of the seed node
 	 * @param currentDepth      The depth away from the seed node that we are currently at
 	 * @param cluster           The cluster to add to if we find a cluster node in this method
 	 * @param nodeScoreCutoff   Helps determine if the nodes being added are within the given threshold
 	 * @param maxDepthFromStart Limits the recursion
-	 * @param nodeInfoHashMap   Provides score info
+	 * @param nodeInfo          Provides score info
 	 * @return true
 	 */
-	private boolean getClusterCoreInternal(CyNode startNode, Map<CyNode, Boolean> nodeSeenHashMap, double startNodeScore, 
-	                                       int currentDepth, List<CyNode> cluster, double nodeScoreCutoff, 
-	                                       int maxDepthFromStart,  Map<CyNode, NodeInfo> nodeInfoHashMap) {
+	private boolean getClusterCoreInternal(int startNode, BitSet nodeSeen, double startNodeScore, 
+	                                       int currentDepth, IntArrayList cluster, double nodeScoreCutoff, 
+	                                       int maxDepthFromStart, NodeInfo nodeInfo) {
 		//base cases for recursion
-		if (nodeSeenHashMap.containsKey(startNode)) {
+		if (nodeSeen.get(startNode)) {
 			return true;  //don't recheck a node
 		}
-		nodeSeenHashMap.put(startNode, true);
+		nodeSeen.set(startNode);
 		
 		if (currentDepth > maxDepthFromStart) {
 			return true;  //don't exceed given depth from start node
 		}
 
-		//Initialization
-		for (CyNode currentNeighbor: nodeInfoHashMap.get(startNode).nodeNeighbors) {
-			if ((!nodeSeenHashMap.containsKey(currentNeighbor)) &&
-					(((NodeInfo) nodeInfoHashMap.get(currentNeighbor)).score >=
+		//Initialization.  Nodes with fewer than two neighbors don't record them.
+		if (nodeInfo.numNodeNeighbors[startNode] == 0) {
+			return true;
+		}
+		MCODEGraph graph = nodeInfo.graph;
+		int neighborCount = graph.getEdgeCount(startNode);
+		for (int i = 0; i < neighborCount; i++) {
+			int currentNeighbor = graph.getNeighborEntry(startNode, i);
+			//nodes that are already in the cluster have been seen
+			if ((!nodeSeen.get(currentNeighbor)) &&
+					(nodeInfo.score[currentNeighbor] >=
 					(startNodeScore - startNodeScore * nodeScoreCutoff))) {
 				//add current neighbor
-				if (!cluster.contains(currentNeighbor)) {
-					cluster.add(currentNeighbor);
-				}
+				cluster.add(currentNeighbor);
 				//try to extend cluster at this node
-				getClusterCoreInternal(currentNeighbor, nodeSeenHashMap, startNodeScore, 
+				getClusterCoreInternal(currentNeighbor, nodeSeen, startNodeScore, 
 				                       currentDepth + 1, cluster, nodeScoreCutoff, 
-				                       maxDepthFromStart, nodeInfoHashMap);
+				                       maxDepthFromStart, nodeInfo);
 			}
 		}
 
@@ -617,34 +614,36 @@ public class MCODEAlgorithm {
 	 * This implements the cluster fluff feature.
 	 *
 	 * @param cluster         The cluster to fluff
-	 * @param nodeSeenHashMap The list of nodes seen already
-	 * @param nodeInfoHashMap Provides neighbour info
+	 * @param nodeSeen        The nodes seen already
+	 * @param nodeSeenInternal Scratch space, which is cleared again before we return
+	 * @param nodeInfo        Provides neighbour info
 	 * @return true
 	 */
-	private boolean fluffClusterBoundary(List<CyNode> cluster, Map<CyNode, Boolean> nodeSeenHashMap, 
-	                                     Map<CyNode, NodeInfo> nodeInfoHashMap) {
-		//create a temp list of nodes to add to avoid concurrently modifying 'cluster'
-		List<CyNode> nodesToAdd = new ArrayList<CyNode>();
-
-		//Keep a separate internal nodeSeenHashMap because nodes seen during a fluffing should not be marked as permanently seen,
+	private boolean fluffClusterBoundary(IntArrayList cluster, BitSet nodeSeen, BitSet nodeSeenInternal,
+	                                     NodeInfo nodeInfo) {
+		//Keep a separate internal nodeSeen because nodes seen during a fluffing should not be marked as permanently seen,
 		//they can be included in another cluster's fluffing step.
-		Map<CyNode,Boolean> nodeSeenHashMapInternal = new HashMap<CyNode,Boolean>();
-
-		//add all current neighbour's neighbours into cluster (if they have high enough clustering coefficients) and mark them all as seen
-		for (CyNode currentNode: cluster) {
-			for (CyNode nodeNeighbor: nodeInfoHashMap.get(currentNode).nodeNeighbors) {
-				if ((!nodeSeenHashMap.containsKey(nodeNeighbor)) && (!nodeSeenHashMapInternal.containsKey(nodeNeighbor)) &&
-						((nodeInfoHashMap.get(nodeNeighbor).density) > params.getFluffNodeDensityCutoff())) {
-					nodesToAdd.add(nodeNeighbor);
-					nodeSeenHashMapInternal.put(nodeNeighbor, new Boolean(true));
+		MCODEGraph graph = nodeInfo.graph;
+		int clusterSize = cluster.size();
+
+		//add all current neighbour's neighbours into cluster (if they have high enough clustering coefficients) and mark them all as seen.
+		//The fluffed nodes are added at the end, and aren't fluffed themselves.
+		for (int c = 0; c < clusterSize; c++) {
+			int currentNode = cluster.getQuick(c);
+			if (nodeInfo.numNodeNeighbors[currentNode] == 0) continue;
+			int neighborCount = graph.getEdgeCount(currentNode);
+			for (int i = 0; i < neighborCount; i++) {
+				int nodeNeighbor = graph.getNeighborEntry(currentNode, i);
+				if ((!nodeSeen.get(nodeNeighbor)) && (!nodeSeenInternal.get(nodeNeighbor)) &&
+						((nodeInfo.density[nodeNeighbor]) > params.getFluffNodeDensityCutoff())) {
+					cluster.add(nodeNeighbor);
+					nodeSeenInternal.set(nodeNeighbor);
 				}
 			}
 		}
 
-		//Add fluffed nodes to cluster
-		if (nodesToAdd.size() > 0) {
-			cluster.addAll(nodesToAdd.subList(0, nodesToAdd.size()));
-		}
+		for (int c = clusterSize; c < cluster.size(); c++)
+			nodeSeenInternal.clear(cluster.getQuick(c));
 
 		return (true);
 	}
@@ -652,199 +651,36 @@ public class MCODEAlgorithm {
 	/**
 	 * Checks if the cluster needs to be filtered according to heuristics in this method
 	 *
-	 * @param gpClusterGraph The cluster to check if it passes the filter
+	 * @param coreNumbers The core number of each node in the cluster
 	 * @return true if cluster should be filtered, false otherwise
 	 */
-	private boolean filterCluster(CyNetwork gpClusterGraph) {
-		if (gpClusterGraph == null) {
-			return (true);
-		}
-
+	private boolean filterCluster(int[] coreNumbers) {
 		//filter if the cluster does not satisfy the user specified k-core
-		CyNetwork gpCore = getKCore(gpClusterGraph, params.getKCore());
-		if (gpCore == null) {
-			return (true);
+		for (int core: coreNumbers) {
+			if (core >= params.getKCore())
+				return (false);
 		}
 
-		return (false);
+		return (true);
 	}
 
 	/**
 	 * Gives the cluster a haircut (removed singly connected nodes by taking a 2-core)
 	 *
-	 * @param gpClusterGraph The cluster graph
-	 * @param cluster        The cluster node ID list (in the original graph)
-	 * @param gpInputGraph   The original input graph
+	 * @param coreNumbers The core number of each node in the cluster
+	 * @param cluster     The cluster node index list (in the scored graph)
 	 * @return true
 	 */
-	private boolean haircutCluster(CyNetwork gpClusterGraph, List<CyNode> cluster, CyNetwork gpInputGraph) {
-		//get 2-core
-		CyNetwork gpCore = getKCore(gpClusterGraph, 2);
-		if (gpCore != null) {
-			//clear the cluster and add all 2-core nodes back into it
-			cluster.clear();
-			//must add back the nodes in a way that preserves gpInputGraph node indices
-			for (CyNode node: gpCore.getNodeList()) {
-				cluster.add(node);
-			}
-		}
-		return (true);
-	}
-
-	/**
-	 * Calculate the density of a network
-	 * The density is defined as the number of edges/the number of possible edges
-	 *
-	 * @param gpInputGraph The input graph to calculate the density of
-	 * @param includeLoops Include the possibility of loops when determining the number of
-	 *                     possible edges.
-	 * @return The density of the network
-	 */
-	public double calcDensity(CyNetwork gpInputGraph, boolean includeLoops) {
-		double density = 0;
-		int nodeCount = gpInputGraph.getNodeCount();
-		int actualEdgeNum = getMergedEdgeCount(gpInputGraph.getEdgeList(), includeLoops);
-		int possibleEdgeNum = 0;
-
-		String callerID = "MCODEAlgorithm.calcDensity";
-		if (gpInputGraph == null) {
-			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + ": gpInputGraph was null.");
-			return (-1.0);
-		}
-
-		if (includeLoops) {
-			possibleEdgeNum = (nodeCount * (nodeCount+1)) / 2;
-		} else {
-			possibleEdgeNum = (nodeCount * (nodeCount-1)) / 2;
-		}
-
-		// System.out.println(callerID+" nodeCount = "+nodeCount+", actualEdgeNum = "+actualEdgeNum+", possibleEdgeNum = "+possibleEdgeNum);
-
-		density = possibleEdgeNum != 0 ? ((double) actualEdgeNum / (double) possibleEdgeNum) : 0;
-		return (density);
-	}
-
-	/**
-	 * Calculate the degree of a node taking into account whether to include loops or not.
-	 *
-	 * @param graph the input graph
-	 * @param node the node we want the degree of
-	 * @param includeLoops whether or not to consider loops
-	 * @return the node degree
-	 */
-	private int getDegree(final CyNetwork graph, final CyNode node, final boolean includeLoops) {
-		List<CyEdge> edgeList = graph.getAdjacentEdgeList(node, CyEdge.Type.ANY);
-
-		return getMergedEdgeCount(edgeList, includeLoops);
-	}
-
-	/**
-	 * Return the number of edges taking into account whether we want to include loops or not and
-	 * whether we have multiple edges between the same nodes.
-	 *
-	 * @param edgeList the list edges we're looking at
-	 * @param includeLoops whether to include loops or not
-	 * @return the number of edges
-	 */
-	private int getMergedEdgeCount(final List<CyEdge> edgeList, final boolean includeLoops) {
-		Set<String> suidPairs = new HashSet<String>();
-
-		for (CyEdge e: edgeList) {
-			Long id1 = e.getSource().getSUID();
-			Long id2 = e.getTarget().getSUID();
-
-			if (!includeLoops && id1 == id2)
-				continue;
-
-			String pair = id1 < id2 ? id1+"_"+id2 : id2+"_"+id1;
-			suidPairs.add(pair);
-		}
-
-		return suidPairs.size();
-	}
-
-
-	/**
-	 * Find a k-core of a network. A k-core is a subgraph of minimum degree k
-	 *
-	 * @param gpInputGraph The input network
-	 * @param k            The k of the k-core to find e.g. 4 will find a 4-core
-	 * @return Returns a subgraph with the core, if any was found at given k
-	 */
-	public CyNetwork getKCore(CyNetwork gpInputGraph, int k) {
-		String callerID = "MCODEAlgorithm.getKCore";
-		if (gpInputGraph == null) {
-			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + ": gpInputGraph was null.");
-			return (null);
-		}
-
-		//filter all nodes with degree less than k until convergence
-		boolean firstLoop = true;
-		int numDeleted;
-		CyNetwork gpOutputGraph = null;
-
-		while (true) {
-			numDeleted = 0;
-			List<CyNode> alCoreNodeIndices = new ArrayList<CyNode>(gpInputGraph.getNodeCount());
-			for (CyNode n: gpInputGraph.getNodeList()) {
-				int degree = getDegree(gpInputGraph, n, params.isIncludeLoops());
-
-				if (degree >= k)
-					alCoreNodeIndices.add(n); //contains all nodes with degree >= k
-				else
-					numDeleted++;
-			}
-
-			if ((numDeleted > 0) || (firstLoop)) {
-				gpOutputGraph = createCyNetwork(alCoreNodeIndices, gpInputGraph);
-				if (gpOutputGraph.getNodeCount() == 0) {
-					return (null);
-				}
-
-				//iterate again, but with a new k-core input graph
-				gpInputGraph = gpOutputGraph;
-				if (firstLoop) {
-					firstLoop = false;
-				}
-			} else {
-				//stop the loop
-				break;
-			}
+	private boolean haircutCluster(int[] coreNumbers, IntArrayList cluster) {
+		//keep the 2-core, if there is one
+		int coreSize = 0;
+		for (int i = 0; i < coreNumbers.length; i++) {
+			if (coreNumbers[i] >= 2)
+				cluster.setQuick(coreSize++, cluster.getQuick(i));
 		}
-
-		return (gpOutputGraph);
-	}
-
-	/**
-	 * Find the highest k-core in the input graph.
-	 *
-	 * @param gpInputGraph The input network
-	 * @return Returns the k-value and the core as an Object array.
-	 *         The first object is the highest k value i.e. objectArray[0]
-	 *         The second object is the highest k-core as a CyNetwork i.e. objectArray[1]
-	 */
-	public Object[] getHighestKCore(CyNetwork gpInputGraph) {
-		String callerID = "MCODEAlgorithm.getHighestKCore";
-		if (gpInputGraph == null) {
-			taskMonitor.showMessage(TaskMonitor.Level.ERROR, "In " + callerID + ": gpInputGraph was null.");
-			return (null);
-		}
-
-		int i = 1;
-		CyNetwork gpCurCore = null, gpPrevCore = null;
-
-		while ((gpCurCore = getKCore(gpInputGraph, i)) != null) {
-			gpInputGraph = gpCurCore;
-			gpPrevCore = gpCurCore;
-			i++;
+		if (coreSize > 0) {
+			cluster.setSize(coreSize);
 		}
-
-		Integer k = new Integer(i - 1);
-		Object[] returnArray = new Object[2];
-		returnArray[0] = k;
-		returnArray[1] = gpPrevCore;    //in the last iteration, gpCurCore is null (loop termination condition)
-		// System.out.println("highest kcore = "+k);
-
-		return (returnArray);
+		return (true);
 	}
 }
@@ -148,7 +148,7 @@ public class MCODECluster extends AbstractNetworkClusterer  {
 
 		MCODECurrentParameters.getInstance().setParams(currentParamsCopy, "MCODE Result", ModelUtils.getNetworkName(network));
 
-		runMCODE = new RunMCODE(RESCORE, 1, network, monitor);
+		runMCODE = new RunMCODE(context.reuseScores ? REFIND : RESCORE, 1, network, monitor);
 		List<NodeCluster> clusters = runMCODE.run(monitor);
 		if (canceled) {
 			monitor.showMessage(TaskMonitor.Level.INFO,"Canceled by user");
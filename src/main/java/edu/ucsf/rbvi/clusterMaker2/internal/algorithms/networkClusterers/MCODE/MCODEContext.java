@@ -24,6 +24,14 @@ public class MCODEContext implements ClusterAlgorithmContext {
 	@Tunable(description = "Degree Cutoff", groups={"MCODE Tuning", "MCODE Advanced Settings", "Network Scoring"}, gravity=2.0)
 	public int degreeCutoff = 2;
 
+	@Tunable(description = "Reuse the last node scores", 
+	         tooltip="<html>If the network has been scored before, only find the clusters again.<br/>"+
+	                 "This makes it quick to try different cluster finding settings.  The network<br/>"+
+	                 "is still scored again if any node or edge has been added or removed, or if<br/>"+
+	                 "Include loops has changed.</html>",
+	         groups={"MCODE Tuning", "MCODE Advanced Settings", "Network Scoring"}, gravity=2.0)
+	public boolean reuseScores = false;
+
 	@Tunable(description = "Haircut", groups={"MCODE Tuning", "MCODE Advanced Settings", "Cluster Finding"}, gravity=2.0)
 	public boolean haircut = true;
 
@@ -61,6 +69,7 @@ public class MCODEContext implements ClusterAlgorithmContext {
 		scoreCutoff = origin.scoreCutoff;
 		selectedOnly = origin.selectedOnly;
 		degreeCutoff = origin.degreeCutoff;
+		reuseScores = origin.reuseScores;
 		kCore = origin.kCore;
 		maxDepth = origin.maxDepth;
 	}
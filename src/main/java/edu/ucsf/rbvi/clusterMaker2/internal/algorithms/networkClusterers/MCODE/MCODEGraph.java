@@ -0,0 +1,345 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.MCODE;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+
+/**
+ * A read-only copy of the adjacency of a network, with the nodes numbered from
+ * 0 in the order of the network's node list.  MCODE looks at the neighborhood
+ * of every node, and building each of those as a Cytoscape subnetwork is far
+ * too slow on large networks, so everything is done on int arrays here
+ * instead.  Once it's built, the graph can be shared between threads.
+ *
+ * Two neighbor lists are kept for each node: the one the network gives us
+ * (one entry for each adjacent edge, so a neighbor shows up once for each edge
+ * between them, in the network's order), and a sorted list of the distinct
+ * neighbors, not including the node itself.  Self-loops are flagged
+ * separately.
+ */
+public class MCODEGraph {
+	private final List<CyNode> nodes;
+	private final Map<CyNode, Integer> nodeIndex;
+
+	// One entry per adjacent edge, as CyNetwork.getNeighborList returns them
+	private final int[] entryStart;
+	private final int[] entries;
+
+	// The distinct neighbors, in increasing order
+	private final int[] neighborStart;
+	private final int[] neighbors;
+
+	private final boolean[] loop;
+
+	/**
+	 * Copy the adjacency of a network
+	 *
+	 * @param network the network
+	 */
+	public MCODEGraph(CyNetwork network) {
+		nodes = network.getNodeList();
+		int n = nodes.size();
+		nodeIndex = new HashMap<CyNode, Integer>(n*2);
+		for (int i = 0; i < n; i++)
+			nodeIndex.put(nodes.get(i), i);
+
+		int[][] entryLists = new int[n][];
+		int nEntries = 0;
+		for (int i = 0; i < n; i++) {
+			List<CyNode> neighborList = network.getNeighborList(nodes.get(i), CyEdge.Type.ANY);
+			int[] list = new int[neighborList.size()];
+			for (int j = 0; j < list.length; j++)
+				list[j] = nodeIndex.get(neighborList.get(j));
+			entryLists[i] = list;
+			nEntries += list.length;
+		}
+
+		entryStart = new int[n+1];
+		entries = new int[nEntries];
+		loop = new boolean[n];
+		int[][] neighborLists = new int[n][];
+		int nNeighbors = 0;
+		for (int i = 0; i < n; i++) {
+			int[] list = entryLists[i];
+			entryStart[i+1] = entryStart[i] + list.length;
+			System.arraycopy(list, 0, entries, entryStart[i], list.length);
+
+			int[] sorted = list.clone();
+			Arrays.sort(sorted);
+			int count = 0;
+			for (int j = 0; j < sorted.length; j++) {
+				if (sorted[j] == i)
+					loop[i] = true;
+				else if (count == 0 || sorted[count-1] != sorted[j])
+					sorted[count++] = sorted[j];
+			}
+			neighborLists[i] = Arrays.copyOf(sorted, count);
+			nNeighbors += count;
+			entryLists[i] = null;
+		}
+
+		neighborStart = new int[n+1];
+		neighbors = new int[nNeighbors];
+		for (int i = 0; i < n; i++) {
+			int[] list = neighborLists[i];
+			neighborStart[i+1] = neighborStart[i] + list.length;
+			System.arraycopy(list, 0, neighbors, neighborStart[i], list.length);
+		}
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() { return nodes.size(); }
+
+	/**
+	 * @return the node with this index
+	 */
+	public CyNode getNode(int index) { return nodes.get(index); }
+
+	/**
+	 * @return the index of this node, or -1 if it isn't in the graph
+	 */
+	public int getIndex(CyNode node) {
+		Integer index = nodeIndex.get(node);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @return the number of edges adjacent to a node, counting multiple edges
+	 * and self-loops
+	 */
+	public int getEdgeCount(int node) { return entryStart[node+1] - entryStart[node]; }
+
+	/**
+	 * @return the neighbors of a node, one for each adjacent edge, in the
+	 * network's order
+	 */
+	public int[] getNeighborEntries(int node) {
+		return Arrays.copyOfRange(entries, entryStart[node], entryStart[node+1]);
+	}
+
+	/**
+	 * @return the i'th neighbor entry of a node (see {@link #getNeighborEntries})
+	 */
+	public int getNeighborEntry(int node, int i) { return entries[entryStart[node] + i]; }
+
+	/**
+	 * @return true if the node has an edge to itself
+	 */
+	public boolean hasLoop(int node) { return loop[node]; }
+
+	/**
+	 * Get a node and its distinct neighbors
+	 *
+	 * @return the node's index and those of its neighbors, in increasing order
+	 */
+	public int[] getNeighborhood(int node) {
+		int first = neighborStart[node];
+		int last = neighborStart[node+1];
+		int[] neighborhood = new int[last - first + 1];
+		int j = 0;
+		for (int k = first; k < last && neighbors[k] < node; k++)
+			neighborhood[j++] = neighbors[k];
+		neighborhood[j] = node;
+		System.arraycopy(neighbors, first+j, neighborhood, j+1, last-first-j);
+		return neighborhood;
+	}
+
+	/**
+	 * Get the subgraph made up of some of the nodes and all of the edges
+	 * between them
+	 *
+	 * @param members the (distinct) indices of the nodes to keep
+	 * @param includeLoops if true, self-loops are edges too
+	 * @return the subgraph, with the nodes numbered in the order they were given
+	 */
+	public Subgraph getSubgraph(int[] members, boolean includeLoops) {
+		return new Subgraph(members, includeLoops);
+	}
+
+	/**
+	 * A subgraph induced by some of the nodes, as MCODE scores it: multiple
+	 * edges between two nodes count as one, and self-loops count (as one edge)
+	 * only if they are included.
+	 */
+	public class Subgraph {
+		private final int[] members;
+		private final boolean includeLoops;
+		private final int[] start;
+		private final int[] adjacent;
+		private final boolean[] hasLoop;
+
+		Subgraph(int[] members, boolean includeLoops) {
+			this.members = members;
+			this.includeLoops = includeLoops;
+			int size = members.length;
+
+			// Look the members up by binary search, which avoids needing an
+			// array the size of the whole network
+			long[] keys = new long[size];
+			for (int i = 0; i < size; i++)
+				keys[i] = ((long)members[i] << 32) | i;
+			Arrays.sort(keys);
+			int[] sorted = new int[size];
+			int[] position = new int[size];
+			for (int i = 0; i < size; i++) {
+				sorted[i] = (int)(keys[i] >>> 32);
+				position[i] = (int)keys[i];
+			}
+
+			start = new int[size+1];
+			hasLoop = new boolean[size];
+			int[] buffer = new int[16];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				int node = members[i];
+				hasLoop[i] = includeLoops && loop[node];
+				for (int k = neighborStart[node]; k < neighborStart[node+1]; k++) {
+					int found = Arrays.binarySearch(sorted, neighbors[k]);
+					if (found < 0) continue;
+					if (count == buffer.length)
+						buffer = Arrays.copyOf(buffer, count*2);
+					buffer[count++] = position[found];
+				}
+				start[i+1] = count;
+			}
+			adjacent = Arrays.copyOf(buffer, count);
+		}
+
+		/**
+		 * @return the number of nodes
+		 */
+		public int size() { return members.length; }
+
+		/**
+		 * @return the index (in the whole graph) of each node
+		 */
+		public int[] getMembers() { return members; }
+
+		/**
+		 * @return the number of edges
+		 */
+		public int getEdgeCount() {
+			return getEdgeCount(null, 0);
+		}
+
+		/**
+		 * The density is the number of edges over the number of possible edges
+		 *
+		 * @return the density, or 0 if there can't be any edges
+		 */
+		public double getDensity() {
+			return density(members.length, getEdgeCount());
+		}
+
+		/**
+		 * Get the density of the k-core
+		 *
+		 * @param coreNumbers the core number of each node (see {@link #getCoreNumbers})
+		 * @param k the core
+		 * @return the density of the subgraph made up of the nodes with core
+		 * numbers of at least k
+		 */
+		public double getDensity(int[] coreNumbers, int k) {
+			int nodeCount = 0;
+			for (int core: coreNumbers) {
+				if (core >= k) nodeCount++;
+			}
+			return density(nodeCount, getEdgeCount(coreNumbers, k));
+		}
+
+		/**
+		 * Find the core number of every node: the largest k for which the node
+		 * is in the k-core (the largest subgraph in which every node has at
+		 * least k edges).  This uses the bucket algorithm of Batagelj, V. and
+		 * Zaversnik, M. (2003). An O(m) algorithm for cores decomposition of
+		 * networks. arXiv:cs/0310049, which peels the nodes off in order of
+		 * degree, so all of the cores come out in one pass.
+		 *
+		 * @return the core number of each node
+		 */
+		public int[] getCoreNumbers() {
+			int size = members.length;
+			int[] degree = new int[size];
+			int maxDegree = 0;
+			for (int i = 0; i < size; i++) {
+				degree[i] = start[i+1] - start[i] + (hasLoop[i] ? 1 : 0);
+				maxDegree = Math.max(maxDegree, degree[i]);
+			}
+
+			// Sort the nodes by degree, with bin[d] the first node of degree d
+			int[] bin = new int[maxDegree+1];
+			for (int i = 0; i < size; i++)
+				bin[degree[i]]++;
+			int first = 0;
+			for (int d = 0; d <= maxDegree; d++) {
+				int count = bin[d];
+				bin[d] = first;
+				first += count;
+			}
+			int[] vertex = new int[size];
+			int[] position = new int[size];
+			for (int i = 0; i < size; i++) {
+				position[i] = bin[degree[i]]++;
+				vertex[position[i]] = i;
+			}
+			for (int d = maxDegree; d > 0; d--)
+				bin[d] = bin[d-1];
+			bin[0] = 0;
+
+			// Peel off the node with the smallest degree, moving each of its
+			// neighbors with a larger degree down a bin
+			for (int p = 0; p < size; p++) {
+				int v = vertex[p];
+				for (int k = start[v]; k < start[v+1]; k++) {
+					int u = adjacent[k];
+					if (degree[u] <= degree[v]) continue;
+					int du = degree[u];
+					int pu = position[u];
+					int pw = bin[du];
+					int w = vertex[pw];
+					if (u != w) {
+						position[u] = pw;
+						vertex[pu] = w;
+						position[w] = pu;
+						vertex[pw] = u;
+					}
+					bin[du]++;
+					degree[u]--;
+				}
+			}
+			return degree;
+		}
+
+		// The number of edges between the nodes with core numbers of at least k
+		// (or all of the nodes, if coreNumbers is null)
+		private int getEdgeCount(int[] coreNumbers, int k) {
+			int count = 0;
+			for (int i = 0; i < members.length; i++) {
+				if (coreNumbers != null && coreNumbers[i] < k) continue;
+				if (hasLoop[i]) count += 2;
+				for (int j = start[i]; j < start[i+1]; j++) {
+					if (coreNumbers == null || coreNumbers[adjacent[j]] >= k)
+						count++;
+				}
+			}
+			// Every edge between two different nodes was counted twice
+			return count/2;
+		}
+
+		private double density(int nodeCount, int edgeCount) {
+			long possible;
+			if (includeLoops)
+				possible = ((long)nodeCount * (nodeCount+1)) / 2;
+			else
+				possible = ((long)nodeCount * (nodeCount-1)) / 2;
+			return possible != 0 ? (double)edgeCount / (double)possible : 0;
+		}
+	}
+}
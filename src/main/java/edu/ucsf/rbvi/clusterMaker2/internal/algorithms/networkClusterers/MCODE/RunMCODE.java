@@ -77,8 +77,9 @@ public class RunMCODE {
 	public List<NodeCluster> run(TaskMonitor monitor) {
 		//run MCODE scoring algorithm - node scores are saved in the alg object
 		alg.setTaskMonitor(monitor, ModelUtils.getNetworkName(network));
-		//only (re)score the graph if the scoring parameters have been changed
-		if (analyze == MCODECluster.RESCORE) {
+		//only (re)score the graph if the scoring parameters have been changed, or
+		//we don't have any scores for it that we can reuse
+		if (analyze == MCODECluster.RESCORE || !alg.loadScores(network, resultId)) {
 			monitor.setProgress(0);
 			monitor.setStatusMessage("Scoring Network (Step 1 of 3)");
 			alg.scoreGraph(network, resultId);
@@ -86,6 +87,8 @@ public class RunMCODE {
 				return null;
 			}
 			monitor.showMessage(TaskMonitor.Level.INFO,"Network was scored in " + alg.getLastScoreTime() + " ms.");
+		} else {
+			monitor.showMessage(TaskMonitor.Level.INFO,"Reusing the last node scores for the network");
 		}
 
 		monitor.setProgress(0);
@@ -96,6 +99,7 @@ public class RunMCODE {
 		if (interrupted) {
 			return null;
 		}
+		monitor.showMessage(TaskMonitor.Level.INFO,"Clusters were found in " + alg.getLastFindTime() + " ms.");
 
 		monitor.setProgress(0);
 		monitor.setStatusMessage("Drawing Results (Step 3 of 3)");
@@ -34,6 +34,7 @@ package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.SCPS;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -48,17 +49,17 @@ import org.cytoscape.model.CyNode;
 import org.cytoscape.work.TaskMonitor;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.NodeCluster;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.MatrixUtils;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.LanczosEigensolver;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 
 import cern.colt.function.tdouble.IntIntDoubleFunction;
 import cern.colt.list.tdouble.DoubleArrayList;
 import cern.colt.list.tint.IntArrayList;
+import cern.colt.matrix.tdouble.DoubleFactory1D;
 import cern.colt.matrix.tdouble.DoubleFactory2D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
-import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
 import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleSingularValueDecomposition;
 
 public class RunSCPS {
@@ -75,9 +76,15 @@ public class RunSCPS {
 	private double epsilon;
 	private int kvalue;
 	private int rnumber;
-	private DoubleMatrix2D LMat;
 	private int numComponents;
 
+	// The connected components, and where the ones we kept start in sMat
+	private List<List<CyNode>> components;
+	private IntArrayList componentStarts;
+
+	// Number of eigenvalues to look at when guessing k
+	private static final int INITIAL_EIGEN = 20;
+
 	private  HashMap<Integer, NodeCluster> clusterMap;
 
 	private HashMap<Integer,Integer> new2oldMap;
@@ -113,20 +120,32 @@ public class RunSCPS {
 
 		monitor.showMessage(TaskMonitor.Level.INFO,"Formatting Matrix Data");
 		DoubleMatrix2D sMat = getSMat(this.distanceMatrix);
-		DoubleMatrix2D LMat = getLMat(sMat);
 
 		monitor.showMessage(TaskMonitor.Level.INFO,"Calculating Eigenvalues");
-		DenseDoubleEigenvalueDecomposition decomp = new DenseDoubleEigenvalueDecomposition(LMat);
-		DoubleMatrix2D eigenVect = decomp.getV();
-		DoubleMatrix1D eigenVal = decomp.getRealEigenvalues();
 
+		// We only need the leading eigenvectors.  If we're guessing k, keep
+		// finding more until we've seen where the eigenvalues drop off.
+		int nRows = sMat.rows();
+		int nEigen = this.kvalue > -1 ? this.kvalue : INITIAL_EIGEN;
+		double[] eigenVal;
+		double[][] eigenVect;
+		while (true) {
+			nEigen = Math.min(nEigen, nRows);
+			eigenVal = new double[nEigen];
+			eigenVect = getEigenVectors(sMat, nEigen, eigenVal);
+			if (canceled) return new ArrayList<NodeCluster>();
+
+			if (this.kvalue > -1) {
+				k = this.kvalue;
+				break;
+			}
 
-		monitor.showMessage(TaskMonitor.Level.INFO,"Calculating K value");
-
-		if(this.kvalue > -1)
-			k = this.kvalue;
-		else
-			k = getK(eigenVal,.3);
+			monitor.showMessage(TaskMonitor.Level.INFO,"Calculating K value");
+			k = getK(DoubleFactory1D.dense.make(eigenVal),.3);
+			if (k < nEigen || nEigen == nRows)
+				break;
+			nEigen *= 2;
+		}
 
 		System.out.println("K is " + k);
 
@@ -136,7 +155,7 @@ public class RunSCPS {
 		}
 
 		monitor.showMessage(TaskMonitor.Level.INFO,"Creating uMatrix for kMeans");
-		DoubleMatrix2D uMat = getUMat(eigenVect,k);
+		DoubleMatrix2D uMat = getUMat(DoubleFactory2D.dense.make(eigenVect),k);
 		monitor.showMessage(TaskMonitor.Level.INFO,"Running kmeans clustering");
 		doKMeansClustering(uMat,sMat);
 
@@ -173,17 +192,23 @@ public class RunSCPS {
 
 		HashMap<Integer, List<CyNode>> filtered_cmap = new HashMap<Integer, List<CyNode>>();
 
-		//Connected Componets
-		Map<Integer, List<CyNode>> cMap = MatrixUtils.findConnectedComponents(distanceMatrix);
-
 		IntArrayList rowList = new IntArrayList();
 		IntArrayList columnList = new IntArrayList();
 		DoubleArrayList valueList = new DoubleArrayList();
+		unfiltered_mat.getNonZeros(rowList,columnList,valueList);
+
+		//Connected Componets
+		components = getConnectedComponents(rowList, columnList);
+		componentStarts = new IntArrayList();
+
+		Map<CyNode, Integer> nodeIndex = new HashMap<CyNode, Integer>();
+		for (int i = 0; i < this.nodes.size(); i++)
+			nodeIndex.put(this.nodes.get(i), i);
 
 		//Iterate through connected components
 		int component_size_sum = 0;
 
-		 for (List<CyNode> component: cMap.values()) {
+		 for (List<CyNode> component: components) {
 			numComponents += 1;
 
 			//Size <= 5. Automatically create cluster and increment clusterCount. 
@@ -197,12 +222,12 @@ public class RunSCPS {
 				//iterate through components and assign them index mappings in new uMatrix
 				component_size_sum += component.size();
 
-				System.out.println("Normal Component size " + component.size() + " Total Sum " + component_size_sum);
+				componentStarts.add(sMat_rows);
 
 				for(int i = 0; i < component.size(); i++){
 
 					CyNode n = component.get(i);
-					int node_id = this.nodes.indexOf(n);
+					int node_id = nodeIndex.get(n);
 
 					//set mapping of new matrix index to old index
 					setMap(node_id, sMat_rows);
@@ -218,8 +243,6 @@ public class RunSCPS {
 			sMat.set(i,i,1);
 
 		//iterate through nonzero edges. If both nodes in new index map, transfer the edge to new matrix
-		unfiltered_mat.getNonZeros(rowList,columnList,valueList);
-
 		for(int i = 0; i<rowList.size(); i++){
 			int row_id = rowList.get(i);
 			int column_id = columnList.get(i);
@@ -238,6 +261,130 @@ public class RunSCPS {
 		return sMat;
 	}
 
+	//Find the connected components from the edges, with union-find.  The
+	//components (and the nodes in them) are in the order of their first node.
+	private List<List<CyNode>> getConnectedComponents(IntArrayList rowList, IntArrayList columnList){
+		int[] parent = new int[this.nodes.size()];
+		for (int i = 0; i < parent.length; i++)
+			parent[i] = i;
+
+		for (int i = 0; i < rowList.size(); i++) {
+			int a = findRoot(parent, rowList.get(i));
+			int b = findRoot(parent, columnList.get(i));
+			if (a != b)
+				parent[Math.max(a, b)] = Math.min(a, b);
+		}
+
+		// Nodes without any values aren't in a component
+		boolean[] found = new boolean[parent.length];
+		for (int i = 0; i < rowList.size(); i++) {
+			found[rowList.get(i)] = true;
+			found[columnList.get(i)] = true;
+		}
+
+		List<List<CyNode>> componentList = new ArrayList<List<CyNode>>();
+		Map<Integer, List<CyNode>> rootMap = new HashMap<Integer, List<CyNode>>();
+		for (int i = 0; i < parent.length; i++) {
+			if (!found[i]) continue;
+			int root = findRoot(parent, i);
+			List<CyNode> component = rootMap.get(root);
+			if (component == null) {
+				component = new ArrayList<CyNode>();
+				rootMap.put(root, component);
+				componentList.add(component);
+			}
+			component.add(this.nodes.get(i));
+		}
+		return componentList;
+	}
+
+	private static int findRoot(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	//Find the nEigen largest eigenvalues (in increasing order) and their
+	//eigenvectors of L = D^-1/2 * S * D^-1/2, using S as a sparse matrix.  L
+	//has a block for each component, and every block has 1 as its largest
+	//eigenvalue, which Lanczos would only find once.  So we solve each block on
+	//its own and keep the largest eigenvalues over all of them.
+	public double[][] getEigenVectors(DoubleMatrix2D sMat, int nEigen, double[] eigenValues){
+		final int nRows = sMat.rows();
+		IntArrayList rowList = new IntArrayList();
+		IntArrayList columnList = new IntArrayList();
+		DoubleArrayList valueList = new DoubleArrayList();
+		sMat.getNonZeros(rowList,columnList,valueList);
+
+		// Compressed rows, with the degree normalization folded in
+		final int[] rowStart = new int[nRows+1];
+		for (int i = 0; i < rowList.size(); i++)
+			rowStart[rowList.get(i)+1]++;
+		for (int i = 0; i < nRows; i++)
+			rowStart[i+1] += rowStart[i];
+		final int[] columns = new int[rowList.size()];
+		final double[] values = new double[rowList.size()];
+		int[] next = Arrays.copyOf(rowStart, nRows);
+		double[] degree = new double[nRows];
+		for (int i = 0; i < rowList.size(); i++) {
+			int row = rowList.get(i);
+			columns[next[row]] = columnList.get(i);
+			values[next[row]++] = valueList.get(i);
+			degree[row] += valueList.get(i);
+		}
+		for (int i = 0; i < nRows; i++)
+			degree[i] = degree[i] > 0.0 ? Math.pow(degree[i], -.5) : 0.0;
+		for (int row = 0; row < nRows; row++) {
+			for (int j = rowStart[row]; j < rowStart[row+1]; j++)
+				values[j] *= degree[row]*degree[columns[j]];
+		}
+
+		// Solve each component
+		int nComponents = componentStarts.size();
+		List<double[]> candidates = new ArrayList<double[]>();
+		List<double[][]> componentVectors = new ArrayList<double[][]>();
+		for (int c = 0; c < nComponents; c++) {
+			if (canceled) return null;
+			final int first = componentStarts.get(c);
+			final int last = c+1 < nComponents ? componentStarts.get(c+1) : nRows;
+			LanczosEigensolver solver = new LanczosEigensolver(new LanczosEigensolver.Operator() {
+				public int size() { return last - first; }
+				public void multiply(double[] x, double[] y) {
+					for (int row = first; row < last; row++) {
+						double sum = 0.0;
+						for (int j = rowStart[row]; j < rowStart[row+1]; j++)
+							sum += values[j]*x[columns[j]-first];
+						y[row-first] = sum;
+					}
+				}
+			}, Math.min(nEigen, last - first));
+			solver.solve();
+			double[] componentValues = solver.getEigenvalues();
+			componentVectors.add(solver.getEigenvectors());
+			for (int e = 0; e < componentValues.length; e++)
+				candidates.add(new double[] {componentValues[e], c, e});
+		}
+
+		// Keep the largest, in increasing order like the full decomposition
+		Collections.sort(candidates, new Comparator<double[]>() {
+			public int compare(double[] a, double[] b) { return Double.compare(b[0], a[0]); }
+		});
+		double[][] eigenVectors = new double[nRows][nEigen];
+		for (int e = 0; e < nEigen; e++) {
+			double[] candidate = candidates.get(nEigen-1-e);
+			int c = (int)candidate[1];
+			int column = (int)candidate[2];
+			int first = componentStarts.get(c);
+			double[][] vectors = componentVectors.get(c);
+			eigenValues[e] = candidate[0];
+			for (int row = 0; row < vectors.length; row++)
+				eigenVectors[first+row][e] = vectors[row][column];
+		}
+		return eigenVectors;
+	}
+
  	//Calculate negative square root of matrix using singular value decomposition
 	 public DoubleMatrix2D getNegSqrRoot(DoubleMatrix2D A){
 
@@ -259,38 +406,6 @@ public class RunSCPS {
 		 return alg.inverse(sqrtA);
 	 }
 
-	 //Return Negative Sqrt of a Diagnol Matrix
-	 public DoubleMatrix2D getNegSqrRootDMat(DoubleMatrix2D dMat){
-
-		 for(int i = 0; i < dMat.rows(); i++)
-		 dMat.set(i,i,Math.pow(dMat.get(i,i),-.5));
-
-		 return dMat;
-	 }
-
-
-	// L = D^-1/2 * S * D^-1/2
-	public DoubleMatrix2D getLMat(DoubleMatrix2D sMat){
-		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-		DoubleMatrix2D dMat = getDMat(sMat);
-		DoubleMatrix2D transDMat = getNegSqrRootDMat(dMat);
-	
-		return alg.mult(transDMat,alg.mult(sMat,transDMat));
-	}
-
-
-	//D is Diagonal Matrix formed of vertex degree Dii = Sum Columns j over row Si
-	public DoubleMatrix2D getDMat(DoubleMatrix2D sMat){
-		DoubleMatrix2D dMat = sMat.like();
-
-		for(int i = 0; i < sMat.rows(); i++){
-			//set the Diagnal (i,i) to sum of columns over row i
-			dMat.set(i,i, sMat.viewRow(i).zSum());
-		}
-
-		return dMat;	
-	}
-
 	//Get K using eigenvetors of S Matrix
 	public int getK(DoubleMatrix1D eigenVal, double minLambda){
 		double prevLamb;
@@ -327,7 +442,7 @@ public class RunSCPS {
 	 	uMat = eigenVect.viewPart(0,eigenVect.columns()-k,eigenVect.rows(),k);
 
 		//Normalize each row of matrix U to have unit length
-		for(int i = 0; i < uMat.columns(); i++){
+		for(int i = 0; i < uMat.rows(); i++){
 
 			DoubleMatrix1D row = uMat.viewRow(i);
 			double rowLength = Math.pow(row.zDotProduct(row),.5);
@@ -488,12 +603,8 @@ public class RunSCPS {
 
 	//Store all components length greater then 5 in clusters, if number components is greater then K
 	public void doComponentClustering(){
-		//Connected Componets
-		Map<Integer, List<CyNode>> cMap = MatrixUtils.findConnectedComponents(distanceMatrix);
-
 		//Iterate through connected components
-		int component_size_sum = 0;
-		for (List<CyNode> component: cMap.values()) {
+		for (List<CyNode> component: components) {
 			if(component.size() > 5){
 				NodeCluster iCluster = new NodeCluster(component);
 				iCluster.setClusterNumber(this.clusterCount);
@@ -1,17 +1,20 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Semaphore;
 
+import cern.colt.function.tdouble.IntIntDoubleFunction;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import edu.ucsf.rbvi.clusterMaker2.internal.utils.ModelUtils;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.NodeCluster;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.costmatrixcreation.dataTypes.Edges;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.iterativeclustering.IteratorThread;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import org.cytoscape.model.CyEdge;
@@ -22,15 +25,23 @@ import org.cytoscape.work.TaskMonitor;
 public class RunTransClust {
 
 	private List<CyNode> nodes;
+	private Map<CyNode, Integer> nodeIndex;
 	private boolean canceled = false;
 	protected int clusterCount = 0;
 	private CyMatrix distanceMatrix = null;
 	private double threshold;
+	private RunConfig config;
 
 	public RunTransClust( CyMatrix dMat,double threshold, TaskMonitor monitor)
+	{
+		this(dMat, threshold, new RunConfig(), monitor);
+	}
+
+	public RunTransClust( CyMatrix dMat,double threshold, RunConfig config, TaskMonitor monitor)
 	{
 		this.distanceMatrix = dMat;
 		this.threshold = threshold;
+		this.config = config;
 	}
 	
 	public void cancel () { canceled = true; }
@@ -47,37 +58,23 @@ public class RunTransClust {
 
 		HashMap<String,Integer> integers2proteins = new HashMap<String, Integer>();
 		HashMap<Integer,String>  proteins2integers = new HashMap<Integer, String>();
+		nodeIndex = new HashMap<CyNode, Integer>();
 		int count = 0;
 		for (CyNode node : this.nodes) {
 			integers2proteins.put(ModelUtils.getNodeName(network, node), count);
 			proteins2integers.put(count, ModelUtils.getNodeName(network, node));
+			nodeIndex.put(node, count);
 			count++;
 		}
 		
-		Edges es = new Edges(this.nodes.size()*this.nodes.size(), this.nodes.size());
-		count = 0;
-		for (int i = 0; i < this.nodes.size(); i++) {
-			CyNode cyNodeI = this.nodes.get(i);
-			es.startPositions[integers2proteins.get(cyNodeI.getSUID())] = count;
-			for (int j = 0; j < this.nodes.size(); j++) {
-				CyNode cyNodeJ = this.nodes.get(j);
-					es.sources[count] = i;
-					es.targets[count] = j;
-					Double val = distanceMatrix.getValue(i, j);
-					if (val != null) {
-						es.values[count] = val.floatValue();
-						count++;
-					}
-			}
-			es.endPositions[integers2proteins.get(cyNodeI.getSUID())] = count-1;
-		}
+		Edges es = getEdges(matrix);
 		
 		Semaphore s = new Semaphore(1);
-		TaskConfig.mode = TaskConfig.COMPARISON_MODE;
-		TaskConfig.monitor = monitor;
-		IteratorThread it = new IteratorThread(es,integers2proteins,proteins2integers,s);
-		TaskConfig.minThreshold = threshold;
-		TaskConfig.maxThreshold = threshold;
+		config.mode = TaskConfig.COMPARISON_MODE;
+		config.monitor = monitor;
+		config.minThreshold = threshold;
+		config.maxThreshold = threshold;
+		IteratorThread it = new IteratorThread(es,integers2proteins,proteins2integers,s,config);
 		try {
 			s.acquire();
 		} catch (InterruptedException e) {
@@ -148,8 +145,60 @@ private Map<Integer, NodeCluster> getClusterMap(String[] clusters, HashMap<Strin
 
 	private void updateClusters(NodeCluster cluster, Map<Integer, NodeCluster> clusterMap) {
 		for (CyNode node: cluster) {
-			clusterMap.put(nodes.indexOf(node), cluster);
+			clusterMap.put(nodeIndex.get(node), cluster);
+		}
+	}
+
+	/**
+	 * Copy the values that are stored in the (sparse) matrix into the edge list.
+	 * The edges are in CSR form: all of the edges from node i are between
+	 * startPositions[i] (inclusive) and endPositions[i] (exclusive), sorted
+	 * by target.  Pairs that aren't stored have a value of 0, as they would
+	 * in the matrix, and missing values (NaN) are left out.
+	 */
+	private static Edges getEdges(DoubleMatrix2D matrix) {
+		int nNodes = matrix.rows();
+
+		// Count the edges from each node, and turn the counts into start positions
+		final int[] startPositions = new int[nNodes+1];
+		matrix.forEachNonZero(new IntIntDoubleFunction() {
+			public double apply(int row, int column, double value) {
+				if (!Double.isNaN(value))
+					startPositions[row+1]++;
+				return value;
+			}
+		});
+		for (int i = 0; i < nNodes; i++)
+			startPositions[i+1] += startPositions[i];
+
+		// Fill in each node's edges, with the target in the high half of a
+		// long and the value in the low half so that sorting puts them in order
+		final long[] packed = new long[startPositions[nNodes]];
+		final int[] next = Arrays.copyOf(startPositions, nNodes);
+		matrix.forEachNonZero(new IntIntDoubleFunction() {
+			public double apply(int row, int column, double value) {
+				if (!Double.isNaN(value))
+					packed[next[row]++] = ((long)column << 32) |
+					                      (Float.floatToRawIntBits((float)value) & 0xffffffffL);
+				return value;
+			}
+		});
+
+		Edges es = new Edges(packed.length, nNodes);
+		es.missingValue = 0.0f;
+		for (int i = 0; i < nNodes; i++) {
+			int start = startPositions[i];
+			int end = startPositions[i+1];
+			Arrays.sort(packed, start, end);
+			for (int k = start; k < end; k++) {
+				es.sources[k] = i;
+				es.targets[k] = (int)(packed[k] >>> 32);
+				es.values[k] = Float.intBitsToFloat((int)packed[k]);
+			}
+			es.startPositions[i] = start;
+			es.endPositions[i] = end;
 		}
+		return es;
 	}
 	
 }
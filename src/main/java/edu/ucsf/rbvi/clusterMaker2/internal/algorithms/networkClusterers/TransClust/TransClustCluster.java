@@ -16,7 +16,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.Abstrac
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.AbstractClusterResults;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.NodeCluster;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.edgeConverters.EdgeAttributeHandler;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.ui.NewNetworkView;
 
@@ -41,6 +41,7 @@ public class TransClustCluster extends AbstractNetworkClusterer{
 	private static final long serialVersionUID = 1L;
 
 	private RunTransClust runTransClust;
+	private RunConfig config;
 	
 	@Tunable(description="Network to cluster", context="nogui")
 	public CyNetwork network = null;
@@ -75,36 +76,38 @@ public class TransClustCluster extends AbstractNetworkClusterer{
  	 * Update all of our tunables
  	 */
 	public void updateSettings() {
+		config = new RunConfig();
+
 		// Advanced Settings
 
 		// Find Exact Solution
 		try {
-			TaskConfig.fixedParameterMax = new Integer(context.maxSubclusterSize);
+			config.fixedParameterMax = new Integer(context.maxSubclusterSize);
 		} catch (Exception e) {
-			TaskConfig.fixedParameterMax = 20;
+			config.fixedParameterMax = 20;
 		}
 		
 		try {
-			TaskConfig.fpMaxTimeMillis = new Integer(context.maxTime)*1000;
+			config.fpMaxTimeMillis = new Integer(context.maxTime)*1000;
 		} catch (Exception e) {
 			// TODO: handle exception
 		}
 		
 		if(!context.mergeSimilar){
-			TaskConfig.upperBound = Float.MAX_VALUE;
+			config.upperBound = Float.MAX_VALUE;
 		}
 
 		try {
 			if(context.mergeSimilar){
-				TaskConfig.upperBound = new Float(context.mergeThreshold);
+				config.upperBound = new Float(context.mergeThreshold);
 			}else{
-				TaskConfig.upperBound = Float.MAX_VALUE;
+				config.upperBound = Float.MAX_VALUE;
 			}
 		} catch (Exception e) {
-			TaskConfig.upperBound = Float.MAX_VALUE;
+			config.upperBound = Float.MAX_VALUE;
 		}
 		
-		TaskConfig.maxNoThreads = context.processors;
+		config.maxNoThreads = context.processors;
 		
 	}
 
@@ -138,7 +141,7 @@ public class TransClustCluster extends AbstractNetworkClusterer{
 		}
 		
 		updateSettings();
-		runTransClust = new RunTransClust(matrix, context.edgeAttributeHandler.edgeCutOff.getValue(), monitor);
+		runTransClust = new RunTransClust(matrix, context.edgeAttributeHandler.edgeCutOff.getValue(), config, monitor);
 
 		if (canceled) return;
 
@@ -14,6 +14,12 @@ public class Edges {
 	
 	public int proteinNumber;
 	
+	/**
+	 * The value of the pairs that aren't stored.  If this is NaN, the
+	 * smallest value read so far is used (see InOut.getEdgeValue).
+	 */
+	public float missingValue = Float.NaN;
+	
 	public Edges(int size, int proteinNumber){
 		this.proteinNumber = proteinNumber;
 		this.sources = new int[size];
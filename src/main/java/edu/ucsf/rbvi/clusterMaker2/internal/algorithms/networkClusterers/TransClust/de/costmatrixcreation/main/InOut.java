@@ -678,6 +678,7 @@ public class InOut {
 			
 		}
 		
+		if(!Float.isNaN(es.missingValue)) return es.missingValue;
 		return InOut.min;
 		
 	}
@@ -1,6 +1,7 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.costmatrixcreation.main;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
@@ -50,6 +51,17 @@ public class Splitter {
 		Vector<Vector<Integer>> v = new Vector<Vector<Integer>>();
 		int[] distribution = new int[es.size2()+1];
 		boolean[] already = new boolean[es.size2()];
+		
+		// if the pairs that aren't stored are above the threshold, everything is connected
+		if(!Float.isNaN(es.missingValue)&&es.missingValue>threshold){
+			Vector<Integer> cluster = new Vector<Integer>();
+			for (int i = 0; i < already.length; i++) {
+				cluster.add(i);
+			}
+			v.add(cluster);
+			return v;
+		}
+		
 		for (int i = 0; i < already.length; i++) {
 			if(!already[i]){
 				Vector<Integer> cluster = new Vector<Integer>();
@@ -73,17 +85,6 @@ public class Splitter {
 	
 	private static void findCluster(Edges es, Vector<Integer> cluster, HashMap<Integer, String> proteins2integers, Integer element, boolean[] already, float threshold,boolean mergeNodes) {
 
-		int startPosition=0;
-		int endPosition = 0;
-
-		if(mergeNodes){
-			startPosition = es.getStartPosition(Integer.parseInt(proteins2integers.get(element)));
-			endPosition = es.getEndPosition(Integer.parseInt(proteins2integers.get(element)));
-		}else{
-			startPosition = es.getStartPosition(element);
-			endPosition = es.getEndPosition(element);
-		}
-		
 		//TODO
 //		if(Config.defaultCostsForMissingEdges>threshold){
 //			for (int i = 1; i < es.proteinNumber; i++) {
@@ -115,21 +116,57 @@ public class Splitter {
 //				}
 //			}
 //		}
+
+		// depth first, in the same order as a recursive search, but with our own
+		// stack so that large components don't overflow the thread's stack
+		int[] elements = new int[16];
+		int[] positions = new int[16];
+		int depth = 0;
+		elements[depth] = element;
+		positions[depth] = getStartPosition(es, proteins2integers, element, mergeNodes);
+		depth++;
 		
-		
-		
-		for (int i = startPosition; i < endPosition; i++) {
-			int target = es.getTarget(i);
-			if(!already[target]){
-				double value = es.getValue(i);
-				if(value>threshold){
-					cluster.add(target);
-					already[target]= true;
-					findCluster(es, cluster,proteins2integers, target, already, threshold,mergeNodes);
+		while(depth>0){
+			int current = elements[depth-1];
+			int endPosition = getEndPosition(es, proteins2integers, current, mergeNodes);
+			int i = positions[depth-1];
+			for (; i < endPosition; i++) {
+				int target = es.getTarget(i);
+				if(!already[target]){
+					double value = es.getValue(i);
+					if(value>threshold){
+						cluster.add(target);
+						already[target]= true;
+						break;
+					}
+				}
+			}
+			if(i<endPosition){
+				// carry on with this element after the new one is done
+				positions[depth-1] = i+1;
+				if(depth==elements.length){
+					elements = Arrays.copyOf(elements, depth*2);
+					positions = Arrays.copyOf(positions, depth*2);
 				}
+				int target = es.getTarget(i);
+				elements[depth] = target;
+				positions[depth] = getStartPosition(es, proteins2integers, target, mergeNodes);
+				depth++;
+			}else{
+				depth--;
 			}
 		}
 		
 	}// end findClusters
+	
+	private static int getStartPosition(Edges es, HashMap<Integer, String> proteins2integers, int element, boolean mergeNodes) {
+		if(mergeNodes) return es.getStartPosition(Integer.parseInt(proteins2integers.get(element)));
+		return es.getStartPosition(element);
+	}
+	
+	private static int getEndPosition(Edges es, HashMap<Integer, String> proteins2integers, int element, boolean mergeNodes) {
+		if(mergeNodes) return es.getEndPosition(Integer.parseInt(proteins2integers.get(element)));
+		return es.getEndPosition(element);
+	}
 
 }
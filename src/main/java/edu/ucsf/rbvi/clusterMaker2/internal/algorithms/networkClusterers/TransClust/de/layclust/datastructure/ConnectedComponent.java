@@ -14,7 +14,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransCl
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.postprocessing.IPostProcessing;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.postprocessing.PostProcessingFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.InvalidTypeException;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 
 /**
  * This class describes a connected component of a graph.
@@ -27,7 +27,7 @@ public class ConnectedComponent {
 	@Override
 	public Object clone() throws CloneNotSupportedException {
 		// TODO Auto-generated method stub
-		ConnectedComponent clone = new ConnectedComponent(this.ccEdges.clone(), this.objectIDs.clone(), this.ccPath);
+		ConnectedComponent clone = new ConnectedComponent(this.ccEdges.clone(), this.objectIDs.clone(), this.ccPath, this.config);
 		clone.ccPositions = this.ccPositions.clone();
 		return clone;
 	}
@@ -83,10 +83,19 @@ public class ConnectedComponent {
 	 * this needs to be added to the clustering score at the end! 
 	 */
 	private double reductionCost = 0.0;
+	
+	/* the settings of the run this component belongs to */
+	private RunConfig config = null;
 
 	public ConnectedComponent(ICCEdges ccEdges, String[] object_ids, 
 			String ccPath) {
+		this(ccEdges, object_ids, ccPath, new RunConfig());
+	}
+
+	public ConnectedComponent(ICCEdges ccEdges, String[] object_ids, 
+			String ccPath, RunConfig config) {
 
+		this.config = config;
 		this.ccEdges = ccEdges;
 		this.objectIDs = object_ids;
 		this.node_no = object_ids.length;
@@ -168,6 +177,7 @@ public class ConnectedComponent {
 	public ConnectedComponent(ICCEdges ccEdges, String[] object_ids, 
 			String ccPath, boolean reduced) {
 
+		this.config = new RunConfig();
 		this.ccEdges = ccEdges;
 		this.objectIDs = object_ids;
 		this.node_no = object_ids.length;
@@ -519,6 +529,7 @@ public class ConnectedComponent {
 	public ConnectedComponent copy(){
 		ConnectedComponent newCC = new ConnectedComponent(this.ccEdges,
 				this.objectIDs.clone(), this.ccPath,true);
+		newCC.config = this.config;
 		newCC.reductionCost = this.reductionCost;
 		return newCC;
 	}
@@ -526,6 +537,7 @@ public class ConnectedComponent {
 	public ConnectedComponent copy(boolean withReduction){
 		ConnectedComponent newCC = new ConnectedComponent(this.ccEdges,
 				this.objectIDs, this.ccPath,true);
+		newCC.config = this.config;
 		newCC.reductionCost = this.reductionCost;
 		try {
 			newCC.setReducedConnectedComponent(this.getReducedConnectedComponent().copy());
@@ -536,7 +548,7 @@ public class ConnectedComponent {
 	
 	
 	public double[][] copyCCPositions(){
-		int dim = TaskConfig.dimension;
+		int dim = this.config.dimension;
 		double[][] copiedPos = new double[this.node_no][dim];
 		for(int i=0;i<this.node_no;i++){
 			for(int j=0;j<dim;j++){
@@ -596,14 +608,14 @@ public class ConnectedComponent {
 		}
 		
 		try {
-			ICCEdges subEdges = LayoutFactory.getCCEdgesEnumByClass(TaskConfig.ccEdgesClass).createCCEdges(size);
+			ICCEdges subEdges = LayoutFactory.getCCEdgesEnumByClass(this.config.ccEdgesClass).createCCEdges(size);
 			for (int i = 0; i < subIDs.length; i++) {
 				for (int j = 0; j < i; j++) {
 					subEdges.setEdgeCost(i, j, this.ccEdges.getEdgeCost(Integer.parseInt(subIDs[i]), Integer.parseInt(subIDs[j])));
 				}			
 			}
 
-		ConnectedComponent subCC = new ConnectedComponent(subEdges, subIDs, this.ccPath); 
+		ConnectedComponent subCC = new ConnectedComponent(subEdges, subIDs, this.ccPath, this.config); 
 		
 		return subCC;
 		} catch (InvalidTypeException e) {
@@ -629,6 +641,22 @@ public class ConnectedComponent {
 		this.reductionCost = reductionCost;
 	}
 
+	/**
+	 * Gets the settings of the run this ConnectedComponent belongs to.
+	 * @return the config
+	 */
+	public RunConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Sets the settings of the run this ConnectedComponent belongs to.
+	 * @param config the config to set
+	 */
+	public void setConfig(RunConfig config) {
+		this.config = config;
+	}
+
 	private boolean reduceCC(ConnectedComponent cc,
 			float clusteringScore2) {
 		
@@ -637,7 +665,7 @@ public class ConnectedComponent {
 		
 		if(fptn.size==cc.getNodeNumber()) return false;
 		
-		ICCEdges ccedges = TaskConfig.ccEdgesEnum.createCCEdges(fptn.size);
+		ICCEdges ccedges = this.config.ccEdgesEnum.createCCEdges(fptn.size);
 		for (int i = 0; i < fptn.size; i++) {
 			for (int j = i+1; j < fptn.size; j++) {
 				ccedges.setEdgeCost(i, j,  fptn.edgeCosts[i][j]);
@@ -5,7 +5,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 
 /**
  * This class is used to read a Cost-Matrix from a .cm-file.
@@ -76,15 +76,25 @@ public class CostMatrixReader {
 	 * @throws LayoutTypeException If an incorrect type for ICCEdges is given in TaskConfig.
 	 */
 	public ConnectedComponent getConnectedComponent(){
+		return getConnectedComponent(new RunConfig());
+	}
+	
+	/**
+	 * Returns an instance of ConnectedComponent for the given run.
+	 * 
+	 * @param config The settings of the run.
+	 * @return instance of ConnectedComponent
+	 */
+	public ConnectedComponent getConnectedComponent(RunConfig config){
 		//create ICCedges:
-		ICCEdges ccEdges = TaskConfig.ccEdgesEnum.createCCEdges(node_no);
+		ICCEdges ccEdges = config.ccEdgesEnum.createCCEdges(node_no);
 		for (int i = 0; i < values.length; i++) {
 			float[] vals = (float[]) values[i];
 			for (int j = 0; j < vals.length; j++) {
 				ccEdges.setEdgeCost(i, j+i+1, vals[j]);
 			}
 		}
-		ConnectedComponent comp = new ConnectedComponent(ccEdges, ids, cmPath);
+		ConnectedComponent comp = new ConnectedComponent(ccEdges, ids, cmPath, config);
 			comp.setReductionCost(this.reductionCost);
 		return comp;
 	}
@@ -1,7 +1,7 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.fixedparameterclustering;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 
 public class FixedParameterClusterer {
 
@@ -9,6 +9,7 @@ public class FixedParameterClusterer {
 	private double maxK;
 	private FixedParameterTreeNode solution;
 	private long startTime;
+	private boolean stopped = false;
 	
 	
 
@@ -17,8 +18,8 @@ public class FixedParameterClusterer {
 		this.maxK = 0;
 		startTime = System.currentTimeMillis();
 		while (solution == null) {
-			if(System.currentTimeMillis()-startTime>TaskConfig.fpMaxTimeMillis){
-				TaskConfig.fpStopped = true;
+			if(System.currentTimeMillis()-startTime>this.cc.getConfig().fpMaxTimeMillis){
+				this.stopped = true;
 				return;
 			}
 			FixedParameterTreeNode fptn = initFirstTreeNode();
@@ -33,8 +34,8 @@ public class FixedParameterClusterer {
 		this.maxK = maxK/2;
 		startTime = System.currentTimeMillis();
 		while (solution == null) {
-			if(System.currentTimeMillis()-startTime>TaskConfig.fpMaxTimeMillis){
-				TaskConfig.fpStopped = true;
+			if(System.currentTimeMillis()-startTime>this.cc.getConfig().fpMaxTimeMillis){
+				this.stopped = true;
 				return;
 			}
 			FixedParameterTreeNode fptn = initFirstTreeNode();
@@ -125,8 +126,8 @@ public class FixedParameterClusterer {
 
 	public void cluster(FixedParameterTreeNode fptn) {
 //		          System.out.println("fptn.costs = " + fptn.costs);
-		if(System.currentTimeMillis()-startTime>TaskConfig.fpMaxTimeMillis){
-			TaskConfig.fpStopped = true;
+		if(System.currentTimeMillis()-startTime>this.cc.getConfig().fpMaxTimeMillis){
+			this.stopped = true;
 			return;
 		}
 //		fptn = reductionicf(fptn);
@@ -344,4 +345,13 @@ public class FixedParameterClusterer {
 		fptn.edgeCosts[node_i][node_j] = fptn.edgeCosts[node_j][node_i] = costsForSetForbidden;
 	}
 
+	/**
+	 * Returns whether the clustering was given up because it ran out of time
+	 * (see {@link RunConfig#fpMaxTimeMillis}).
+	 * @return true if the clustering was stopped.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
 }
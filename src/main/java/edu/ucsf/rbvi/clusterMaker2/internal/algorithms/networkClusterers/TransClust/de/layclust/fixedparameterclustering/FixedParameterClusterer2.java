@@ -5,12 +5,13 @@ import java.util.Arrays;
 import java.util.HashSet;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 
 public class FixedParameterClusterer2 {
 	private ConnectedComponent cc;
 	private double maxK;
 	private long startTime;
+	private boolean stopped = false;
 	private float graph[][];
 	private double costs;
 	private double solutionCost;
@@ -41,8 +42,8 @@ public class FixedParameterClusterer2 {
 		
 		findNextEdge();
 		while(this.solutionCost<0){
-			if(System.currentTimeMillis()-startTime>TaskConfig.fpMaxTimeMillis){
-				TaskConfig.fpStopped = true;
+			if(System.currentTimeMillis()-startTime>this.cc.getConfig().fpMaxTimeMillis){
+				this.stopped = true;
 				return;
 			}
 			cluster();
@@ -51,7 +52,7 @@ public class FixedParameterClusterer2 {
 		
 		buildSolution();
 		
-		TaskConfig.fpStopped = true;
+		this.stopped = true;
 		
 	}
 
@@ -96,8 +97,8 @@ public class FixedParameterClusterer2 {
 	}
 	private void cluster() {
 		treesize++;
-		if(System.currentTimeMillis()-startTime>TaskConfig.fpMaxTimeMillis){
-			TaskConfig.fpStopped = true;
+		if(System.currentTimeMillis()-startTime>this.cc.getConfig().fpMaxTimeMillis){
+			this.stopped = true;
 			return;
 		}
 		reductionicf();
@@ -257,4 +258,14 @@ public class FixedParameterClusterer2 {
 		costs += graph[node_i][node_j];
 		return costs;
 	}
+
+	/**
+	 * Returns whether the clustering was given up because it ran out of time
+	 * (see {@link RunConfig#fpMaxTimeMillis}).
+	 * @return true if the clustering was stopped.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
 }
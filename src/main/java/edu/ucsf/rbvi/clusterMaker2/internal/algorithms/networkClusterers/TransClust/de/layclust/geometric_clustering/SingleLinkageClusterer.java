@@ -4,11 +4,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 
 public class SingleLinkageClusterer implements IGeometricClusterer{
 
@@ -30,8 +28,6 @@ public class SingleLinkageClusterer implements IGeometricClusterer{
 	
 	private float sortedDistances[];
 	
-	private ExecutorService es;
-	
 	/**
 	 * Creates instance of SingleLinkageClusterer with no parameters. This
 	 * still needs to be initialised.
@@ -41,11 +37,6 @@ public class SingleLinkageClusterer implements IGeometricClusterer{
 	
 	
 	public void initGeometricClusterer(ConnectedComponent cc){
-		if(TaskConfig.useThreads){
-			es = java.util.concurrent.Executors.newFixedThreadPool(TaskConfig.maxNoThreads);	
-		}else{
-			es = java.util.concurrent.Executors.newFixedThreadPool(1);
-		}
 		this.cc = cc;
 		this.minDistance = GeometricClusteringConfig.minDistance;
 		this.maxDistance = GeometricClusteringConfig.maxDistance;
@@ -175,11 +166,6 @@ public class SingleLinkageClusterer implements IGeometricClusterer{
 	public void runForSortedArray(int a, int b) throws InterruptedException, ExecutionException{
 		ArrayList<CalculateClustersTask> test = new ArrayList<CalculateClustersTask>();
 		if((b-a)<20){
-			if(TaskConfig.useThreads){
-				es = java.util.concurrent.Executors.newFixedThreadPool(TaskConfig.maxNoThreads);	
-			}else{
-				es = java.util.concurrent.Executors.newFixedThreadPool(1);
-			}
 			double bestScore = Double.MAX_VALUE;
 			double bestScoreParallel = Double.MAX_VALUE;
 			double bestDistanceParallel = -1;
@@ -190,20 +176,13 @@ public class SingleLinkageClusterer implements IGeometricClusterer{
 //				calculateClusters(distance,clusters,already);
 				CalculateClustersTask cct = new CalculateClustersTask(distance, distances, cc);
 				test.add(cct);
-				es.execute(cct);
 //				double score = this.cc.calculateClusteringScore(clusters);
 //				if(score<bestScore){
 //					bestScore = score;
 //					bestDistance = distance;
 //				}
 			}
-			es.shutdown(); 
-			try {
-				es.awaitTermination(5, java.util.concurrent.TimeUnit.HOURS);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			this.cc.getConfig().runAll(test);
 			for (CalculateClustersTask calculateClustersTask : test) {
 				if(calculateClustersTask.score<bestScore){
 					bestScore=calculateClustersTask.score;
@@ -222,7 +201,6 @@ public class SingleLinkageClusterer implements IGeometricClusterer{
 				float distance =this.sortedDistances[j];
 				CalculateClustersTask cct = new CalculateClustersTask(distance, distances, cc);
 				test.add(cct);
-				es.execute(cct);
 //				calculateClusters(distance,clusters,already);
 //				double score = this.cc.calculateClusteringScore(clusters);
 //				if(score<bestScore){
@@ -230,24 +208,13 @@ public class SingleLinkageClusterer implements IGeometricClusterer{
 //					bestStep = j;
 //				}
 			}
-			es.shutdown(); 
-			try {
-				es.awaitTermination(5, java.util.concurrent.TimeUnit.HOURS);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			this.cc.getConfig().runAll(test);
 			for (CalculateClustersTask calculateClustersTask : test) {
 				if(calculateClustersTask.score<bestScore){
 					bestScore=calculateClustersTask.score;
 					bestStep = Arrays.binarySearch(this.sortedDistances, (float) calculateClustersTask.distance);
 				}
 			}
-			if(TaskConfig.useThreads){
-				es = java.util.concurrent.Executors.newFixedThreadPool(TaskConfig.maxNoThreads);	
-			}else{
-				es = java.util.concurrent.Executors.newFixedThreadPool(1);
-			}
 			if(bestStep==0){
 				runForSortedArray( 0,(2*step));
 			}else if(bestStep==(19*step)){
@@ -30,6 +30,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransCl
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.ClusteringTask;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.InvalidInputFileException;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.InvalidTypeException;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 
 
@@ -43,17 +44,29 @@ public class IteratorThread extends Thread {
 	public StringBuffer resultsStringBuffer;
 	public double dummyCosts= 0;
 	private Semaphore s;
+	private RunConfig config;
 	
 	public IteratorThread(float upperBound){
+		this.config = new RunConfig();
 		this.upperBound = upperBound;
 	}
 	
 	public IteratorThread(){
-		upperBound = TaskConfig.upperBound;
+		this.config = new RunConfig();
+		upperBound = config.upperBound;
 	}
 	
 	public IteratorThread(Edges es, HashMap<String,Integer> integers2proteins, HashMap<Integer,String>  proteins2integers, Semaphore s){
-		upperBound = TaskConfig.upperBound;
+		this(es, integers2proteins, proteins2integers, s, new RunConfig());
+	}
+	
+	/**
+	 * Creates an IteratorThread that clusters the given edges with its own settings.
+	 * @param config The settings of this run.
+	 */
+	public IteratorThread(Edges es, HashMap<String,Integer> integers2proteins, HashMap<Integer,String>  proteins2integers, Semaphore s, RunConfig config){
+		this.config = config;
+		upperBound = config.upperBound;
 		this.es = es;
 		this.proteins2integers = proteins2integers;
 		this.integers2proteins = integers2proteins;
@@ -67,8 +80,8 @@ public class IteratorThread extends Thread {
 		try{
 			Hashtable<String,Hashtable<String,Boolean>> clusterReference =null;
 			HashMap<String, String> referenceHash = new HashMap<String, String>();
-			if(TaskConfig.goldstandardPath!=null){
-				clusterReference = readGoldStandardFile();
+			if(config.goldstandardPath!=null){
+				clusterReference = readGoldStandardFile(config.goldstandardPath);
 				for (String key: clusterReference.keySet()) {
 					Hashtable<String, Boolean> h = clusterReference.get(key);
 					for (String id : h.keySet()) {
@@ -76,8 +89,6 @@ public class IteratorThread extends Thread {
 					}
 				}
 			}
-			boolean dummy = Config.createSimilarityFile;
-			Config.createSimilarityFile = false;
 //			HashMap<String,Integer> integers2proteins = new HashMap<String, Integer>();
 //			HashMap<Integer,String>  proteins2integers = new HashMap<Integer, String>();
 //			Edges es = InOut.readSimilarityFile(Config.similarityFile, proteins2integers, integers2proteins);
@@ -110,10 +121,10 @@ public class IteratorThread extends Thread {
 			}
 			
 			
-			if(TaskConfig.knownAssignmentsFile!=null){
+			if(config.knownAssignmentsFile!=null){
 				HashMap<String, Boolean> knownAssignments = new HashMap<String, Boolean>();
 				Vector<Vector<String>> v = new Vector<Vector<String>>();
-				BufferedReader knownAssignmentsReader = new BufferedReader(new FileReader(TaskConfig.knownAssignmentsFile));
+				BufferedReader knownAssignmentsReader = new BufferedReader(new FileReader(config.knownAssignmentsFile));
 				String line;
 				String old = "";
 				Vector<String> v2 = new Vector<String>();
@@ -186,23 +197,22 @@ public class IteratorThread extends Thread {
 			
 			
 			
-			Config.createSimilarityFile = dummy;
-			if(TaskConfig.mode==TaskConfig.COMPARISON_MODE){
+			if(config.mode==TaskConfig.COMPARISON_MODE){
 //				BufferedWriter bw = new BufferedWriter(new FileWriter(TaskConfig.clustersPath));
 				resultsStringBuffer = new StringBuffer();
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("Clustering Mode: cluster iterativ");
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("Threshold range: " + TaskConfig.minThreshold + " to " + TaskConfig.maxThreshold + "");
-				TaskConfig.monitor.setStatusMessage("Stepsize: " + TaskConfig.thresholdStepSize + "");
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("Clustering Mode: cluster iterativ");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("Threshold range: " + config.minThreshold + " to " + config.maxThreshold + "");
+				config.monitor.setStatusMessage("Stepsize: " + config.thresholdStepSize + "");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("");
 				
-				for (double threshold = TaskConfig.minThreshold; threshold <= TaskConfig.maxThreshold; threshold=Math.rint((threshold+TaskConfig.thresholdStepSize)*100000)/100000) {
+				for (double threshold = config.minThreshold; threshold <= config.maxThreshold; threshold=Math.rint((threshold+config.thresholdStepSize)*100000)/100000) {
 					
-					TaskConfig.monitor.setStatusMessage("calculating clusters for threshold " + threshold + "");
-					TaskConfig.monitor.setStatusMessage("");
+					config.monitor.setStatusMessage("calculating clusters for threshold " + threshold + "");
+					config.monitor.setStatusMessage("");
 					Vector<Vector<Integer>> v = Splitter.splitIntoConnectedComponents(es, proteins2integers, (float) threshold, false);
 					Vector<Vector<Integer>> mergableNodes = Splitter.splitIntoConnectedComponents(es, proteins2integers, upperBound, false);
 //					for (int i = 0; i < es.targets.length; i++) {
@@ -237,7 +247,7 @@ public class IteratorThread extends Thread {
 								count++;
 							}
 						}
-						ICCEdges cc2d2 = TaskConfig.ccEdgesEnum.createCCEdges(count);
+						ICCEdges cc2d2 = config.ccEdgesEnum.createCCEdges(count);
 						String[] ids = new String[count];
 						Arrays.fill(ids, "");
 						for (int i = 0; i < representants.size(); i++) {
@@ -251,7 +261,7 @@ public class IteratorThread extends Thread {
 								float costs = 0;
 								for (int k = 0; k < merged1.size(); k++) {
 									for (int k2 = 0; k2 < merged2.size(); k2++) {
-										if(InOut.getEdgeValue(merged1.get(k), merged2.get(k2), es)<TaskConfig.lowerBound){
+										if(InOut.getEdgeValue(merged1.get(k), merged2.get(k2), es)<config.lowerBound){
 											costs-=100000;
 										}else{
 											costs+=(float) (InOut.getEdgeValue(merged1.get(k), merged2.get(k2), es)-threshold);
@@ -262,14 +272,14 @@ public class IteratorThread extends Thread {
 							}
 						}
 						
-						ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null);
+						ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null,config);
 						connectedComponents.add(cc);
 					}
 					
 					Hashtable<String,Hashtable<String,Boolean>> clusters = new Hashtable<String, Hashtable<String,Boolean>>();
-					ClusteringManager cm = new ClusteringManager(null);
+					ClusteringManager cm = new ClusteringManager(null, config);
 					ArrayList<Semaphore> allSemaphores = new ArrayList<Semaphore>();
-					Semaphore maxThreadSemaphore = new Semaphore(TaskConfig.maxNoThreads, true);
+					Semaphore maxThreadSemaphore = new Semaphore(config.getNoThreads(), true);
 					for(int i=0;i<connectedComponents.size();i++){
 						Semaphore semaphore = new Semaphore(1);
 						allSemaphores.add(semaphore);
@@ -312,7 +322,7 @@ public class IteratorThread extends Thread {
 //					================Overlapping========================
 //					
 					
-					if(TaskConfig.overlap){
+					if(config.overlap){
 						Vector<Vector<Integer>> clustersVector = new Vector<Vector<Integer>>();
 						
 						for (String key : clusters.keySet()) {
@@ -336,7 +346,7 @@ public class IteratorThread extends Thread {
 							clusters.put(coun+"",cluster);
 							coun++;
 						}
-					}else if(TaskConfig.fuzzy){
+					}else if(config.fuzzy){
 						float fuzzy[][] = new float[clusters.size()][proteins2integers.size()];
 						float simSum[] = new float[proteins2integers.size()];
 						
@@ -379,7 +389,7 @@ public class IteratorThread extends Thread {
 									column++;
 									continue;
 								}
-								if(fuzzy[row][column]>TaskConfig.fuzzyThreshold){
+								if(fuzzy[row][column]>config.fuzzyThreshold){
 									cluster.put(id1, true);
 									countoverlaps++;
 								}
@@ -387,9 +397,9 @@ public class IteratorThread extends Thread {
 							}
 							row++;
 						}
-					}else if(TaskConfig.UseLimitK){
+					}else if(config.UseLimitK){
 						
-						ICCEdges cc2d2 =TaskConfig.ccEdgesEnum.createCCEdges(proteins2integers.size());
+						ICCEdges cc2d2 =config.ccEdgesEnum.createCCEdges(proteins2integers.size());
 						String[] ids = new String[proteins2integers.size()];
 						for (String key : integers2proteins.keySet()) {
 							ids[integers2proteins.get(key)] = key;
@@ -398,7 +408,7 @@ public class IteratorThread extends Thread {
 								cc2d2.setEdgeCost(integers2proteins.get(key2), integers2proteins.get(key), (InOut.getEdgeValue(integers2proteins.get(key2), integers2proteins.get(key), es)- (float) threshold));
 							}
 						}
-						ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null);
+						ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null,config);
 						int[] elements2cluster = cc.getClusters();
 						clusters = new Hashtable<String, Hashtable<String,Boolean>>();
 						for (int j = 0; j < cc.getNumberOfClusters(); j++) {
@@ -420,7 +430,7 @@ public class IteratorThread extends Thread {
 						try {
 							s.acquire();
 						} catch (InterruptedException e) {
-							TaskConfig.monitor.showMessage(TaskMonitor.Level.ERROR, e.getMessage());
+							config.monitor.showMessage(TaskMonitor.Level.ERROR, e.getMessage());
 							// e.printStackTrace();
 						}
 					}
@@ -472,7 +482,7 @@ public class IteratorThread extends Thread {
 //						double fmeasure2 = Fmeassure.fMeassure2(clusterReference,clusters);
 						resultsStringBuffer.append(fmeasure+"\t");
 //						TaskConfig.monitor.setStatusMessage(clusterReference.size() + "\t" + clusters.size());
-						TaskConfig.monitor.setStatusMessage("fmeasure: " + fmeasure);
+						config.monitor.setStatusMessage("fmeasure: " + fmeasure);
 //						TaskConfig.monitor.setStatusMessage("meanSilhouette: " + meanSilhouette);
 //						double ppv = Fmeassure.PPV(clusterReference, clusters);
 //						TaskConfig.monitor.setStatusMessage("PPV = " + ppv);
@@ -521,27 +531,27 @@ public class IteratorThread extends Thread {
 					for (int i = max; i >=0 ; i--) {
 						if(distribution[i]>0) sb.append(i + ":" + distribution[i] + ", ");
 					}
-					TaskConfig.monitor.setStatusMessage(sb.toString());
-					TaskConfig.monitor.setStatusMessage("");
+					config.monitor.setStatusMessage(sb.toString());
+					config.monitor.setStatusMessage("");
 					resultsStringBuffer.append("\n");
 				}
 				 
-			}else if(TaskConfig.mode==TaskConfig.HIERARICHAL_MODE){
+			}else if(config.mode==TaskConfig.HIERARICHAL_MODE){
 				
-				BufferedWriter bw = new BufferedWriter(new FileWriter(TaskConfig.clustersPath));
+				BufferedWriter bw = new BufferedWriter(new FileWriter(config.clustersPath));
 				
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("Clustering Mode: cluster hierarchical");
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("Threshold range: " + TaskConfig.minThreshold + " to " + TaskConfig.maxThreshold + "");
-				TaskConfig.monitor.setStatusMessage("Stepsize: " + TaskConfig.thresholdStepSize + "");
-				TaskConfig.monitor.setStatusMessage("");
-				TaskConfig.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("Clustering Mode: cluster hierarchical");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("Threshold range: " + config.minThreshold + " to " + config.maxThreshold + "");
+				config.monitor.setStatusMessage("Stepsize: " + config.thresholdStepSize + "");
+				config.monitor.setStatusMessage("");
+				config.monitor.setStatusMessage("");
 				
 				
-				if(TaskConfig.clusterHierarchicalComplete){
-					if(!TaskConfig.reducedMatrix) upperBound = Float.POSITIVE_INFINITY;
+				if(config.clusterHierarchicalComplete){
+					if(!config.reducedMatrix) upperBound = Float.POSITIVE_INFINITY;
 					Hashtable<String, Hashtable<String, Boolean>> clusters = new Hashtable<String, Hashtable<String,Boolean>>();
 					Vector<Vector<Integer>> mergableNodes = Splitter.splitIntoConnectedComponents(es, proteins2integers, (float) upperBound, false);
 					Hashtable<Integer, Vector<Integer>> mergedNodes = new Hashtable<Integer, Vector<Integer>>();
@@ -551,9 +561,9 @@ public class IteratorThread extends Thread {
 							mergedNodes.put(v2.get(j),v2);
 						}
 					}
-					for (double threshold = TaskConfig.maxThreshold; threshold >= TaskConfig.minThreshold; threshold=Math.rint((threshold-TaskConfig.thresholdStepSize)*100000)/100000) {
-						TaskConfig.monitor.setStatusMessage("calculating clusters for threshold " + threshold + "");
-						TaskConfig.monitor.setStatusMessage("");
+					for (double threshold = config.maxThreshold; threshold >= config.minThreshold; threshold=Math.rint((threshold-config.thresholdStepSize)*100000)/100000) {
+						config.monitor.setStatusMessage("calculating clusters for threshold " + threshold + "");
+						config.monitor.setStatusMessage("");
 						clusters = calculateHierarichal2(threshold,bw,es,proteins2integers,integers2proteins,clusterReference,clusters,mergedNodes,referenceHash);
 						if(clusters.size()==1) break;
 					}
@@ -562,7 +572,7 @@ public class IteratorThread extends Thread {
 					
 				}else{
 					
-					if(!TaskConfig.reducedMatrix) upperBound = Float.POSITIVE_INFINITY;
+					if(!config.reducedMatrix) upperBound = Float.POSITIVE_INFINITY;
 					Hashtable<String, Hashtable<String, Boolean>> clusters = new Hashtable<String, Hashtable<String,Boolean>>();
 					Vector<String> singletons = new Vector<String>();
 					Vector<Vector<Integer>> mergableNodes = Splitter.splitIntoConnectedComponents(es, proteins2integers, (float) upperBound, false);
@@ -573,16 +583,16 @@ public class IteratorThread extends Thread {
 							mergedNodes.put(v2.get(j),v2);
 						}
 					}
-					for (double threshold = TaskConfig.minThreshold; threshold <= TaskConfig.maxThreshold; threshold=Math.rint((threshold+TaskConfig.thresholdStepSize)*100000)/100000) {
-						TaskConfig.monitor.setStatusMessage("calculating clusters for threshold " + threshold + "");
-						TaskConfig.monitor.setStatusMessage("");
+					for (double threshold = config.minThreshold; threshold <= config.maxThreshold; threshold=Math.rint((threshold+config.thresholdStepSize)*100000)/100000) {
+						config.monitor.setStatusMessage("calculating clusters for threshold " + threshold + "");
+						config.monitor.setStatusMessage("");
 						clusters = calculateHierarichal(threshold,bw,es,proteins2integers,integers2proteins,clusterReference,clusters,singletons,mergedNodes);
 						if(clusters.isEmpty()) break;
 					}
 					bw.flush();
 					bw.close();
 				}
-				if(TaskConfig.gui){
+				if(config.gui){
 //					this.gui.visualizationTab.removeAll();
 //					this.gui.visualizationTab.add(this.gui.visualizationTab.buildVisualizationsPanelHierarchical(TaskConfig.clustersPath));
 //					this.gui.tabsPanelOptionsVisualizations.addComponentatIndex("Visualization", null, this.gui.visualizationTab, "Visualization", TransClustGui.VISUALIZATION_TAB);
@@ -647,7 +657,7 @@ public class IteratorThread extends Thread {
 	private void merge(Hashtable<String, Hashtable<String, Boolean>> clusters,
 			Edges es, HashMap<String, Integer> integers2proteins, double threshold) {
 		
-		while(clusters.size()>TaskConfig.limitK){
+		while(clusters.size()>config.limitK){
 //			System.out.println(clusters.size() + "\t" + TaskConfig.limitK);
 			int i = 0;
 			double bestCosts = Double.NEGATIVE_INFINITY;
@@ -717,7 +727,7 @@ public class IteratorThread extends Thread {
 		
 		Vector<ConnectedComponent> connectedComponents = new Vector<ConnectedComponent>();
 		
-		if(threshold==TaskConfig.maxThreshold){
+		if(threshold==config.maxThreshold){
 			Vector<Vector<Integer>> v = Splitter.splitIntoConnectedComponents(es, proteins2integers, (float) threshold, false);
 			
 			boolean already[] = new boolean[proteins2integers.size()];
@@ -734,7 +744,7 @@ public class IteratorThread extends Thread {
 						count++;
 					}
 				}
-				ICCEdges cc2d2 = TaskConfig.ccEdgesEnum.createCCEdges(count);
+				ICCEdges cc2d2 = config.ccEdgesEnum.createCCEdges(count);
 				String[] ids = new String[count];
 				Arrays.fill(ids, "");
 				for (int i = 0; i < representants.size(); i++) {
@@ -755,7 +765,7 @@ public class IteratorThread extends Thread {
 					}
 				}
 				
-				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null);
+				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null,config);
 				connectedComponents.add(cc);
 			}	
 		}else{
@@ -797,7 +807,7 @@ public class IteratorThread extends Thread {
 						count++;
 					}
 				}
-				ICCEdges cc2d2 =TaskConfig.ccEdgesEnum.createCCEdges(count);
+				ICCEdges cc2d2 =config.ccEdgesEnum.createCCEdges(count);
 				String[] ids = new String[count];
 				Arrays.fill(ids, "");
 				for (int i = 0; i < representants.size(); i++) {
@@ -818,16 +828,16 @@ public class IteratorThread extends Thread {
 					}
 				}
 				
-				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null);
+				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null,config);
 				connectedComponents.add(cc);
 			}	
 		}
 				
 		
 		clusters = new Hashtable<String, Hashtable<String,Boolean>>();
-		ClusteringManager cm = new ClusteringManager(null);
+		ClusteringManager cm = new ClusteringManager(null, config);
 		ArrayList<Semaphore> allSemaphores = new ArrayList<Semaphore>();
-		Semaphore maxThreadSemaphore = new Semaphore(TaskConfig.maxNoThreads, true);
+		Semaphore maxThreadSemaphore = new Semaphore(config.getNoThreads(), true);
 		for(int i=0;i<connectedComponents.size();i++){
 			Semaphore semaphore = new Semaphore(1);
 			allSemaphores.add(semaphore);
@@ -853,13 +863,13 @@ public class IteratorThread extends Thread {
 			try {
 				s.acquire();
 			} catch (InterruptedException e) {
-				TaskConfig.monitor.showMessage(TaskMonitor.Level.ERROR, e.getMessage());
+				config.monitor.showMessage(TaskMonitor.Level.ERROR, e.getMessage());
 				// e.printStackTrace();
 			}
 		}
 		
 		Hashtable<String,Hashtable<String,Boolean>> clustersCopy = (Hashtable<String, Hashtable<String, Boolean>>) clusters.clone();
-		if(TaskConfig.goldstandardPath!=null){
+		if(config.goldstandardPath!=null){
 			ArrayList<String> dummyRemove2 = new ArrayList<String>();
 			
 			for (Iterator iterator2 = clusters.keySet().iterator(); iterator2
@@ -890,7 +900,7 @@ public class IteratorThread extends Thread {
 		if(clusterReference!=null){
 			double fmeasure = Fmeassure.fMeassure(clusterReference,clustersCopy);
 			bw.write(fmeasure+"\t");
-			TaskConfig.monitor.setStatusMessage("fmeasure: " + fmeasure);
+			config.monitor.setStatusMessage("fmeasure: " + fmeasure);
 		}else{
 			bw.write("-\t");
 		}
@@ -921,8 +931,8 @@ public class IteratorThread extends Thread {
 			if(distribution[i]>0) sb.append(i + ":" + distribution[i] + ", ");
 		}
 		
-		TaskConfig.monitor.setStatusMessage(sb.toString());
-		TaskConfig.monitor.setStatusMessage("");
+		config.monitor.setStatusMessage(sb.toString());
+		config.monitor.setStatusMessage("");
 		bw.newLine();
 		mergedNodes.clear();
 		for (Iterator iterator = clusters.keySet().iterator(); iterator.hasNext();) {
@@ -1008,7 +1018,7 @@ public class IteratorThread extends Thread {
 	private Hashtable<String, Hashtable<String,Boolean>> calculateHierarichal(double threshold, BufferedWriter bw, Edges es, HashMap<Integer, String> proteins2integers, HashMap<String, Integer> integers2proteins, Hashtable<String, Hashtable<String, Boolean>> clusterReference, Hashtable<String, Hashtable<String, Boolean>> clusters, Vector<String> singletons, Hashtable<Integer, Vector<Integer>> mergedNodes) throws IOException, ArgsParseException, InvalidInputFileException, InvalidTypeException {
 		
 		Vector<ConnectedComponent> connectedComponents = new Vector<ConnectedComponent>();
-		if(threshold==TaskConfig.minThreshold){
+		if(threshold==config.minThreshold){
 			Vector<Vector<Integer>> v = Splitter.splitIntoConnectedComponents(es, proteins2integers, (float) threshold, false);
 			
 			boolean already[] = new boolean[proteins2integers.size()];
@@ -1025,7 +1035,7 @@ public class IteratorThread extends Thread {
 						count++;
 					}
 				}
-				ICCEdges cc2d2 = TaskConfig.ccEdgesEnum.createCCEdges(count);
+				ICCEdges cc2d2 = config.ccEdgesEnum.createCCEdges(count);
 				String[] ids = new String[count];
 				Arrays.fill(ids, "");
 				for (int i = 0; i < representants.size(); i++) {
@@ -1046,7 +1056,7 @@ public class IteratorThread extends Thread {
 					}
 				}
 				
-				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null);
+				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null,config);
 				connectedComponents.add(cc);
 			}
 		}else{
@@ -1074,7 +1084,7 @@ public class IteratorThread extends Thread {
 						count++;
 					}
 				}
-				ICCEdges cc2d2 = TaskConfig.ccEdgesEnum.createCCEdges(count);
+				ICCEdges cc2d2 = config.ccEdgesEnum.createCCEdges(count);
 				String[] ids = new String[count];
 				Arrays.fill(ids, "");
 				for (int i = 0; i < representants.size(); i++) {
@@ -1095,7 +1105,7 @@ public class IteratorThread extends Thread {
 					}
 				}
 				
-				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null);
+				ConnectedComponent cc = new ConnectedComponent(cc2d2,ids,null,config);
 				connectedComponents.add(cc);
 				
 				
@@ -1120,9 +1130,9 @@ public class IteratorThread extends Thread {
 		}
 		
 		clusters = new Hashtable<String, Hashtable<String,Boolean>>();
-		ClusteringManager cm = new ClusteringManager(null);
+		ClusteringManager cm = new ClusteringManager(null, config);
 		ArrayList<Semaphore> allSemaphores = new ArrayList<Semaphore>();
-		Semaphore maxThreadSemaphore = new Semaphore(TaskConfig.maxNoThreads, true);
+		Semaphore maxThreadSemaphore = new Semaphore(config.getNoThreads(), true);
 		for(int i=0;i<connectedComponents.size();i++){
 			Semaphore semaphore = new Semaphore(1);
 			allSemaphores.add(semaphore);
@@ -1148,7 +1158,7 @@ public class IteratorThread extends Thread {
 			try {
 				s.acquire();
 			} catch (InterruptedException e) {
-				TaskConfig.monitor.showMessage(TaskMonitor.Level.ERROR, e.getMessage());
+				config.monitor.showMessage(TaskMonitor.Level.ERROR, e.getMessage());
 				// e.printStackTrace();
 			}
 		}
@@ -1157,7 +1167,7 @@ public class IteratorThread extends Thread {
 		if(clusterReference!=null){
 			double fmeasure = Fmeassure.fMeassure(clusterReference,clusters);
 			bw.write(fmeasure+"\t");
-			TaskConfig.monitor.setStatusMessage("fmeasure: " + fmeasure);
+			config.monitor.setStatusMessage("fmeasure: " + fmeasure);
 		}else{
 			bw.write("-\t");
 		}
@@ -1201,8 +1211,8 @@ public class IteratorThread extends Thread {
 			if(distribution[i]>0) sb.append(i + ":" + distribution[i] + ", ");
 		}
 		
-		TaskConfig.monitor.setStatusMessage(sb.toString());
-		TaskConfig.monitor.setStatusMessage("");
+		config.monitor.setStatusMessage(sb.toString());
+		config.monitor.setStatusMessage("");
 		bw.newLine();
 		return clusters;
 	}
@@ -1,176 +1,120 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.forcend;
 
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
+import java.util.Arrays;
 
-public class DisplacementCalculator implements Runnable {
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ICCEdges;
 
+/**
+ * Calculates the forces between node i and every node j>i for the nodes i in
+ * [start, end). Since force(i,j) = -force(j,i), each pair is only looked at
+ * once, and both of its displacements go into this calculator's own
+ * displacement array, so that several calculators can run at the same time
+ * without sharing anything they write to. The displacements are added up by
+ * {@link FORCEnDLayoutUtility#calculateDisplacementVectors}.
+ *
+ * The positions and displacements are flat arrays with the dim coordinates
+ * of node i at [i*dim, (i+1)*dim).
+ */
+public class DisplacementCalculator implements Runnable {
 
-//	java.util.concurrent.Callable<String>
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = 1L;
-	private double[][] allDisplacements;
-	private ConnectedComponent cc;
+	private double[] positions;
+	private double[] displacements;
+	private ICCEdges edges;
+	private int nodeNumber;
 	private int dim;
-	private int[] list;
 	private double attraction;
 	private double repulsion;
 	private int start;
 	private int end;
-	
+
+	/**
+	 * @param attraction
+	 *            The attraction factor divided by the number of nodes.
+	 * @param repulsion
+	 *            The repulsion factor divided by the number of nodes.
+	 * @param positions
+	 *            The node positions, which are read but not changed.
+	 * @param edges
+	 *            The edge costs.
+	 * @param nodeNumber
+	 *            The number of nodes.
+	 * @param dim
+	 *            The dimension the layouting is run in.
+	 * @param start
+	 *            The first node i.
+	 * @param end
+	 *            One past the last node i.
+	 */
 	public DisplacementCalculator(double attraction, double repulsion,
-			double[][] allDisplacements, ConnectedComponent cc, int dim,
-			int[] list,int start, int end) {
-		super();
-		this.allDisplacements = allDisplacements;
-		this.cc = cc;
-		this.dim = dim;
+			double[] positions, ICCEdges edges, int nodeNumber, int dim,
+			int start, int end) {
 		this.attraction = attraction;
 		this.repulsion = repulsion;
-		this.list = list;
+		this.positions = positions;
+		this.edges = edges;
+		this.nodeNumber = nodeNumber;
+		this.dim = dim;
 		this.start = start;
 		this.end = end;
+		this.displacements = new double[nodeNumber*dim];
 	}
 
 	public void run(){
-		double distance=0,dummy,displacement,force;
-		for (int i = start; i <= end; i++) {
-			for (int j = 0; j < cc.getNodeNumber(); j++) {
-//			for (int j = i+1; j < cc.getNodeNumber(); j++) {
-				
-//				double distance = calculateEuclideanDistance(cc.getCCPositions(), dim, i,j);
-				for (int d = 0; d < dim; d++) {	
-					dummy = (cc.getCCPositions()[i][d] - cc.getCCPositions()[j][d]);
-					distance += (dummy*dummy);
+		/* only the nodes from start on are touched */
+		Arrays.fill(displacements, start*dim, nodeNumber*dim, 0);
+
+		double distance,dummy,displacement,force,cost;
+		for (int i = start; i < end; i++) {
+			int pos_i = i*dim;
+			for (int j = i+1; j < nodeNumber; j++) {
+				int pos_j = j*dim;
+
+				distance = 0;
+				for (int d = 0; d < dim; d++) {
+					dummy = positions[pos_i+d] - positions[pos_j+d];
+					distance += dummy*dummy;
 				}
 				distance = Math.sqrt(distance);
-//				distance = 5;
 				if(distance<FORCEnDLayoutConfig.MIN_DISTANCE) continue;
 				/*
-				 * calculate attraction or repulsion force 
-				 * 
+				 * calculate attraction or repulsion force
+				 *
 				 * attraction:
 				 * 				log(d(i,j)+1) x cost(i,j) x attraction factor
-				 * 				--------------------------------------------- 
-				 * 	  		   	          number of nodes 
-				 * 
-				 * repulsion: 
+				 * 				---------------------------------------------
+				 * 	  		   	          number of nodes
+				 *
+				 * repulsion:
 				 * 				cost(i,j) x repulsion factor
 				 *             -------------------------------
-				 *             log(d(i,j)+1) x number of nodes 
-				 * 
+				 *             log(d(i,j)+1) x number of nodes
+				 *
 				 */
-				
-				if (cc.getCCEdges().getEdgeCost(i, j)>0) {
-					force =  (Math.log(distance + 1) * cc.getCCEdges().getEdgeCost(i, j) * attraction)/distance;
-//					force =  (5 * cc.getCCEdges().getEdgeCost(i, j) * attraction)/distance;
-					for (int d = 0; d < dim; d++) {
-						displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-//						synchronized (allDisplacements[i]) {
-							allDisplacements[i][d] += displacement;
-//						}
-//						synchronized(allDisplacements[j]){
-//							allDisplacements[j][d] -= displacement;
-//						}
-					}
+				cost = edges.getEdgeCost(i, j);
+				if (cost>0) {
+					force = (Math.log(distance + 1) * cost * attraction)/distance;
 				}else{
-					force = ((cc.getCCEdges().getEdgeCost(i, j) * repulsion)/Math.log(distance + 1))/distance;
-//					force = ((cc.getCCEdges().getEdgeCost(i, j) * repulsion)/5)/distance;
-					for (int d = 0; d < dim; d++) {
-						displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-//						synchronized (allDisplacements[i]) {
-							allDisplacements[i][d] += displacement;
-//						}
-//						synchronized(allDisplacements[j]){
-//							allDisplacements[j][d] -= displacement;
-//						}
-					}
+					force = ((cost * repulsion)/Math.log(distance + 1))/distance;
+				}
+				for (int d = 0; d < dim; d++) {
+					displacement = (positions[pos_j+d] - positions[pos_i+d])*force;
+					displacements[pos_i+d] += displacement;
+					displacements[pos_j+d] -= displacement;
 				}
 			}
-//			System.out.println();
 		}
 	}
-	
 
-//	@Override
-//	protected void compute() {
-////		if(list.length*(cc.getNodeNumber()-list[0])<cc.getNodeNumber()*1+1){
-//		if (list.length<=1) {
-//			for (int k = 0; k < list.length; k++) {
-//				int i = list[k];
-//			
-//				
-//				for (int j = i+1; j < cc.getNodeNumber(); j++) {
-//					
-////					double distance = calculateEuclideanDistance(cc.getCCPositions(), dim, i,j);
-//					double distance=0;
-//					double dummy = 0;
-//					for (int d = 0; d < dim; d++) {	
-//						dummy = (cc.getCCPositions()[i][d] - cc.getCCPositions()[j][d]);
-//						distance += (dummy*dummy);
-//					}
-//					distance = Math.sqrt(distance);
-//					if(distance<FORCEnDLayoutConfig.MIN_DISTANCE) continue;
-//					/*
-//					 * calculate attraction or repulsion force 
-//					 * 
-//					 * attraction:
-//					 * 				log(d(i,j)+1) x cost(i,j) x attraction factor
-//					 * 				--------------------------------------------- 
-//					 * 	  		   	          number of nodes 
-//					 * 
-//					 * repulsion: 
-//					 * 				cost(i,j) x repulsion factor
-//					 *             -------------------------------
-//					 *             log(d(i,j)+1) x number of nodes 
-//					 * 
-//					 */
-//					
-//					if (cc.getCCEdges().getEdgeCost(i, j)>0) {
-//						double force =  (Math.log(distance + 1) * cc.getCCEdges().getEdgeCost(i, j) * attraction)/distance;
-//						for (int d = 0; d < dim; d++) {
-//							double displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-////							synchronized (allDisplacements) {
-//								allDisplacements[i][d] += displacement;
-//								allDisplacements[j][d] -= displacement;
-////							}
-//							
-//						}
-//					}else{
-//						double force = ((cc.getCCEdges().getEdgeCost(i, j) * repulsion)/Math.log(distance + 1))/distance;
-//						for (int d = 0; d < dim; d++) {
-//							double displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-////							synchronized (allDisplacements) {
-//								allDisplacements[i][d] += displacement;
-//								allDisplacements[j][d] -= displacement;
-////							}
-//						}
-//					}
-//				}
-//			}
-//		} else {
-//			int midpoint = list.length / 2;
-//			int[] l1 = Arrays.copyOfRange(list, 0, midpoint);
-//			int[] l2 = Arrays.copyOfRange(list, midpoint, list.length);
-////			System.out.println(l1.length + "\t" + l2.length + "\t" + this.getPool().getActiveThreadCount() + "\t" + this.getPool().getMaximumPoolSize());
-////			System.out.println(this.getPool().getActiveThreadCount() + "\t" + this.getPool().getQueuedTaskCount() + "\t" + this.getPool().getPoolSize() + "\t" + this.getPool().getRunningThreadCount() + "\t" + this.getPool().getParallelism() + "\t" + this.getPool().getMaximumPoolSize() + "\t" + this.getPool().getAsyncMode());
-//			DisplacementCalculator s1 = new DisplacementCalculator(attraction,repulsion,allDisplacements,cc,dim,l1);
-//			DisplacementCalculator s2 = new DisplacementCalculator(attraction,repulsion,allDisplacements,cc,dim,l2);
-//			invokeAll(s1,s2);
-//		}
-//	}
-	
-	private static double calculateEuclideanDistance(double[][] node_pos,
-			int dim, int node_i, int node_j) {
-		double distance = 0;
-		double dummy = 0;
-		for (int d = 0; d < dim; d++) {	
-			dummy = (node_pos[node_i][d] - node_pos[node_j][d]);
-			distance += (dummy*dummy);
+	/**
+	 * Adds the displacements from the last run to the given array.
+	 *
+	 * @param allDisplacements
+	 *            The displacements of all nodes.
+	 */
+	public void addDisplacementsTo(double[] allDisplacements) {
+		for (int k = start*dim; k < allDisplacements.length; k++) {
+			allDisplacements[k] += displacements[k];
 		}
-		distance = Math.sqrt(distance);
-		return distance;
 	}
 
 }
@@ -4,11 +4,11 @@
  */
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.forcend;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
 
 /**
  * This class is a collection of static methods that are used for the layouting
@@ -42,225 +42,66 @@ public class FORCEnDLayoutUtility {
 	}
 
 	/**
-	 * Sets all the values in the displacement array to zero.
+	 * Creates the {@link DisplacementCalculator}s for one layout, one for each
+	 * thread that may be used. The nodes are split up so that each calculator
+	 * gets about the same number of node pairs. The calculators can be reused
+	 * for every iteration, since they read the positions from the given array.
 	 * 
-	 * @param allDisplacements
-	 *            The displacement array.
-	 * @param node_no
-	 *            The number of nodes for the current ConnectedComponent.
-	 * @param dim
-	 *            The current dimensions the layouting is run in.
-	 */
-	private static void setDisplacementsToZero(double[][] allDisplacements,
-			int node_no, int dim) {
-		for (int i = 0; i < node_no; i++) {
-			Arrays.fill(allDisplacements[i], 0);
-		}
-	}
-
-	/**
-	 * Calculates the displacement vector for all nodes and saves it in a 2D
-	 * double array.
-	 * 
-	 * @param allDisplacements
-	 *            The displacement values for all nodes.
+	 * @param positions
+	 *            The node positions, dim values for each node.
 	 * @param cc
 	 *            The current ConnectedComponent object.
 	 * @param dim
 	 *            The current dimensions the layouting is run in.
 	 * @param param
 	 *            The parameters object for FORCEnD.
-	 * @param temperature 
+	 * @return The calculators.
 	 */
-	public static void calculateDisplacementVectors(
-			double[][] allDisplacements, ConnectedComponent cc, int dim,
-			FORCEnDParameters param, double temperature) {
-		setDisplacementsToZero(allDisplacements, cc.getNodeNumber(), dim);
-		double attraction = param.getAttractionFactor()/cc.getNodeNumber();
-		double repulsion = param.getRepulsionFactor()/cc.getNodeNumber();
-		int[] list = new int[cc.getNodeNumber()];
-		if(TaskConfig.useThreads){
-//			if(false){
-			ExecutorService es = java.util.concurrent.Executors.newFixedThreadPool(TaskConfig.maxNoThreads);
-			for (int i = 0; i < TaskConfig.maxNoThreads; i++) {
-				DisplacementCalculator s = new DisplacementCalculator(attraction,repulsion,allDisplacements,cc,dim,list,(int) Math.rint((double) cc.getNodeNumber()/TaskConfig.maxNoThreads)*i,Math.min((int) Math.rint((double) cc.getNodeNumber()/TaskConfig.maxNoThreads)*(i+1)-1,cc.getNodeNumber()-1));
-				
-				es.execute(s);
-			}
-//			for (int i = 0; i < cc.getNodeNumber(); i++) {
-//				int start = i;
-//				int end = i;
-//				int estimatedOperation = cc.getNodeNumber()-i;
-//				while(estimatedOperation<((cc.getNodeNumber()*(cc.getNodeNumber()-1))/2)/TaskConfig.maxNoThreads){
-//					if(i==cc.getNodeNumber()) break;
-//					end++;
-//					i++;
-//					estimatedOperation+=cc.getNodeNumber()-i;
-//				}
-//				DisplacementCalculator s = new DisplacementCalculator(attraction,repulsion,allDisplacements,cc,dim,list,start,end);
-//				es.execute(s);
-//			}
-			
-			es.shutdown(); 
-			try {
-				es.awaitTermination(5, java.util.concurrent.TimeUnit.HOURS);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}	
-		}else{
-			double distance,force,displacement;
-			for (int i = 0; i < cc.getNodeNumber(); i++) {
-				/*
-				 * only need to calculate the forces for j<i, because force(i,j) =
-				 * force(j,i)
-				 * if it should at some stage not be the case, then change
-				 * this!
-				 */
-				
-				for (int j = i+1; j < cc.getNodeNumber(); j++) {
-					
-					distance = calculateEuclideanDistance(cc.getCCPositions(), dim, i,j);
-					if(distance<FORCEnDLayoutConfig.MIN_DISTANCE) continue;
-					/*
-					 * calculate attraction or repulsion force 
-					 * 
-					 * attraction:
-					 * 				log(d(i,j)+1) x cost(i,j) x attraction factor
-					 * 				--------------------------------------------- 
-					 * 	  		   	          number of nodes 
-					 * 
-					 * repulsion: 
-					 * 				cost(i,j) x repulsion factor
-					 *             -------------------------------
-					 *             log(d(i,j)+1) x number of nodes 
-					 * 
-					 */
-					
-					if (cc.getCCEdges().getEdgeCost(i, j)>0) {
-						force =  (Math.log(distance + 1) * cc.getCCEdges().getEdgeCost(i, j) * attraction)/distance;
-						for (int d = 0; d < dim; d++) {
-							displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-							allDisplacements[i][d] += displacement;
-							allDisplacements[j][d] -= displacement;
-						}
-					}else{
-						force = ((cc.getCCEdges().getEdgeCost(i, j) * repulsion)/Math.log(distance + 1))/distance;
-						for (int d = 0; d < dim; d++) {
-							displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-							allDisplacements[i][d] += displacement;
-							allDisplacements[j][d] -= displacement;
-						}
-					}
-				}
-			}	
-		}
-		
-//		
-	}
-	
-	public class DisplacementTask implements Runnable {
-		
-		private static final long serialVersionUID = 1L;
-		private double[][] allDisplacements;
-		private ConnectedComponent cc;
-		private int dim;
-		private int[] list;
-		private double attraction;
-		private double repulsion;
-		private int start;
-		private int end;
-		
-		public DisplacementTask(double attraction, double repulsion,
-				double[][] allDisplacements, ConnectedComponent cc, int dim,
-				int[] list,int start, int end) {
-			super();
-			this.allDisplacements = allDisplacements;
-			this.cc = cc;
-			this.dim = dim;
-			this.attraction = attraction;
-			this.repulsion = repulsion;
-			this.list = list;
-			this.start = start;
-			this.end = end;
-		}
+	public static ArrayList<DisplacementCalculator> createDisplacementCalculators(
+			double[] positions, ConnectedComponent cc, int dim,
+			FORCEnDParameters param) {
+		int node_no = cc.getNodeNumber();
+		double attraction = param.getAttractionFactor()/node_no;
+		double repulsion = param.getRepulsionFactor()/node_no;
+		int noOfThreads = Math.max(1, Math.min(cc.getConfig().getNoThreads(), node_no));
 
-		public void run(){
-			for (int i = start; i <= end; i++) {
-				for (int j = i+1; j < cc.getNodeNumber(); j++) {
-					
-//					double distance = calculateEuclideanDistance(cc.getCCPositions(), dim, i,j);
-					double distance=0;
-					double dummy = 0;
-					for (int d = 0; d < dim; d++) {	
-						dummy = (cc.getCCPositions()[i][d] - cc.getCCPositions()[j][d]);
-						distance += (dummy*dummy);
-					}
-					distance = Math.sqrt(distance);
-					if(distance<FORCEnDLayoutConfig.MIN_DISTANCE) continue;
-					/*
-					 * calculate attraction or repulsion force 
-					 * 
-					 * attraction:
-					 * 				log(d(i,j)+1) x cost(i,j) x attraction factor
-					 * 				--------------------------------------------- 
-					 * 	  		   	          number of nodes 
-					 * 
-					 * repulsion: 
-					 * 				cost(i,j) x repulsion factor
-					 *             -------------------------------
-					 *             log(d(i,j)+1) x number of nodes 
-					 * 
-					 */
-					
-					if (cc.getCCEdges().getEdgeCost(i, j)>0) {
-						double force =  (Math.log(distance + 1) * cc.getCCEdges().getEdgeCost(i, j) * attraction)/distance;
-						for (int d = 0; d < dim; d++) {
-							double displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-							synchronized (allDisplacements) {
-								allDisplacements[i][d] += displacement;
-								allDisplacements[j][d] -= displacement;
-							}
-							
-						}
-					}else{
-						double force = ((cc.getCCEdges().getEdgeCost(i, j) * repulsion)/Math.log(distance + 1))/distance;
-						for (int d = 0; d < dim; d++) {
-							double displacement = (cc.getCCPositions()[j][d] - cc.getCCPositions()[i][d])*force;
-							synchronized (allDisplacements) {
-								allDisplacements[i][d] += displacement;
-								allDisplacements[j][d] -= displacement;
-							}
-						}
-					}
-				}
+		/* node i has node_no-1-i pairs with the nodes after it */
+		double pairsPerThread = ((double) node_no*(node_no-1)/2)/noOfThreads;
+		ArrayList<DisplacementCalculator> calculators = new ArrayList<DisplacementCalculator>(noOfThreads);
+		int start = 0;
+		double pairs = 0;
+		for (int i = 0; i < node_no; i++) {
+			pairs += node_no-1-i;
+			/* the last node has no pairs of its own, so it goes with the last calculator */
+			if (i == node_no-1 || (i < node_no-2 && pairs >= pairsPerThread*(calculators.size()+1))) {
+				calculators.add(new DisplacementCalculator(attraction, repulsion, positions,
+						cc.getCCEdges(), node_no, dim, start, i+1));
+				start = i+1;
 			}
 		}
-		
+		return calculators;
 	}
+
 	/**
-	 * Calculates the euclidean distance between two nodes.
+	 * Calculates the displacement vector for all nodes and saves it in a flat
+	 * double array with dim values for each node. The calculators are run on
+	 * the shared worker pool of the cc's {@link RunConfig}, and their
+	 * displacements are added up afterwards.
 	 * 
-	 * @param node_pos
-	 *            The positions array with all node positions.
-	 * @param dim
-	 *            The dimension that FORCEnD is run in.
-	 * @param node_i
-	 *            Node i.
-	 * @param node_j
-	 *            Node j.
-	 * @return The euclidean distance between node i and node j.
+	 * @param allDisplacements
+	 *            The displacement values for all nodes.
+	 * @param calculators
+	 *            The calculators from {@link #createDisplacementCalculators}.
+	 * @param cc
+	 *            The current ConnectedComponent object.
 	 */
-	private static double calculateEuclideanDistance(double[][] node_pos,
-			int dim, int node_i, int node_j) {
-		double distance = 0;
-		double dummy = 0;
-		for (int d = 0; d < dim; d++) {	
-			dummy = (node_pos[node_i][d] - node_pos[node_j][d]);
-			distance += (dummy*dummy);
+	public static void calculateDisplacementVectors(double[] allDisplacements,
+			ArrayList<DisplacementCalculator> calculators, ConnectedComponent cc) {
+		cc.getConfig().runAll(calculators);
+		Arrays.fill(allDisplacements, 0);
+		for (DisplacementCalculator calculator : calculators) {
+			calculator.addDisplacementsTo(allDisplacements);
 		}
-		distance = Math.sqrt(distance);
-		return distance;
 	}
 
 	/**
@@ -272,9 +113,9 @@ public class FORCEnDLayoutUtility {
 	 * this value.
 	 * 
 	 * @param allDisplacements
-	 *            The double[][] with all calculated force vectors.
+	 *            All calculated force vectors, dim values for each node.
 	 * @param node_pos
-	 *            The previous node positions.
+	 *            The previous node positions, dim values for each node.
 	 * @param node_no
 	 *            The number of nodes.
 	 * @param dim
@@ -282,10 +123,11 @@ public class FORCEnDLayoutUtility {
 	 * @param temp
 	 *            The cooling temperature factor.
 	 */
-	public static void moveAllNodesByDisplacement(double[][] allDisplacements,
-			double[][] node_pos, int node_no, int dim, double temp) {
+	public static void moveAllNodesByDisplacement(double[] allDisplacements,
+			double[] node_pos, int node_no, int dim, double temp) {
 
 		for (int i = 0; i < node_no; i++) {
+			int pos_i = i*dim;
 
 			/*
 			 * the norm of the resulting force vector represents the
@@ -302,23 +144,23 @@ public class FORCEnDLayoutUtility {
 				for (int d = 0; d < dim; d++) {
 
 					if (norm > temp) {
-						allDisplacements[i][d] = (allDisplacements[i][d] / norm)
+						allDisplacements[pos_i+d] = (allDisplacements[pos_i+d] / norm)
 								* temp;
 					}
 
 					/* the new position for node i in dimension plane d */
-					double newPos = node_pos[i][d] + allDisplacements[i][d];
+					double newPos = node_pos[pos_i+d] + allDisplacements[pos_i+d];
 
 					/*
 					 * the boundaries of the layouting space are the maximal and
 					 * the minimal values of an int
 					 */
 					if (newPos > Integer.MAX_VALUE) {
-						node_pos[i][d] = Integer.MAX_VALUE;
+						node_pos[pos_i+d] = Integer.MAX_VALUE;
 					} else if (newPos < Integer.MIN_VALUE) {
-						node_pos[i][d] = Integer.MIN_VALUE;
+						node_pos[pos_i+d] = Integer.MIN_VALUE;
 					} else {
-						node_pos[i][d] = newPos;
+						node_pos[pos_i+d] = newPos;
 					}
 				}
 //			}
@@ -326,21 +168,21 @@ public class FORCEnDLayoutUtility {
 	}
 
 	/**
-	 * Calculates the norm for a given node in a positions array.
+	 * Calculates the norm for a given node in a flat positions array.
 	 * 
 	 * @param positions
-	 *            All force vectors in one 2D double array.
+	 *            All force vectors in one double array, dim values for each
+	 *            node.
 	 * @param node
-	 *            The position in the array (first dim) for which the norm
-	 *            should be calculated.
+	 *            The node for which the norm should be calculated.
 	 * @param dim
-	 *            The dimension of the force vector (second dim).
-	 * @return The norm of the force vector for the given position.
+	 *            The dimension of the force vector.
+	 * @return The norm of the force vector for the given node.
 	 */
-	public static double calculateNorm(double[][] positions, int node, int dim) {
+	public static double calculateNorm(double[] positions, int node, int dim) {
 		double norm = 0;
 		for (int d = 0; d < dim; d++) {
-			double pos_i = positions[node][d];
+			double pos_i = positions[node*dim+d];
 			norm += pos_i * pos_i;
 		}
 		norm = Math.sqrt(norm);
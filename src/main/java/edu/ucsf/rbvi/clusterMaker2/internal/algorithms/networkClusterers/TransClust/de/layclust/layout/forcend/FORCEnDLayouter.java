@@ -1,5 +1,6 @@
 package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.forcend;
 
+import java.util.ArrayList;
 import java.util.logging.Logger;
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
@@ -8,7 +9,6 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransCl
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.IParameters;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.LayoutFactory;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.parameter_training.ParameterTraining_SE;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 
 public class FORCEnDLayouter implements ILayouter {
 	
@@ -36,7 +36,7 @@ public class FORCEnDLayouter implements ILayouter {
 	 */
 	public void initLayouter(ConnectedComponent cc, ILayoutInitialiser li,
 			IParameters parameters) {
-		this.dim = TaskConfig.dimension;
+		this.dim = cc.getConfig().dimension;
 		this.cc = cc;
 		this.parameters = (FORCEnDParameters) parameters;
 		li.run();
@@ -57,7 +57,7 @@ public class FORCEnDLayouter implements ILayouter {
 	 */
 	public void initLayouter(ConnectedComponent cc, ILayouter layouter,
 			IParameters parameters) {
-		this.dim = TaskConfig.dimension;
+		this.dim = cc.getConfig().dimension;
 		this.cc = cc;
 		this.parameters = (FORCEnDParameters) parameters;
 
@@ -76,7 +76,7 @@ public class FORCEnDLayouter implements ILayouter {
 	 *            The parameters for FORCEnD.
 	 */
 	public void initLayouter(ConnectedComponent cc, IParameters parameters) {
-		this.dim = TaskConfig.dimension;
+		this.dim = cc.getConfig().dimension;
 		this.cc = cc;
 		this.parameters = (FORCEnDParameters) parameters;
 
@@ -100,7 +100,15 @@ public class FORCEnDLayouter implements ILayouter {
 		int node_no = this.cc.getNodeNumber();
 		double[][] node_pos = this.cc.getCCPositions();
 
-		double[][] allDisplacements = new double[node_no][this.dim];
+		/* the positions are kept in one flat array while layouting */
+		double[] positions = new double[node_no*this.dim];
+		for (int i = 0; i < node_no; i++) {
+			System.arraycopy(node_pos[i], 0, positions, i*this.dim, this.dim);
+		}
+
+		double[] allDisplacements = new double[node_no*this.dim];
+		ArrayList<DisplacementCalculator> calculators = FORCEnDLayoutUtility
+				.createDisplacementCalculators(positions, this.cc, this.dim, this.parameters);
 		/*
 		 * for each iteration calculate the displacement vectors and move all
 		 * nodes by this after calculation in one go
@@ -113,10 +121,14 @@ public class FORCEnDLayouter implements ILayouter {
 		
 			double temperature = FORCEnDLayoutUtility.calculateTemperature(it,node_no, this.parameters);
 			
-			FORCEnDLayoutUtility.calculateDisplacementVectors(allDisplacements,this.cc, this.dim, this.parameters,temperature);
+			FORCEnDLayoutUtility.calculateDisplacementVectors(allDisplacements, calculators, this.cc);
 			FORCEnDLayoutUtility.moveAllNodesByDisplacement(allDisplacements,
-					node_pos, node_no, this.dim, temperature);
+					positions, node_no, this.dim, temperature);
+
+		}
 
+		for (int i = 0; i < node_no; i++) {
+			System.arraycopy(positions, i*this.dim, node_pos[i], 0, this.dim);
 		}
 		this.cc.getCCEdges().denormalise();
 	}
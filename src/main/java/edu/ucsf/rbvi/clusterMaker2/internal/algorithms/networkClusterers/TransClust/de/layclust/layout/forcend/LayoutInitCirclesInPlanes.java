@@ -6,7 +6,6 @@ package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransC
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.ILayoutInitialiser;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 
 /**
  * Creates an initial layout for the objects in an n-dimensional space.
@@ -39,7 +38,7 @@ public class LayoutInitCirclesInPlanes implements ILayoutInitialiser {
 	public void initLayoutInitialiser(ConnectedComponent cc) {
 		this.cc = cc;
 		this.radius = 1;//TODO changed radius from 1 to 1000
-		this.dim = TaskConfig.dimension;
+		this.dim = cc.getConfig().dimension;
 		this.node_no = cc.getNodeNumber();
 		this.node_pos = new double[node_no][dim];
 	}
@@ -6,7 +6,6 @@ package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransC
 
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.ILayoutInitialiser;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 
 /**
  * This initialises the positions of the nodes from the ConnectedComponent
@@ -55,7 +54,7 @@ public class LayoutInitHSphere implements ILayoutInitialiser {
 	public void initLayoutInitialiser(ConnectedComponent cc) {
 		this.node_no = cc.getNodeNumber();
 		this.cc = cc;
-		this.dim = TaskConfig.dimension;
+		this.dim = cc.getConfig().dimension;
 		node_pos = new double[node_no][this.dim];
 	}
 
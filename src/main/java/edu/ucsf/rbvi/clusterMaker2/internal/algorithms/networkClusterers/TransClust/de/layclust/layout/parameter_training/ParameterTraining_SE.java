@@ -94,7 +94,6 @@ public class ParameterTraining_SE implements IParameterTraining {
 		 *  and set noOfThreads to a minimum of 1 */
 		this.noOfThreads = TaskConfig.maxNoThreads;
 		if(this.noOfThreads ==0 || this.noOfThreads ==1){
-			TaskConfig.useThreads = false;
 //			TaskConfig.useThreadsForParameterTraining = false;
 			this.noOfThreads = 1;
 		}
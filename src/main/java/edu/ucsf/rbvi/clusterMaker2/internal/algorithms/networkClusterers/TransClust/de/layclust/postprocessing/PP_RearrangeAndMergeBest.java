@@ -11,9 +11,7 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransCl
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ICCEdges;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.fixedparameterclustering.FixedParameterClusterer;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.greedy.GreedyClusterer;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.ClusteringManager;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.InvalidInputFileException;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.TaskConfig;
 // import java.util.logging.Level;
 // import java.util.logging.Logger;
 
@@ -204,7 +202,7 @@ public class PP_RearrangeAndMergeBest implements IPostProcessing {
 		
 		
 //		System.out.println("start merging");
-		ICCEdges cc2d = TaskConfig.ccEdgesEnum.createCCEdges(clusterObject.size());
+		ICCEdges cc2d = this.cc.getConfig().ccEdgesEnum.createCCEdges(clusterObject.size());
 		String[] ids = new String[clusterObject.size()];
 		
 		for (int i = 0; i < ids.length; i++) {
@@ -215,7 +213,7 @@ public class PP_RearrangeAndMergeBest implements IPostProcessing {
 			}
 		}
 		ConnectedComponent cc2 = new ConnectedComponent(cc2d, ids, null,false);
-		ClusteringManager cm = new ClusteringManager(null);
+		cc2.setConfig(this.cc.getConfig());
 //		cm.runClusteringForOneConnectedComponent(cc2, null, null, null, System.currentTimeMillis());
 		new GreedyClusterer(cc2);
 //		long dummy = TaskConfig.fpMaxTimeMillis;
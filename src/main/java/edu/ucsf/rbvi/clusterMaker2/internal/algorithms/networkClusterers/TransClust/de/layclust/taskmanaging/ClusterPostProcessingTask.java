@@ -33,12 +33,15 @@ public class ClusterPostProcessingTask implements Runnable {
 	private IParameters[] allparameters = null;
 
 	private LayoutFactory.EnumLayouterClass[] layouterEnumTypes = null;
+	
+	private RunConfig config = null;
 
 	public ClusterPostProcessingTask(ConnectedComponent cc,
 			IParameters[] allparameters,
 			LayoutFactory.EnumLayouterClass[] layouterEnumTypes) {
 
 		this.cc = cc;
+		this.config = cc.getConfig();
 		this.allparameters = allparameters;
 		this.layouterEnumTypes = layouterEnumTypes;
 	}
@@ -80,19 +83,17 @@ public class ClusterPostProcessingTask implements Runnable {
 //		ccCopy2.setClusteringScore(Double.MAX_VALUE);
 //		new TreeClusterer(ccCopy2);
 
-		if(!TaskConfig.fixedParameter||cc.getNodeNumber()>=TaskConfig.fixedParameterMax) TaskConfig.fpStopped = true;
-		if(TaskConfig.fixedParameter && cc.getNodeNumber()<TaskConfig.fixedParameterMax){
-			new FixedParameterClusterer(cc,ccCopy.getClusteringScore());
+		boolean fpStopped = true;
+		if(this.config.fixedParameter && cc.getNodeNumber()<this.config.fixedParameterMax){
+			fpStopped = new FixedParameterClusterer(cc,ccCopy.getClusteringScore()).isStopped();
 		}
-		if(TaskConfig.greedy&&TaskConfig.fpStopped){
+		if(this.config.greedy&&fpStopped){
 			cc.setClusteringScore(Double.MAX_VALUE);
-			TaskConfig.fpStopped = false;
-		}else if(TaskConfig.fpStopped){
+		}else if(fpStopped){
 //			cc.initialiseClusterInfo(ccCopy.getNumberOfClusters());
 //			cc.setClusters(ccCopy.getClusters());
 			
 			/* ====== LAYOUTING PHASE ====== */
-			TaskConfig.fpStopped = false;
 			/* iterate over layouters */
 			ILayouter previousLayouter = null;
 			for (int i = 0; i < this.layouterEnumTypes.length; i++) {
@@ -103,7 +104,7 @@ public class ClusterPostProcessingTask implements Runnable {
 
 				if (previousLayouter == null) {
 					/* initialise cc positions if in clustering mode */
-					if(TaskConfig.mode == TaskConfig.CLUSTERING_MODE||TaskConfig.mode ==TaskConfig.COMPARISON_MODE||TaskConfig.mode ==TaskConfig.HIERARICHAL_MODE){
+					if(this.config.mode == TaskConfig.CLUSTERING_MODE||this.config.mode ==TaskConfig.COMPARISON_MODE||this.config.mode ==TaskConfig.HIERARICHAL_MODE){
 						ILayoutInitialiser li = this.layouterEnumTypes[i]
 						                                               .createLayoutInitialiser();
 						li.initLayoutInitialiser(cc);
@@ -113,7 +114,7 @@ public class ClusterPostProcessingTask implements Runnable {
 						layouter.initLayouter(cc, li, param);
 						layouter.run();
 						previousLayouter = layouter;
-					} else if(TaskConfig.mode == TaskConfig.GENERAL_TRAINING_MODE){
+					} else if(this.config.mode == TaskConfig.GENERAL_TRAINING_MODE){
 						// else positions already set for training mode
 						layouter.initLayouter(cc, param);
 						layouter.run();
@@ -131,7 +132,7 @@ public class ClusterPostProcessingTask implements Runnable {
 			}
 
 			/* ====== GEOMETRIC CLUSTERING */
-			IGeometricClusterer geoClust = TaskConfig.geometricClusteringEnum
+			IGeometricClusterer geoClust = this.config.geometricClusteringEnum
 					.createGeometricClusterer();
 			geoClust.initGeometricClusterer(cc);
 			geoClust.run();
@@ -141,7 +142,7 @@ public class ClusterPostProcessingTask implements Runnable {
 		
 
 		/* ====== POST-PROCESSING ====== */
-		if (TaskConfig.doPostProcessing&&cc.getClusteringScore()!=Double.MAX_VALUE) {
+		if (this.config.doPostProcessing&&cc.getClusteringScore()!=Double.MAX_VALUE) {
 			IPostProcessing pp = PostProcessingFactory.EnumPostProcessingClass.
 			PP_REARRANGE_AND_MERGE_BEST.createPostProcessor();
 			pp.initPostProcessing(cc);
@@ -149,7 +150,7 @@ public class ClusterPostProcessingTask implements Runnable {
 			/* run post processing */
 			pp.run();
 		}
-		if (TaskConfig.doPostProcessing&&ccCopy.getClusteringScore()!=Double.MAX_VALUE) {
+		if (this.config.doPostProcessing&&ccCopy.getClusteringScore()!=Double.MAX_VALUE) {
 			IPostProcessing pp = PostProcessingFactory.EnumPostProcessingClass.
 			PP_REARRANGE_AND_MERGE_BEST.createPostProcessor();
 			pp.initPostProcessing(ccCopy);
@@ -31,14 +31,29 @@ public class ClusteringManager {
 	private ArrayList<File> connectedComponents = null;
 	private ArrayList<Thread> allThreads;
 	private int noOfThreads;
+	private RunConfig config;
 	
-	private static double totalScoreSum = 0; // total score for all cc
+	private double totalScoreSum = 0; // total score for all cc
 	
+	/**
+	 * Creates a ClusteringManager with the current settings in {@link TaskConfig}.
+	 * @param cmPath The cost matrix file or directory.
+	 */
 	public ClusteringManager(String cmPath){
+		this(cmPath, new RunConfig());
+	}
+	
+	/**
+	 * Creates a ClusteringManager for one run.
+	 * @param cmPath The cost matrix file or directory.
+	 * @param config The settings of the run.
+	 */
+	public ClusteringManager(String cmPath, RunConfig config){
 		this.cmPath = cmPath;
+		this.config = config;
 		
-		String configString = TaskConfig.printConfiguration().toString();
-		if(TaskConfig.mode==TaskConfig.CLUSTERING_MODE||TaskConfig.mode==TaskConfig.GENERAL_TRAINING_MODE){
+		if(this.config.mode==TaskConfig.CLUSTERING_MODE||this.config.mode==TaskConfig.GENERAL_TRAINING_MODE){
+			String configString = TaskConfig.printConfiguration().toString();
 			log.info(configString);
 			InfoFile.appendToProjectDetails(configString);
 		}
@@ -46,12 +61,7 @@ public class ClusteringManager {
 		
 		/* check how many threads are left over to see if it is possible to use threads at all
 		 *  and set noOfThreads to a minimum of 1 */
-		this.noOfThreads = TaskConfig.maxNoThreads;
-		if(this.noOfThreads ==0 || this.noOfThreads ==1){
-			TaskConfig.useThreads = false;
-//			TaskConfig.useThreadsForParameterTraining = false;
-			this.noOfThreads = 1;
-		}
+		this.noOfThreads = this.config.getNoThreads();
 //		if(TaskConfig.useThreads){
 //			log.info("Using threads with a maximum of "+this.noOfThreads+" running parallel");
 //			this.allThreads = new ArrayList<Thread>();
@@ -71,7 +81,7 @@ public class ClusteringManager {
 	public void initParametersAndCCs() throws InvalidInputFileException{
 		
 		
-		if(TaskConfig.mode==TaskConfig.CLUSTERING_MODE||TaskConfig.mode==TaskConfig.GENERAL_TRAINING_MODE){
+		if(this.config.mode==TaskConfig.CLUSTERING_MODE||this.config.mode==TaskConfig.GENERAL_TRAINING_MODE){
 //			this.connectedComponents = new ArrayList<ConnectedComponent>();
 			this.connectedComponents = new ArrayList<File>();
 			TaskConfig.transitiveConnectedComponents = null;
@@ -152,10 +162,10 @@ public class ClusteringManager {
 		
 		/* initialise parameters from config */
 //		LayoutFactory.EnumLayouterClass[] layouterEnumTypes = TaskConfig.layouterEnumTypes;
-		layouterParameters = new IParameters[TaskConfig.layouterEnumTypes.length];
-		for(int i=0;i<TaskConfig.layouterEnumTypes.length;i++){			
+		layouterParameters = new IParameters[this.config.layouterEnumTypes.length];
+		for(int i=0;i<this.config.layouterEnumTypes.length;i++){			
 
-				IParameters param = TaskConfig.layouterEnumTypes[i].createIParameters();
+				IParameters param = this.config.layouterEnumTypes[i].createIParameters();
 				param.readParametersFromConfig();
 				layouterParameters[i] = param;
 		
@@ -179,10 +189,10 @@ public class ClusteringManager {
 			
 		/* initialise ClusterFile if in clustering mode */
 		ClusterFile clusterFile = null;
-		if(TaskConfig.mode == TaskConfig.CLUSTERING_MODE){
+		if(this.config.mode == TaskConfig.CLUSTERING_MODE){
 			log.fine("Running clustering in clustering mode!");
 			clusterFile = new ClusterFile();
-			clusterFile.instantiateFile(TaskConfig.clustersPath);
+			clusterFile.instantiateFile(this.config.clustersPath);
 			clusterFile.printPreProcessingClusters(TaskConfig.transitiveConnectedComponents);
 			/* check whether connectedComponents has been initialised */
 			if(this.connectedComponents==null ){
@@ -208,13 +218,13 @@ public class ClusteringManager {
 		
 		/* go through cc list and start training for each and control thread use */
 		ArrayList<Semaphore> allSemaphores = new ArrayList<Semaphore>();
-		Semaphore maxThreadSemaphore = new Semaphore(TaskConfig.maxNoThreads, true);
+		Semaphore maxThreadSemaphore = new Semaphore(this.noOfThreads, true);
 		for(int i=0;i<this.connectedComponents.size();i++){
 			Semaphore semaphore = new Semaphore(1);
 			allSemaphores.add(semaphore);
 			long time = System.currentTimeMillis();
 			CostMatrixReader cmReader = new CostMatrixReader(this.connectedComponents.get(i));
-			ConnectedComponent cc = cmReader.getConnectedComponent();
+			ConnectedComponent cc = cmReader.getConnectedComponent(this.config);
 			runClusteringForOneConnectedComponent(cc, clusterFile, semaphore, maxThreadSemaphore, time);					
 		}
 
@@ -236,11 +246,11 @@ public class ClusteringManager {
 		/* END OF CLUSTERING */	 
 		
 		log.info("Clustering scores sum: "+totalScoreSum);
-		if(TaskConfig.mode == TaskConfig.CLUSTERING_MODE){
+		if(this.config.mode == TaskConfig.CLUSTERING_MODE){
 				InfoFile.appendLnProjectResults("Total sum of clustering scores for given input: "+TaskUtility.round(totalScoreSum, 2));
 		}
 		/* set score to IParameters objects for general training mode */
-		if(TaskConfig.mode == TaskConfig.GENERAL_TRAINING_MODE){
+		if(this.config.mode == TaskConfig.GENERAL_TRAINING_MODE){
 			log.fine("Setting parameters score for training mode!");
 			for (IParameters parameter : this.layouterParameters) {
 				parameter.setScore(totalScoreSum);			
@@ -268,7 +278,7 @@ public class ClusteringManager {
 		
 		/* check whether layouterParameters has been initialised */
 		if(this.layouterParameters==null){
-			if(TaskConfig.mode==TaskConfig.CLUSTERING_MODE||TaskConfig.mode==TaskConfig.GENERAL_TRAINING_MODE) log.warning("Incorrect use of the ClusteringManager, the layouter parameters list" +
+			if(this.config.mode==TaskConfig.CLUSTERING_MODE||this.config.mode==TaskConfig.GENERAL_TRAINING_MODE) log.warning("Incorrect use of the ClusteringManager, the layouter parameters list" +
 					"hadn't been initialised. Called method to initialise this and the connected components from " +
 					"the config");
 
@@ -281,13 +291,13 @@ public class ClusteringManager {
 		 */
 //TODO nicht sicher ob ich das if rausnehmen kann
 //		if(TaskConfig.mode == TaskConfig.CLUSTERING_MODE){
-			if(TaskConfig.doLayoutParameterTraining&&!TaskConfig.greedy){
+			if(this.config.doLayoutParameterTraining&&!this.config.greedy){
 				for(int i=0;i<this.layouterParameters.length;i++){
 					/* start parameter training for the cc */				
-					IParameterTraining paramTrain = TaskConfig.parameterTrainingEnum.createParameterTrainer();
-					paramTrain.initialise(TaskConfig.layouterEnumTypes[i], 
-							TaskConfig.noOfParameterConfigurationsPerGeneration,
-							TaskConfig.noOfGenerations);
+					IParameterTraining paramTrain = this.config.parameterTrainingEnum.createParameterTrainer();
+					paramTrain.initialise(this.config.layouterEnumTypes[i], 
+							this.config.noOfParameterConfigurationsPerGeneration,
+							this.config.noOfGenerations);
 					paramTrain.setMaxThreadSemaphoreAndThreadsList(maxThreadSemaphore, this.allThreads);
 					IParameters bestparam = paramTrain.run(cc);
 					log.fine("PARAMETER TRAINING RESULT\n: "+cc.getCcPath()+"\n"+bestparam.toString());
@@ -298,7 +308,7 @@ public class ClusteringManager {
 		
 		/* run clustering with the previously determined parameters */
 		ClusteringTask clusterTask = new ClusteringTask(cc, this.layouterParameters,
-				TaskConfig.layouterEnumTypes, clusterFile);
+				this.config.layouterEnumTypes, clusterFile, this);
 		clusterTask.setTime(time);
 		
 //		if(!TaskConfig.doLayoutParameterTraining&&TaskConfig.useThreads){
@@ -347,22 +357,22 @@ public class ClusteringManager {
 	 * 
 	 * @param score The score to be added to the total score.
 	 */
-	public static synchronized void addClusteringScoreToSum(double score){
+	public synchronized void addClusteringScoreToSum(double score){
 		totalScoreSum += score;
 	}
 
 	/**
 	 * @return the totalScoreSum
 	 */
-	public double getTotalScoreSum() {
+	public synchronized double getTotalScoreSum() {
 		return totalScoreSum;
 	}
 
 	/**
 	 * @param totalScoreSum the totalScoreSum to set
 	 */
-	public void setTotalScoreSum(double totalScoreSum) {
-		ClusteringManager.totalScoreSum = totalScoreSum;
+	public synchronized void setTotalScoreSum(double totalScoreSum) {
+		this.totalScoreSum = totalScoreSum;
 	}
 	
 	/**
@@ -64,11 +64,19 @@ public class ClusteringTask implements Runnable {
 
 	/* the file where the resulting clusters are to be added to */
 	private ClusterFile clusterFile = null;
+	
+	/* the manager that keeps track of the total score */
+	private ClusteringManager manager = null;
+	
+	/* the settings of the run */
+	private RunConfig config = null;
 
 	public ClusteringTask(ConnectedComponent cc, IParameters[] parameters,
 			LayoutFactory.EnumLayouterClass[] layouterEnumTypes,
-			ClusterFile clusterFile) {
+			ClusterFile clusterFile, ClusteringManager manager) {
 		this.cc = cc;
+		this.config = cc.getConfig();
+		this.manager = manager;
 		this.parameters = parameters;
 		this.layouterEnumTypes = layouterEnumTypes;
 		this.clusterFile = clusterFile;
@@ -118,12 +126,12 @@ public class ClusteringTask implements Runnable {
 		
 		/* add clustering score to total score! */
 
-		ClusteringManager.addClusteringScoreToSum(score);
+		this.manager.addClusteringScoreToSum(score);
 
 		
 		/* ====== PRINT CLUSTERING INFO ====== */
 
-		if (TaskConfig.mode == TaskConfig.CLUSTERING_MODE) {
+		if (this.config.mode == TaskConfig.CLUSTERING_MODE) {
 			String ccPath = this.cc.getCcPath();
 			int ccSize = this.cc.getNodeNumber();
 			int[] distribution = this.cc.getClusterInfo();
@@ -157,7 +165,7 @@ public class ClusteringTask implements Runnable {
 			resultForCCBuffer.append(this.time);
 
 			
-			TaskConfig.monitor.setStatusMessage(resultForCCBuffer.toString());
+			this.config.monitor.setStatusMessage(resultForCCBuffer.toString());
 			InfoFile.appendLnProjectResults(resultForCCBuffer.toString());
 			
 		
@@ -216,19 +224,17 @@ public class ClusteringTask implements Runnable {
 //		ccCopy2.setClusteringScore(Double.MAX_VALUE);
 //		new TreeClusterer(ccCopy2);
 		
-		if(!TaskConfig.fixedParameter||cc.getNodeNumber()>=TaskConfig.fixedParameterMax) TaskConfig.fpStopped = true;
-		if(TaskConfig.fixedParameter && cc.getNodeNumber()<TaskConfig.fixedParameterMax){
-			new FixedParameterClusterer(cc,ccCopy.getClusteringScore());
+		boolean fpStopped = true;
+		if(this.config.fixedParameter && cc.getNodeNumber()<this.config.fixedParameterMax){
+			fpStopped = new FixedParameterClusterer(cc,ccCopy.getClusteringScore()).isStopped();
 		}
-		if(TaskConfig.greedy&&TaskConfig.fpStopped){
+		if(this.config.greedy&&fpStopped){
 			cc.setClusteringScore(Double.MAX_VALUE);
-			TaskConfig.fpStopped = false;
-		}else if(TaskConfig.fpStopped){
+		}else if(fpStopped){
 			
 //			cc.initialiseClusterInfo(ccCopy.getNumberOfClusters());
 //			cc.setClusters(ccCopy.getClusters());
 			/* ====== LAYOUTING PHASE ====== */
-			TaskConfig.fpStopped = false;
 			/* iterate over layouters */
 			ILayouter previousLayouter = null;
 			for (int i = 0; i < this.layouterEnumTypes.length; i++) {
@@ -240,14 +246,14 @@ public class ClusteringTask implements Runnable {
 
 				if (previousLayouter == null) {
 					/* initialise cc positions if in clustering mode */
-					if(TaskConfig.mode == TaskConfig.CLUSTERING_MODE||TaskConfig.mode ==TaskConfig.COMPARISON_MODE||TaskConfig.mode ==TaskConfig.HIERARICHAL_MODE){
+					if(this.config.mode == TaskConfig.CLUSTERING_MODE||this.config.mode ==TaskConfig.COMPARISON_MODE||this.config.mode ==TaskConfig.HIERARICHAL_MODE){
 						ILayoutInitialiser li = this.layouterEnumTypes[i].createLayoutInitialiser();
 						li.initLayoutInitialiser(cc);
 						/* initialise and run layouter */
 						layouter.initLayouter(cc, li, param);
 						layouter.run();
 						previousLayouter = layouter;
-					} else if(TaskConfig.mode == TaskConfig.GENERAL_TRAINING_MODE){
+					} else if(this.config.mode == TaskConfig.GENERAL_TRAINING_MODE){
 						ILayoutInitialiser li = this.layouterEnumTypes[i].createLayoutInitialiser();
 						li.initLayoutInitialiser(cc);
 						/* initialise and run layouter */
@@ -272,7 +278,7 @@ public class ClusteringTask implements Runnable {
 			}
 
 			/* ====== GEOMETRIC CLUSTERING */
-			IGeometricClusterer geoClust = TaskConfig.geometricClusteringEnum
+			IGeometricClusterer geoClust = this.config.geometricClusteringEnum
 					.createGeometricClusterer();
 			geoClust.initGeometricClusterer(cc);
 			geoClust.run();
@@ -281,8 +287,8 @@ public class ClusteringTask implements Runnable {
 		
 
 		/* ====== POST-PROCESSING ====== */
-		if (TaskConfig.doPostProcessing&&cc.getClusteringScore()!=Double.MAX_VALUE) {
-			PostProcessingFactory.EnumPostProcessingClass ppEnum = TaskConfig.postProcessingEnum;
+		if (this.config.doPostProcessing&&cc.getClusteringScore()!=Double.MAX_VALUE) {
+			PostProcessingFactory.EnumPostProcessingClass ppEnum = this.config.postProcessingEnum;
 			IPostProcessing pp = ppEnum.createPostProcessor();
 			pp.initPostProcessing(cc);
 
@@ -306,8 +312,8 @@ public class ClusteringTask implements Runnable {
 //			pp.initPostProcessing(cc);
 //			pp.run();
 		}
-		if (TaskConfig.doPostProcessing&&ccCopy.getClusteringScore()!=Double.MAX_VALUE) {
-			PostProcessingFactory.EnumPostProcessingClass ppEnum = TaskConfig.postProcessingEnum;
+		if (this.config.doPostProcessing&&ccCopy.getClusteringScore()!=Double.MAX_VALUE) {
+			PostProcessingFactory.EnumPostProcessingClass ppEnum = this.config.postProcessingEnum;
 			IPostProcessing pp = ppEnum.createPostProcessor();
 			pp.initPostProcessing(ccCopy);
 
@@ -0,0 +1,184 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cytoscape.work.TaskMonitor;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.geometric_clustering.GeometricClusteringFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.LayoutFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.parameter_training.ParameterTrainingFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.postprocessing.PostProcessingFactory;
+
+/**
+ * The settings for one clustering run.  {@link TaskConfig} keeps its static
+ * fields for the command line and the config files, and a new RunConfig
+ * starts out as a copy of them, but from then on everything that clusters
+ * (the {@link ClusteringManager}, the iterative clustering thread, the
+ * layouters, the geometric clusterers and the post-processing) reads its
+ * settings from the RunConfig it was given.  That way several runs can go
+ * at the same time, each with its own settings.
+ *
+ * All of the runs share one pool of worker threads, with one thread per
+ * processor, and each run uses at most {@link #getNoThreads()} of them at a
+ * time.
+ */
+public class RunConfig {
+
+	/* ---- general ---- */
+	public int mode = TaskConfig.mode;
+	public TaskMonitor monitor = TaskConfig.monitor;
+	public boolean useThreads = TaskConfig.useThreads;
+	public int maxNoThreads = TaskConfig.maxNoThreads;
+	public String ccEdgesClass = TaskConfig.ccEdgesClass;
+	public LayoutFactory.EnumCCEdgesStructure ccEdgesEnum = TaskConfig.ccEdgesEnum;
+	public boolean gui = TaskConfig.gui;
+
+	/* ---- file paths ---- */
+	public String clustersPath = TaskConfig.clustersPath;
+	public String goldstandardPath = TaskConfig.goldstandardPath;
+	public String knownAssignmentsFile = TaskConfig.knownAssignmentsFile;
+
+	/* ---- layouting ---- */
+	public int dimension = TaskConfig.dimension;
+	public LayoutFactory.EnumLayouterClass[] layouterEnumTypes = TaskConfig.layouterEnumTypes;
+
+	/* ---- parameter training for the layouters ---- */
+	public ParameterTrainingFactory.EnumParameterTrainingClass parameterTrainingEnum =
+		TaskConfig.parameterTrainingEnum;
+	public boolean doLayoutParameterTraining = TaskConfig.doLayoutParameterTraining;
+	public int noOfParameterConfigurationsPerGeneration = TaskConfig.noOfParameterConfigurationsPerGeneration;
+	public int noOfGenerations = TaskConfig.noOfGenerations;
+
+	/* ---- geometric clustering ---- */
+	public GeometricClusteringFactory.EnumGeometricClusteringClass geometricClusteringEnum =
+		TaskConfig.geometricClusteringEnum;
+
+	/* ---- post-processing ---- */
+	public boolean doPostProcessing = TaskConfig.doPostProcessing;
+	public PostProcessingFactory.EnumPostProcessingClass postProcessingEnum = TaskConfig.postProcessingEnum;
+
+	/* ---- additional ---- */
+	public double minThreshold = TaskConfig.minThreshold;
+	public double thresholdStepSize = TaskConfig.thresholdStepSize;
+	public double maxThreshold = TaskConfig.maxThreshold;
+	public boolean clusterHierarchicalComplete = TaskConfig.clusterHierarchicalComplete;
+	public boolean greedy = TaskConfig.greedy;
+	public boolean fixedParameter = TaskConfig.fixedParameter;
+	public int fixedParameterMax = TaskConfig.fixedParameterMax;
+	public long fpMaxTimeMillis = TaskConfig.fpMaxTimeMillis;
+	public float upperBound = TaskConfig.upperBound;
+	public boolean reducedMatrix = TaskConfig.reducedMatrix;
+	public boolean fuzzy = TaskConfig.fuzzy;
+	public boolean overlap = TaskConfig.overlap;
+	public double fuzzyThreshold = TaskConfig.fuzzyThreshold;
+	public double lowerBound = TaskConfig.lowerBound;
+	public boolean UseLimitK = TaskConfig.UseLimitK;
+	public int limitK = TaskConfig.limitK;
+
+	private static ExecutorService pool = null;
+
+	/**
+	 * Creates a RunConfig with the current settings in {@link TaskConfig}.
+	 */
+	public RunConfig() {
+	}
+
+	/**
+	 * The number of threads this run may use at once: 1 if threads are turned
+	 * off, otherwise maxNoThreads (no more than there are processors), where a
+	 * negative number means one for each processor.
+	 *
+	 * @return The number of threads, at least 1.
+	 */
+	public int getNoThreads() {
+		if (!useThreads)
+			return 1;
+		if (maxNoThreads < 0)
+			return TaskConfig.SYSTEM_NO_AVAILABLE_PROCESSORS;
+		if (maxNoThreads == 0)
+			return 1;
+		return Math.min(maxNoThreads, TaskConfig.SYSTEM_NO_AVAILABLE_PROCESSORS);
+	}
+
+	/**
+	 * Runs all of the tasks and waits for them to finish.  They are run on the
+	 * shared pool, with no more than {@link #getNoThreads()} of them going at
+	 * once, and the calling thread takes its share.  If there is only one
+	 * thread to use, or we are already on one of the pool's threads, the tasks
+	 * are just run in order on this thread.
+	 *
+	 * @param tasks The tasks to run.
+	 */
+	public void runAll(final List<? extends Runnable> tasks) {
+		int workers = Math.min(getNoThreads(), tasks.size());
+		if (workers <= 1 || Thread.currentThread() instanceof PoolThread) {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger(0);
+		Runnable worker = new Runnable() {
+			public void run() {
+				for (int i = next.getAndIncrement(); i < tasks.size(); i = next.getAndIncrement()) {
+					tasks.get(i).run();
+				}
+			}
+		};
+		List<Future<?>> futures = new ArrayList<Future<?>>(workers-1);
+		for (int i = 1; i < workers; i++) {
+			futures.add(getPool().submit(worker));
+		}
+		worker.run();
+
+		boolean interrupted = false;
+		for (Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(TaskConfig.SYSTEM_NO_AVAILABLE_PROCESSORS, new ThreadFactory() {
+				private int count = 0;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new PoolThread(r, "TransClust-worker-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+
+	private static class PoolThread extends Thread {
+		PoolThread(Runnable r, String name) {
+			super(r, name);
+		}
+	}
+}
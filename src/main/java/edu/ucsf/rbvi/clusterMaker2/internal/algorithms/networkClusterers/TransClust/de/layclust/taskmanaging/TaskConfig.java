@@ -10,7 +10,6 @@ import java.util.Vector;
 // import java.util.logging.Level;
 // import java.util.logging.Logger;
 
-import javax.swing.JFileChooser;
 
 import org.cytoscape.work.TaskMonitor;
 
@@ -75,8 +74,6 @@ public class TaskConfig {
 		PostProcessingFactory.EnumPostProcessingClass.PP_DIVIDE_AND_RECLUSTER_RECURSIVELY;
 	public static String currentDirectory = System.getProperty("user.dir");
 
-	public static JFileChooser jfc = new JFileChooser();
-	
 	//	 --------------------------------------------------------------------------- //
 
 	
@@ -151,8 +148,6 @@ public class TaskConfig {
 	
 	public static long fpMaxTimeMillis = 1000;
 	
-	public static boolean fpStopped = false;
-
 	public static float upperBound = Float.MAX_VALUE;
 
 	public static boolean reducedMatrix = false;
@@ -20,6 +20,9 @@ import org.cytoscape.work.util.ListSingleSelection;
  * @author root
  */
 public class PCAContext {
+	public static final String FULL = "Full eigendecomposition";
+	public static final String RANDOMIZED = "Randomized SVD (first components only)";
+
 	CyNetwork network;
 
 	/*
@@ -69,6 +72,26 @@ public class PCAContext {
 					 gravity=11.0)
 	public boolean standardize = false;
 
+	@Tunable(description="PCA method",
+	         tooltip="<html>The full eigendecomposition builds the whole covariance matrix and finds every component.<br/>"+
+	                 "Randomized SVD only finds the first few components, straight from the data,<br/>"+
+	                 "and should be used when there are many nodes or attributes.</html>",
+	         gravity=12.0)
+	public ListSingleSelection<String> pcaMethod = new ListSingleSelection<String>(FULL, RANDOMIZED);
+
+	@Tunable(description="Number of components", dependsOn="pcaMethod="+RANDOMIZED, gravity=13.0)
+	public int nComponents = 10;
+
+	@Tunable(description="Oversampling",
+	         tooltip="The number of extra random vectors to use.  More gives more accurate components.",
+	         dependsOn="pcaMethod="+RANDOMIZED, gravity=14.0)
+	public int oversampling = 10;
+
+	@Tunable(description="Power iterations",
+	         tooltip="More iterations give more accurate components when the eigenvalues are close together",
+	         dependsOn="pcaMethod="+RANDOMIZED, gravity=15.0)
+	public int powerIterations = 2;
+
 	/*
 	@ContainsTunables
 	public EdgeAttributeHandler edgeAttributeHandler;
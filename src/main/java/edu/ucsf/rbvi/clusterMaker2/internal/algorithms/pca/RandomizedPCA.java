@@ -0,0 +1,247 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.pca;
+
+import java.util.Random;
+
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
+
+/**
+ * The first few principal components, found with a randomized truncated SVD
+ * of the centered data (see Halko, N., Martinsson, P.G. and Tropp, J.A.
+ * (2011). Finding structure with randomness: probabilistic algorithms for
+ * constructing approximate matrix decompositions. SIAM Review 53(2),
+ * 217-288).  The data is multiplied by a few more random vectors than the
+ * number of components we want, and a few power iterations sharpen the
+ * subspace they span.  Only n x (k+p) and d x (k+p) matrices are ever built,
+ * never the d x d covariance matrix, and each product with the data runs in
+ * parallel over blocks of rows (or columns) on the common pool.
+ *
+ * The eigenvalues are scaled the same way as those of the covariance (or
+ * correlation) matrix that {@link RunPCA} decomposes, so the two methods
+ * give the same components.
+ */
+public class RandomizedPCA {
+	// Number of rows (or columns) handled by a single fork-join task
+	private static final int BLOCK = 64;
+	private static final long SEED = 1L;
+
+	private final double[][] data;
+	private final int nRows;
+	private final int nColumns;
+	private double totalVariance = 0.0;
+
+	private double[] eigenValues;
+	private double[][] eigenVectors;
+	private double[][] scores;
+
+	/**
+	 * Center (and for correlation, scale) the data.  Missing values (NaN)
+	 * are replaced by the column mean.
+	 *
+	 * @param data the data, one array per row.  This is changed in place.
+	 * @param correlation if true, scale each column to unit variance
+	 */
+	public RandomizedPCA(final double[][] data, boolean correlation) {
+		this.data = data;
+		this.nRows = data.length;
+		this.nColumns = nRows > 0 ? data[0].length : 0;
+
+		final double[] means = new double[nColumns];
+		int[] counts = new int[nColumns];
+		for (double[] row: data) {
+			for (int col = 0; col < nColumns; col++) {
+				if (Double.isNaN(row[col])) continue;
+				means[col] += row[col];
+				counts[col]++;
+			}
+		}
+		for (int col = 0; col < nColumns; col++)
+			means[col] = counts[col] > 0 ? means[col]/counts[col] : 0.0;
+
+		final double[] scale = new double[nColumns];
+		if (correlation) {
+			for (double[] row: data) {
+				for (int col = 0; col < nColumns; col++) {
+					if (Double.isNaN(row[col])) continue;
+					double d = row[col] - means[col];
+					scale[col] += d*d;
+				}
+			}
+			for (int col = 0; col < nColumns; col++)
+				scale[col] = scale[col] > 0.0 ? 1.0/Math.sqrt(scale[col]/nRows) : 0.0;
+		} else {
+			for (int col = 0; col < nColumns; col++)
+				scale[col] = 1.0;
+		}
+
+		ParallelRange.forEach(0, nRows, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int i = first; i < last; i++) {
+					double[] row = data[i];
+					for (int col = 0; col < nColumns; col++) {
+						if (Double.isNaN(row[col]))
+							row[col] = 0.0;
+						else
+							row[col] = (row[col] - means[col])*scale[col];
+					}
+				}
+			}
+		});
+
+		for (double[] row: data) {
+			for (double value: row)
+				totalVariance += value*value;
+		}
+		if (nRows > 0)
+			totalVariance /= nRows;
+	}
+
+	/**
+	 * Find the principal components
+	 *
+	 * @param nComponents the number of components to find
+	 * @param oversampling the number of extra random vectors to use
+	 * @param powerIterations the number of power iterations
+	 */
+	public void compute(int nComponents, int oversampling, int powerIterations) {
+		int l = Math.min(nComponents + Math.max(oversampling, 0), Math.min(nRows, nColumns));
+		int k = Math.min(nComponents, l);
+
+		// Q = orth(X Omega)
+		Random random = new Random(SEED);
+		double[][] Z = new double[l][nColumns];
+		for (double[] z: Z) {
+			for (int col = 0; col < nColumns; col++)
+				z[col] = random.nextGaussian();
+		}
+		double[][] Q = new double[l][nRows];
+		multiply(Z, Q);
+		orthonormalize(Q);
+
+		// Power iterations: Q = orth(X X' Q)
+		for (int iteration = 0; iteration < powerIterations; iteration++) {
+			multiplyTransposed(Q, Z);
+			orthonormalize(Z);
+			multiply(Z, Q);
+			orthonormalize(Q);
+		}
+
+		// B' = X' Q.  The SVD of the small matrix B = W S V' comes from the
+		// eigenvectors of B B', and then X ~ Q W S V'.
+		multiplyTransposed(Q, Z);
+		double[][] BBt = new double[l][l];
+		for (int a = 0; a < l; a++) {
+			for (int b = a; b < l; b++)
+				BBt[a][b] = BBt[b][a] = dot(Z[a], Z[b]);
+		}
+		DenseDoubleEigenvalueDecomposition decomp =
+			new DenseDoubleEigenvalueDecomposition(DoubleFactory2D.dense.make(BBt));
+		double[] s2 = decomp.getRealEigenvalues().toArray();
+		double[][] W = decomp.getV().toArray();
+
+		// Keep the largest k, in increasing order as the full decomposition does
+		eigenValues = new double[k];
+		eigenVectors = new double[nColumns][k];
+		scores = new double[nRows][k];
+		for (int e = 0; e < k; e++) {
+			int c = l-k+e;
+			double s = Math.sqrt(Math.max(s2[c], 0.0));
+			eigenValues[e] = s*s/nRows;
+			if (s == 0.0) continue;
+			for (int a = 0; a < l; a++) {
+				double w = W[a][c];
+				for (int col = 0; col < nColumns; col++)
+					eigenVectors[col][e] += Z[a][col]*w/s;
+				for (int row = 0; row < nRows; row++)
+					scores[row][e] += Q[a][row]*w*s;
+			}
+		}
+	}
+
+	/**
+	 * @return the eigenvalues of the covariance (or correlation) matrix, in increasing order
+	 */
+	public double[] getEigenValues() { return eigenValues; }
+
+	/**
+	 * @return the eigenvectors, one column for each eigenvalue
+	 */
+	public double[][] getEigenVectors() { return eigenVectors; }
+
+	/**
+	 * @return the projection of each row onto each eigenvector
+	 */
+	public double[][] getScores() { return scores; }
+
+	/**
+	 * @return the sum of all of the eigenvalues, whether we found them or not
+	 */
+	public double getTotalVariance() { return totalVariance; }
+
+	// Y = X M, where M and Y are stored one column per array
+	private void multiply(final double[][] M, final double[][] Y) {
+		final int l = M.length;
+		ParallelRange.forEach(0, nRows, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int i = first; i < last; i++) {
+					double[] row = data[i];
+					for (int c = 0; c < l; c++)
+						Y[c][i] = dot(row, M[c]);
+				}
+			}
+		});
+	}
+
+	// Z = X' Y, a block of columns at a time
+	private void multiplyTransposed(final double[][] Y, final double[][] Z) {
+		final int l = Y.length;
+		ParallelRange.forEach(0, nColumns, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int c = 0; c < l; c++) {
+					for (int col = first; col < last; col++)
+						Z[c][col] = 0.0;
+				}
+				for (int i = 0; i < nRows; i++) {
+					double[] row = data[i];
+					for (int c = 0; c < l; c++) {
+						double y = Y[c][i];
+						if (y == 0.0) continue;
+						double[] z = Z[c];
+						for (int col = first; col < last; col++)
+							z[col] += row[col]*y;
+					}
+				}
+			}
+		});
+	}
+
+	// Modified Gram-Schmidt, twice over for stability.  Vectors that turn out
+	// to be dependent on the earlier ones are zeroed.
+	private static void orthonormalize(double[][] vectors) {
+		for (int v = 0; v < vectors.length; v++) {
+			double[] x = vectors[v];
+			double original = Math.sqrt(dot(x, x));
+			for (int pass = 0; pass < 2; pass++) {
+				for (int u = 0; u < v; u++) {
+					double h = dot(vectors[u], x);
+					double[] y = vectors[u];
+					for (int i = 0; i < x.length; i++)
+						x[i] -= h*y[i];
+				}
+			}
+			double norm = Math.sqrt(dot(x, x));
+			double scale = norm > 1e-12*original ? 1.0/norm : 0.0;
+			for (int i = 0; i < x.length; i++)
+				x[i] *= scale;
+		}
+	}
+
+	private static double dot(double[] x, double[] y) {
+		double sum = 0.0;
+		for (int i = 0; i < x.length; i++)
+			sum += x[i]*y[i];
+		return sum;
+	}
+}
@@ -38,6 +38,7 @@ public class RunPCA {
 	protected boolean standardize;
 	double[] eigenValues;
 	double[][] eigenVectors;
+	double totalVariance;
 
 	private int nThreads = Runtime.getRuntime().availableProcessors()-1;
 
@@ -78,7 +79,7 @@ public class RunPCA {
 		final Matrix loadingMatrix = new ColtMatrix();
 		final CyMatrix[] components = computePCs(matrix, loadingMatrix);
 
-		final double[] variance = computeVariance(eigenValues);
+		final double[] variance = computeVariance(eigenValues, totalVariance);
 
 		if(context.pcaResultPanel)
 			ResultPanelPCA.createAndShowGui(components, network, networkView, 
@@ -103,6 +104,9 @@ public class RunPCA {
 				matrix.standardizeColumn(column);
 			}
 		}
+		if (context.pcaMethod.getSelectedValue().equals(PCAContext.RANDOMIZED))
+			return computeRandomizedPCs(matrix, loadingMatrix);
+
 		// System.out.println("centralizing columns");
 		matrix.centralizeColumns();
 		// matrix.writeMatrix("centralized.txt");
@@ -122,6 +126,9 @@ public class RunPCA {
 		eigenValues = C.eigenValues(true);
 		// System.out.println("Finding eigenVectors");
 		eigenVectors = C.eigenVectors();
+		totalVariance = 0.0;
+		for (double v: eigenValues)
+			totalVariance += v;
 
 		monitor.showMessage(TaskMonitor.Level.INFO, "Found "+eigenValues.length+" EigenValues");
 		monitor.showMessage(TaskMonitor.Level.INFO, "Found "+eigenVectors.length+" EigenVectors of length "+eigenVectors[0].length);
@@ -160,11 +167,46 @@ public class RunPCA {
 		return components;
 	}
 
+	/**
+	 * Compute the principal components with a randomized SVD of the data,
+	 * without building the covariance matrix
+	 */
+	public CyMatrix[] computeRandomizedPCs(CyMatrix matrix, Matrix loadingMatrix){
+		RandomizedPCA pca = new RandomizedPCA(matrix.toArray(), matrixType.equals("correlation"));
+		pca.compute(context.nComponents, context.oversampling, context.powerIterations);
+		eigenValues = pca.getEigenValues();
+		eigenVectors = pca.getEigenVectors();
+		totalVariance = pca.getTotalVariance();
+
+		monitor.showMessage(TaskMonitor.Level.INFO, "Found "+eigenValues.length+" EigenValues");
+
+		calculateLoadingMatrix(matrix, loadingMatrix, eigenVectors, eigenValues);
+
+		double[][] scores = pca.getScores();
+		CyMatrix[] components = new CyMatrix[eigenValues.length];
+		for(int j=eigenValues.length-1, k=0;j>=0;j--,k++){
+			CyMatrix result = CyMatrixFactory.makeLargeMatrix(matrix.getNetwork(), matrix.nRows(), 1);
+			for(int i=0;i<matrix.nRows();i++){
+				result.setValue(i,0,scores[i][j]);
+				result.setRowLabel(i, matrix.getRowLabel(i));
+			}
+			components[k] = matrix.copy(result);
+		}
+
+		return components;
+	}
+
 	public double[] computeVariance(double[] values){
-		double[] explainedVariance = new double[values.length];
 		double total = 0.0;
 		for (int i = 0; i < values.length; i++)
 			total += values[i];
+		return computeVariance(values, total);
+	}
+
+	// The variance explained by each component, as a percentage of the total,
+	// which may include components we didn't compute
+	public double[] computeVariance(double[] values, double total){
+		double[] explainedVariance = new double[values.length];
 
 		for (int i = 0, j=values.length-1; j >= 0; j--,i++) {
 			explainedVariance[i] = (values[j] / total) * 100;
@@ -4,13 +4,13 @@ import java.util.Arrays;
 import java.text.DecimalFormat;
 
 import cern.colt.function.tdouble.IntIntDoubleFunction;
-import cern.jet.math.tdouble.DoubleFunctions;
-import cern.colt.matrix.tdouble.DoubleFactory2D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
-import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ColtMatrix;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
 import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyMatrixFactory;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.LanczosEigensolver;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ParallelRange;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
-import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 
 public class CalculationMatrix  {
 
@@ -23,7 +23,10 @@ public class CalculationMatrix  {
 	double combine_array[][];
 	double scores[][];
 	CyMatrix distancematrix;
+	double trace;//sum of all of the eigenvalues
 
+	// Number of rows handled by a single fork-join task
+	private static final int BLOCK = 64;
 
 	private static double EPSILON=Math.sqrt(Math.pow(2, -52));//get tolerance to reduce eigens
 
@@ -44,90 +47,147 @@ public class CalculationMatrix  {
 	}
 
 
-	public Matrix getGowersMatrix() {
-		// Create the Identity matrix
-		DoubleMatrix2D I = DoubleFactory2D.sparse.identity(distancematrix.nRows());
-distancematrix.writeMatrix("distancematrix.txt");
-		// Create the ones matrix.  This is equivalent to 11'/n
-		DoubleMatrix2D one = DoubleFactory2D.dense.make(distancematrix.nRows(), distancematrix.nRows(), 1.0/distancematrix.nRows());
-
-		// Create the subtraction matrix (I-11'/n)
-		DoubleMatrix2D mat = I.assign(one, DoubleFunctions.minus);
-
-		// Create our data matrix
-		final DoubleMatrix2D A = DoubleFactory2D.sparse.make(distancematrix.nRows(), distancematrix.nRows());
-		/*for (int row = 0; row < distancematrix.nRows(); row++) {
-			for (int col = 0; col < distancematrix.nColumns(); col++) {
-				System.out.print(distancematrix.getValue(row, col)+",");
-			}
-		}*/
+	/**
+	 * Build Gower's centered matrix, G = (I-11'/n) A (I-11'/n), where A is
+	 * -d^2/2.  Rather than multiplying by the centering matrix, which is O(n^3),
+	 * we subtract the row and column means and add back the grand mean, in
+	 * place, which is O(n^2).  The values are built in a single row-major
+	 * array, which the returned matrix uses as its storage.
+	 *
+	 * @return the centered matrix
+	 */
+	public DenseDoubleMatrix2D getGowersMatrix() {
+		final int nRows = distancematrix.nRows();
+		if ((long)nRows*nRows > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many rows for Gower's matrix: "+nRows);
+		final double[] G = new double[nRows*nRows];
 
 		DoubleMatrix2D data = distancematrix.getColtMatrix();
-
 		data.forEachNonZero(
 			new IntIntDoubleFunction() {
 				public double apply(int row, int column, double value) {
 					double v = -Math.pow(value,2)/2.0;
 					if (Math.abs(v) > EPSILON)
-						A.setQuick(row, column, v);
+						G[row*nRows+column] = v;
 					return value;
 				}
 			}
 		);
 
-		ColtMatrix cMat = new ColtMatrix((ColtMatrix)distancematrix, mat);
-		ColtMatrix cA = new ColtMatrix((ColtMatrix)distancematrix, A);
-
-		// Finally, the Gower's matrix is mat*A*mat
-
-		
-		
-		//System.out.println("Completed Gowers Matrix");
+		final double[] rowMeans = new double[nRows];
+		final double[] columnMeans = new double[nRows];
+		double grandMean = 0.0;
+		for (int row = 0; row < nRows; row++) {
+			int offset = row*nRows;
+			for (int col = 0; col < nRows; col++) {
+				rowMeans[row] += G[offset+col];
+				columnMeans[col] += G[offset+col];
+			}
+			grandMean += rowMeans[row];
+		}
+		for (int i = 0; i < nRows; i++) {
+			rowMeans[i] /= nRows;
+			columnMeans[i] /= nRows;
+		}
+		final double mean = grandMean/((double)nRows*nRows);
 
-		Matrix mat1 = cMat.multiplyMatrix(cA);
+		ParallelRange.forEach(0, nRows, BLOCK, new ParallelRange.Body() {
+			public void computeRange(int first, int last) {
+				for (int row = first; row < last; row++) {
+					int offset = row*nRows;
+					double rowMean = rowMeans[row] - mean;
+					for (int col = 0; col < nRows; col++)
+						G[offset+col] -= rowMean + columnMeans[col];
+				}
+			}
+		});
 
-		Matrix G = mat1.multiplyMatrix(cMat);
-		System.out.println("Completed Gowers Matrix");
-		return G;
+		trace = 0.0;
+		for (int i = 0; i < nRows; i++)
+			trace += G[i*nRows+i];
+		return new DenseDoubleMatrix2D(nRows, nRows, G, 0, 0, nRows, 1, false);
 	}
 
-		
 	//do the eigen analysis for both eigen vectors and eigen values
 	public double[] eigenAnalysis(){
-		System.out.println("Getting Gowers Matrix");
-		Matrix G = getGowersMatrix();
-		System.out.println("Done Getting Gowers Matrix");
-		G.writeMatrix("Gowers.txt");
-		
-		eigen_vectors=G.eigenVectors();
-		 eigen_values=G.eigenValues(true);	
+		// The decomposition works on its own copy of G (it reduces it to
+		// tridiagonal form in place), so there are two n x n arrays at the peak
+		DoubleMatrix2D G = getGowersMatrix();
+		DenseDoubleEigenvalueDecomposition decomp = new DenseDoubleEigenvalueDecomposition(G);
+		G = null;
+		setEigen(decomp.getRealEigenvalues().toArray(), decomp.getV().toArray());
+		return eigen_values;
+	}
 
-		
+	/**
+	 * Only find the first few axes, with the Lanczos method.  Gower's matrix
+	 * is symmetric, as long as the distance matrix is.
+	 *
+	 * @param nAxes the number of axes to find
+	 * @return the eigenvalues that were found, in increasing order
+	 */
+	public double[] eigenAnalysis(int nAxes){
+		final double[] G = getGowersMatrix().elements();
+		final int nRows = distancematrix.nRows();
+
+		LanczosEigensolver solver = new LanczosEigensolver(new LanczosEigensolver.Operator() {
+			public int size() { return nRows; }
+			public void multiply(final double[] x, final double[] y) {
+				ParallelRange.forEach(0, nRows, BLOCK, new ParallelRange.Body() {
+					public void computeRange(int first, int last) {
+						for (int row = first; row < last; row++) {
+							int offset = row*nRows;
+							double sum = 0.0;
+							for (int col = 0; col < nRows; col++)
+								sum += G[offset+col]*x[col];
+							y[row] = sum;
+						}
+					}
+				});
+			}
+		}, nAxes);
+		solver.solve();
+		setEigen(solver.getEigenvalues(), solver.getEigenvectors());
 		return eigen_values;
 	}
-	
-	
-	
-	//get the coordinates for PCoA
+
+	// Keep the eigenvalues that aren't zero (centering always gives us at least
+	// one), and the negative ones too unless we're discarding them
+	private void setEigen(double[] values, double[][] vectors) {
+		int size = 0;
+		for (double d: values) {
+			if (keepEigenValue(d)) size++;
+		}
+
+		eigen_values = new double[size];
+		eigen_vectors = new double[vectors.length][size];
+		for (int j = 0, k = 0; j < values.length; j++) {
+			if (!keepEigenValue(values[j])) continue;
+			eigen_values[k] = values[j];
+			for (int i = 0; i < vectors.length; i++)
+				eigen_vectors[i][k] = vectors[i][j];
+			k++;
+		}
+	}
+
+	private boolean keepEigenValue(double value) {
+		if (Math.abs(value) <= EPSILON)
+			return false;
+		return value > 0 || neg != 0;
+	}
+
+	//get the coordinates for PCoA: each eigenvector scaled by the square root
+	//of its eigenvalue, in decreasing order of eigenvalue
 	public CyMatrix[] getCoordinates(CyMatrix matrix){
 		CyMatrix[] components = new CyMatrix[eigen_values.length];
 
 		for(int j=eigen_values.length-1, k=0;j>=0;j--,k++){
-			// double[] w = new double[vectors.length];
+			double scale = Math.sqrt(Math.abs(eigen_values[j]));
 			CyMatrix result = CyMatrixFactory.makeLargeMatrix(matrix.getNetwork(), matrix.nRows(),1);
 			for(int i=0;i<eigen_vectors.length;i++){
-				result.setValue(i,j,eigen_vectors[i][j]);
+				result.setValue(i,0,eigen_vectors[i][j]*scale);
 			}
-			// System.out.println("matrix: "+matrix.printMatrixInfo());
-			// System.out.println("vector: "+result.printMatrixInfo());
-			System.out.println("Matrix rows "+matrix.printMatrixInfo());
-			System.out.println("Result rows "+result.printMatrixInfo());
-			Matrix mat = matrix.multiplyMatrix(result);
-			// System.out.println("After vector multiply: "+mat.printMatrixInfo());
-			components[k] = matrix.copy(mat);
-			components[k].printMatrixInfo();
-			components[k].writeMatrix("component_"+k+".txt");
-			// System.out.println("Component matrix "+k+" has "+components[k].getRowNodes().size()+" nodes");
+			components[k] = matrix.copy(result);
 		}
 
 		return components;
@@ -174,6 +234,18 @@ distancematrix.writeMatrix("distancematrix.txt");
 		return explainedVariance;
 	}
 
+	//calculate variance explained, as a fraction of the trace of Gower's
+	//matrix, which is the sum of all of the eigenvalues
+	public double[] computeExplainedVariance(double[] values){
+		double[] explainedVariance = new double[values.length];
+
+		for (int i = 0, j=values.length-1; j >= 0; j--,i++) {
+			explainedVariance[i] = (values[j] / trace) * 100;
+		}
+
+		return explainedVariance;
+	}
+
 	private static DecimalFormat scFormat = new DecimalFormat("0.###E0");
 	private static DecimalFormat format = new DecimalFormat("0.###");
 	
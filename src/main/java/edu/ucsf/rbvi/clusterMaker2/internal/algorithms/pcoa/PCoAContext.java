@@ -36,6 +36,9 @@ public class PCoAContext {
 		public int getValue() { return value; }
 	}
 
+	public static final String FULL = "Full decomposition (all axes)";
+	public static final String LANCZOS = "Lanczos (first axes only)";
+
 	CyNetwork network;
 	
 	//Tunables
@@ -48,6 +51,16 @@ public class PCoAContext {
 	public ListSingleSelection<NegEigenHandling> neg = 
 		new ListSingleSelection<NegEigenHandling>(NegEigenHandling.DISCARD, NegEigenHandling.KEEP, NegEigenHandling.CORRECT);
 
+	@Tunable(description="Eigenvalue solver",
+	         tooltip="<html>The full decomposition finds every axis, but takes O(n<sup>3</sup>) time.<br/>"+
+	                 "Lanczos only finds the first few, and should be used for large networks.</html>",
+	         groups={"PCoA Advanced Options"})
+	public ListSingleSelection<String> solver = new ListSingleSelection<String>(FULL, LANCZOS);
+
+	@Tunable(description="Number of axes", groups={"PCoA Advanced Options"},
+	         dependsOn="solver="+LANCZOS)
+	public int nAxes = 10;
+
 	@Tunable(description = "Create Result Panel with Principal Coordinate selection option", 
 	         groups={"Result Options"}, gravity=600.0)
 	public boolean pcoaResultPanel = false;
@@ -47,23 +47,27 @@ public class RunPCoA {
 
 	
 	public void run(){
-		System.out.println("Calculating values");
-		// double data[][]=matrix.toArray();
-		System.out.println("Length "+ distanceMatrix.nRows());
-		
-		//System.out.println("Checking CyMatrix symmetrical "+distanceMatrix.isSymmetrical());
-
 		CalculationMatrix calc=new CalculationMatrix(distanceMatrix, 0, neg);
-		System.out.println("Added data to the matrix ");
-		double eigenValues[]=calc.eigenAnalysis();
-		System.out.println("Completed Eigen Analysis");
-		double variance[]=calc.computeVariance(eigenValues);
-		System.out.println("Completed Variance Calculation");
+		double eigenValues[];
+		boolean lanczos = context.solver.getSelectedValue().equals(PCoAContext.LANCZOS);
+		if (lanczos && !distanceMatrix.isSymmetrical()) {
+			monitor.showMessage(TaskMonitor.Level.WARN,
+			                    "Distance matrix isn't symmetric: using the full decomposition");
+			lanczos = false;
+		}
+		monitor.setStatusMessage("Calculating eigenvalues");
+		if (lanczos)
+			eigenValues=calc.eigenAnalysis(context.nAxes);
+		else
+			eigenValues=calc.eigenAnalysis();
+		if (canceled) return;
+
+		final double variance[]=calc.computeExplainedVariance(eigenValues);
 		if(neg==2){//corect negative eigen values
 			calc.correctEigenValues();
 		}
-		CyMatrix components[]=calc.getCoordinates(distanceMatrix);
-		System.out.println("Completed Coordinates Calculation");
+		monitor.setStatusMessage("Calculating coordinates");
+		final CyMatrix components[]=calc.getCoordinates(distanceMatrix);
 		if(context.pcoaResultPanel){
 			ResultPanelPCoA.createAndShowGui(components, network, networkView, distanceMatrix.getRowNodes(), variance);
 
@@ -71,7 +75,6 @@ public class RunPCoA {
 		if(context.pcoaPlot) {
 			SwingUtilities.invokeLater(new Runnable() {
 				public void run() {
-					System.out.println("Scatter plot dialog call");
 					ScatterPlotDialog dialog = new ScatterPlotDialog("PCoA Scatter Plot", monitor, components, variance);
 				}
 			});
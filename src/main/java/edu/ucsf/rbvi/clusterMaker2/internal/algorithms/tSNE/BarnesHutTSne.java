@@ -0,0 +1,423 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cytoscape.work.TaskMonitor;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.ColtMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
+
+/**
+ * Barnes-Hut t-SNE (van der Maaten, 2014).  The input affinities are computed
+ * only over the 3*perplexity nearest neighbors of each point (found with a
+ * vantage-point tree) and stored in a sparse (CSR) matrix.  The repulsive
+ * forces in the gradient are approximated with a space-partitioning tree,
+ * so each iteration is O(n log n) time and the whole run is O(n*k) memory.
+ */
+public class BarnesHutTSne {
+	private static final int STOP_LYING_ITER = 250;
+	private static final int MOMENTUM_SWITCH_ITER = 250;
+	private static final double EXAGGERATION = 12.0;
+
+	private final TaskMonitor monitor;
+	private final double theta;
+	private final Random random;
+	private volatile boolean canceled = false;
+
+	// Sparse input similarities in CSR form
+	private int[] rowP;
+	private int[] colP;
+	private double[] valP;
+
+	public BarnesHutTSne(TaskMonitor monitor, double theta) {
+		this(monitor, theta, new Random());
+	}
+
+	public BarnesHutTSne(TaskMonitor monitor, double theta, Random random) {
+		this.monitor = monitor;
+		this.theta = theta;
+		this.random = random;
+	}
+
+	public void cancel() { canceled = true; }
+
+	public CyMatrix tsne(CyMatrix matrix, int no_dims, double perplexity, int max_iter) {
+		double[][] X = matrix.toArray();
+		int n = X.length;
+
+		double[] Y = tsne(X, no_dims, perplexity, max_iter);
+		if (Y == null)
+			return null;
+
+		double[][] result = new double[n][no_dims];
+		for (int i = 0; i < n; i++) {
+			for (int d = 0; d < no_dims; d++)
+				result[i][d] = Y[i*no_dims + d];
+		}
+		ColtMatrix cMatrix = new ColtMatrix(n, no_dims);
+		cMatrix.initialize(n, no_dims, result);
+		return matrix.copy(cMatrix);
+	}
+
+	/**
+	 * Run Barnes-Hut t-SNE on a dense data array.  Missing values (NaN) are
+	 * treated as 0.
+	 *
+	 * @param X the input data, one row per point
+	 * @param no_dims the number of output dimensions
+	 * @param perplexity the perplexity of the conditional distributions
+	 * @param max_iter the number of gradient descent iterations
+	 * @return the embedding as a flat row-major array of n*no_dims values
+	 */
+	public double[] tsne(double[][] X, int no_dims, double perplexity, int max_iter) {
+		int n = X.length;
+		int K = (int)(3 * perplexity);
+		if (n - 1 < 3 * perplexity) {
+			monitor.showMessage(TaskMonitor.Level.ERROR,
+			                    "Perplexity too large for the number of data points");
+			return null;
+		}
+
+		monitor.showMessage(TaskMonitor.Level.INFO, "Running Barnes-Hut t-SNE (theta = "+theta+")");
+		monitor.setProgress(0.0);
+
+		double momentum = .5;
+		double final_momentum = .8;
+		double eta = 200.0;
+
+		// Normalize the input data
+		double[][] data = normalize(X);
+
+		// Compute the input similarities over the nearest neighbors
+		computeGaussianPerplexity(data, perplexity, K);
+		symmetrizeMatrix(n);
+
+		double sumP = 0.0;
+		for (int i = 0; i < rowP[n]; i++) sumP += valP[i];
+		for (int i = 0; i < rowP[n]; i++) valP[i] /= sumP;
+
+		// Lie about the P-values
+		for (int i = 0; i < rowP[n]; i++) valP[i] *= EXAGGERATION;
+
+		double[] Y = new double[n * no_dims];
+		double[] dY = new double[n * no_dims];
+		double[] uY = new double[n * no_dims];
+		double[] gains = new double[n * no_dims];
+		for (int i = 0; i < Y.length; i++) {
+			Y[i] = random.nextGaussian() * .0001;
+			gains[i] = 1.0;
+		}
+
+		double[] posF = new double[n * no_dims];
+		double[] negF = new double[n * no_dims];
+		double[] buff = new double[no_dims];
+
+		for (int iter = 0; iter < max_iter; iter++) {
+			if (canceled) {
+				monitor.showMessage(TaskMonitor.Level.INFO, "Canceled");
+				return null;
+			}
+			monitor.setProgress((double)iter/(double)max_iter);
+
+			computeGradient(Y, n, no_dims, dY, posF, negF, buff);
+
+			// Update gains
+			for (int i = 0; i < Y.length; i++) {
+				gains[i] = (Math.signum(dY[i]) != Math.signum(uY[i])) ? (gains[i] + .2) : (gains[i] * .8);
+				if (gains[i] < .01) gains[i] = .01;
+			}
+
+			// Perform gradient update (with momentum and gains)
+			for (int i = 0; i < Y.length; i++) {
+				uY[i] = momentum * uY[i] - eta * gains[i] * dY[i];
+				Y[i] = Y[i] + uY[i];
+			}
+
+			zeroMean(Y, n, no_dims);
+
+			// Stop lying about the P-values after a while, and switch momentum
+			if (iter == STOP_LYING_ITER) {
+				for (int i = 0; i < rowP[n]; i++) valP[i] /= EXAGGERATION;
+			}
+			if (iter == MOMENTUM_SWITCH_ITER)
+				momentum = final_momentum;
+
+			if (iter % 100 == 0 || iter == max_iter - 1) {
+				double C = evaluateError(Y, n, no_dims);
+				monitor.showMessage(TaskMonitor.Level.INFO, "Iteration " + (iter + 1) + ": error is " + C);
+			}
+		}
+
+		return Y;
+	}
+
+	/**
+	 * Compute the gradient of the t-SNE cost function.  The attractive forces
+	 * are computed exactly over the sparse input similarities, the repulsive
+	 * forces are approximated with the Barnes-Hut tree.
+	 */
+	private void computeGradient(double[] Y, int n, int no_dims, double[] dC,
+	                             double[] posF, double[] negF, double[] buff) {
+		SPTree tree = new SPTree(no_dims, Y, n);
+
+		// Attractive forces
+		for (int i = 0; i < posF.length; i++) posF[i] = 0.0;
+		for (int i = 0; i < negF.length; i++) negF[i] = 0.0;
+
+		for (int row = 0; row < n; row++) {
+			int ind1 = row * no_dims;
+			for (int i = rowP[row]; i < rowP[row + 1]; i++) {
+				int ind2 = colP[i] * no_dims;
+				double D = 1.0;
+				for (int d = 0; d < no_dims; d++) {
+					buff[d] = Y[ind1 + d] - Y[ind2 + d];
+					D += buff[d] * buff[d];
+				}
+				D = valP[i] / D;
+				for (int d = 0; d < no_dims; d++)
+					posF[ind1 + d] += D * buff[d];
+			}
+		}
+
+		// Repulsive forces
+		double sumQ = 0.0;
+		double[] force = new double[no_dims];
+		for (int row = 0; row < n; row++) {
+			for (int d = 0; d < no_dims; d++) force[d] = 0.0;
+			sumQ += tree.computeNonEdgeForces(row, theta, force);
+			for (int d = 0; d < no_dims; d++) negF[row*no_dims + d] = force[d];
+		}
+
+		for (int i = 0; i < dC.length; i++)
+			dC[i] = posF[i] - (negF[i] / sumQ);
+	}
+
+	/**
+	 * Evaluate the (approximate) KL divergence over the sparse input similarities
+	 */
+	private double evaluateError(double[] Y, int n, int no_dims) {
+		SPTree tree = new SPTree(no_dims, Y, n);
+		double[] buff = new double[no_dims];
+		double sumQ = 0.0;
+		for (int row = 0; row < n; row++) {
+			for (int d = 0; d < no_dims; d++) buff[d] = 0.0;
+			sumQ += tree.computeNonEdgeForces(row, theta, buff);
+		}
+
+		double C = 0.0;
+		for (int row = 0; row < n; row++) {
+			int ind1 = row * no_dims;
+			for (int i = rowP[row]; i < rowP[row + 1]; i++) {
+				int ind2 = colP[i] * no_dims;
+				double Q = 0.0;
+				for (int d = 0; d < no_dims; d++) {
+					double diff = Y[ind1 + d] - Y[ind2 + d];
+					Q += diff * diff;
+				}
+				Q = (1.0 / (1.0 + Q)) / sumQ;
+				C += valP[i] * Math.log((valP[i] + Double.MIN_VALUE) / (Q + Double.MIN_VALUE));
+			}
+		}
+		return C;
+	}
+
+	/**
+	 * Compute the Gaussian conditional similarities over the K nearest
+	 * neighbors of each point, using binary search on the precision to
+	 * match the desired perplexity.
+	 */
+	private void computeGaussianPerplexity(double[][] X, double perplexity, int K) {
+		int n = X.length;
+		rowP = new int[n + 1];
+		colP = new int[n * K];
+		valP = new double[n * K];
+		for (int i = 0; i < n; i++)
+			rowP[i + 1] = rowP[i] + K;
+
+		monitor.showMessage(TaskMonitor.Level.INFO, "Building vantage-point tree...");
+		VpTree tree = new VpTree(X, random);
+
+		List<Integer> indices = new ArrayList<Integer>(K+1);
+		List<Double> distances = new ArrayList<Double>(K+1);
+		double[] curP = new double[K];
+		for (int i = 0; i < n; i++) {
+			if (i % 10000 == 0)
+				monitor.showMessage(TaskMonitor.Level.INFO, "Computing P-values for point " + i + " of " + n + "...");
+
+			// Find the nearest neighbors (the first one is the point itself)
+			tree.search(i, K + 1, indices, distances);
+
+			boolean found = false;
+			double beta = 1.0;
+			double minBeta = -Double.MAX_VALUE;
+			double maxBeta = Double.MAX_VALUE;
+			double tol = 1e-5;
+			double sumP = Double.MIN_VALUE;
+
+			// Iterate until we found a good perplexity
+			int iter = 0;
+			while (!found && iter < 200) {
+				// Compute Gaussian kernel row
+				for (int m = 0; m < K; m++) {
+					double dist = distances.get(m + 1);
+					curP[m] = Math.exp(-beta * dist * dist);
+				}
+
+				// Compute entropy of current row
+				sumP = Double.MIN_VALUE;
+				for (int m = 0; m < K; m++) sumP += curP[m];
+				double H = 0.0;
+				for (int m = 0; m < K; m++) {
+					double dist = distances.get(m + 1);
+					H += beta * (dist * dist * curP[m]);
+				}
+				H = (H / sumP) + Math.log(sumP);
+
+				// Evaluate whether the entropy is within the tolerance level
+				double Hdiff = H - Math.log(perplexity);
+				if (Hdiff < tol && -Hdiff < tol) {
+					found = true;
+				} else {
+					if (Hdiff > 0) {
+						minBeta = beta;
+						if (maxBeta == Double.MAX_VALUE || maxBeta == -Double.MAX_VALUE)
+							beta *= 2.0;
+						else
+							beta = (beta + maxBeta) / 2.0;
+					} else {
+						maxBeta = beta;
+						if (minBeta == -Double.MAX_VALUE || minBeta == Double.MAX_VALUE)
+							beta /= 2.0;
+						else
+							beta = (beta + minBeta) / 2.0;
+					}
+				}
+				iter++;
+			}
+
+			// Row-normalize current row of P and store in matrix
+			for (int m = 0; m < K; m++) {
+				colP[rowP[i] + m] = indices.get(m + 1);
+				valP[rowP[i] + m] = curP[m] / sumP;
+			}
+		}
+	}
+
+	/**
+	 * Symmetrize the sparse input similarities: P = (P + P')
+	 */
+	private void symmetrizeMatrix(int n) {
+		// Count number of elements and row counts of symmetric matrix
+		int[] rowCounts = new int[n];
+		for (int row = 0; row < n; row++) {
+			for (int i = rowP[row]; i < rowP[row + 1]; i++) {
+				// Check whether element (colP[i], row) is present
+				if (!hasEntry(colP[i], row))
+					rowCounts[colP[i]]++;
+				rowCounts[row]++;
+			}
+		}
+
+		int[] symRowP = new int[n + 1];
+		for (int row = 0; row < n; row++)
+			symRowP[row + 1] = symRowP[row] + rowCounts[row];
+		int noElem = symRowP[n];
+		int[] symColP = new int[noElem];
+		double[] symValP = new double[noElem];
+
+		// Fill the result matrix
+		int[] offset = new int[n];
+		for (int row = 0; row < n; row++) {
+			for (int i = rowP[row]; i < rowP[row + 1]; i++) {
+				int col = colP[i];
+				// Check whether element (col, row) is present
+				boolean present = false;
+				for (int m = rowP[col]; m < rowP[col + 1]; m++) {
+					if (colP[m] == row) {
+						present = true;
+						// make sure we do not add elements twice
+						if (row <= col) {
+							symColP[symRowP[row] + offset[row]] = col;
+							symColP[symRowP[col] + offset[col]] = row;
+							symValP[symRowP[row] + offset[row]] = valP[i] + valP[m];
+							symValP[symRowP[col] + offset[col]] = valP[i] + valP[m];
+						}
+					}
+				}
+
+				// If (col, row) is not present, there is no addition involved
+				if (!present) {
+					symColP[symRowP[row] + offset[row]] = col;
+					symColP[symRowP[col] + offset[col]] = row;
+					symValP[symRowP[row] + offset[row]] = valP[i];
+					symValP[symRowP[col] + offset[col]] = valP[i];
+				}
+
+				// Update offsets
+				if (!present || row <= col) {
+					offset[row]++;
+					if (col != row) offset[col]++;
+				}
+			}
+		}
+
+		rowP = symRowP;
+		colP = symColP;
+		valP = symValP;
+	}
+
+	private boolean hasEntry(int row, int col) {
+		for (int m = rowP[row]; m < rowP[row + 1]; m++) {
+			if (colP[m] == col)
+				return true;
+		}
+		return false;
+	}
+
+	// Center the data and scale it so the maximum absolute value is 1
+	private double[][] normalize(double[][] X) {
+		int n = X.length;
+		int d = n > 0 ? X[0].length : 0;
+		double[][] data = new double[n][d];
+		double[] mean = new double[d];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < d; j++) {
+				double v = X[i][j];
+				if (Double.isNaN(v)) v = 0.0;
+				data[i][j] = v;
+				mean[j] += v;
+			}
+		}
+		double max = 0.0;
+		for (int j = 0; j < d; j++) mean[j] /= n;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < d; j++) {
+				data[i][j] -= mean[j];
+				if (Math.abs(data[i][j]) > max) max = Math.abs(data[i][j]);
+			}
+		}
+		if (max > 0.0) {
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < d; j++)
+					data[i][j] /= max;
+			}
+		}
+		return data;
+	}
+
+	private static void zeroMean(double[] Y, int n, int no_dims) {
+		double[] mean = new double[no_dims];
+		for (int i = 0; i < n; i++) {
+			for (int d = 0; d < no_dims; d++)
+				mean[d] += Y[i*no_dims + d];
+		}
+		for (int d = 0; d < no_dims; d++)
+			mean[d] /= n;
+		for (int i = 0; i < n; i++) {
+			for (int d = 0; d < no_dims; d++)
+				Y[i*no_dims + d] -= mean[d];
+		}
+	}
+}
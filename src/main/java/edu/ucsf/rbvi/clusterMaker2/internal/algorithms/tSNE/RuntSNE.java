@@ -38,6 +38,10 @@ public class RuntSNE {
 	protected double eigenVectors[][];
 	protected DistanceMetric metric;
 	protected Matrix distances;
+
+	private volatile boolean canceled = false;
+	private volatile BarnesHutTSne barnesHut = null;
+	private volatile tSNECalculation exact = null;
 	
 	
 
@@ -60,21 +64,38 @@ public class RuntSNE {
 		
 		// System.out.println("Is Symmetrical "+matrix.isSymmetrical());
 		monitor.setTitle("Running t-Distributed Stochastic Neighbor (tSNE)");
-		TSneInterface tsne=new tSNECalculation(monitor);
-		CyMatrix Y=tsne.tsne(matrix, 2, initial_dimensions, perplexity, no_of_iterations, false);
+		CyMatrix Y;
+		if (context.useBarnesHut()) {
+			barnesHut = new BarnesHutTSne(monitor, context.theta);
+			if (canceled) return;
+			Y = barnesHut.tsne(matrix, 2, perplexity, no_of_iterations);
+		} else {
+			exact = new tSNECalculation(monitor);
+			if (canceled) return;
+			Y = exact.tsne(matrix, 2, initial_dimensions, perplexity, no_of_iterations, false);
+		}
+		if (Y == null || canceled)
+			return;
+		final CyMatrix result = Y;
 	
 		
 	
 			SwingUtilities.invokeLater(new Runnable() {
 				public void run() {
-					ScatterPlotDialog dialog = new ScatterPlotDialog("tSNE Scatter Plot", monitor, Y);
+					ScatterPlotDialog dialog = new ScatterPlotDialog("tSNE Scatter Plot", monitor, result);
 				}
 			});
 
 		
 	}
 
-	
+	public void cancel() {
+		canceled = true;
+		if (barnesHut != null)
+			barnesHut.cancel();
+		if (exact != null)
+			exact.cancel();
+	}
 
 	}
 
@@ -0,0 +1,201 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE;
+
+/**
+ * A space-partitioning tree (quadtree in 2D, octree in 3D, and so on) over
+ * the points of a t-SNE embedding.  Each cell keeps the number of points it
+ * contains and their center of mass so that the repulsive forces between a
+ * point and a distant cell can be approximated by a single interaction
+ * (the Barnes-Hut approximation).
+ *
+ * The embedding is stored as a flat row-major array of n*dimension values.
+ */
+public class SPTree {
+	private static final int NODE_CAPACITY = 1;
+
+	private final int dimension;
+	private final double[] data;
+	private final int noChildren;
+
+	private boolean isLeaf = true;
+	private int size = 0;
+	private int cumSize = 0;
+	private final double[] corner;
+	private final double[] width;
+	private final double[] centerOfMass;
+	private final int[] index = new int[NODE_CAPACITY];
+	private SPTree[] children = null;
+
+	/**
+	 * Build a tree over all of the points in the embedding
+	 *
+	 * @param dimension the number of dimensions of the embedding
+	 * @param data the embedding as a flat row-major array
+	 * @param n the number of points
+	 */
+	public SPTree(int dimension, double[] data, int n) {
+		this.dimension = dimension;
+		this.data = data;
+		this.noChildren = 1 << dimension;
+
+		// Compute the bounding box of the points
+		double[] meanY = new double[dimension];
+		double[] minY = new double[dimension];
+		double[] maxY = new double[dimension];
+		for (int d = 0; d < dimension; d++) {
+			minY[d] = Double.MAX_VALUE;
+			maxY[d] = -Double.MAX_VALUE;
+		}
+		for (int i = 0; i < n; i++) {
+			for (int d = 0; d < dimension; d++) {
+				double v = data[i*dimension + d];
+				meanY[d] += v;
+				if (v < minY[d]) minY[d] = v;
+				if (v > maxY[d]) maxY[d] = v;
+			}
+		}
+		corner = new double[dimension];
+		width = new double[dimension];
+		for (int d = 0; d < dimension; d++) {
+			meanY[d] /= n;
+			corner[d] = meanY[d];
+			width[d] = Math.max(maxY[d] - meanY[d], meanY[d] - minY[d]) + 1e-5;
+		}
+		centerOfMass = new double[dimension];
+
+		for (int i = 0; i < n; i++)
+			insert(i);
+	}
+
+	private SPTree(int dimension, double[] data, double[] corner, double[] width) {
+		this.dimension = dimension;
+		this.data = data;
+		this.noChildren = 1 << dimension;
+		this.corner = corner;
+		this.width = width;
+		this.centerOfMass = new double[dimension];
+	}
+
+	/**
+	 * Approximate the repulsive (non-edge) forces on a point.
+	 *
+	 * @param pointIndex the point to compute the forces for
+	 * @param theta the Barnes-Hut accuracy/speed trade-off (0 is exact)
+	 * @param negF the force accumulator for this point (length dimension)
+	 * @return the contribution of this point to the normalization term sum(Q)
+	 */
+	public double computeNonEdgeForces(int pointIndex, double theta, double[] negF) {
+		// Make sure that we spend no time on empty nodes or self-interactions
+		if (cumSize == 0 || (isLeaf && size == 1 && index[0] == pointIndex))
+			return 0.0;
+
+		int offset = pointIndex*dimension;
+		double D = 0.0;
+		double maxWidth = 0.0;
+		for (int d = 0; d < dimension; d++) {
+			double diff = data[offset + d] - centerOfMass[d];
+			D += diff * diff;
+			if (width[d] > maxWidth) maxWidth = width[d];
+		}
+
+		// Check whether we can use this node as a "summary"
+		if (isLeaf || maxWidth / Math.sqrt(D) < theta) {
+			D = 1.0 / (1.0 + D);
+			double mult = cumSize * D;
+			double sumQ = mult;
+			mult *= D;
+			for (int d = 0; d < dimension; d++)
+				negF[d] += mult * (data[offset + d] - centerOfMass[d]);
+			return sumQ;
+		}
+
+		double sumQ = 0.0;
+		for (int i = 0; i < noChildren; i++)
+			sumQ += children[i].computeNonEdgeForces(pointIndex, theta, negF);
+		return sumQ;
+	}
+
+	private boolean insert(int newIndex) {
+		int offset = newIndex*dimension;
+
+		// Ignore objects which do not belong in this quad tree
+		if (!containsPoint(offset))
+			return false;
+
+		// Online update of cumulative size and center-of-mass
+		cumSize++;
+		double mult1 = (double)(cumSize - 1) / (double)cumSize;
+		double mult2 = 1.0 / (double)cumSize;
+		for (int d = 0; d < dimension; d++)
+			centerOfMass[d] = centerOfMass[d]*mult1 + mult2*data[offset + d];
+
+		// If there is space in this quad tree and it is a leaf, add the object here
+		if (isLeaf && size < NODE_CAPACITY) {
+			index[size++] = newIndex;
+			return true;
+		}
+
+		// Don't add duplicates for now (this is not very nice)
+		for (int n = 0; n < size; n++) {
+			boolean duplicate = true;
+			int other = index[n]*dimension;
+			for (int d = 0; d < dimension; d++) {
+				if (data[offset + d] != data[other + d]) {
+					duplicate = false;
+					break;
+				}
+			}
+			if (duplicate)
+				return true;
+		}
+
+		// Otherwise, we need to subdivide the current cell
+		if (isLeaf)
+			subdivide();
+
+		// Find out where the point can be inserted
+		for (int i = 0; i < noChildren; i++) {
+			if (children[i].insert(newIndex))
+				return true;
+		}
+
+		// Otherwise, the point cannot be inserted (this should never happen)
+		return false;
+	}
+
+	private void subdivide() {
+		children = new SPTree[noChildren];
+		for (int i = 0; i < noChildren; i++) {
+			double[] newCorner = new double[dimension];
+			double[] newWidth = new double[dimension];
+			int div = 1;
+			for (int d = 0; d < dimension; d++) {
+				newWidth[d] = 0.5 * width[d];
+				if ((i / div) % 2 == 1)
+					newCorner[d] = corner[d] - 0.5 * width[d];
+				else
+					newCorner[d] = corner[d] + 0.5 * width[d];
+				div *= 2;
+			}
+			children[i] = new SPTree(dimension, data, newCorner, newWidth);
+		}
+
+		// Move existing points to correct children
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < noChildren; j++) {
+				if (children[j].insert(index[i]))
+					break;
+			}
+		}
+		size = 0;
+		isLeaf = false;
+	}
+
+	private boolean containsPoint(int offset) {
+		for (int d = 0; d < dimension; d++) {
+			double v = data[offset + d];
+			if (corner[d] - width[d] > v) return false;
+			if (corner[d] + width[d] < v) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,167 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE;
+
+/**
+ * The gradient descent loop of the exact t-SNE algorithm on primitive,
+ * row-major <code>double[]</code> buffers.  All of the storage is allocated
+ * once when the kernel is created and reused on every iteration: the
+ * Student-t affinities, the gradient, the gains and momentum update and the
+ * re-centering of the embedding are computed in place without creating any
+ * temporary matrices.
+ */
+public class TSneKernel {
+	private static final double INITIAL_MOMENTUM = 0.5;
+	private static final double FINAL_MOMENTUM = 0.8;
+	private static final double ETA = 500;
+	private static final double MIN_GAIN = 0.01;
+	private static final double EXAGGERATION = 4.0;
+	private static final int STOP_LYING_ITER = 100;
+	private static final int MOMENTUM_SWITCH_ITER = 20;
+
+	private final int n;
+	private final int noDims;
+
+	private final double[] P;     // n x n input affinities
+	private final double[] num;   // n x n Student-t kernel (upper triangle used)
+	private final double[] Y;     // n x noDims embedding
+	private final double[] dY;
+	private final double[] iY;
+	private final double[] gains;
+	private final double[] mean;
+	private double sumNum;
+
+	/**
+	 * Create a kernel from the (unsymmetrized) conditional input affinities.
+	 * The affinities are symmetrized, normalized and exaggerated in place.
+	 *
+	 * @param P the n x n conditional affinities in row-major order
+	 * @param Y the initial n x noDims embedding in row-major order
+	 * @param n the number of points
+	 * @param noDims the number of output dimensions
+	 */
+	public TSneKernel(double[] P, double[] Y, int n, int noDims) {
+		this.n = n;
+		this.noDims = noDims;
+		this.P = P;
+		this.Y = Y;
+		num = new double[n * n];
+		dY = new double[n * noDims];
+		iY = new double[n * noDims];
+		gains = new double[n * noDims];
+		mean = new double[noDims];
+		for (int i = 0; i < gains.length; i++)
+			gains[i] = 1.0;
+
+		// P = max(4 * (P + P') / sum(P + P'), 1e-12)
+		double sumP = 0.0;
+		for (int i = 0; i < n; i++) {
+			for (int j = i; j < n; j++) {
+				double v = P[i*n + j] + P[j*n + i];
+				P[i*n + j] = v;
+				P[j*n + i] = v;
+				sumP += (i == j) ? v : 2*v;
+			}
+		}
+		for (int i = 0; i < P.length; i++)
+			P[i] = Math.max(P[i] / sumP * EXAGGERATION, 1e-12);
+	}
+
+	/**
+	 * Perform one iteration of gradient descent
+	 *
+	 * @param iter the (zero-based) iteration number
+	 */
+	public void iterate(int iter) {
+		// Stop lying about P-values.  This waits until the iteration after
+		// STOP_LYING_ITER, so that the cost reported for that one is still
+		// computed from the exaggerated P.
+		if (iter == STOP_LYING_ITER + 1) {
+			for (int i = 0; i < P.length; i++)
+				P[i] /= EXAGGERATION;
+		}
+
+		computeAffinities();
+
+		// Compute the gradient:  dY_i = 4 * sum_j (P_ij - Q_ij) * num_ij * (y_i - y_j)
+		for (int i = 0; i < dY.length; i++)
+			dY[i] = 0.0;
+		for (int i = 0; i < n; i++) {
+			int rowI = i * n;
+			int yi = i * noDims;
+			for (int j = i + 1; j < n; j++) {
+				double nm = num[rowI + j];
+				double q = Math.max(nm / sumNum, 1e-12);
+				double l = (P[rowI + j] - q) * nm;
+				int yj = j * noDims;
+				for (int d = 0; d < noDims; d++) {
+					double f = l * (Y[yi + d] - Y[yj + d]);
+					dY[yi + d] += f;
+					dY[yj + d] -= f;
+				}
+			}
+		}
+
+		// Update the gains, momentum and the embedding, accumulating the mean as we go
+		double momentum = (iter < MOMENTUM_SWITCH_ITER) ? INITIAL_MOMENTUM : FINAL_MOMENTUM;
+		for (int d = 0; d < noDims; d++)
+			mean[d] = 0.0;
+		for (int i = 0; i < Y.length; i++) {
+			double grad = 4.0 * dY[i];
+			dY[i] = grad;
+			if ((grad > 0.0) != (iY[i] > 0.0))
+				gains[i] += 0.2;
+			else
+				gains[i] *= 0.8;
+			if (gains[i] < MIN_GAIN)
+				gains[i] = MIN_GAIN;
+			iY[i] = momentum * iY[i] - ETA * gains[i] * grad;
+			Y[i] += iY[i];
+			mean[i % noDims] += Y[i];
+		}
+
+		// Re-center the embedding
+		for (int d = 0; d < noDims; d++)
+			mean[d] /= n;
+		for (int i = 0; i < Y.length; i++)
+			Y[i] -= mean[i % noDims];
+	}
+
+	/**
+	 * Return the KL divergence between P and Q for the affinities computed
+	 * in the last iteration
+	 *
+	 * @return the current value of the cost function
+	 */
+	public double cost() {
+		double C = 0.0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double p = P[i*n + j];
+				double q = (i == j) ? 1e-12 : Math.max(num[Math.min(i,j)*n + Math.max(i,j)] / sumNum, 1e-12);
+				C += p * Math.log(p / q);
+			}
+		}
+		return C;
+	}
+
+	public double[] getY() { return Y; }
+
+	// num_ij = 1 / (1 + ||y_i - y_j||^2), stored in the upper triangle
+	private void computeAffinities() {
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			int yi = i * noDims;
+			for (int j = i + 1; j < n; j++) {
+				int yj = j * noDims;
+				double dist = 0.0;
+				for (int d = 0; d < noDims; d++) {
+					double diff = Y[yi + d] - Y[yj + d];
+					dist += diff * diff;
+				}
+				double v = 1.0 / (1.0 + dist);
+				num[i*n + j] = v;
+				sum += v;
+			}
+		}
+		sumNum = 2.0 * sum;
+	}
+}
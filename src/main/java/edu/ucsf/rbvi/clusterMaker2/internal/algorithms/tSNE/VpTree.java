@@ -0,0 +1,178 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * A vantage-point tree over the rows of a dense data array.  This is used
+ * by the Barnes-Hut t-SNE to find the k nearest neighbors of every point
+ * (in Euclidean space) without computing the full n x n distance matrix.
+ */
+public class VpTree {
+	private final double[][] data;
+	private final int[] items;
+	private final double[] dist;  // scratch space for the distances to a vantage point
+	private final Random random;
+	private Node root;
+
+	public VpTree(double[][] data) {
+		this(data, new Random(42));
+	}
+
+	public VpTree(double[][] data, Random random) {
+		this.data = data;
+		this.random = random;
+		items = new int[data.length];
+		dist = new double[data.length];
+		for (int i = 0; i < items.length; i++)
+			items[i] = i;
+		root = buildFromPoints(0, items.length);
+	}
+
+	/**
+	 * Find the k nearest neighbors of a point in the tree.  The point itself
+	 * will be included in the results (at distance 0) if it is part of the tree.
+	 *
+	 * @param target the row index of the point to search for
+	 * @param k the number of neighbors to return
+	 * @param indices the (cleared) list that will receive the neighbor indices, nearest first
+	 * @param distances the (cleared) list that will receive the neighbor distances
+	 */
+	public void search(int target, int k, List<Integer> indices, List<Double> distances) {
+		PriorityQueue<HeapItem> heap = new PriorityQueue<HeapItem>(k+1);
+		double[] tau = new double[] {Double.MAX_VALUE};
+		search(root, target, k, heap, tau);
+
+		indices.clear();
+		distances.clear();
+		while (!heap.isEmpty()) {
+			HeapItem item = heap.poll();
+			indices.add(0, item.index);
+			distances.add(0, item.dist);
+		}
+	}
+
+	public static double distance(double[] x1, double[] x2) {
+		double dd = 0.0;
+		for (int d = 0; d < x1.length; d++) {
+			double diff = x1[d] - x2[d];
+			dd += diff * diff;
+		}
+		return Math.sqrt(dd);
+	}
+
+	private Node buildFromPoints(int lower, int upper) {
+		if (upper == lower)
+			return null;
+
+		Node node = new Node();
+		node.index = lower;
+
+		if (upper - lower > 1) {
+			// Choose a random vantage point and move it to the front
+			int i = lower + random.nextInt(upper - lower);
+			swap(lower, i);
+
+			// Partition the remaining points around the median distance
+			int median = (upper + lower) / 2;
+			double[] vp = data[items[lower]];
+			for (int j = lower+1; j < upper; j++)
+				dist[j] = distance(vp, data[items[j]]);
+			select(lower+1, upper-1, median);
+
+			node.threshold = dist[median];
+			node.index = lower;
+			node.left = buildFromPoints(lower + 1, median);
+			node.right = buildFromPoints(median, upper);
+		}
+		return node;
+	}
+
+	// Quickselect on items[lo..hi] (with their distances in dist) so that
+	// items[nth] is in its sorted position.  This uses a Hoare partition,
+	// which stops on elements equal to the pivot, so that many equal
+	// distances still split evenly instead of going quadratic.
+	private void select(int lo, int hi, int nth) {
+		while (lo < hi) {
+			double pivot = dist[lo + random.nextInt(hi - lo + 1)];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (dist[i] < pivot) i++;
+				while (dist[j] > pivot) j--;
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (nth <= j)
+				hi = j;
+			else if (nth >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int t = items[i];
+		items[i] = items[j];
+		items[j] = t;
+		double d = dist[i];
+		dist[i] = dist[j];
+		dist[j] = d;
+	}
+
+	private void search(Node node, int target, int k, PriorityQueue<HeapItem> heap, double[] tau) {
+		if (node == null)
+			return;
+
+		double dist = distance(data[items[node.index]], data[target]);
+		if (dist < tau[0]) {
+			if (heap.size() == k)
+				heap.poll();
+			heap.add(new HeapItem(items[node.index], dist));
+			if (heap.size() == k)
+				tau[0] = heap.peek().dist;
+		}
+
+		if (node.left == null && node.right == null)
+			return;
+
+		if (dist < node.threshold) {
+			if (dist - tau[0] <= node.threshold)
+				search(node.left, target, k, heap, tau);
+			if (dist + tau[0] >= node.threshold)
+				search(node.right, target, k, heap, tau);
+		} else {
+			if (dist + tau[0] >= node.threshold)
+				search(node.right, target, k, heap, tau);
+			if (dist - tau[0] <= node.threshold)
+				search(node.left, target, k, heap, tau);
+		}
+	}
+
+	static class Node {
+		int index;
+		double threshold;
+		Node left;
+		Node right;
+	}
+
+	// Max-heap ordering on the distance
+	static class HeapItem implements Comparable<HeapItem> {
+		int index;
+		double dist;
+
+		HeapItem(int index, double dist) {
+			this.index = index;
+			this.dist = dist;
+		}
+
+		public int compareTo(HeapItem o) {
+			return Double.compare(o.dist, dist);
+		}
+	}
+}
@@ -94,6 +94,8 @@ public class tSNE extends AbstractNetworkClusterer{
 
 	public void cancel() {
 		canceled = true;
+		if (runtsne != null)
+			runtsne.cancel();
 		
 	}
 
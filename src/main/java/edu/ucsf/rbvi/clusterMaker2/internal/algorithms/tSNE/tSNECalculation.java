@@ -6,36 +6,23 @@ import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
 import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
 
 
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.abs;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.addColumnVector;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.addRowVector;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.assignAllLessThan;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.assignAtIndex;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.assignValuesToRow;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.biggerThan;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.concatenate;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.diag;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.equal;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.exp;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.fillMatrix;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.getValuesFromRow;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.log;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.maximum;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.mean;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.negate;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.plus;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.range;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.replaceNaN;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.rnorm;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.scalarDivide;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.scalarInverse;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.scalarMult;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.scalarPlus;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.sqrt;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.square;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.sum;
 import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.times;
-import static edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.CalculationMatrix.tile;
 
 import java.util.Arrays;
 
@@ -49,11 +36,14 @@ public class tSNECalculation implements TSneInterface{
 	CalculationMatrix mo = new CalculationMatrix();
 	
 	TaskMonitor monitor;
+	private volatile boolean canceled = false;
 	
 		public tSNECalculation(TaskMonitor monitor) {
 			this.monitor = monitor;
 		}
 
+	public void cancel() { canceled = true; }
+
 	public CyMatrix tsne(CyMatrix X, int k, int initial_dims, double perplexity) {
 		return tsne(X,k,initial_dims, perplexity, 2000, true);
 	}
@@ -84,85 +74,50 @@ public class tSNECalculation implements TSneInterface{
 		}
 		
 		int n = matrix.nRows();
-		double momentum = .5;
-		double initial_momentum = 0.5;
-		double final_momentum   = 0.8;
-		int eta                 = 500;
-		double min_gain         = 0.01;
-
-		Matrix Y           =  rnorm(n,no_dims);
-		Matrix dY          = fillMatrix(n,no_dims, 0.0);
-		Matrix iY          = fillMatrix(n,no_dims,0.0);
-		Matrix gains       = fillMatrix(n,no_dims,1.0);
 
 		// Compute P-values
-		Matrix P = x2p(matrix, 1e-5, perplexity).P;
+		Matrix Pmat = x2p(matrix, 1e-5, perplexity).P;
+		double[] P = new double[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++)
+				P[i*n + j] = Pmat.doubleValue(i, j);
+		}
+		Pmat = null;
 
+		double[] Y = new double[n * no_dims];
+		for (int i = 0; i < Y.length; i++)
+			Y[i] = rnorm();
 
-		P = plus(P , mo.transpose(P));
-		P = scalarDivide(P,sum(P));
-		P = scalarMult(P , 4);					// early exaggeration
-		P = maximum(P, 1e-12);
+		TSneKernel kernel = new TSneKernel(P, Y, n, no_dims);
 
-		//System.out.println("Y:Shape is = " + Y.nRows() + " x " + Y.nColumns());
-		monitor.showMessage(TaskMonitor.Level.INFO, "Y:Shape is = " + Y.nRows() + " x " + Y.nColumns());
+		monitor.showMessage(TaskMonitor.Level.INFO, "Y:Shape is = " + n + " x " + no_dims);
 		
-		double progress = 0.0;
 		// Run iterations
 		for (int iter = 0; iter < max_iter; iter++) {
-			progress = (double)iter/(double)max_iter;
-			monitor.setProgress(progress);
-
-			// Compute pairwise affinities
-			Matrix sum_Y = mo.transpose(sum(square(Y), 1));
-			Matrix num = scalarInverse(scalarPlus(addRowVector(mo.transpose(addRowVector(scalarMult(
-					times(Y, mo.transpose(Y)),
-					-2),
-					sum_Y)),
-					sum_Y),
-					1));
-
-			assignAtIndex(num, range(n), range(n), 0);
-			Matrix Q = scalarDivide(num , sum(num));
-
-			Q = maximum(Q, 1e-12);
-
-			// Compute gradient
-			Matrix L = mo.scalarMultiply(mo.minus(P , Q), num);
-		    dY = scalarMult(times(mo.minus(diag(sum(L, 1)),L) , Y), 4);
-			
-			// Perform the update
-			if (iter < 20)
-				momentum = initial_momentum;
-			else
-				momentum = final_momentum;
-			gains = plus(mo.scalarMultiply(scalarPlus(gains,0.2), abs(negate(equal(biggerThan(dY,0.0),biggerThan(iY,0.0))))),
-					mo.scalarMultiply(scalarMult(gains,0.8), abs(equal(biggerThan(dY,0.0),biggerThan(iY,0.0)))));
-
-			assignAllLessThan(gains, min_gain, min_gain);
-			iY = mo.minus(scalarMult(iY,momentum) , scalarMult(mo.scalarMultiply(gains , dY),eta));
-			Y = plus(Y , iY);
-			//double [][] tile = tile(mean(Y, 0), n, 1);
-			Y = mo.minus(Y , tile(mean(Y, 0), n, 1));
+			if (canceled) {
+				monitor.showMessage(TaskMonitor.Level.INFO, "Canceled");
+				return null;
+			}
+			monitor.setProgress((double)iter/(double)max_iter);
+
+			kernel.iterate(iter);
 
 			// Compute current value of cost function
 			if ((iter % 100 == 0))   {
-				Matrix logdivide = log(scalarDivide(P , Q));
-				logdivide = replaceNaN(logdivide,0);
-				double C = sum(mo.scalarMultiply(P , logdivide));
-				//System.out.println("Iteration " + (iter + 1) + ": error is " + C);
+				double C = kernel.cost();
 				monitor.showMessage(TaskMonitor.Level.INFO, "Iteration " + (iter + 1) + ": error is " + C);
-			} else if((iter + 1) % 10 == 0) {
-				//System.out.println("Iteration " + (iter + 1));
-				// monitor.showMessage(TaskMonitor.Level.INFO, "Iteration " + (iter + 1));
 			}
+		}
 
-			// Stop lying about P-values
-			if (iter == 100)
-				P = scalarDivide(P , 4);
+		double[][] result = new double[n][no_dims];
+		for (int i = 0; i < n; i++) {
+			for (int d = 0; d < no_dims; d++)
+				result[i][d] = Y[i*no_dims + d];
 		}
+		ColtMatrix cMatrix = new ColtMatrix(n, no_dims);
+		cMatrix.initialize(n, no_dims, result);
 
-		CyMatrix L=matrix.copy(Y);
+		CyMatrix L=matrix.copy(cMatrix);
 		return L;
 	}
 
@@ -10,6 +10,9 @@ import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.Attri
 
 
 public class tSNEContext {
+	public final static String EXACT = "Exact";
+	public final static String BARNES_HUT = "Barnes-Hut";
+
 	CyNetwork network;
 
 	//Tunables
@@ -30,6 +33,15 @@ public class tSNEContext {
 			groups={"t-SNE Advanced Settings"}, gravity=66)
 	public boolean ignoreMissing = true;
 
+	@Tunable(description="t-SNE algorithm",
+	         tooltip="Barnes-Hut approximates the gradient in O(n log n) and should be used for large networks",
+	         groups={"t-SNE Advanced Settings"}, gravity=64)
+	public ListSingleSelection<String> algorithm = new ListSingleSelection<String>(EXACT, BARNES_HUT);
+
+	@Tunable(description="Barnes-Hut theta (0 is exact)", groups={"t-SNE Advanced Settings"},
+	         dependsOn="algorithm="+BARNES_HUT, gravity=64.5)
+	public double theta = 0.5;
+
 	@Tunable(description="Initial Dimensions", groups={"t-SNE Advanced Settings"}, gravity=66)
 	public int int_dims=50;
 
@@ -72,4 +84,6 @@ public class tSNEContext {
 	}
 
 	public CyNetwork getNetwork() { return network; }
+
+	public boolean useBarnesHut() { return BARNES_HUT.equals(algorithm.getSelectedValue()); }
 }
@@ -0,0 +1,125 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.hierarchical;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SimpleMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+
+public class NNChainLinkageTest {
+	static final int ROWS = 250;
+	static final int COLUMNS = 3;
+
+	// Gaussian blobs, so there are clusters at several scales
+	static SimpleMatrix getData(long seed) {
+		Random random = new Random(seed);
+		SimpleMatrix matrix = new SimpleMatrix(ROWS, COLUMNS);
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++)
+				matrix.setValue(i, j, random.nextGaussian() + 4.0*((i*7) % 5 == j ? 1 : 0));
+		return matrix;
+	}
+
+	/**
+	 * The greedy loop that pmlcluster and palcluster used: search the whole
+	 * matrix for the closest pair, merge them into js and move the last
+	 * cluster into is.
+	 */
+	static TreeNode[] greedyCluster(int nRows, SymmetricDistanceMatrix distanceMatrix, boolean average) {
+		int[] clusterID = new int[nRows];
+		int[] number = new int[nRows];
+		TreeNode[] nodeList = new TreeNode[nRows-1];
+		for (int j = 0; j < nRows; j++) {
+			number[j] = 1;
+			clusterID[j] = j;
+		}
+
+		for (int n = nRows; n > 1; n--) {
+			int is = 1;
+			int js = 0;
+			double distance = distanceMatrix.doubleValue(1, 0);
+			for (int i = 1; i < n; i++) {
+				for (int j = 0; j < i; j++) {
+					double temp = distanceMatrix.doubleValue(i, j);
+					if (temp < distance) {
+						distance = temp;
+						is = i;
+						js = j;
+					}
+				}
+			}
+			nodeList[nRows-n] = new TreeNode(distance);
+			nodeList[nRows-n].setLeft(clusterID[is]);
+			nodeList[nRows-n].setRight(clusterID[js]);
+
+			// Fix the distances
+			int sum = number[is] + number[js];
+			for (int j = 0; j < n; j++) {
+				if (j == is || j == js) continue;
+				double di = distanceMatrix.doubleValue(is, j);
+				double dj = distanceMatrix.doubleValue(js, j);
+				if (average)
+					distanceMatrix.setValue(js, j, (di*(double)number[is] + dj*(double)number[js])/(double)sum);
+				else
+					distanceMatrix.setValue(js, j, Math.max(di, dj));
+			}
+			for (int j = 0; j < n-1; j++) {
+				if (j != is)
+					distanceMatrix.setValue(is, j, distanceMatrix.doubleValue(n-1, j));
+			}
+
+			number[js] = sum;
+			number[is] = number[n-1];
+			clusterID[js] = n-nRows-1;
+			clusterID[is] = clusterID[n-1];
+		}
+		return nodeList;
+	}
+
+	static void checkLinkage(String message, SimpleMatrix data, DistanceMetric metric, boolean average) {
+		TreeNode[] expected = greedyCluster(ROWS, new SymmetricDistanceMatrix(data, metric), average);
+		TreeNode[] nodes = new NNChainLinkage(ROWS, new SymmetricDistanceMatrix(data, metric), average).cluster();
+		assertEquals(message, expected.length, nodes.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(message+" node "+i+" left", expected[i].getLeft(), nodes[i].getLeft());
+			assertEquals(message+" node "+i+" right", expected[i].getRight(), nodes[i].getRight());
+			// The averages can be summed in a different order
+			assertEquals(message+" node "+i+" distance", expected[i].getDistance(), nodes[i].getDistance(),
+			             1e-12*(1 + expected[i].getDistance()));
+		}
+	}
+
+	@Test
+	public void maximumLinkageMatchesGreedy() {
+		for (long seed = 1; seed <= 3; seed++) {
+			SimpleMatrix data = getData(seed);
+			checkLinkage("euclidean "+seed, data, DistanceMetric.EUCLIDEAN, false);
+			checkLinkage("cityblock "+seed, data, DistanceMetric.CITYBLOCK, false);
+		}
+	}
+
+	@Test
+	public void averageLinkageMatchesGreedy() {
+		for (long seed = 1; seed <= 3; seed++) {
+			SimpleMatrix data = getData(seed);
+			checkLinkage("euclidean "+seed, data, DistanceMetric.EUCLIDEAN, true);
+			checkLinkage("correlation "+seed, data, DistanceMetric.CORRELATION, true);
+		}
+	}
+
+	@Test
+	public void smallInputs() {
+		assertEquals(0, new NNChainLinkage(1, new SymmetricDistanceMatrix(1, false), true).cluster().length);
+		SymmetricDistanceMatrix two = new SymmetricDistanceMatrix(2, false);
+		two.setValue(0, 1, 0.5);
+		TreeNode[] nodes = new NNChainLinkage(2, two, false).cluster();
+		assertEquals(1, nodes.length);
+		assertEquals(1, nodes[0].getLeft());
+		assertEquals(0, nodes[0].getRight());
+		assertEquals(0.5, nodes[0].getDistance(), 0.0);
+	}
+}
@@ -0,0 +1,131 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.kmeans;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SimpleMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+
+public class HamerlyKMeansTest {
+	static final int ROWS = 400;
+	static final int COLUMNS = 4;
+	static final int CLUSTERS = 6;
+
+	// Gaussian blobs, with some rows in between them
+	static double[][] getData(long seed) {
+		Random random = new Random(seed);
+		double[][] data = new double[ROWS][COLUMNS];
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLUMNS; j++)
+				data[i][j] = random.nextGaussian() + (i % CLUSTERS)*(j == i % COLUMNS ? 2.5 : 0.5);
+		}
+		return data;
+	}
+
+	// A random assignment with no empty clusters
+	static int[] getStart(Random random) {
+		int[] clusterID = new int[ROWS];
+		for (int i = 0; i < ROWS; i++)
+			clusterID[i] = i < CLUSTERS ? i : random.nextInt(CLUSTERS);
+		return clusterID;
+	}
+
+	/**
+	 * The simple loop from RunKCluster.kcluster, for the Euclidean metric
+	 */
+	static void simpleKMeans(SimpleMatrix matrix, int[] clusterID) {
+		SimpleMatrix cData = new SimpleMatrix(CLUSTERS, COLUMNS);
+		int[] counts = new int[CLUSTERS];
+		int[] saved = new int[ROWS];
+		for (int i = 0; i < ROWS; i++) counts[clusterID[i]]++;
+
+		double total = Double.MAX_VALUE;
+		int counter = 0;
+		int period = 10;
+		while (true) {
+			double previous = total;
+			total = 0.0;
+			if (counter % period == 0) {
+				System.arraycopy(clusterID, 0, saved, 0, ROWS);
+				if (period < Integer.MAX_VALUE / 2)
+					period *= 2;
+			}
+			counter++;
+
+			for (int k = 0; k < CLUSTERS; k++)
+				for (int j = 0; j < COLUMNS; j++)
+					cData.setValue(k, j, 0.0);
+			for (int i = 0; i < ROWS; i++)
+				for (int j = 0; j < COLUMNS; j++)
+					cData.setValue(clusterID[i], j, cData.getValue(clusterID[i], j) + matrix.getValue(i, j));
+			for (int k = 0; k < CLUSTERS; k++)
+				for (int j = 0; j < COLUMNS; j++)
+					cData.setValue(k, j, cData.getValue(k, j) / counts[k]);
+
+			for (int i = 0; i < ROWS; i++) {
+				int k = clusterID[i];
+				if (counts[k] == 1) continue;
+				double distance = DistanceMetric.EUCLIDEAN.getMetric(matrix, cData, i, k);
+				for (int j = 0; j < CLUSTERS; j++) {
+					if (j == k) continue;
+					double tdistance = DistanceMetric.EUCLIDEAN.getMetric(matrix, cData, i, j);
+					if (tdistance < distance) {
+						distance = tdistance;
+						counts[clusterID[i]]--;
+						clusterID[i] = j;
+						counts[j]++;
+					}
+				}
+				total += distance;
+			}
+			if (total >= previous) break;
+			int i;
+			for (i = 0; i < ROWS; i++)
+				if (saved[i] != clusterID[i]) break;
+			if (i == ROWS)
+				break;
+		}
+	}
+
+	@Test
+	public void restartsMatchSimpleLoop() {
+		double[][] data = getData(3);
+		SimpleMatrix matrix = new SimpleMatrix(ROWS, COLUMNS);
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++)
+				matrix.setValue(i, j, data[i][j]);
+
+		// One instance for all of the restarts, as RunKCluster uses it
+		HamerlyKMeans hamerly = new HamerlyKMeans(data, CLUSTERS, false);
+		Random random = new Random(11);
+		for (int restart = 0; restart < 8; restart++) {
+			int[] accelerated = getStart(random);
+			int[] simple = accelerated.clone();
+			hamerly.cluster(accelerated);
+			simpleKMeans(matrix, simple);
+			assertArrayEquals("restart "+restart, simple, accelerated);
+		}
+	}
+
+	@Test
+	public void restartsAreIndependent() {
+		double[][] data = getData(5);
+		Random random = new Random(7);
+		int[][] starts = new int[5][];
+		for (int restart = 0; restart < starts.length; restart++)
+			starts[restart] = getStart(random);
+
+		HamerlyKMeans reused = new HamerlyKMeans(data, CLUSTERS, true);
+		for (int restart = 0; restart < starts.length; restart++) {
+			int[] fresh = starts[restart].clone();
+			double freshTotal = new HamerlyKMeans(data, CLUSTERS, true).cluster(fresh);
+			int[] again = starts[restart].clone();
+			double reusedTotal = reused.cluster(again);
+			assertArrayEquals("restart "+restart, fresh, again);
+			assertEquals(freshTotal, reusedTotal, 0.0);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.pam;
+
+import java.util.Random;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.Clusters;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
+
+/**
+ * Time the FastPAM1 swap phase against the simple one.  This isn't a unit
+ * test; run it by hand with the test classpath:
+ *
+ *   java PAMBenchmark [rows] [simple|fast|both]
+ *
+ * The data are ten Gaussian groups of five columns, clustered into ten
+ * clusters with the Euclidean metric.  The distance matrix is calculated
+ * once, outside of the timing.
+ */
+public class PAMBenchmark {
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		String which = args.length > 1 ? args[1] : "both";
+		int columns = 5;
+		int k = 10;
+
+		Random random = new Random(11);
+		double[][] data = new double[n][columns];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < columns; j++)
+				data[i][j] = random.nextGaussian() + i % k;
+		CyMatrix matrix = PAMTest.getMatrix(data);
+		Matrix distances = new SymmetricDistanceMatrix(matrix, DistanceMetric.EUCLIDEAN);
+
+		if (!which.equals("fast")) {
+			long start = System.nanoTime();
+			Clusters clusters = new SimplePAM(matrix, DistanceMetric.EUCLIDEAN, distances, null).cluster(k);
+			report("simple", n, System.nanoTime()-start, clusters);
+		}
+		if (!which.equals("simple")) {
+			long start = System.nanoTime();
+			Clusters clusters = new PAM(matrix, DistanceMetric.EUCLIDEAN, distances, null).cluster(k);
+			report("fast", n, System.nanoTime()-start, clusters);
+		}
+	}
+
+	static void report(String name, int n, long nanos, Clusters clusters) {
+		int hash = 1;
+		for (int i = 0; i < n; i++)
+			hash = 31*hash + clusters.getClusterIndex(i);
+		System.out.println(name+": n="+n+" "+nanos/1000000+" ms, cost "+clusters.getCost()+", assignments "+Integer.toHexString(hash));
+	}
+}
@@ -0,0 +1,60 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.pam;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.attributeClusterers.Clusters;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyColtMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SymmetricDistanceMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.CyMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
+
+public class PAMTest {
+
+	static CyMatrix getMatrix(double[][] data) {
+		CyMatrix matrix = new CyColtMatrix(null, data.length, data[0].length);
+		for (int i = 0; i < data.length; i++)
+			for (int j = 0; j < data[i].length; j++)
+				matrix.setValue(i, j, data[i][j]);
+		return matrix;
+	}
+
+	// Cluster with both swap phases, from the same distances
+	static void checkClusters(String message, double[][] data, DistanceMetric metric, int k) {
+		CyMatrix matrix = getMatrix(data);
+		Matrix distances = new SymmetricDistanceMatrix(matrix, metric);
+		Clusters expected = new SimplePAM(matrix, metric, distances, null).cluster(k);
+		Clusters clusters = new PAM(matrix, metric, distances, null).cluster(k);
+		assertEquals(message, expected.getCost(), clusters.getCost(), 1e-9*expected.getCost());
+		for (int i = 0; i < data.length; i++)
+			assertEquals(message+" element "+i, expected.getClusterIndex(i), clusters.getClusterIndex(i));
+	}
+
+	@Test
+	public void testCluster() {
+		double[][] data = {{0.9, 0.9}, {0.8, 0.8}, {0.4, 0.4}, {0.5, 0.5}};
+		checkClusters("four points", data, DistanceMetric.CITYBLOCK, 3);
+	}
+
+	@Test
+	public void swapsMatchSimpleLoop() {
+		Random random = new Random(5);
+		for (int trial = 0; trial < 60; trial++) {
+			int n = 20 + random.nextInt(300);
+			int columns = 2 + random.nextInt(6);
+			int k = 2 + random.nextInt(10);
+			// Small integers give lots of swaps with the same change
+			boolean ties = trial % 3 == 0;
+			double[][] data = new double[n][columns];
+			for (int i = 0; i < n; i++)
+				for (int j = 0; j < columns; j++)
+					data[i][j] = ties ? random.nextInt(4) : random.nextGaussian();
+			DistanceMetric metric = trial % 2 == 0 ? DistanceMetric.EUCLIDEAN : DistanceMetric.CITYBLOCK;
+			checkClusters("trial "+trial+" n="+n+" k="+k, data, metric, k);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import cern.colt.function.tdouble.IntIntDoubleFunction;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+
+public class CSCMatrixTest {
+	static final int SIZE = 200;
+
+	// A random sparse matrix with non-negative values, as MCL sees, with a few
+	// empty columns
+	static DoubleMatrix2D getColtMatrix(Random random, double density) {
+		DoubleMatrix2D matrix = new SparseDoubleMatrix2D(SIZE, SIZE);
+		for (int row = 0; row < SIZE; row++)
+			for (int column = 0; column < SIZE; column++)
+				if (column % 37 != 5 && random.nextDouble() < density)
+					matrix.setQuick(row, column, random.nextDouble());
+		return matrix;
+	}
+
+	static CSCMatrix getCSCMatrix(DoubleMatrix2D matrix) {
+		int count = (int)matrix.cardinality();
+		final int[] rows = new int[count];
+		final int[] columns = new int[count];
+		final double[] values = new double[count];
+		final int[] next = new int[1];
+		matrix.forEachNonZero(new IntIntDoubleFunction() {
+			public double apply(int row, int column, double value) {
+				rows[next[0]] = row;
+				columns[next[0]] = column;
+				values[next[0]] = value;
+				next[0]++;
+				return value;
+			}
+		});
+		return CSCMatrix.fromTriples(matrix.rows(), matrix.columns(), rows, columns, values, count);
+	}
+
+	static void assertSame(DoubleMatrix2D expected, CSCMatrix matrix, double delta) {
+		int stored = 0;
+		for (int row = 0; row < SIZE; row++) {
+			for (int column = 0; column < SIZE; column++) {
+				double value = expected.getQuick(row, column);
+				if (value != 0.0) stored++;
+				assertEquals("("+row+","+column+")", value, matrix.getValue(row, column), delta);
+			}
+		}
+		assertEquals(stored, matrix.cardinality());
+	}
+
+	/**
+	 * The normalization that RunMCL did on the Colt matrix
+	 */
+	static void normalize(DoubleMatrix2D matrix, final double threshold, final boolean prune) {
+		final double[] sums = new double[matrix.columns()];
+		matrix.forEachNonZero(new IntIntDoubleFunction() {
+			public double apply(int row, int column, double value) {
+				if (prune && (value < threshold))
+					return 0.0;
+				sums[column] += value;
+				return value;
+			}
+		});
+		matrix.forEachNonZero(new IntIntDoubleFunction() {
+			public double apply(int row, int column, double value) {
+				return value/sums[column];
+			}
+		});
+		for (int col = 0; col < sums.length; col++) {
+			if (sums[col] == 0.0)
+				matrix.set(col, col, 1.0);
+		}
+	}
+
+	@Test
+	public void productMatchesColt() {
+		Random random = new Random(1);
+		DoubleMatrix2D a = getColtMatrix(random, 0.05);
+		DoubleMatrix2D b = getColtMatrix(random, 0.05);
+		DoubleMatrix2D expected = a.zMult(b, null);
+
+		CSCMatrix product = getCSCMatrix(a).multiply(getCSCMatrix(b), 0.0, ForkJoinPool.commonPool());
+		assertSame(expected, product, 1e-12);
+	}
+
+	@Test
+	public void thresholdDropsSmallEntries() {
+		Random random = new Random(2);
+		DoubleMatrix2D a = getColtMatrix(random, 0.1);
+		DoubleMatrix2D expected = a.zMult(a, null);
+		final double threshold = 0.05;
+		expected.forEachNonZero(new IntIntDoubleFunction() {
+			public double apply(int row, int column, double value) {
+				return Math.abs(value) < threshold ? 0.0 : value;
+			}
+		});
+
+		CSCMatrix csc = getCSCMatrix(a);
+		assertSame(expected, csc.multiply(csc, threshold, ForkJoinPool.commonPool()), 1e-12);
+	}
+
+	// Selection keeps the largest entries of each column
+	@Test
+	public void selectionKeepsLargestEntries() {
+		Random random = new Random(3);
+		DoubleMatrix2D a = getColtMatrix(random, 0.1);
+		DoubleMatrix2D full = a.zMult(a, null);
+		int selection = 5;
+
+		CSCMatrix csc = getCSCMatrix(a);
+		CSCMatrix product = csc.multiply(csc, 0.0, selection, 0, 0.0, ForkJoinPool.commonPool());
+		for (int column = 0; column < SIZE; column++) {
+			double[] values = full.viewColumn(column).toArray();
+			Arrays.sort(values);
+			double cutoff = values[SIZE-selection];
+			int kept = 0;
+			for (int row = 0; row < SIZE; row++) {
+				double value = full.getQuick(row, column);
+				double expected = (value >= cutoff && value > 0.0) ? value : 0.0;
+				assertEquals("("+row+","+column+")", expected, product.getValue(row, column), 1e-12);
+				if (product.getValue(row, column) != 0.0) kept++;
+			}
+			assertTrue(kept <= selection);
+		}
+	}
+
+	@Test
+	public void normalizeMatchesColt() {
+		for (boolean prune: new boolean[] {false, true}) {
+			Random random = new Random(4);
+			DoubleMatrix2D expected = getColtMatrix(random, 0.05);
+			CSCMatrix csc = getCSCMatrix(expected);
+			normalize(expected, 0.3, prune);
+			csc.normalizeColumns(0.3, prune);
+			assertSame(expected, csc, 1e-12);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+
+public class DistanceEngineTest {
+	// Not a multiple of the tile size, so there are partial tiles
+	static final int ROWS = 150;
+
+	static void checkDistances(String message, double[][] data, DistanceMetric metric) {
+		SimpleMatrix matrix = NeighborIndexTest.getMatrix(data);
+		int n = data.length;
+		DistanceEngine engine = new DistanceEngine(data, metric);
+		double[] packed = engine.getDistances(new ForkJoinPool(3));
+		double[] full = new double[n*n];
+		engine.getDistances(full);
+		for (int i = 0; i < n; i++) {
+			for (int j = i; j < n; j++) {
+				double expected = metric.getMetric(matrix, matrix, i, j);
+				String where = message+" ("+i+","+j+")";
+				assertEquals(where, expected, packed[DistanceEngine.packedIndex(i, j, n)], 1e-10);
+				assertEquals(where, packed[DistanceEngine.packedIndex(i, j, n)], full[i*n + j], 0.0);
+				assertEquals(where, full[i*n + j], full[j*n + i], 0.0);
+				assertEquals(where, packed[DistanceEngine.packedIndex(i, j, n)], engine.getDistance(i, j), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void distancesMatchDistanceMetric() {
+		for (DistanceMetric metric: NeighborIndexTest.METRICS) {
+			checkDistances(metric+" complete", NeighborIndexTest.getData(3, false), metric);
+			// DistanceMetric can't rank rows with missing values
+			if (metric != DistanceMetric.SPEARMANS_RANK && metric != DistanceMetric.KENDALLS_TAU)
+				checkDistances(metric+" missing", NeighborIndexTest.getData(4, true), metric);
+		}
+	}
+
+	// The values of a square matrix used as the correlations or distances
+	@Test
+	public void valuesAreUsedAsIs() {
+		double[][] data = new double[ROWS][ROWS];
+		for (int i = 0; i < ROWS; i++)
+			for (int j = i; j < ROWS; j++)
+				data[i][j] = data[j][i] = ((i*31 + j*17) % 100)/100.0;
+		checkDistances("value is correlation", data, DistanceMetric.VALUE_IS_CORRELATION);
+		checkDistances("value is distance", data, DistanceMetric.VALUE_IS_DISTANCE);
+	}
+}
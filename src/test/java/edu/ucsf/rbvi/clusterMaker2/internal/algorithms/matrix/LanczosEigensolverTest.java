@@ -0,0 +1,139 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.algo.decomposition.DenseDoubleEigenvalueDecomposition;
+
+public class LanczosEigensolverTest {
+
+	// A random symmetric matrix, with both positive and negative eigenvalues
+	static double[][] getIndefinite(long seed, int n) {
+		Random random = new Random(seed);
+		double[][] a = new double[n][n];
+		for (int i = 0; i < n; i++)
+			for (int j = i; j < n; j++)
+				a[i][j] = a[j][i] = random.nextGaussian();
+		return a;
+	}
+
+	// The double-centered squared distances between points in a few
+	// dimensions, like the Gower's matrix PCoA uses
+	static double[][] getGower(long seed, int n, int dimensions) {
+		Random random = new Random(seed);
+		double[][] points = new double[n][dimensions];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < dimensions; j++)
+				points[i][j] = random.nextGaussian()*(j+1) + (i % 3);
+		double[][] a = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double d = 0.0;
+				for (int k = 0; k < dimensions; k++)
+					d += (points[i][k]-points[j][k])*(points[i][k]-points[j][k]);
+				a[i][j] = -0.5*d;
+			}
+		}
+		double[] mean = new double[n];
+		double total = 0.0;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++)
+				mean[i] += a[i][j]/n;
+			total += mean[i]/n;
+		}
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				a[i][j] += total - mean[i] - mean[j];
+		return a;
+	}
+
+	static LanczosEigensolver.Operator getOperator(final double[][] a) {
+		return new LanczosEigensolver.Operator() {
+			public int size() { return a.length; }
+			public void multiply(double[] x, double[] y) {
+				for (int i = 0; i < a.length; i++) {
+					double sum = 0.0;
+					for (int j = 0; j < a.length; j++)
+						sum += a[i][j]*x[j];
+					y[i] = sum;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Check the solver against the full decomposition that PCoA uses
+	 */
+	static void checkEigenpairs(String message, double[][] a, int nEigen) {
+		int n = a.length;
+		DoubleMatrix2D matrix = DoubleFactory2D.dense.make(a);
+		DenseDoubleEigenvalueDecomposition decomp = new DenseDoubleEigenvalueDecomposition(matrix);
+		double[] allValues = decomp.getRealEigenvalues().toArray();
+		double[][] allVectors = decomp.getV().toArray();
+		double scale = Math.max(Math.abs(allValues[0]), Math.abs(allValues[n-1]));
+
+		LanczosEigensolver solver = new LanczosEigensolver(getOperator(a), nEigen);
+		assertTrue(message+" converged", solver.solve());
+		double[] values = solver.getEigenvalues();
+		double[][] vectors = solver.getEigenvectors();
+		assertEquals(message, nEigen, values.length);
+		assertEquals(message, n, vectors.length);
+
+		for (int k = 0; k < nEigen; k++) {
+			// Both are in increasing order, so these are the last of the full set
+			int full = n - nEigen + k;
+			assertEquals(message+" eigenvalue "+k, allValues[full], values[k], 1e-9*scale);
+
+			double[] x = new double[n];
+			double norm = 0.0;
+			for (int i = 0; i < n; i++) {
+				x[i] = vectors[i][k];
+				norm += x[i]*x[i];
+			}
+			assertEquals(message+" eigenvector "+k+" norm", 1.0, norm, 1e-9);
+			double[] y = new double[n];
+			getOperator(a).multiply(x, y);
+			for (int i = 0; i < n; i++)
+				assertEquals(message+" residual "+k+" row "+i, values[k]*x[i], y[i], 1e-6*scale);
+
+			// A repeated eigenvalue has no one eigenvector, otherwise they can
+			// only differ in sign
+			double gap = Math.min(full > 0 ? allValues[full]-allValues[full-1] : scale,
+			                      full < n-1 ? allValues[full+1]-allValues[full] : scale);
+			if (gap < 1e-6*scale) continue;
+			double dot = 0.0;
+			for (int i = 0; i < n; i++)
+				dot += x[i]*allVectors[i][full];
+			assertEquals(message+" eigenvector "+k, 1.0, Math.abs(dot), 1e-6);
+		}
+	}
+
+	@Test
+	public void indefiniteMatchesFullDecomposition() {
+		for (long seed = 1; seed <= 3; seed++)
+			checkEigenpairs("seed "+seed, getIndefinite(seed, 150), 6);
+	}
+
+	@Test
+	public void gowerMatchesFullDecomposition() {
+		// Only a few eigenvalues aren't zero, so ask for one more than that, too
+		checkEigenpairs("two axes", getGower(4, 200, 5), 2);
+		checkEigenpairs("five axes", getGower(5, 200, 5), 5);
+		checkEigenpairs("six axes", getGower(6, 120, 5), 6);
+	}
+
+	@Test
+	public void smallProblems() {
+		checkEigenpairs("all", getIndefinite(7, 8), 8);
+		checkEigenpairs("one", getIndefinite(8, 30), 1);
+
+		LanczosEigensolver none = new LanczosEigensolver(getOperator(getIndefinite(9, 5)), 0);
+		assertTrue(none.solve());
+		assertEquals(0, none.getEigenvalues().length);
+	}
+}
@@ -0,0 +1,110 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+
+public class NeighborIndexTest {
+	static final int ROWS = 300;
+	static final int COLUMNS = 5;
+
+	static final DistanceMetric[] METRICS = {
+		DistanceMetric.EUCLIDEAN, DistanceMetric.CITYBLOCK,
+		DistanceMetric.CORRELATION, DistanceMetric.ABS_CORRELATION,
+		DistanceMetric.UNCENTERED_CORRELATION, DistanceMetric.ABS_UNCENTERED_CORRELATION,
+		DistanceMetric.SPEARMANS_RANK, DistanceMetric.KENDALLS_TAU
+	};
+
+	// Clustered rows, with a few constant rows and maybe a few missing values
+	static double[][] getData(long seed, boolean missing) {
+		Random random = new Random(seed);
+		double[][] data = new double[ROWS][COLUMNS];
+		for (int i = 0; i < ROWS; i++) {
+			for (int j = 0; j < COLUMNS; j++) {
+				if (i % 50 == 7)
+					data[i][j] = 1.0;
+				else
+					data[i][j] = random.nextGaussian() + (i % 4)*(j+1);
+			}
+			if (missing && i % 23 == 5)
+				data[i][random.nextInt(COLUMNS)] = Double.NaN;
+		}
+		return data;
+	}
+
+	static SimpleMatrix getMatrix(double[][] data) {
+		SimpleMatrix matrix = new SimpleMatrix(data.length, data[0].length);
+		for (int i = 0; i < data.length; i++)
+			for (int j = 0; j < data[i].length; j++)
+				matrix.setValue(i, j, data[i][j]);
+		return matrix;
+	}
+
+	// The distances the way the full distance matrix used to get them
+	static double[][] getDistances(SimpleMatrix matrix, DistanceMetric metric) {
+		double[][] d = new double[ROWS][ROWS];
+		for (int i = 0; i < ROWS; i++)
+			for (int j = i+1; j < ROWS; j++)
+				d[i][j] = d[j][i] = metric.getMetric(matrix, matrix, i, j);
+		return d;
+	}
+
+	// A threshold halfway between two distances, near the given fraction of
+	// the pairs, so rounding can't put a pair on the other side of it
+	static double getEps(double[][] d, double fraction) {
+		double[] all = new double[ROWS*(ROWS-1)/2];
+		int n = 0;
+		for (int i = 0; i < ROWS; i++)
+			for (int j = i+1; j < ROWS; j++)
+				all[n++] = d[i][j];
+		Arrays.sort(all);
+		int k = (int)(fraction*n);
+		while (k+1 < n && all[k+1] - all[k] < 1e-9) k++;
+		return 0.5*(all[k] + all[k+1]);
+	}
+
+	@Test
+	public void neighborsMatchDistanceMatrix() {
+		for (DistanceMetric metric: METRICS) {
+			// DistanceMetric can't rank rows with missing values
+			boolean ranks = metric == DistanceMetric.SPEARMANS_RANK || metric == DistanceMetric.KENDALLS_TAU;
+			double[][] data = getData(1, !ranks);
+			SimpleMatrix matrix = getMatrix(data);
+			double[][] d = getDistances(matrix, metric);
+			NeighborIndex index = new NeighborIndex(data, metric);
+			for (double fraction: new double[] {0.01, 0.1}) {
+				double eps = getEps(d, fraction);
+				for (int row = 0; row < ROWS; row++) {
+					int count = 0;
+					int[] expected = new int[ROWS];
+					for (int j = 0; j < ROWS; j++) {
+						if (j != row && d[row][j] <= eps)
+							expected[count++] = j;
+					}
+					assertArrayEquals(metric+" row "+row+" eps "+eps,
+					                  Arrays.copyOf(expected, count), index.getNeighbors(row, eps));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void parallelLookupMatchesSingleRows() {
+		double[][] data = getData(2, true);
+		NeighborIndex index = new NeighborIndex(data, DistanceMetric.EUCLIDEAN);
+		int[] rows = new int[ROWS];
+		for (int i = 0; i < ROWS; i++)
+			rows[i] = (i*37) % ROWS;
+
+		int count = ROWS - 3;
+		int[][] neighbors = index.getNeighbors(rows, count, 2.0);
+		assertEquals(count, neighbors.length);
+		for (int i = 0; i < count; i++)
+			assertArrayEquals(index.getNeighbors(rows[i], 2.0), neighbors[i]);
+	}
+}
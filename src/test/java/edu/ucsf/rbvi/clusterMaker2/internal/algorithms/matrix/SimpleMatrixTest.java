@@ -0,0 +1,39 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SimpleMatrixTest {
+
+	static SimpleMatrix getMatrix(double[][] data) {
+		SimpleMatrix matrix = new SimpleMatrix(data.length, data[0].length);
+		for (int i = 0; i < data.length; i++)
+			for (int j = 0; j < data[i].length; j++)
+				matrix.setValue(i, j, data[i][j]);
+		return matrix;
+	}
+
+	@Test
+	public void centralizeColumnsZeroesMissingValues() {
+		SimpleMatrix matrix = getMatrix(new double[][] {{1.0, 2.0}, {3.0, 4.0}, {Double.NaN, 9.0}});
+		matrix.centralizeColumns();
+
+		// The mean is over all of the rows, counting the missing value as zero
+		double[][] expected = {{1.0 - 4.0/3, 2.0 - 5.0}, {3.0 - 4.0/3, 4.0 - 5.0}, {0.0, 9.0 - 5.0}};
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 2; j++)
+				assertEquals("("+i+","+j+")", expected[i][j], matrix.doubleValue(i, j), 1e-12);
+	}
+
+	@Test
+	public void centralizeRowsZeroesMissingValues() {
+		SimpleMatrix matrix = getMatrix(new double[][] {{1.0, Double.NaN, 5.0}, {2.0, 4.0, 6.0}});
+		matrix.centralizeRows();
+
+		double[][] expected = {{1.0 - 2.0, 0.0, 5.0 - 2.0}, {2.0 - 4.0, 0.0, 6.0 - 4.0}};
+		for (int i = 0; i < 2; i++)
+			for (int j = 0; j < 3; j++)
+				assertEquals("("+i+","+j+")", expected[i][j], matrix.doubleValue(i, j), 1e-12);
+	}
+}
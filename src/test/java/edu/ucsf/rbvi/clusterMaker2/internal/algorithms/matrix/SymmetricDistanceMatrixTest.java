@@ -0,0 +1,126 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.api.DistanceMetric;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
+
+public class SymmetricDistanceMatrixTest {
+
+	/**
+	 * The full distance matrix, the way SimpleMatrix.getDistanceMatrix built it
+	 */
+	static SimpleMatrix getFullMatrix(SimpleMatrix data, DistanceMetric metric) {
+		int n = data.nRows();
+		SimpleMatrix mat = new SimpleMatrix(n, n);
+		mat.setSymmetrical(true);
+		for (int row = 0; row < n; row++) {
+			for (int column = row; column < n; column++) {
+				double metValue = metric.getMetric(data, data, row, column);
+				mat.setValue(row, column, metValue);
+				if (row != column)
+					mat.setValue(column, row, metValue);
+			}
+		}
+		return mat;
+	}
+
+	// An indexed SimpleMatrix only gives the right number of rows, so the
+	// size comes from that
+	static void assertSame(String message, Matrix expected, Matrix matrix, double delta) {
+		int n = expected.nRows();
+		assertEquals(message, n, matrix.nRows());
+		assertEquals(message, n, matrix.nColumns());
+		for (int row = 0; row < n; row++) {
+			for (int column = 0; column < n; column++) {
+				double value = expected.doubleValue(row, column);
+				assertEquals(message+" ("+row+","+column+")", value, matrix.doubleValue(row, column),
+				             delta*(1 + Math.abs(value)));
+			}
+		}
+	}
+
+	static SimpleMatrix getData() {
+		return NeighborIndexTest.getMatrix(NeighborIndexTest.getData(5, true));
+	}
+
+	@Test
+	public void valuesMatchFullMatrix() {
+		SimpleMatrix data = getData();
+		for (DistanceMetric metric: new DistanceMetric[] {DistanceMetric.EUCLIDEAN, DistanceMetric.CORRELATION}) {
+			SimpleMatrix expected = getFullMatrix(data, metric);
+			SymmetricDistanceMatrix matrix = new SymmetricDistanceMatrix(data, metric);
+			assertSame(metric.toString(), expected, matrix, 1e-12);
+			assertSame(metric+" float", expected, new SymmetricDistanceMatrix(data, metric, true), 1e-6);
+			// SimpleMatrix counts the diagonal of a symmetric matrix twice
+			assertEquals(data.nRows()*data.nRows(), matrix.cardinality());
+
+			double[][] array = matrix.toArray();
+			for (int row = 0; row < data.nRows(); row++) {
+				for (int column = 0; column < data.nRows(); column++)
+					assertEquals(expected.doubleValue(row, column), array[row][column], 1e-12);
+				assertEquals(expected.rowSum(row), matrix.rowSum(row), 1e-9);
+				assertEquals(expected.columnSum(row), matrix.columnSum(row), 1e-9);
+				assertEquals(expected.rowMean(row), matrix.rowMean(row), 1e-12);
+				assertEquals(expected.rowVariance(row), matrix.rowVariance(row), 1e-9);
+			}
+		}
+	}
+
+	// PAM and the hierarchical clusterers look at subsets of the rows
+	@Test
+	public void submatricesMatchFullMatrix() {
+		SimpleMatrix data = getData();
+		SimpleMatrix expected = getFullMatrix(data, DistanceMetric.CITYBLOCK);
+		SymmetricDistanceMatrix matrix = new SymmetricDistanceMatrix(data, DistanceMetric.CITYBLOCK);
+
+		int[] index = new int[100];
+		for (int i = 0; i < index.length; i++)
+			index[i] = (i*7 + 3) % data.nRows();
+		assertSame("index", expected.submatrix(index), matrix.submatrix(index), 1e-12);
+		assertSame("block", expected.submatrix(10, 10, 50, 50), matrix.submatrix(10, 10, 50, 50), 1e-12);
+
+		// A submatrix of a submatrix goes through both indexes
+		Matrix sub = matrix.submatrix(index).submatrix(5, 5, 20, 20);
+		for (int i = 0; i < 20; i++)
+			for (int j = 0; j < 20; j++)
+				assertEquals(expected.doubleValue(index[i+5], index[j+5]), sub.doubleValue(i, j), 1e-12);
+	}
+
+	@Test
+	public void updatesMatchFullMatrix() {
+		SimpleMatrix data = getData();
+		SimpleMatrix expected = getFullMatrix(data, DistanceMetric.EUCLIDEAN);
+		SymmetricDistanceMatrix matrix = new SymmetricDistanceMatrix(data, DistanceMetric.EUCLIDEAN);
+
+		expected.setValue(3, 8, Double.NaN);
+		expected.setValue(8, 3, Double.NaN);
+		matrix.setValue(8, 3, Double.NaN);
+		assertSame("missing", expected, matrix, 0.0);
+		assertFalse(matrix.hasValue(3, 8));
+		assertNull(matrix.getValue(3, 8));
+		assertEquals(data.nRows()*data.nRows() - 2, matrix.cardinality());
+
+		expected.setMissingToZero();
+		matrix.setMissingToZero();
+		assertSame("missing to zero", expected, matrix, 0.0);
+
+		// SimpleMatrix only thresholds the upper triangle of a symmetric matrix
+		expected.threshold(1.0);
+		for (int row = 0; row < data.nRows(); row++)
+			for (int column = 0; column < row; column++)
+				expected.setValue(row, column, expected.doubleValue(column, row));
+		matrix.threshold(1.0);
+		assertSame("threshold", expected, matrix, 0.0);
+
+		expected.normalizeMatrix();
+		matrix.normalizeMatrix();
+		assertSame("normalizeMatrix", expected, matrix, 1e-12);
+
+		expected.normalize();
+		matrix.normalize();
+		assertSame("normalize", expected, matrix, 1e-12);
+	}
+}
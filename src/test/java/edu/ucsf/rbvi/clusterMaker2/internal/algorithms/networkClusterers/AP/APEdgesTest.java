@@ -0,0 +1,178 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.AP;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+
+public class APEdgesTest {
+	static final int NODES = 150;
+	static final double LAMBDA = 0.5;
+	static final double PREFERENCE = -2.0;
+
+	// A sparse, symmetric similarity matrix with a few communities, some
+	// isolated nodes and something on the diagonal to be ignored
+	static DoubleMatrix2D getSimilarities(long seed) {
+		Random random = new Random(seed);
+		DoubleMatrix2D s = new SparseDoubleMatrix2D(NODES, NODES);
+		for (int i = 0; i < NODES; i++) {
+			if (i % 37 == 3) continue;
+			s.set(i, i, 5.0);
+			for (int j = i+1; j < NODES; j++) {
+				if (j % 37 == 3) continue;
+				double p = (i % 6 == j % 6) ? 0.2 : 0.02;
+				if (random.nextDouble() < p) {
+					double value = -random.nextDouble()*3.0 - 0.01;
+					s.set(i, j, value);
+					s.set(j, i, value);
+				}
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * The messages the way the old ResponsibilityMatrix and AvailabilityMatrix
+	 * passed them, over the non-zeros of the similarity matrix with the
+	 * preference on its diagonal
+	 */
+	static class SimpleAP {
+		final double[][] s;
+		final boolean[][] nonZero;
+		final double[][] r = new double[NODES][NODES];
+		final double[][] a = new double[NODES][NODES];
+
+		SimpleAP(DoubleMatrix2D similarities) {
+			s = similarities.toArray();
+			nonZero = new boolean[NODES][NODES];
+			for (int i = 0; i < NODES; i++) {
+				s[i][i] = PREFERENCE;
+				for (int j = 0; j < NODES; j++)
+					nonZero[i][j] = s[i][j] != 0.0;
+			}
+		}
+
+		void iterate() {
+			double[] aEvidence = new double[NODES];
+			for (int i = 0; i < NODES; i++) {
+				aEvidence[i] = -Double.MAX_VALUE;
+				for (int k = 0; k < NODES; k++) {
+					if (nonZero[i][k] && i != k)
+						aEvidence[i] = Math.max(aEvidence[i], a[i][k]+s[i][k]);
+				}
+			}
+			for (int i = 0; i < NODES; i++) {
+				for (int k = 0; k < NODES; k++) {
+					if (nonZero[i][k])
+						r[i][k] = r[i][k]*LAMBDA + (s[i][k] - aEvidence[i])*(1-LAMBDA);
+				}
+			}
+
+			double[] rEvidence = new double[NODES];
+			for (int i = 0; i < NODES; i++) {
+				for (int k = 0; k < NODES; k++) {
+					if (nonZero[i][k] && i != k)
+						rEvidence[k] += Math.max(0.0, r[i][k]);
+				}
+			}
+			for (int i = 0; i < NODES; i++) {
+				for (int k = 0; k < NODES; k++) {
+					if (!nonZero[i][k]) continue;
+					double newValue;
+					if (i != k)
+						newValue = Math.min(0.0, r[k][k] + rEvidence[k] - Math.max(0.0, r[i][k]));
+					else
+						newValue = rEvidence[k];
+					a[i][k] = a[i][k]*LAMBDA + newValue*(1-LAMBDA);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void edgesMatchMatrix() {
+		DoubleMatrix2D s = getSimilarities(1);
+		APEdges edges = new APEdges(s, PREFERENCE);
+		int[] rowStart = edges.getRowStart();
+		int[] column = edges.getColumns();
+		double[] similarity = edges.getSimilarities();
+
+		int count = 0;
+		for (int row = 0; row < NODES; row++) {
+			int previous = -1;
+			for (int edge = rowStart[row]; edge < rowStart[row+1]; edge++) {
+				int col = column[edge];
+				assertTrue("row "+row+" is sorted", col > previous);
+				previous = col;
+				if (col == row) {
+					assertEquals(edge, edges.getDiagonal(row));
+					assertEquals(PREFERENCE, similarity[edge], 0.0);
+				} else {
+					assertEquals(s.get(row, col), similarity[edge], 0.0);
+				}
+			}
+			for (int col = 0; col < NODES; col++) {
+				if (col == row || s.get(row, col) != 0.0)
+					count++;
+			}
+		}
+		assertEquals(count, edges.size());
+
+		// The column index holds every edge, sorted by row
+		int[] columnStart = edges.getColumnStart();
+		int[] columnEdge = edges.getColumnEdges();
+		boolean[] seen = new boolean[edges.size()];
+		for (int col = 0; col < NODES; col++) {
+			int previous = -1;
+			for (int k = columnStart[col]; k < columnStart[col+1]; k++) {
+				int edge = columnEdge[k];
+				assertEquals(col, column[edge]);
+				int row = 0;
+				while (rowStart[row+1] <= edge) row++;
+				assertTrue("column "+col+" is sorted", row > previous);
+				previous = row;
+				assertFalse(seen[edge]);
+				seen[edge] = true;
+			}
+		}
+		assertEquals(edges.size(), columnStart[NODES]);
+	}
+
+	@Test
+	public void messagesMatchMatrix() {
+		for (long seed = 1; seed <= 3; seed++) {
+			DoubleMatrix2D s = getSimilarities(seed);
+			SimpleAP expected = new SimpleAP(s);
+			APEdges edges = new APEdges(s, PREFERENCE);
+			ResponsibilityMatrix r_matrix = new ResponsibilityMatrix(edges, LAMBDA);
+			AvailabilityMatrix a_matrix = new AvailabilityMatrix(edges, LAMBDA);
+			int[] rowStart = edges.getRowStart();
+			int[] column = edges.getColumns();
+
+			for (int iteration = 0; iteration < 50; iteration++) {
+				// The same steps as RunAP.iterate_message_exchange
+				a_matrix.updateEvidence();
+				r_matrix.update(a_matrix);
+				r_matrix.updateEvidence();
+				a_matrix.update(r_matrix);
+				expected.iterate();
+
+				for (int row = 0; row < NODES; row++) {
+					for (int edge = rowStart[row]; edge < rowStart[row+1]; edge++) {
+						int col = column[edge];
+						String message = "seed "+seed+" iteration "+iteration+" ("+row+","+col+")";
+						// The evidence can be summed in a different order
+						assertEquals(message+" responsibility", expected.r[row][col], r_matrix.get(edge),
+						             1e-9*(1 + Math.abs(expected.r[row][col])));
+						assertEquals(message+" availability", expected.a[row][col], a_matrix.get(edge),
+						             1e-9*(1 + Math.abs(expected.a[row][col])));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.MCODE;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+
+public class MCODEGraphTest {
+	static final int NODES = 120;
+
+	/**
+	 * Just enough of a network for MCODEGraph: the node list, and one
+	 * neighbor for each adjacent edge, in the order the edges were added
+	 */
+	static class TestNetwork {
+		final List<CyNode> nodes = new ArrayList<CyNode>();
+		final List<List<CyNode>> neighbors = new ArrayList<List<CyNode>>();
+		final List<int[]> edges = new ArrayList<int[]>();
+
+		TestNetwork(int n) {
+			for (int i = 0; i < n; i++) {
+				final long suid = i+1;
+				nodes.add((CyNode)Proxy.newProxyInstance(CyNode.class.getClassLoader(),
+					new Class<?>[] {CyNode.class}, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("getSUID")) return suid;
+							if (method.getName().equals("hashCode")) return Long.valueOf(suid).hashCode();
+							if (method.getName().equals("equals")) return proxy == args[0];
+							if (method.getName().equals("toString")) return "node "+suid;
+							throw new UnsupportedOperationException(method.getName());
+						}
+					}));
+				neighbors.add(new ArrayList<CyNode>());
+			}
+		}
+
+		void addEdge(int source, int target) {
+			edges.add(new int[] {source, target});
+			neighbors.get(source).add(nodes.get(target));
+			if (source != target)
+				neighbors.get(target).add(nodes.get(source));
+		}
+
+		CyNetwork getNetwork() {
+			return (CyNetwork)Proxy.newProxyInstance(CyNetwork.class.getClassLoader(),
+				new Class<?>[] {CyNetwork.class}, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getNodeList"))
+							return new ArrayList<CyNode>(nodes);
+						if (method.getName().equals("getNeighborList"))
+							return new ArrayList<CyNode>(neighbors.get(nodes.indexOf(args[0])));
+						if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+						if (method.getName().equals("equals")) return proxy == args[0];
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		}
+
+		// The distinct node pairs with an edge between them, as getMergedEdgeCount
+		// counted them, within a set of nodes
+		Set<Long> getMergedEdges(Set<Integer> members, boolean includeLoops) {
+			Set<Long> pairs = new HashSet<Long>();
+			for (int[] edge: edges) {
+				if (!includeLoops && edge[0] == edge[1]) continue;
+				if (!members.contains(edge[0]) || !members.contains(edge[1])) continue;
+				int a = Math.min(edge[0], edge[1]);
+				int b = Math.max(edge[0], edge[1]);
+				pairs.add(((long)a << 32) | b);
+			}
+			return pairs;
+		}
+
+		// The old calcDensity
+		double getDensity(Set<Integer> members, boolean includeLoops) {
+			int nodeCount = members.size();
+			int actualEdgeNum = getMergedEdges(members, includeLoops).size();
+			int possibleEdgeNum = includeLoops ? (nodeCount * (nodeCount+1)) / 2 : (nodeCount * (nodeCount-1)) / 2;
+			return possibleEdgeNum != 0 ? ((double) actualEdgeNum / (double) possibleEdgeNum) : 0;
+		}
+
+		// The old getKCore: drop the nodes with fewer than k distinct
+		// neighbors until there aren't any left to drop
+		Set<Integer> getKCore(Set<Integer> members, int k, boolean includeLoops) {
+			Set<Integer> core = new HashSet<Integer>(members);
+			while (true) {
+				Set<Long> pairs = getMergedEdges(core, includeLoops);
+				Set<Integer> next = new HashSet<Integer>();
+				for (int node: core) {
+					int degree = 0;
+					for (long pair: pairs) {
+						if ((int)(pair >>> 32) == node || (int)pair == node)
+							degree++;
+					}
+					if (degree >= k)
+						next.add(node);
+				}
+				if (next.isEmpty())
+					return null;
+				if (next.size() == core.size())
+					return core;
+				core = next;
+			}
+		}
+	}
+
+	// A multigraph with a few dense groups, multiple edges and self-loops
+	static TestNetwork getNetwork(long seed) {
+		Random random = new Random(seed);
+		TestNetwork network = new TestNetwork(NODES);
+		for (int i = 0; i < NODES; i++) {
+			for (int j = i; j < NODES; j++) {
+				double p = i == j ? 0.1 : (i % 8 == j % 8 ? 0.5 : 0.02);
+				if (random.nextDouble() < p) {
+					if (random.nextBoolean())
+						network.addEdge(i, j);
+					else
+						network.addEdge(j, i);
+					if (random.nextDouble() < 0.1)
+						network.addEdge(j, i);
+				}
+			}
+		}
+		return network;
+	}
+
+	@Test
+	public void adjacencyMatchesNetwork() {
+		TestNetwork network = getNetwork(1);
+		MCODEGraph graph = new MCODEGraph(network.getNetwork());
+		assertEquals(NODES, graph.size());
+		for (int i = 0; i < NODES; i++) {
+			CyNode node = network.nodes.get(i);
+			assertSame(node, graph.getNode(i));
+			assertEquals(i, graph.getIndex(node));
+
+			List<CyNode> neighbors = network.neighbors.get(i);
+			int[] entries = graph.getNeighborEntries(i);
+			assertEquals(neighbors.size(), graph.getEdgeCount(i));
+			assertEquals(neighbors.size(), entries.length);
+			Set<Integer> distinct = new HashSet<Integer>();
+			distinct.add(i);
+			for (int j = 0; j < entries.length; j++) {
+				assertSame(neighbors.get(j), graph.getNode(entries[j]));
+				assertEquals(entries[j], graph.getNeighborEntry(i, j));
+				distinct.add(entries[j]);
+			}
+			assertEquals(neighbors.contains(node), graph.hasLoop(i));
+
+			int[] neighborhood = graph.getNeighborhood(i);
+			assertEquals(distinct.size(), neighborhood.length);
+			for (int j = 0; j < neighborhood.length; j++) {
+				assertTrue(distinct.contains(neighborhood[j]));
+				if (j > 0)
+					assertTrue(neighborhood[j-1] < neighborhood[j]);
+			}
+		}
+	}
+
+	@Test
+	public void neighborhoodsMatchSubnetworks() {
+		for (long seed = 1; seed <= 4; seed++) {
+			TestNetwork network = getNetwork(seed);
+			MCODEGraph graph = new MCODEGraph(network.getNetwork());
+			for (boolean includeLoops: new boolean[] {false, true}) {
+				for (int i = 0; i < NODES; i++) {
+					String message = "seed "+seed+" loops "+includeLoops+" node "+i;
+					int[] neighborhood = graph.getNeighborhood(i);
+					Set<Integer> members = new HashSet<Integer>();
+					for (int member: neighborhood)
+						members.add(member);
+
+					MCODEGraph.Subgraph subgraph = graph.getSubgraph(neighborhood, includeLoops);
+					assertEquals(message, network.getMergedEdges(members, includeLoops).size(), subgraph.getEdgeCount());
+					assertEquals(message, network.getDensity(members, includeLoops), subgraph.getDensity(), 0.0);
+
+					// The highest k-core, by peeling off one k at a time
+					int k = 1;
+					Set<Integer> core = null;
+					Set<Integer> next;
+					while ((next = network.getKCore(core == null ? members : core, k, includeLoops)) != null) {
+						core = next;
+						k++;
+					}
+					int[] coreNumbers = subgraph.getCoreNumbers();
+					int highest = 0;
+					for (int j = 0; j < coreNumbers.length; j++) {
+						highest = Math.max(highest, coreNumbers[j]);
+						// Every node is in the cores up to its core number
+						Set<Integer> kCore = network.getKCore(members, coreNumbers[j], includeLoops);
+						assertTrue(message+" member "+neighborhood[j], coreNumbers[j] == 0 || kCore.contains(neighborhood[j]));
+						Set<Integer> above = network.getKCore(members, coreNumbers[j]+1, includeLoops);
+						assertTrue(message+" member "+neighborhood[j], above == null || !above.contains(neighborhood[j]));
+					}
+					assertEquals(message+" core level", k-1, highest);
+					if (core != null)
+						assertEquals(message+" core density", network.getDensity(core, includeLoops),
+						             subgraph.getDensity(coreNumbers, highest), 0.0);
+				}
+			}
+		}
+	}
+}
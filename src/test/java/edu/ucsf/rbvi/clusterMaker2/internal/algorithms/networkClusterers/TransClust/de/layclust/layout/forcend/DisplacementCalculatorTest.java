@@ -0,0 +1,155 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.forcend;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.CC2DArray;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ICCEdges;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
+
+public class DisplacementCalculatorTest {
+	static final int NODES = 300;
+	static final int DIM = 3;
+	static final double ATTRACTION = 1.2;
+	static final double REPULSION = 0.8;
+
+	// Edge costs of both signs, and a few zero ones
+	static CC2DArray getEdges(Random random, int nodes) {
+		CC2DArray edges = new CC2DArray(nodes);
+		for (int i = 0; i < nodes; i++)
+			for (int j = i+1; j < nodes; j++)
+				edges.setEdgeCost(i, j, (j - i) % 17 == 0 ? 0f : (float)(2*random.nextDouble() - 1));
+		return edges;
+	}
+
+	// Random positions, with two nodes on top of each other
+	static double[][] getPositions(Random random, int nodes, int dim) {
+		double[][] positions = new double[nodes][dim];
+		for (int i = 0; i < nodes; i++)
+			for (int d = 0; d < dim; d++)
+				positions[i][d] = 100*random.nextGaussian();
+		positions[nodes-1] = positions[1].clone();
+		return positions;
+	}
+
+	static double[] flatten(double[][] positions) {
+		int dim = positions[0].length;
+		double[] flat = new double[positions.length*dim];
+		for (int i = 0; i < positions.length; i++)
+			System.arraycopy(positions[i], 0, flat, i*dim, dim);
+		return flat;
+	}
+
+	/**
+	 * The sequential loop from FORCEnDLayoutUtility.calculateDisplacementVectors,
+	 * on the positions of the connected component
+	 */
+	static double[][] simpleDisplacements(double[][] positions, ICCEdges edges, int dim,
+			double attraction, double repulsion) {
+		int nodes = positions.length;
+		double[][] allDisplacements = new double[nodes][dim];
+		double distance,force,displacement;
+		for (int i = 0; i < nodes; i++) {
+			for (int j = i+1; j < nodes; j++) {
+				distance = 0;
+				for (int d = 0; d < dim; d++)
+					distance += (positions[i][d] - positions[j][d])*(positions[i][d] - positions[j][d]);
+				distance = Math.sqrt(distance);
+				if(distance<FORCEnDLayoutConfig.MIN_DISTANCE) continue;
+
+				if (edges.getEdgeCost(i, j)>0)
+					force = (Math.log(distance + 1) * edges.getEdgeCost(i, j) * attraction)/distance;
+				else
+					force = ((edges.getEdgeCost(i, j) * repulsion)/Math.log(distance + 1))/distance;
+				for (int d = 0; d < dim; d++) {
+					displacement = (positions[j][d] - positions[i][d])*force;
+					allDisplacements[i][d] += displacement;
+					allDisplacements[j][d] -= displacement;
+				}
+			}
+		}
+		return allDisplacements;
+	}
+
+	@Test
+	public void oneCalculatorMatchesSequentialLoop() {
+		Random random = new Random(1);
+		CC2DArray edges = getEdges(random, NODES);
+		double[][] positions = getPositions(random, NODES, DIM);
+		double[][] expected = simpleDisplacements(positions, edges, DIM, ATTRACTION, REPULSION);
+
+		DisplacementCalculator calculator = new DisplacementCalculator(ATTRACTION, REPULSION,
+				flatten(positions), edges, NODES, DIM, 0, NODES);
+		calculator.run();
+		double[] displacements = new double[NODES*DIM];
+		calculator.addDisplacementsTo(displacements);
+		assertArrayEquals(flatten(expected), displacements, 0.0);
+	}
+
+	// Any split of the rows adds up to the same displacements, up to rounding,
+	// and running again after the positions move starts from zero
+	@Test
+	public void splitCalculatorsMatchSequentialLoop() {
+		Random random = new Random(2);
+		CC2DArray edges = getEdges(random, NODES);
+		double[][] positions = getPositions(random, NODES, DIM);
+		double[] flat = flatten(positions);
+
+		int[][] splits = {{0, 1, NODES}, {0, 40, 41, 200, NODES}, {0, 10, 20, 30, 60, 100, 299, NODES}};
+		for (int[] split: splits) {
+			ArrayList<DisplacementCalculator> calculators = new ArrayList<DisplacementCalculator>();
+			for (int c = 0; c+1 < split.length; c++)
+				calculators.add(new DisplacementCalculator(ATTRACTION, REPULSION, flat, edges,
+						NODES, DIM, split[c], split[c+1]));
+			for (int pass = 0; pass < 2; pass++) {
+				for (int i = 0; i < NODES; i++)
+					for (int d = 0; d < DIM; d++)
+						flat[i*DIM + d] = positions[i][d] += pass;
+				double[] expected = flatten(simpleDisplacements(positions, edges, DIM, ATTRACTION, REPULSION));
+				double[] displacements = new double[NODES*DIM];
+				for (DisplacementCalculator calculator: calculators) {
+					calculator.run();
+					calculator.addDisplacementsTo(displacements);
+				}
+				for (int k = 0; k < expected.length; k++)
+					assertEquals(split.length-1+" calculators, pass "+pass, expected[k], displacements[k],
+							1e-12*(1 + Math.abs(expected[k])));
+			}
+		}
+	}
+
+	// The calculators that the layouter uses cover every node once
+	@Test
+	public void layoutCalculatorsMatchSequentialLoop() {
+		Random random = new Random(3);
+		CC2DArray edges = getEdges(random, NODES);
+		double[][] positions = getPositions(random, NODES, DIM);
+		String[] ids = new String[NODES];
+		for (int i = 0; i < NODES; i++)
+			ids[i] = "node"+i;
+		RunConfig config = new RunConfig();
+		config.useThreads = true;
+		config.maxNoThreads = -1;
+		ConnectedComponent cc = new ConnectedComponent(edges, ids, null, config);
+		FORCEnDParameters parameters = new FORCEnDParameters();
+		parameters.setAttractionFactor(ATTRACTION*NODES);
+		parameters.setRepulsionFactor(REPULSION*NODES);
+
+		double[] flat = flatten(positions);
+		ArrayList<DisplacementCalculator> calculators = FORCEnDLayoutUtility
+				.createDisplacementCalculators(flat, cc, DIM, parameters);
+		assertEquals(config.getNoThreads(), calculators.size());
+		double[] displacements = new double[NODES*DIM];
+		FORCEnDLayoutUtility.calculateDisplacementVectors(displacements, calculators, cc);
+
+		double[] expected = flatten(simpleDisplacements(positions, edges, DIM,
+				parameters.getAttractionFactor()/NODES, parameters.getRepulsionFactor()/NODES));
+		for (int k = 0; k < expected.length; k++)
+			assertEquals(expected[k], displacements[k], 1e-12*(1 + Math.abs(expected[k])));
+	}
+}
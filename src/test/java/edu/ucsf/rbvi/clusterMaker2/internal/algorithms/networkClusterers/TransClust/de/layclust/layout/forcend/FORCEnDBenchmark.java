@@ -0,0 +1,107 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.layout.forcend;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.CC2DArray;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.datastructure.ConnectedComponent;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.networkClusterers.TransClust.de.layclust.taskmanaging.RunConfig;
+
+/**
+ * Time the FORCEnD displacement calculation.  This isn't a unit test; run it
+ * by hand with the test classpath:
+ *
+ *   java FORCEnDBenchmark [nodes] [iterations] [threads...]
+ *
+ * It lays out one connected component with random edge costs in three
+ * dimensions, first with the old sequential loop and then with the
+ * calculators for each of the thread counts (1 and 4 by default), and
+ * reports the best of four runs.  The threads can't go faster than the
+ * processors that are really there, so it prints how many the JVM sees.
+ */
+public class FORCEnDBenchmark {
+	static final int DIM = 3;
+	static final int RUNS = 4;
+
+	public static void main(String[] args) {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int[] threads = {1, 4};
+		if (args.length > 2) {
+			threads = new int[args.length-2];
+			for (int t = 0; t < threads.length; t++)
+				threads[t] = Integer.parseInt(args[t+2]);
+		}
+
+		Random random = new Random(5);
+		CC2DArray edges = DisplacementCalculatorTest.getEdges(random, nodes);
+		double[][] start = DisplacementCalculatorTest.getPositions(random, nodes, DIM);
+		String[] ids = new String[nodes];
+		for (int i = 0; i < nodes; i++)
+			ids[i] = "node"+i;
+		FORCEnDParameters parameters = new FORCEnDParameters();
+		parameters.setAttractionFactor(1.2);
+		parameters.setRepulsionFactor(0.8);
+		parameters.setTemperature(100f);
+		System.out.println(nodes+" nodes, "+iterations+" iterations, "+
+		                   Runtime.getRuntime().availableProcessors()+" processors");
+
+		long best = Long.MAX_VALUE;
+		double[] simple = null;
+		for (int run = 0; run < RUNS; run++) {
+			double[][] positions = copy(start);
+			long time = System.nanoTime();
+			for (int it = 0; it < iterations; it++) {
+				double temperature = FORCEnDLayoutUtility.calculateTemperature(it, nodes, parameters);
+				double[] displacements = DisplacementCalculatorTest.flatten(
+						DisplacementCalculatorTest.simpleDisplacements(positions, edges, DIM,
+								parameters.getAttractionFactor()/nodes, parameters.getRepulsionFactor()/nodes));
+				double[] flat = DisplacementCalculatorTest.flatten(positions);
+				FORCEnDLayoutUtility.moveAllNodesByDisplacement(displacements, flat, nodes, DIM, temperature);
+				for (int i = 0; i < nodes; i++)
+					System.arraycopy(flat, i*DIM, positions[i], 0, DIM);
+			}
+			best = Math.min(best, System.nanoTime() - time);
+			simple = DisplacementCalculatorTest.flatten(positions);
+		}
+		report("sequential loop", best, iterations, 0.0);
+
+		for (int t: threads) {
+			RunConfig config = new RunConfig();
+			config.useThreads = true;
+			config.maxNoThreads = t;
+			ConnectedComponent cc = new ConnectedComponent(edges, ids, null, config);
+
+			best = Long.MAX_VALUE;
+			double difference = 0.0;
+			for (int run = 0; run < RUNS; run++) {
+				double[] positions = DisplacementCalculatorTest.flatten(start);
+				double[] displacements = new double[nodes*DIM];
+				long time = System.nanoTime();
+				ArrayList<DisplacementCalculator> calculators = FORCEnDLayoutUtility
+						.createDisplacementCalculators(positions, cc, DIM, parameters);
+				for (int it = 0; it < iterations; it++) {
+					double temperature = FORCEnDLayoutUtility.calculateTemperature(it, nodes, parameters);
+					FORCEnDLayoutUtility.calculateDisplacementVectors(displacements, calculators, cc);
+					FORCEnDLayoutUtility.moveAllNodesByDisplacement(displacements, positions, nodes, DIM, temperature);
+				}
+				best = Math.min(best, System.nanoTime() - time);
+				for (int k = 0; k < positions.length; k++)
+					difference = Math.max(difference, Math.abs(positions[k] - simple[k]));
+			}
+			report(config.getNoThreads()+" thread(s)", best, iterations, difference);
+		}
+	}
+
+	static double[][] copy(double[][] positions) {
+		double[][] copy = new double[positions.length][];
+		for (int i = 0; i < positions.length; i++)
+			copy[i] = positions[i].clone();
+		return copy;
+	}
+
+	static void report(String name, long nanos, int iterations, double difference) {
+		System.out.printf("%s: %.3f s per iteration, positions within %.2g of the sequential loop%n",
+		                  name, nanos/1e9/iterations, difference);
+	}
+}
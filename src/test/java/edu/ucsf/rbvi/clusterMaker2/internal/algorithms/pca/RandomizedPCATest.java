@@ -0,0 +1,138 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.pca;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.SimpleMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.api.Matrix;
+
+public class RandomizedPCATest {
+	static final int ROWS = 400;
+	static final int COLUMNS = 30;
+	static final int FACTORS = 6;
+
+	// A few latent factors of different strengths, a little noise, columns on
+	// different scales and maybe a few missing values
+	static double[][] getData(long seed, boolean missing) {
+		Random random = new Random(seed);
+		double[][] loadings = new double[FACTORS][COLUMNS];
+		for (int f = 0; f < FACTORS; f++)
+			for (int j = 0; j < COLUMNS; j++)
+				loadings[f][j] = random.nextGaussian()*(FACTORS-f);
+		double[][] data = new double[ROWS][COLUMNS];
+		for (int i = 0; i < ROWS; i++) {
+			double[] factor = new double[FACTORS];
+			for (int f = 0; f < FACTORS; f++)
+				factor[f] = random.nextGaussian();
+			for (int j = 0; j < COLUMNS; j++) {
+				double value = 0.01*random.nextGaussian() + j;
+				for (int f = 0; f < FACTORS; f++)
+					value += factor[f]*loadings[f][j];
+				data[i][j] = value*(1 + j % 3);
+			}
+			if (missing && i % 41 == 9)
+				data[i][random.nextInt(COLUMNS)] = Double.NaN;
+		}
+		return data;
+	}
+
+	static double[][] copy(double[][] data) {
+		double[][] copy = new double[data.length][];
+		for (int i = 0; i < data.length; i++)
+			copy[i] = data[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Check the randomized components against the eigendecomposition of the
+	 * covariance (or correlation) matrix, the way RunPCA.computePCs finds them
+	 */
+	static void checkComponents(String message, double[][] data, boolean correlation, int nComponents) {
+		SimpleMatrix matrix = new SimpleMatrix(ROWS, COLUMNS);
+		for (int i = 0; i < ROWS; i++)
+			for (int j = 0; j < COLUMNS; j++)
+				matrix.setValue(i, j, data[i][j]);
+		matrix.centralizeColumns();
+		Matrix C = correlation ? matrix.correlation() : matrix.covariance();
+		double[] allValues = C.eigenValues(true);
+		double[][] allVectors = C.eigenVectors();
+		int n = allValues.length;
+		double total = 0.0;
+		for (double v: allValues)
+			total += v;
+
+		RandomizedPCA pca = new RandomizedPCA(copy(data), correlation);
+		pca.compute(nComponents, 10, 2);
+		double[] values = pca.getEigenValues();
+		double[][] vectors = pca.getEigenVectors();
+		double[][] scores = pca.getScores();
+		assertEquals(message, nComponents, values.length);
+		assertEquals(message+" total variance", total, pca.getTotalVariance(), 1e-9*total);
+
+		double[][] centered = matrix.toArray();
+		for (int k = 0; k < nComponents; k++) {
+			// Both are in increasing order, so these are the last of the full set
+			int full = allVectors[0].length - nComponents + k;
+			String component = message+" component "+k;
+			assertEquals(component, allValues[n - nComponents + k], values[k], 1e-8*allValues[n-1]);
+
+			// The eigenvectors can differ in sign
+			double dot = 0.0;
+			for (int j = 0; j < COLUMNS; j++)
+				dot += vectors[j][k]*allVectors[j][full];
+			assertEquals(component+" eigenvector", 1.0, Math.abs(dot), 1e-8);
+
+			// The scores are the projection of the centered data
+			if (correlation) continue;
+			for (int i = 0; i < ROWS; i++) {
+				double score = 0.0;
+				for (int j = 0; j < COLUMNS; j++)
+					score += centered[i][j]*vectors[j][k];
+				assertEquals(component+" score "+i, score, scores[i][k], 1e-8*(1 + Math.abs(score)));
+			}
+		}
+	}
+
+	@Test
+	public void covarianceMatchesFullDecomposition() {
+		checkComponents("covariance", getData(1, false), false, 5);
+		checkComponents("three", getData(2, false), false, 3);
+	}
+
+	@Test
+	public void correlationMatchesFullDecomposition() {
+		checkComponents("correlation", getData(3, false), true, 5);
+	}
+
+	@Test
+	public void missingValuesAreColumnMeans() {
+		// The full decomposition fills in missing values differently, so
+		// compare against the data with the column means filled in
+		double[][] data = getData(4, true);
+		double[][] filled = copy(data);
+		for (int j = 0; j < COLUMNS; j++) {
+			double sum = 0.0;
+			int count = 0;
+			for (int i = 0; i < ROWS; i++) {
+				if (Double.isNaN(data[i][j])) continue;
+				sum += data[i][j];
+				count++;
+			}
+			for (int i = 0; i < ROWS; i++) {
+				if (Double.isNaN(data[i][j]))
+					filled[i][j] = sum/count;
+			}
+		}
+
+		RandomizedPCA missing = new RandomizedPCA(copy(data), false);
+		missing.compute(4, 10, 2);
+		RandomizedPCA complete = new RandomizedPCA(filled, false);
+		complete.compute(4, 10, 2);
+		assertArrayEquals(complete.getEigenValues(), missing.getEigenValues(), 1e-9);
+		assertEquals(complete.getTotalVariance(), missing.getTotalVariance(), 1e-9);
+		checkComponents("filled", filled, false, 4);
+	}
+}
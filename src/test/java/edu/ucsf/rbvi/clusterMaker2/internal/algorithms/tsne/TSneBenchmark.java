@@ -0,0 +1,55 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tsne;
+
+import java.util.Random;
+
+import org.cytoscape.work.TaskMonitor;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.matrix.CyColtMatrix;
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.tSNECalculation;
+
+/**
+ * Time the exact t-SNE.  This isn't a unit test; run it by hand with the
+ * test classpath:
+ *
+ *   java TSneBenchmark [rows] [iterations]
+ *
+ * The data are five shifted Gaussian groups of ten columns, embedded in two
+ * dimensions with a perplexity of 30 and no PCA.  It reports the time for
+ * the affinities alone (no iterations) and for the whole run, after a short
+ * warm-up run.
+ */
+public class TSneBenchmark {
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int columns = 10;
+
+		Random random = new Random(7);
+		double[][] data = new double[n][columns];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < columns; j++)
+				data[i][j] = random.nextGaussian() + (i % 5)*3;
+		CyColtMatrix matrix = new CyColtMatrix(null, n, columns);
+		matrix.initialize(n, columns, data);
+
+		TaskMonitor monitor = new TaskMonitor() {
+			public void setTitle(String title) {}
+			public void setProgress(double progress) {}
+			public void setStatusMessage(String message) {}
+			public void showMessage(TaskMonitor.Level level, String message) {}
+		};
+
+		new tSNECalculation(monitor).tsne(matrix, 2, columns, 30, 20, false);
+
+		long start = System.nanoTime();
+		new tSNECalculation(monitor).tsne(matrix, 2, columns, 30, 0, false);
+		long setup = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		new tSNECalculation(monitor).tsne(matrix, 2, columns, 30, iterations, false);
+		long total = System.nanoTime() - start;
+
+		System.out.println("n="+n+": affinities "+setup/1000000+" ms, "+iterations+" iterations "+
+		                   total/1000000+" ms, "+(total-setup)/1000/Math.max(iterations, 1)+" us per iteration");
+	}
+}
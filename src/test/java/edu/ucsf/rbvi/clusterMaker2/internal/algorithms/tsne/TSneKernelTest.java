@@ -0,0 +1,205 @@
+package edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tsne;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucsf.rbvi.clusterMaker2.internal.algorithms.tSNE.TSneKernel;
+
+public class TSneKernelTest {
+	static final int N = 40;
+	static final int DIMS = 2;
+	static final int ITERATIONS = 15;
+
+	// Conditional affinities from Gaussian kernels on a few groups of points
+	static double[][] getAffinities(Random random) {
+		double[][] x = new double[N][3];
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < 3; j++)
+				x[i][j] = random.nextGaussian() + (i % 4)*2;
+		double[][] P = new double[N][N];
+		for (int i = 0; i < N; i++) {
+			double sum = 0.0;
+			for (int j = 0; j < N; j++) {
+				if (i == j) continue;
+				double d = 0.0;
+				for (int k = 0; k < 3; k++)
+					d += (x[i][k]-x[j][k])*(x[i][k]-x[j][k]);
+				P[i][j] = Math.exp(-d/2);
+				sum += P[i][j];
+			}
+			for (int j = 0; j < N; j++)
+				P[i][j] /= sum;
+		}
+		return P;
+	}
+
+	// The symmetrized, normalized affinities, times the exaggeration
+	static double[][] getJointAffinities(double[][] Pin, double exaggeration) {
+		double[][] P = new double[N][N];
+		double sumP = 0.0;
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++) {
+				P[i][j] = Pin[i][j] + Pin[j][i];
+				sumP += P[i][j];
+			}
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				P[i][j] = Math.max(P[i][j] / sumP * exaggeration, 1e-12);
+		return P;
+	}
+
+	// The Student-t kernel for the embedding, with a zero diagonal
+	static double[][] getKernel(double[][] Y) {
+		double[][] num = new double[N][N];
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++) {
+				if (i == j) continue;
+				double d = 0.0;
+				for (int k = 0; k < DIMS; k++)
+					d += (Y[i][k]-Y[j][k])*(Y[i][k]-Y[j][k]);
+				num[i][j] = 1.0/(1.0 + d);
+			}
+		return num;
+	}
+
+	static double[][] getQ(double[][] num) {
+		double sumNum = 0.0;
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				sumNum += num[i][j];
+		double[][] Q = new double[N][N];
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				Q[i][j] = Math.max(num[i][j]/sumNum, 1e-12);
+		return Q;
+	}
+
+	// The KL divergence of Q from P
+	static double getCost(double[][] P, double[][] Q) {
+		double C = 0.0;
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				C += P[i][j]*Math.log(P[i][j]/Q[i][j]);
+		return C;
+	}
+
+	/**
+	 * The iterations as tSNECalculation did them with whole matrices, one
+	 * step at a time, before the exaggeration is removed.  Returns the cost
+	 * after the first iteration.
+	 */
+	static double simpleTSne(double[][] Pin, double[][] Y, int maxIter) {
+		double[][] P = getJointAffinities(Pin, 4);
+		double[][] iY = new double[N][DIMS];
+		double[][] gains = new double[N][DIMS];
+		for (double[] row: gains)
+			Arrays.fill(row, 1.0);
+
+		double cost = 0.0;
+		for (int iter = 0; iter < maxIter; iter++) {
+			double[][] num = getKernel(Y);
+			double[][] Q = getQ(num);
+
+			double[][] dY = new double[N][DIMS];
+			for (int i = 0; i < N; i++)
+				for (int j = 0; j < N; j++)
+					for (int k = 0; k < DIMS; k++)
+						dY[i][k] += 4*(P[i][j]-Q[i][j])*num[i][j]*(Y[i][k]-Y[j][k]);
+
+			double momentum = iter < 20 ? 0.5 : 0.8;
+			double[] mean = new double[DIMS];
+			for (int i = 0; i < N; i++)
+				for (int k = 0; k < DIMS; k++) {
+					if ((dY[i][k] > 0.0) != (iY[i][k] > 0.0))
+						gains[i][k] += 0.2;
+					else
+						gains[i][k] *= 0.8;
+					gains[i][k] = Math.max(gains[i][k], 0.01);
+					iY[i][k] = momentum*iY[i][k] - 500*gains[i][k]*dY[i][k];
+					Y[i][k] += iY[i][k];
+					mean[k] += Y[i][k]/N;
+				}
+			for (int i = 0; i < N; i++)
+				for (int k = 0; k < DIMS; k++)
+					Y[i][k] -= mean[k];
+
+			if (iter == 0)
+				cost = getCost(P, Q);
+		}
+		return cost;
+	}
+
+	static double[] flatten(double[][] matrix) {
+		int columns = matrix[0].length;
+		double[] flat = new double[matrix.length*columns];
+		for (int i = 0; i < matrix.length; i++)
+			for (int j = 0; j < columns; j++)
+				flat[i*columns + j] = matrix[i][j];
+		return flat;
+	}
+
+	static double[][] unflatten(double[] flat, int columns) {
+		double[][] matrix = new double[flat.length/columns][columns];
+		for (int i = 0; i < matrix.length; i++)
+			for (int j = 0; j < columns; j++)
+				matrix[i][j] = flat[i*columns + j];
+		return matrix;
+	}
+
+	static double[][] getStart(Random random) {
+		double[][] Y = new double[N][DIMS];
+		for (int i = 0; i < N; i++)
+			for (int k = 0; k < DIMS; k++)
+				Y[i][k] = 1e-4*random.nextGaussian();
+		return Y;
+	}
+
+	// The embedding is chaotic, so the rounding differences only stay small
+	// for the first dozen or so iterations
+	@Test
+	public void kernelMatchesSimpleLoop() {
+		Random random = new Random(3);
+		double[][] P = getAffinities(random);
+		double[][] Y = getStart(random);
+		double[] flatY = flatten(Y);
+
+		TSneKernel kernel = new TSneKernel(flatten(P), flatY, N, DIMS);
+		double cost = 0.0;
+		for (int iter = 0; iter < ITERATIONS; iter++) {
+			kernel.iterate(iter);
+			if (iter == 0)
+				cost = kernel.cost();
+		}
+
+		double expected = simpleTSne(P, Y, ITERATIONS);
+		assertEquals(expected, cost, 1e-8*expected);
+		for (int i = 0; i < N; i++)
+			for (int k = 0; k < DIMS; k++)
+				assertEquals("Y["+i+"]["+k+"]", Y[i][k], flatY[i*DIMS + k], 1e-6*(1.0 + Math.abs(Y[i][k])));
+	}
+
+	// The cost reported for iteration 100 is still for the exaggerated P
+	@Test
+	public void exaggerationEndsAfterIteration100() {
+		Random random = new Random(5);
+		double[][] P = getAffinities(random);
+		double[] flatY = flatten(getStart(random));
+		TSneKernel kernel = new TSneKernel(flatten(P), flatY, N, DIMS);
+		for (int iter = 0; iter < 100; iter++)
+			kernel.iterate(iter);
+
+		double[][] Q = getQ(getKernel(unflatten(flatY, DIMS)));
+		kernel.iterate(100);
+		double expected = getCost(getJointAffinities(P, 4), Q);
+		assertEquals(expected, kernel.cost(), 1e-8*expected);
+
+		Q = getQ(getKernel(unflatten(flatY, DIMS)));
+		kernel.iterate(101);
+		expected = getCost(getJointAffinities(P, 1), Q);
+		assertEquals(expected, kernel.cost(), 1e-8*expected);
+	}
+}